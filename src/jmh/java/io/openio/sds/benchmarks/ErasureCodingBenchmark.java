@@ -0,0 +1,61 @@
+package io.openio.sds.benchmarks;
+
+import io.openio.sds.storage.ec.Fragments;
+import io.openio.sds.storage.ec.ReedSolomon;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the encoding of one segment by the client erasure coding engine.
+ * The throughput is in segments per second: multiply by {@code segmentSize}
+ * to get the bytes of object data encoded per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ErasureCodingBenchmark {
+
+	@Param({ "6,3", "4,2", "12,4" })
+	public String km;
+
+	@Param({ "1048576" })
+	public int segmentSize;
+
+	@Param({ "isa_l_rs_vand", "isa_l_rs_cauchy" })
+	public String algo;
+
+	private ReedSolomon codec;
+	private byte[] segment;
+	private byte[][] parity;
+	private int blockSize;
+
+	@Setup
+	public void setup() {
+		String[] params = km.split(",");
+		int k = Integer.parseInt(params[0]);
+		int m = Integer.parseInt(params[1]);
+		codec = ReedSolomon.ISA_L_RS_VAND.equals(algo)
+				? ReedSolomon.vandermonde(k, m)
+				: ReedSolomon.cauchy(k, m);
+		blockSize = Fragments.payloadSize(k, segmentSize);
+		segment = new byte[k * blockSize];
+		new Random(0).nextBytes(segment);
+		parity = new byte[m][blockSize];
+	}
+
+	@Benchmark
+	public byte[][] encode() {
+		codec.encode(segment, 0, blockSize, parity);
+		return parity;
+	}
+}
@@ -0,0 +1,170 @@
+package io.openio.sds.benchmarks;
+
+import io.openio.sds.RequestContext;
+import io.openio.sds.common.AbstractSocketProvider;
+import io.openio.sds.http.OioHttp;
+import io.openio.sds.http.OioHttpSettings;
+import io.openio.sds.models.ChunkInfo;
+import io.openio.sds.models.ObjectInfo;
+import io.openio.sds.models.OioUrl;
+import io.openio.sds.models.Position;
+import io.openio.sds.storage.rawx.RawxClient;
+import io.openio.sds.storage.rawx.RawxSettings;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the download of an object served from memory, so only the cost of
+ * the client read path is measured. Run with the gc profiler (enabled in the
+ * build) and divide {@code gc.alloc.rate.norm} by {@code sizeMb} to get the
+ * bytes allocated per MB read.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReadPathBenchmark {
+
+	private static final int MB = 1024 * 1024;
+
+	@Param({ "1", "16" })
+	public int sizeMb;
+
+	@Param({ "4" })
+	public int chunks;
+
+	@Param({ "0", "2" })
+	public int readAhead;
+
+	private RawxClient client;
+	private ObjectInfo oinf;
+	private final byte[] buf = new byte[65536];
+
+	@Setup
+	public void setup() {
+		long chunkSize = (long) sizeMb * MB / chunks;
+		byte[] head = ("HTTP/1.1 200 OK\r\nContent-Length: " + chunkSize
+				+ "\r\n\r\n").getBytes();
+		byte[] response = new byte[head.length + (int) chunkSize];
+		System.arraycopy(head, 0, response, 0, head.length);
+		OioHttp http = OioHttp.http(new OioHttpSettings(),
+				new MemorySocketProvider(response));
+		client = new RawxClient(http, new RawxSettings()
+				.readAhead(readAhead)
+				.replicaOrdering(false));
+		List<ChunkInfo> list = new ArrayList<ChunkInfo>();
+		for (int i = 0; i < chunks; i++)
+			list.add(new ChunkInfo()
+					.url(String.format("http://127.0.0.1:6000/%064X", i))
+					.pos(Position.simple(i))
+					.size(chunkSize));
+		oinf = new ObjectInfo()
+				.url(OioUrl.url("bench", "bench", "object"))
+				.oid("0123456789ABCDEF")
+				.size(chunkSize * chunks)
+				.chunkMethod("plain/nb_copy=1")
+				.chunks(list);
+	}
+
+	@Benchmark
+	public long download() throws Exception {
+		InputStream in = client.downloadObject(oinf, new RequestContext());
+		long total = 0;
+		int read;
+		while (-1 != (read = in.read(buf, 0, buf.length)))
+			total += read;
+		in.close();
+		return total;
+	}
+
+	/**
+	 * Serves the same response on every connection, and drops the requests
+	 */
+	private static class MemorySocketProvider extends AbstractSocketProvider {
+
+		private final byte[] response;
+
+		MemorySocketProvider(byte[] response) {
+			this.response = response;
+		}
+
+		@Override
+		public Socket getSocket(String host, int port) {
+			return new MemorySocket(response);
+		}
+
+		@Override
+		public Socket getSocket(InetSocketAddress addr) {
+			return new MemorySocket(response);
+		}
+
+		@Override
+		public boolean reusableSocket() {
+			return false;
+		}
+	}
+
+	private static class MemorySocket extends Socket {
+
+		private static final OutputStream SINK = new OutputStream() {
+
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		};
+
+		private final InputStream in;
+		private int timeout = 0;
+
+		MemorySocket(byte[] response) {
+			this.in = new ByteArrayInputStream(response);
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			return in;
+		}
+
+		@Override
+		public OutputStream getOutputStream() {
+			return SINK;
+		}
+
+		@Override
+		public void setSoTimeout(int timeout) {
+			this.timeout = timeout;
+		}
+
+		@Override
+		public int getSoTimeout() {
+			return timeout;
+		}
+
+		@Override
+		public void shutdownInput() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
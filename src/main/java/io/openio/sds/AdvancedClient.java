@@ -2,6 +2,11 @@ package io.openio.sds;
 
 import java.io.File;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
 import java.util.Map;
 
@@ -12,6 +17,11 @@ import io.openio.sds.exceptions.ObjectExistException;
 import io.openio.sds.exceptions.ObjectNotFoundException;
 import io.openio.sds.exceptions.OioException;
 import io.openio.sds.exceptions.OioSystemException;
+import io.openio.sds.models.BulkGetItem;
+import io.openio.sds.models.BulkGetListener;
+import io.openio.sds.models.BulkGetResult;
+import io.openio.sds.models.BulkPutItem;
+import io.openio.sds.models.BulkPutResult;
 import io.openio.sds.models.ContainerInfo;
 import io.openio.sds.models.ListOptions;
 import io.openio.sds.models.NamespaceInfo;
@@ -19,6 +29,8 @@ import io.openio.sds.models.ObjectInfo;
 import io.openio.sds.models.ObjectList;
 import io.openio.sds.models.OioUrl;
 import io.openio.sds.models.Range;
+import io.openio.sds.proxy.ObjectIterator;
+import io.openio.sds.storage.rawx.ObjectOutputStream;
 
 public interface AdvancedClient extends Client {
 
@@ -119,6 +131,29 @@ public interface AdvancedClient extends Client {
     public ObjectList listObjects(OioUrl url, final ListOptions listOptions, RequestContext reqCtx)
             throws OioException;
 
+    /**
+     * Iterates over the objects of the specified container, requesting the
+     * next pages of the listing on the fly. The iterator must be closed if it
+     * is not consumed until its end.
+     *
+     * @param url
+     *            the url of the container
+     * @param listOptions
+     *            the listing option, whose limit is the total number of
+     *            objects to iterate over
+     * @param reqCtx
+     *            common parameters to all requests
+     * @return an iterator over the objects of the container
+     * @throws ContainerNotFoundException
+     *             if the specified container doesn't exist, from the methods
+     *             of the iterator
+     * @throws OioSystemException
+     *             if any error occurs during request execution, from the
+     *             methods of the iterator
+     */
+    public ObjectIterator iterateObjects(OioUrl url, final ListOptions listOptions,
+            RequestContext reqCtx) throws OioException;
+
     /**
      * Delete the specified container
      *
@@ -280,6 +315,293 @@ public interface AdvancedClient extends Client {
     public ObjectInfo putObject(OioUrl url, Long size, File data, Long version,
             Map<String, String> properties, RequestContext reqCtx) throws OioException;
 
+    /**
+     * Download a whole object into the specified file, which is created or
+     * truncated. The chunks of the object are fetched concurrently, by
+     * ranges, and written at their own position.
+     *
+     * @param oinf
+     *            the information about the object to download
+     * @param file
+     *            the file to write to
+     * @param reqCtx
+     *            Common parameters to all requests
+     * @throws OioSystemException
+     *             if any error occurs during request execution or if the file
+     *             cannot be written
+     */
+    public void downloadObjectTo(ObjectInfo oinf, File file, RequestContext reqCtx)
+            throws OioException;
+
+    /**
+     * Download a whole object into the specified channel, starting at
+     * position 0. The chunks of the object are fetched concurrently, by
+     * ranges, and written at their own position. The channel is not closed.
+     *
+     * @param oinf
+     *            the information about the object to download
+     * @param channel
+     *            the channel to write to
+     * @param reqCtx
+     *            Common parameters to all requests
+     * @throws OioSystemException
+     *             if any error occurs during request execution or if the
+     *             channel cannot be written
+     */
+    public void downloadObjectTo(ObjectInfo oinf, FileChannel channel, RequestContext reqCtx)
+            throws OioException;
+
+    /**
+     * Download a whole object into the specified channel, sequentially. The
+     * channel is not closed.
+     *
+     * @param oinf
+     *            the information about the object to download
+     * @param channel
+     *            the channel to write to
+     * @param reqCtx
+     *            Common parameters to all requests
+     * @throws OioSystemException
+     *             if any error occurs during request execution or if the
+     *             channel cannot be written
+     */
+    public void downloadObjectTo(ObjectInfo oinf, WritableByteChannel channel,
+            RequestContext reqCtx) throws OioException;
+
+    /**
+     * Download the specified range of an object into the specified buffer,
+     * until the buffer is full or the range is exhausted. The position of the
+     * buffer is advanced by the number of bytes read.
+     *
+     * @param oinf
+     *            the information about the object to download
+     * @param range
+     *            the range of the object to download, or {@code null} for the
+     *            whole object
+     * @param dst
+     *            the buffer to fill, heap or direct
+     * @param reqCtx
+     *            Common parameters to all requests
+     * @return the number of bytes read
+     * @throws OioSystemException
+     *             if any error occurs during request execution
+     */
+    public int downloadObject(ObjectInfo oinf, Range range, ByteBuffer dst,
+            RequestContext reqCtx) throws OioException;
+
+    /**
+     * Open a read-only channel over an object. Changing the position of the
+     * channel only sends a new request on the next read, if the position
+     * cannot be reached from the current request by reading a short
+     * distance.
+     * <p>
+     * Erasure coded objects cannot be read this way.
+     *
+     * @param oinf
+     *            the information about the object to read
+     * @param reqCtx
+     *            Common parameters to all requests
+     * @return a channel positioned at the beginning of the object
+     * @throws IllegalArgumentException
+     *             if the object is erasure coded
+     */
+    public SeekableByteChannel openObjectChannel(ObjectInfo oinf, RequestContext reqCtx);
+
+    /**
+     * Download several ranges of an object at once. Ranges close to each
+     * other are fetched with a single request, and the requests are sent
+     * concurrently.
+     *
+     * @param oinf
+     *            the information about the object to download
+     * @param ranges
+     *            the ranges to download
+     * @param reqCtx
+     *            Common parameters to all requests
+     * @return the data of each range, in the order of the ranges
+     * @throws IllegalArgumentException
+     *             if a range begins after the end of the object
+     * @throws OioSystemException
+     *             if any error occurs during request execution
+     */
+    public List<ByteBuffer> downloadRanges(ObjectInfo oinf, List<Range> ranges,
+            RequestContext reqCtx) throws OioException;
+
+    /**
+     * Push an object into the OpenIO-SDS namespace, from the remaining bytes
+     * of the specified buffer. The position of the buffer is advanced to its
+     * limit once the object is uploaded.
+     *
+     * @param url
+     *            the URL of the object to create
+     * @param data
+     *            the buffer to read the data from, heap or direct
+     * @param version
+     *            the version of content to upload
+     * @param properties
+     *            the properties to set to the object
+     * @param reqCtx
+     *            Common parameters to all requests
+     * @return information about the uploaded object
+     * @throws ContainerNotFoundException
+     *             if the specified container doesn't exist
+     * @throws OioSystemException
+     *             if any error occurs during request execution
+     */
+    public ObjectInfo putObject(OioUrl url, ByteBuffer data, Long version,
+            Map<String, String> properties, RequestContext reqCtx) throws OioException;
+
+    /**
+     * Push an object into the OpenIO-SDS namespace, reading exactly
+     * {@code size} bytes from the specified channel. The channel is not
+     * closed.
+     *
+     * @param url
+     *            the URL of the object to create
+     * @param size
+     *            the size of the object
+     * @param data
+     *            the channel to read the data from
+     * @param version
+     *            the version of content to upload
+     * @param properties
+     *            the properties to set to the object
+     * @param reqCtx
+     *            Common parameters to all requests
+     * @return information about the uploaded object
+     * @throws ContainerNotFoundException
+     *             if the specified container doesn't exist
+     * @throws OioSystemException
+     *             if any error occurs during request execution
+     */
+    public ObjectInfo putObject(OioUrl url, Long size, ReadableByteChannel data,
+            Long version, Map<String, String> properties, RequestContext reqCtx)
+            throws OioException;
+
+    /**
+     * Open a stream to push an object into the OpenIO-SDS namespace. The
+     * written bytes are sent directly to the chunk servers, and the object is
+     * committed when the returned stream is closed, once exactly {@code size}
+     * bytes have been written.
+     * <p>
+     * Erasure coded objects cannot be uploaded this way.
+     *
+     * @param url
+     *            the URL of the object to create
+     * @param size
+     *            the size of the object
+     * @param version
+     *            the version of content to upload
+     * @param properties
+     *            the properties to set to the object. Note that the properties
+     *            are case insensitive and will always be returned in lower
+     *            case.
+     * @param reqCtx
+     *            Common parameters to all requests
+     * @return the stream to write the object data to
+     * @throws ContainerNotFoundException
+     *             if the specified container doesn't exist
+     * @throws OioSystemException
+     *             if any error occurs during request execution
+     */
+    public ObjectOutputStream openObjectOutputStream(OioUrl url, Long size, Long version,
+            Map<String, String> properties, RequestContext reqCtx) throws OioException;
+
+    /**
+     * Start the upload of an object whose positions are to be uploaded
+     * independently, by several threads or processes. See
+     * {@link UploadSession}.
+     *
+     * @param url
+     *            the URL of the object to create
+     * @param size
+     *            the size of the object
+     * @param version
+     *            the version of content to upload
+     * @param properties
+     *            the properties to set to the object. Note that the properties
+     *            are case insensitive and will always be returned in lower
+     *            case.
+     * @param reqCtx
+     *            Common parameters to all requests, used to prepare then to
+     *            commit the object
+     * @return the upload session
+     * @throws ContainerNotFoundException
+     *             if the specified container doesn't exist
+     * @throws OioSystemException
+     *             if any error occurs during request execution
+     */
+    public UploadSession openUploadSession(OioUrl url, Long size, Long version,
+            Map<String, String> properties, RequestContext reqCtx) throws OioException;
+
+    /**
+     * Push many objects into the OpenIO-SDS namespace. Up to
+     * {@code parallelism} objects are processed at the same time, so the
+     * preparation of the next objects overlaps with the upload and the commit
+     * of the current ones. Items are pulled from {@code items} only when they
+     * can be started, so the iterable may be lazily generated.
+     * <p>
+     * A failure to push one object does not interrupt the others, the outcome
+     * of each item is reported in the returned list.
+     *
+     * @param items
+     *            the objects to push
+     * @param parallelism
+     *            the maximum number of objects processed at the same time
+     * @param reqCtx
+     *            Common parameters to all requests. Each object gets its own
+     *            copy, so the timeout applies to each object.
+     * @return the outcome of each item, in the order of {@code items}
+     * @throws OioException
+     *             if the bulk upload is interrupted
+     */
+    public List<BulkPutResult> putObjects(Iterable<BulkPutItem> items, int parallelism,
+            RequestContext reqCtx) throws OioException;
+
+    /**
+     * Read many small objects into memory. Up to {@code parallelism} objects
+     * are processed at the same time, each one the way
+     * {@link #openObject(OioUrl, Range, RequestContext)} does, so the request
+     * of its data is sent while its description is being decoded.
+     * <p>
+     * A failure to read one object does not interrupt the others, the outcome
+     * of each item is reported in the returned list.
+     *
+     * @param items
+     *            the objects to read
+     * @param parallelism
+     *            the maximum number of objects processed at the same time
+     * @param reqCtx
+     *            Common parameters to all requests. Each object gets its own
+     *            copy, so the timeout applies to each object.
+     * @return the outcome of each item, in the order of {@code items}
+     * @throws OioException
+     *             if the bulk download is interrupted
+     */
+    public List<BulkGetResult> getObjects(Iterable<BulkGetItem> items, int parallelism,
+            RequestContext reqCtx) throws OioException;
+
+    /**
+     * Read many small objects into memory, like
+     * {@link #getObjects(Iterable, int, RequestContext)}, handing each outcome
+     * to {@code listener} as soon as it is available. Returns once all the
+     * items have been reported.
+     *
+     * @param items
+     *            the objects to read
+     * @param parallelism
+     *            the maximum number of objects processed at the same time
+     * @param listener
+     *            the listener to report the outcomes to
+     * @param reqCtx
+     *            Common parameters to all requests. Each object gets its own
+     *            copy, so the timeout applies to each object.
+     * @throws OioException
+     *             if the bulk download is interrupted
+     */
+    public void getObjects(Iterable<BulkGetItem> items, int parallelism,
+            BulkGetListener listener, RequestContext reqCtx) throws OioException;
+
     /**
      * Returns information about the specified object
      *
@@ -321,6 +643,31 @@ public interface AdvancedClient extends Client {
      */
     public InputStream downloadObject(ObjectInfo oinf, Range range, RequestContext reqCtx);
 
+    /**
+     * Get object data from a specified range, without retrieving the object
+     * information first. The request of the first chunk to read is sent as
+     * soon as the chunk is decoded from the object description, along with
+     * the requests of the following positions read ahead, while the rest of
+     * the description is still being read. Object properties are not loaded.
+     *
+     * @param url
+     *            the url of the object to download
+     * @param range
+     *            the wanted data range, or {@code null} for the whole object
+     * @param reqCtx
+     *            common parameters to all requests
+     *
+     * @return the data in InputStream format
+     *
+     * @throws ContainerNotFoundException
+     *             if the specified container doesn't exist
+     * @throws ObjectNotFoundException
+     *             if the specified object doesn't exist
+     * @throws OioSystemException
+     *             if any error occurs during request execution
+     */
+    public InputStream openObject(OioUrl url, Range range, RequestContext reqCtx);
+
     /**
      * Delete the specified object.
      *
@@ -456,4 +803,11 @@ public interface AdvancedClient extends Client {
      */
     public void deleteObjectProperties(OioUrl url, List<String> keys, RequestContext reqCtx)
             throws OioException;
+
+    /**
+     * Releases the resources held by the client which outlive the requests,
+     * such as the lock of the disk chunk cache directory. Chunks are not
+     * cached anymore afterwards.
+     */
+    public void close();
 }
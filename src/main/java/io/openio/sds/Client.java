@@ -19,6 +19,7 @@ import io.openio.sds.models.ObjectInfo;
 import io.openio.sds.models.ObjectList;
 import io.openio.sds.models.OioUrl;
 import io.openio.sds.models.Range;
+import io.openio.sds.proxy.ObjectIterator;
 
 /**
  * <p>
@@ -143,6 +144,27 @@ public interface Client {
      */
     public ObjectList listObjects(OioUrl url, final ListOptions listOptions) throws OioException;
 
+    /**
+     * Iterates over the objects of the specified container, requesting the
+     * next pages of the listing on the fly. The iterator must be closed if it
+     * is not consumed until its end.
+     *
+     * @param url
+     *            the url of the container
+     * @param listOptions
+     *            the listing option, whose limit is the total number of
+     *            objects to iterate over
+     * @return an iterator over the objects of the container
+     * @throws ContainerNotFoundException
+     *             if the specified container doesn't exist, from the methods
+     *             of the iterator
+     * @throws OioSystemException
+     *             if any error occurs during request execution, from the
+     *             methods of the iterator
+     */
+    public ObjectIterator iterateObjects(OioUrl url, final ListOptions listOptions)
+            throws OioException;
+
     /**
      * Deletes the specified container
      * 
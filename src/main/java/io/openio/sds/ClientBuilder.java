@@ -12,6 +12,8 @@ import io.openio.sds.http.OioHttp;
 import io.openio.sds.http.OioHttpSettings;
 import io.openio.sds.pool.PoolingSettings;
 import io.openio.sds.proxy.ProxyClient;
+import io.openio.sds.storage.StorageClient;
+import io.openio.sds.storage.ec.EcClient;
 import io.openio.sds.storage.ecd.EcdClient;
 import io.openio.sds.storage.rawx.RawxClient;
 
@@ -38,10 +40,12 @@ public class ClientBuilder {
 		        rawxSocketProvider(settings.rawx().http()));
 		ProxyClient proxy = new ProxyClient(proxyHttp, settings.proxy());
 		RawxClient rawx = new RawxClient(rawxHttp, settings.rawx());
-		EcdClient ecd = null == settings.proxy().ecd() 
-				? null
-				: new EcdClient(rawxHttp, settings.rawx(), settings.proxy().allEcdHosts());
-		return new DefaultClient(proxy, rawx, ecd);
+		StorageClient ec = !settings.proxy().ecdrain()
+				? new EcClient(rawxHttp, rawx, settings.rawx())
+				: null == settings.proxy().ecd()
+						? null
+						: new EcdClient(rawxHttp, settings.rawx(), settings.proxy().allEcdHosts());
+		return new DefaultClient(proxy, rawx, ec);
 	}
 
 	/**
@@ -4,12 +4,38 @@ import static io.openio.sds.common.Check.checkArgument;
 import static io.openio.sds.common.IdGen.requestId;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import io.openio.sds.common.ByteBufferInputStream;
 import io.openio.sds.exceptions.OioException;
+import io.openio.sds.exceptions.OioSystemException;
 import io.openio.sds.http.OioHttp;
+import io.openio.sds.models.BulkGetItem;
+import io.openio.sds.models.BulkGetListener;
+import io.openio.sds.models.BulkGetResult;
+import io.openio.sds.models.BulkPutItem;
+import io.openio.sds.models.BulkPutResult;
 import io.openio.sds.models.ContainerInfo;
 import io.openio.sds.models.ListOptions;
 import io.openio.sds.models.NamespaceInfo;
@@ -17,8 +43,11 @@ import io.openio.sds.models.ObjectInfo;
 import io.openio.sds.models.ObjectList;
 import io.openio.sds.models.OioUrl;
 import io.openio.sds.models.Range;
+import io.openio.sds.proxy.ObjectIterator;
 import io.openio.sds.proxy.ProxyClient;
-import io.openio.sds.storage.ecd.EcdClient;
+import io.openio.sds.storage.StorageClient;
+import io.openio.sds.storage.rawx.ObjectOutputStream;
+import io.openio.sds.storage.rawx.PipelinedOpen;
 import io.openio.sds.storage.rawx.RawxClient;
 
 /**
@@ -31,16 +60,16 @@ public class DefaultClient implements AdvancedClient {
 
     private final ProxyClient proxy;
     protected final RawxClient rawx;
-    private final EcdClient ecd;
+    private final StorageClient ec;
 
     DefaultClient(ProxyClient proxy, RawxClient rawx) {
         this(proxy, rawx, null);
     }
 
-    DefaultClient(ProxyClient proxy, RawxClient rawx, EcdClient ecd) {
+    DefaultClient(ProxyClient proxy, RawxClient rawx, StorageClient ec) {
         this.proxy = proxy;
         this.rawx = rawx;
-        this.ecd = ecd;
+        this.ec = ec;
     }
 
     public ProxyClient proxy() {
@@ -115,6 +144,21 @@ public class DefaultClient implements AdvancedClient {
         return proxy.listObjects(url, listOptions, reqCtx);
     }
 
+    @Override
+    public ObjectIterator iterateObjects(OioUrl url, ListOptions listOptions)
+            throws OioException {
+        return this.iterateObjects(url, listOptions, new RequestContext());
+    }
+
+    @Override
+    public ObjectIterator iterateObjects(OioUrl url, ListOptions listOptions,
+            RequestContext reqCtx) throws OioException {
+        checkArgument(url != null, "url cannot be null");
+        checkArgument(listOptions != null, "listOptions cannot be null");
+        reqCtx.startTiming();
+        return proxy.iterateObjects(url, listOptions, reqCtx);
+    }
+
     @Override
     public void deleteContainer(OioUrl url) {
         this.deleteContainer(url, new RequestContext());
@@ -155,21 +199,7 @@ public class DefaultClient implements AdvancedClient {
             Map<String, String> properties, RequestContext reqCtx) throws OioException {
         checkArgument(url != null, "url cannot be null");
         checkArgument(url.object() != null, "object part of URL cannot be null");
-        reqCtx.startTiming();
-        ObjectInfo oinf = proxy.preparePutObject(url, size, reqCtx);
-        oinf.properties(properties);
-        try {
-            if (oinf.isEC())
-                ecd.uploadChunks(oinf, data, reqCtx);
-            else
-                rawx.uploadChunks(oinf, data, reqCtx);
-            proxy.putObject(oinf, version, reqCtx);
-        } catch (OioException oioe) {
-            // TODO improve by knowing which chunk is uploaded
-            rawx.deleteChunks(oinf.chunks());
-            throw oioe;
-        }
-        return oinf;
+        return put(url, size, Payload.of(data), version, properties, reqCtx);
     }
 
     @Override
@@ -200,14 +230,39 @@ public class DefaultClient implements AdvancedClient {
             Map<String, String> properties, RequestContext reqCtx) throws OioException {
         checkArgument(url != null, "url cannot be null");
         checkArgument(url.object() != null, "object part of URL cannot be null");
+        return put(url, size, Payload.of(data), version, properties, reqCtx);
+    }
+
+    @Override
+    public ObjectInfo putObject(OioUrl url, ByteBuffer data, Long version,
+            Map<String, String> properties, RequestContext reqCtx) throws OioException {
+        checkArgument(url != null, "url cannot be null");
+        checkArgument(url.object() != null, "object part of URL cannot be null");
+        checkArgument(data != null, "data cannot be null");
+        if (!data.hasArray() || 0 != data.arrayOffset() + data.position()) {
+            ObjectInfo oinf = putObject(url, (long) data.remaining(),
+                    new ByteBufferInputStream(data), version, properties, reqCtx);
+            data.position(data.limit());
+            return oinf;
+        }
+        // the backing array is uploaded as is, without any copy
+        ObjectInfo oinf = put(url, (long) data.remaining(),
+                Payload.of(data.array()), version, properties, reqCtx);
+        data.position(data.limit());
+        return oinf;
+    }
+
+    /**
+     * Uploads the chunks of a new object, then commits it. The chunks are
+     * deleted if either fails.
+     */
+    private ObjectInfo put(OioUrl url, Long size, Payload data, Long version,
+            Map<String, String> properties, RequestContext reqCtx) {
         reqCtx.startTiming();
         ObjectInfo oinf = proxy.preparePutObject(url, size, reqCtx);
         oinf.properties(properties);
         try {
-            if (oinf.isEC())
-                ecd.uploadChunks(oinf, data, reqCtx);
-            else
-                rawx.uploadChunks(oinf, data, reqCtx);
+            data.upload(oinf.isEC() ? ec : rawx, oinf, reqCtx);
             proxy.putObject(oinf, version, reqCtx);
         } catch (OioException oioe) {
             // TODO improve by knowing which chunk is uploaded
@@ -217,6 +272,228 @@ public class DefaultClient implements AdvancedClient {
         return oinf;
     }
 
+    @Override
+    public ObjectInfo putObject(OioUrl url, Long size, ReadableByteChannel data,
+            Long version, Map<String, String> properties, RequestContext reqCtx)
+            throws OioException {
+        checkArgument(data != null, "data cannot be null");
+        return putObject(url, size, Channels.newInputStream(data), version,
+                properties, reqCtx);
+    }
+
+    @Override
+    public ObjectOutputStream openObjectOutputStream(OioUrl url, Long size,
+            final Long version, Map<String, String> properties,
+            final RequestContext reqCtx) throws OioException {
+        checkArgument(url != null, "url cannot be null");
+        checkArgument(url.object() != null, "object part of URL cannot be null");
+        reqCtx.startTiming();
+        ObjectInfo oinf = proxy.preparePutObject(url, size, reqCtx);
+        if (oinf.isEC())
+            throw new OioException("EC objects cannot be uploaded as a stream");
+        oinf.properties(properties);
+        return new ObjectOutputStream(oinf, rawx, reqCtx) {
+
+            @Override
+            protected void commit(ObjectInfo oinf) {
+                proxy.putObject(oinf, version, reqCtx);
+            }
+        };
+    }
+
+    @Override
+    public UploadSession openUploadSession(OioUrl url, Long size, Long version,
+            Map<String, String> properties, RequestContext reqCtx) throws OioException {
+        checkArgument(url != null, "url cannot be null");
+        checkArgument(url.object() != null, "object part of URL cannot be null");
+        reqCtx.startTiming();
+        ObjectInfo oinf = proxy.preparePutObject(url, size, reqCtx);
+        oinf.properties(properties);
+        return new UploadSession(oinf, version, proxy, oinf.isEC() ? ec : rawx, rawx,
+                reqCtx);
+    }
+
+    @Override
+    public List<BulkPutResult> putObjects(Iterable<BulkPutItem> items, int parallelism,
+            RequestContext reqCtx) throws OioException {
+        checkArgument(items != null, "items cannot be null");
+        checkArgument(parallelism > 0, "parallelism must be positive");
+        final Semaphore slots = new Semaphore(parallelism);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r);
+                        t.setName("DefaultClient-BulkPut");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        List<Future<BulkPutResult>> futures = new ArrayList<Future<BulkPutResult>>();
+        try {
+            for (final BulkPutItem item : items) {
+                final RequestContext itemCtx = new RequestContext(reqCtx);
+                slots.acquire();
+                futures.add(executor.submit(new Callable<BulkPutResult>() {
+
+                    @Override
+                    public BulkPutResult call() {
+                        try {
+                            return BulkPutResult.success(item, putItem(item, itemCtx));
+                        } catch (OioException e) {
+                            return BulkPutResult.failure(item, e);
+                        } catch (RuntimeException e) {
+                            return BulkPutResult.failure(item,
+                                    new OioException("Unexpected upload error", e));
+                        } finally {
+                            slots.release();
+                        }
+                    }
+                }));
+            }
+            List<BulkPutResult> results = new ArrayList<BulkPutResult>(futures.size());
+            for (Future<BulkPutResult> future : futures)
+                results.add(future.get());
+            return results;
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            throw new OioException("got interrupted", e);
+        } catch (ExecutionException e) {
+            throw new OioException("Execution exception", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public List<BulkGetResult> getObjects(Iterable<BulkGetItem> items, int parallelism,
+            RequestContext reqCtx) throws OioException {
+        List<BulkGetResult> results = new ArrayList<BulkGetResult>();
+        getItems(items, parallelism, null, results, reqCtx);
+        return results;
+    }
+
+    @Override
+    public void getObjects(Iterable<BulkGetItem> items, int parallelism,
+            BulkGetListener listener, RequestContext reqCtx) throws OioException {
+        checkArgument(listener != null, "listener cannot be null");
+        getItems(items, parallelism, listener, null, reqCtx);
+    }
+
+    /**
+     * Reads the items, reporting each outcome to the listener as it completes
+     * and to the list at the index of its item, when they are specified.
+     */
+    private void getItems(Iterable<BulkGetItem> items, int parallelism,
+            BulkGetListener listener, List<BulkGetResult> results, RequestContext reqCtx) {
+        checkArgument(items != null, "items cannot be null");
+        checkArgument(parallelism > 0, "parallelism must be positive");
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r);
+                        t.setName("DefaultClient-BulkGet");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        CompletionService<BulkGetResult> completion =
+                new ExecutorCompletionService<BulkGetResult>(executor);
+        Map<Future<BulkGetResult>, Integer> indexes =
+                new IdentityHashMap<Future<BulkGetResult>, Integer>();
+        try {
+            for (final BulkGetItem item : items) {
+                // items are pulled only when they can be started
+                if (indexes.size() >= parallelism)
+                    report(completion.take(), indexes, listener, results);
+                final RequestContext itemCtx = new RequestContext(reqCtx);
+                if (null != results)
+                    results.add(null);
+                indexes.put(completion.submit(new Callable<BulkGetResult>() {
+
+                    @Override
+                    public BulkGetResult call() {
+                        try {
+                            return getItem(item, itemCtx);
+                        } catch (OioException e) {
+                            return BulkGetResult.failure(item, e);
+                        } catch (RuntimeException e) {
+                            return BulkGetResult.failure(item,
+                                    new OioException("Unexpected download error", e));
+                        }
+                    }
+                }), null == results ? 0 : results.size() - 1);
+            }
+            while (!indexes.isEmpty())
+                report(completion.take(), indexes, listener, results);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            throw new OioException("got interrupted", e);
+        } catch (ExecutionException e) {
+            throw new OioException("Execution exception", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void report(Future<BulkGetResult> future,
+            Map<Future<BulkGetResult>, Integer> indexes, BulkGetListener listener,
+            List<BulkGetResult> results) throws InterruptedException, ExecutionException {
+        int index = indexes.remove(future);
+        BulkGetResult result = future.get();
+        if (null != results)
+            results.set(index, result);
+        if (null != listener)
+            listener.result(result);
+    }
+
+    private BulkGetResult getItem(BulkGetItem item, RequestContext reqCtx) {
+        reqCtx.startTiming();
+        PipelinedOpen opening = rawx.pipelinedOpen(item.range(), reqCtx);
+        ObjectInfo oinf = describe(item.url(), item.version(), opening, reqCtx);
+        long length = oinf.size();
+        if (null != item.range()) {
+            long to = item.range().to() < 0 ? oinf.size() - 1
+                    : Math.min(item.range().to(), oinf.size() - 1);
+            length = Math.max(0, to - item.range().from() + 1);
+        }
+        if (length > Integer.MAX_VALUE - 8) {
+            opening.abort();
+            throw new OioException("Object too large to be read in memory");
+        }
+        byte[] data = new byte[(int) length];
+        InputStream in = open(opening, oinf, item.range(), reqCtx);
+        try {
+            int done = 0;
+            while (done < data.length) {
+                int read = in.read(data, done, data.length - done);
+                if (-1 == read)
+                    throw new OioException("Unexpected end of object");
+                done += read;
+            }
+        } catch (IOException e) {
+            throw new OioException("Failed to read object", e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+        return BulkGetResult.success(item, oinf, data);
+    }
+
+    private ObjectInfo putItem(BulkPutItem item, RequestContext reqCtx) {
+        if (null == item.bytes())
+            return putObject(item.url(), item.size(), item.data(), item.version(),
+                    item.properties(), reqCtx);
+        return put(item.url(), item.size(), Payload.of(item.bytes()),
+                item.version(), item.properties(), reqCtx);
+    }
+
     @Override
     public ObjectInfo getObjectInfo(OioUrl url) {
         return getObjectInfo(url, true);
@@ -251,7 +528,7 @@ public class DefaultClient implements AdvancedClient {
         checkArgument(oinf != null, "ObjectInfo cannot be null");
         RequestContext reqCtx = oinf.requestContext();
         reqCtx.startTiming();
-        return oinf.isEC() ? ecd.downloadObject(oinf, reqCtx) : rawx.downloadObject(
+        return oinf.isEC() ? ec.downloadObject(oinf, reqCtx) : rawx.downloadObject(
                 oinf, reqCtx);
     }
 
@@ -266,10 +543,170 @@ public class DefaultClient implements AdvancedClient {
     public InputStream downloadObject(ObjectInfo oinf, Range range, RequestContext reqCtx) {
         checkArgument(oinf != null, "ObjectInfo cannot be null");
         reqCtx.startTiming();
-        return oinf.isEC() ? ecd.downloadObject(oinf, range, reqCtx) : rawx
+        return oinf.isEC() ? ec.downloadObject(oinf, range, reqCtx) : rawx
                 .downloadObject(oinf, range, reqCtx);
     }
 
+    @Override
+    public InputStream openObject(OioUrl url, Range range, RequestContext reqCtx) {
+        checkArgument(url != null, "url cannot be null");
+        checkArgument(url.object() != null, "url object cannot be null");
+        reqCtx.startTiming();
+        PipelinedOpen opening = rawx.pipelinedOpen(range, reqCtx);
+        return open(opening, describe(url, null, opening, reqCtx), range, reqCtx);
+    }
+
+    private ObjectInfo describe(OioUrl url, Long version, PipelinedOpen opening,
+            RequestContext reqCtx) {
+        try {
+            return proxy.getObjectInfo(url, version, reqCtx, opening);
+        } catch (RuntimeException e) {
+            opening.abort();
+            throw e;
+        }
+    }
+
+    private InputStream open(PipelinedOpen opening, ObjectInfo oinf, Range range,
+            RequestContext reqCtx) {
+        if (oinf.isEC()) {
+            opening.abort();
+            return ec.downloadObject(oinf, range, reqCtx);
+        }
+        return opening.stream(oinf);
+    }
+
+    @Override
+    public void downloadObjectTo(ObjectInfo oinf, File file, RequestContext reqCtx)
+            throws OioException {
+        checkArgument(file != null, "file cannot be null");
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(oinf.size());
+                downloadObjectTo(oinf, raf.getChannel(), reqCtx);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            throw new OioSystemException("Unable to write " + file, e);
+        }
+    }
+
+    @Override
+    public void downloadObjectTo(ObjectInfo oinf, FileChannel channel, RequestContext reqCtx)
+            throws OioException {
+        checkArgument(oinf != null, "ObjectInfo cannot be null");
+        checkArgument(channel != null, "channel cannot be null");
+        reqCtx.startTiming();
+        if (!oinf.isEC()) {
+            rawx.downloadObjectTo(oinf, channel, reqCtx);
+            return;
+        }
+        InputStream in = ec.downloadObject(oinf, reqCtx);
+        try {
+            byte[] buf = new byte[65536];
+            long position = 0;
+            for (int read = in.read(buf); read != -1; read = in.read(buf)) {
+                ByteBuffer bb = ByteBuffer.wrap(buf, 0, read);
+                while (bb.hasRemaining())
+                    position += channel.write(bb, position);
+            }
+        } catch (IOException e) {
+            throw new OioSystemException("Unable to download object", e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    @Override
+    public void downloadObjectTo(ObjectInfo oinf, WritableByteChannel channel,
+            RequestContext reqCtx) throws OioException {
+        checkArgument(channel != null, "channel cannot be null");
+        InputStream in = downloadObject(oinf, null, reqCtx);
+        try {
+            ReadableByteChannel src = in instanceof ReadableByteChannel
+                    ? (ReadableByteChannel) in
+                    : Channels.newChannel(in);
+            ByteBuffer bb = ByteBuffer.allocate(65536);
+            while (-1 != src.read(bb)) {
+                bb.flip();
+                while (bb.hasRemaining())
+                    channel.write(bb);
+                bb.clear();
+            }
+        } catch (IOException e) {
+            throw new OioSystemException("Unable to download object", e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    @Override
+    public int downloadObject(ObjectInfo oinf, Range range, ByteBuffer dst,
+            RequestContext reqCtx) throws OioException {
+        checkArgument(dst != null, "buffer cannot be null");
+        InputStream in = downloadObject(oinf, range, reqCtx);
+        try {
+            ReadableByteChannel src = in instanceof ReadableByteChannel
+                    ? (ReadableByteChannel) in
+                    : Channels.newChannel(in);
+            int total = 0;
+            while (dst.hasRemaining()) {
+                int read = src.read(dst);
+                if (-1 == read)
+                    break;
+                total += read;
+            }
+            return total;
+        } catch (IOException e) {
+            throw new OioSystemException("Unable to download object", e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    @Override
+    public SeekableByteChannel openObjectChannel(ObjectInfo oinf, RequestContext reqCtx) {
+        checkArgument(oinf != null, "ObjectInfo cannot be null");
+        reqCtx.startTiming();
+        return rawx.openChannel(oinf, reqCtx);
+    }
+
+    @Override
+    public List<ByteBuffer> downloadRanges(ObjectInfo oinf, List<Range> ranges,
+            RequestContext reqCtx) throws OioException {
+        checkArgument(oinf != null, "ObjectInfo cannot be null");
+        checkArgument(ranges != null, "ranges cannot be null");
+        reqCtx.startTiming();
+        if (!oinf.isEC())
+            return rawx.downloadRanges(oinf, ranges, reqCtx);
+        List<ByteBuffer> res = new ArrayList<ByteBuffer>(ranges.size());
+        for (Range range : ranges) {
+            long to = range.to() < 0 ? oinf.size() - 1
+                    : Math.min(range.to(), oinf.size() - 1);
+            long length = to - range.from() + 1;
+            if (length > Integer.MAX_VALUE - 8)
+                throw new OioException("Range too large to be read in memory");
+            ByteBuffer dst = ByteBuffer.allocate((int) length);
+            downloadObject(oinf, range, dst, reqCtx);
+            dst.flip();
+            res.add(dst);
+        }
+        return res;
+    }
+
     @Override
     public void deleteObject(OioUrl url) {
         this.deleteObject(url, null, new RequestContext());
@@ -414,4 +851,46 @@ public class DefaultClient implements AdvancedClient {
         reqCtx.startTiming();
         proxy.deleteObjectProperties(url, keys, reqCtx);
     }
+
+    @Override
+    public void close() {
+        rawx.close();
+    }
+
+    /**
+     * The data of an object to upload, from whichever source it is given
+     */
+    private static class Payload {
+
+        private final InputStream stream;
+        private final File file;
+        private final byte[] bytes;
+
+        private Payload(InputStream stream, File file, byte[] bytes) {
+            this.stream = stream;
+            this.file = file;
+            this.bytes = bytes;
+        }
+
+        static Payload of(InputStream stream) {
+            return new Payload(stream, null, null);
+        }
+
+        static Payload of(File file) {
+            return new Payload(null, file, null);
+        }
+
+        static Payload of(byte[] bytes) {
+            return new Payload(null, null, bytes);
+        }
+
+        void upload(StorageClient storage, ObjectInfo oinf, RequestContext reqCtx) {
+            if (null != bytes)
+                storage.uploadChunks(oinf, bytes, reqCtx);
+            else if (null != file)
+                storage.uploadChunks(oinf, file, reqCtx);
+            else
+                storage.uploadChunks(oinf, stream, reqCtx);
+        }
+    }
 }
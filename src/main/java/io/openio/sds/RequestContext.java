@@ -34,6 +34,7 @@ public class RequestContext {
      * @param src The {@link RequestContext} to copy.
      */
     public RequestContext(RequestContext src) {
+        this.dm = src.dm;
         this.withRequestId(src.requestId());
         this.deadline = src.deadline;
         this.rawTimeout = src.rawTimeout;
@@ -0,0 +1,278 @@
+package io.openio.sds;
+
+import static io.openio.sds.common.Check.checkArgument;
+import static java.lang.String.format;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import io.openio.sds.exceptions.OioException;
+import io.openio.sds.models.ChunkInfo;
+import io.openio.sds.models.ObjectInfo;
+import io.openio.sds.proxy.ProxyClient;
+import io.openio.sds.storage.StorageClient;
+import io.openio.sds.storage.rawx.RawxClient;
+
+/**
+ * Upload of an object whose positions are sent independently, possibly by
+ * several threads or processes, then committed at once.
+ * <p>
+ * Each position is either uploaded through
+ * {@link #uploadPosition(int, InputStream, RequestContext)}, or uploaded by a
+ * remote producer to the chunks returned by {@link #chunks(int)} then
+ * reported with {@link #reportPosition(int, List)}. Once all positions are
+ * done, {@link #commit()} makes the object visible.
+ * <p>
+ * The whole content is never seen by a single producer, so the md5 of an
+ * object spanning several positions, or erasure coded, is only known if the
+ * caller computes it and gives it to {@link #commit(String)}. Otherwise the
+ * object is committed without a hash.
+ *
+ * @see AdvancedClient#openUploadSession(io.openio.sds.models.OioUrl, Long,
+ *      Long, Map, RequestContext)
+ */
+public class UploadSession {
+
+    private static final Pattern MD5_PATTERN = Pattern.compile("[0-9a-fA-F]{32}");
+
+    private final ObjectInfo oinf;
+    private final ProxyClient proxy;
+    private final StorageClient storage;
+    private final RawxClient rawx;
+    private final Long version;
+    private final RequestContext reqCtx;
+    private final long[] offsets;
+    private final boolean[] done;
+    private boolean closed = false;
+
+    UploadSession(ObjectInfo oinf, Long version, ProxyClient proxy,
+            StorageClient storage, RawxClient rawx, RequestContext reqCtx) {
+        this.oinf = oinf;
+        this.version = version;
+        this.proxy = proxy;
+        this.storage = storage;
+        this.rawx = rawx;
+        this.reqCtx = reqCtx;
+        int count = oinf.sortedChunks().size();
+        this.offsets = new long[count + 1];
+        for (int pos = 0; pos < count; pos++) {
+            long capacity = oinf.isEC()
+                    ? oinf.ecinfo().k() * oinf.chunksize(pos)
+                    : oinf.chunksize(pos);
+            offsets[pos + 1] = Math.min(oinf.size(), offsets[pos] + capacity);
+        }
+        if (offsets[count] < oinf.size())
+            throw new OioException("Not enough chunks prepared");
+        for (int pos = 1; pos < count; pos++) {
+            if (offsets[pos + 1] == offsets[pos])
+                throw new OioException("Too many chunks prepared");
+        }
+        this.done = new boolean[count];
+    }
+
+    /**
+     * @return the object being uploaded
+     */
+    public ObjectInfo objectInfo() {
+        return oinf;
+    }
+
+    /**
+     * @return the number of positions of the object
+     */
+    public int positions() {
+        return done.length;
+    }
+
+    /**
+     * @param pos
+     *            the position
+     * @return the offset in the object of the first byte of the position
+     */
+    public long offset(int pos) {
+        checkPosition(pos);
+        return offsets[pos];
+    }
+
+    /**
+     * @param pos
+     *            the position
+     * @return the number of bytes to upload for the position
+     */
+    public long size(int pos) {
+        checkPosition(pos);
+        return offsets[pos + 1] - offsets[pos];
+    }
+
+    /**
+     * @param pos
+     *            the position
+     * @return the chunks to upload for the position
+     */
+    public List<ChunkInfo> chunks(int pos) {
+        checkPosition(pos);
+        return oinf.sortedChunks().get(pos);
+    }
+
+    /**
+     * Uploads the chunks of the specified position. May be called
+     * concurrently for different positions.
+     *
+     * @param pos
+     *            the position to upload
+     * @param data
+     *            the stream to read exactly {@link #size(int)} bytes from
+     * @param reqCtx
+     *            Common parameters to all requests
+     * @return the uploaded chunks
+     * @throws OioException
+     *             if the position cannot be uploaded
+     */
+    public List<ChunkInfo> uploadPosition(int pos, InputStream data,
+            RequestContext reqCtx) throws OioException {
+        checkArgument(null != data, "data cannot be null");
+        checkPosition(pos);
+        reqCtx.startTiming();
+        storage.uploadPosition(oinf, pos, size(pos), data, reqCtx);
+        markDone(pos);
+        return chunks(pos);
+    }
+
+    /**
+     * Reports a position uploaded by a remote producer. The report must hold
+     * at least as many chunks as an upload of the position needs to succeed,
+     * each with the size of the position. Nothing is recorded otherwise.
+     *
+     * @param pos
+     *            the uploaded position
+     * @param uploaded
+     *            the uploaded chunks, with their size and hash
+     * @throws IllegalArgumentException
+     *             if a chunk does not belong to the position, has not the
+     *             size of the position, or if the write quorum is not reached
+     */
+    public void reportPosition(int pos, List<ChunkInfo> uploaded) {
+        checkPosition(pos);
+        checkArgument(null != uploaded, "chunks cannot be null");
+        List<ChunkInfo> expected = chunks(pos);
+        Map<ChunkInfo, ChunkInfo> targets = new IdentityHashMap<ChunkInfo, ChunkInfo>();
+        for (ChunkInfo report : uploaded) {
+            checkArgument(null != report.hash(),
+                    format("Missing hash for chunk %s", report.url()));
+            checkArgument(null != report.size()
+                    && report.size().longValue() == size(pos), format(
+                    "Chunk %s has %s bytes instead of %d", report.url(),
+                    report.size(), size(pos)));
+            ChunkInfo target = null;
+            for (ChunkInfo ci : expected) {
+                if (ci.url().equals(report.url()))
+                    target = ci;
+            }
+            checkArgument(null != target, format(
+                    "Chunk %s does not belong to position %d", report.url(), pos));
+            targets.put(target, report);
+        }
+        int quorum = rawx.quorum(oinf, pos);
+        checkArgument(targets.size() >= quorum, format(
+                "Quorum not reached at position %d (%d/%d)", pos,
+                targets.size(), quorum));
+        synchronized (this) {
+            for (Map.Entry<ChunkInfo, ChunkInfo> e : targets.entrySet()) {
+                e.getKey().size(e.getValue().size());
+                e.getKey().hash(e.getValue().hash());
+            }
+            markDone(pos);
+        }
+    }
+
+    /**
+     * Commits the object, once all its positions have been uploaded. The
+     * object gets a hash only if it is made of a single replicated position,
+     * whose chunks hold the whole content.
+     *
+     * @return the committed object
+     * @throws OioException
+     *             if a position is missing or the commit fails
+     */
+    public ObjectInfo commit() throws OioException {
+        return commit(null);
+    }
+
+    /**
+     * Commits the object, once all its positions have been uploaded.
+     *
+     * @param md5
+     *            the md5 of the whole content, in hexadecimal, computed by the
+     *            caller. May be {@code null} to commit the object without a
+     *            hash, unless it can be deduced from the chunks.
+     * @return the committed object
+     * @throws OioException
+     *             if a position is missing or the commit fails
+     */
+    public synchronized ObjectInfo commit(String md5) throws OioException {
+        checkArgument(null == md5 || MD5_PATTERN.matcher(md5).matches(),
+                "Invalid md5");
+        checkOpen();
+        for (int pos = 0; pos < done.length; pos++) {
+            if (!done[pos])
+                throw new OioException(format("Position %d not uploaded", pos));
+        }
+        // the chunks neither uploaded nor reported are not part of the object
+        List<ChunkInfo> uploaded = new ArrayList<ChunkInfo>();
+        List<ChunkInfo> missing = new ArrayList<ChunkInfo>();
+        for (ChunkInfo ci : oinf.chunks())
+            (null == ci.hash() ? missing : uploaded).add(ci);
+        if (!missing.isEmpty())
+            oinf.chunks(uploaded);
+        oinf.hash(null == md5 ? contentHash() : md5.toUpperCase());
+        reqCtx.startTiming();
+        proxy.putObject(oinf, version, reqCtx);
+        closed = true;
+        if (!missing.isEmpty())
+            rawx.deleteChunks(missing);
+        return oinf;
+    }
+
+    /**
+     * Gives up on the upload, deleting the chunks already uploaded.
+     */
+    public synchronized void abort() {
+        if (closed)
+            return;
+        closed = true;
+        rawx.deleteChunks(oinf.chunks());
+    }
+
+    /**
+     * @return the md5 of the content if the chunks hold it, {@code null}
+     *         otherwise
+     */
+    private String contentHash() {
+        if (1 != done.length || oinf.isEC())
+            return null;
+        for (ChunkInfo ci : chunks(0)) {
+            if (null != ci.hash())
+                return ci.hash().toUpperCase();
+        }
+        return null;
+    }
+
+    private synchronized void markDone(int pos) {
+        checkOpen();
+        done[pos] = true;
+    }
+
+    private void checkPosition(int pos) {
+        checkArgument(pos >= 0 && pos < done.length,
+                format("Invalid position %d", pos));
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new OioException("Upload session closed");
+    }
+}
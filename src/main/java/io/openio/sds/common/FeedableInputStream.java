@@ -21,8 +21,10 @@ public class FeedableInputStream extends InputStream {
 
     private LinkedBlockingQueue<DataPart> q;
     private DataPart current = null;
-    private boolean failed = false;
+    private volatile boolean failed = false;
+    private boolean eof = false;
     private long pollDelayMillis = 10000;
+    private final byte[] single = new byte[1];
 
     /**
      * @param qsize Queue size
@@ -70,9 +72,8 @@ public class FeedableInputStream extends InputStream {
 
     @Override
     public int read() throws IOException {
-        byte[] b = new byte[1];
-        int read = read(b, 0, 1);
-        return -1 == read ? -1 : b[0];
+        int read = read(single, 0, 1);
+        return -1 == read ? -1 : single[0] & 0xFF;
     }
 
     @Override
@@ -84,6 +85,33 @@ public class FeedableInputStream extends InputStream {
     public int read(byte[] buf, int offset, int length) {
         if (length <= 0)
             return 0;
+        length = Math.min(buf.length - offset, length);
+        int total = 0;
+        while (total < length) {
+            // do not wait for more data once some is read
+            if (0 < total && current == null && q.isEmpty())
+                return total;
+            if (!next())
+                return 0 == total ? -1 : total;
+            int read = Math.min(current.buffer().remaining(), length - total);
+            current.buffer().get(buf, offset + total, read);
+            total += read;
+            if (current.buffer().remaining() == 0) {
+                eof = current.isLast();
+                current = null;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Waits for the next part holding data, if the current one is consumed.
+     *
+     * @return {@code false} at the end of the stream, or on failure
+     */
+    private boolean next() {
+        if (eof)
+            return false;
         int retriesLeft = 5;
         while (current == null && retriesLeft > 0) {
             try {
@@ -98,31 +126,18 @@ public class FeedableInputStream extends InputStream {
                         retriesLeft + " retries left");
             } else if (current.buffer() == null ||
                     !current.buffer().hasRemaining()) {
-                if (current.isLast())
-                    return -1;
+                eof = current.isLast();
                 current = null;
+                if (eof)
+                    return false;
             }
         }
 
         if (current == null) {
             failed = true;
-            return -1;
+            return false;
         }
-
-        int read = Math.min(current.buffer().remaining(),
-                Math.min(buf.length - offset, length));
-        current.buffer().get(buf, offset, read);
-
-        int rc;
-        if (read < length) {
-            rc = read + Math.max(0, read(buf, offset + read, length - read));
-        } else {
-            rc = read;
-        }
-
-        if (current.buffer().remaining() == 0)
-            current = null;
-        return rc;
+        return true;
     }
 
     public static class DataPart {
@@ -1,5 +1,6 @@
 package io.openio.sds.common;
 
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -54,6 +55,36 @@ public class Hash {
 		return this;
 	}
 
+	/**
+	 * Updates the current hash with {@code len} bytes of the specified array,
+	 * starting at {@code offset}
+	 * 
+	 * @param bytes
+	 *            the array holding the bytes to add
+	 * @param offset
+	 *            the index of the first byte to add
+	 * @param len
+	 *            the number of bytes to add
+	 * @return this
+	 */
+	public Hash putBytes(byte[] bytes, int offset, int len) {
+		this.md.update(bytes, offset, len);
+		return this;
+	}
+
+	/**
+	 * Updates the current hash with the remaining bytes of the specified
+	 * buffer, without moving its position
+	 * 
+	 * @param buffer
+	 *            the buffer holding the bytes to add
+	 * @return this
+	 */
+	public Hash putBytes(ByteBuffer buffer) {
+		this.md.update(buffer.duplicate());
+		return this;
+	}
+
 	/**
 	 * Completes the current hash computation
 	 * 
@@ -47,6 +47,25 @@ public class Hex {
 		return new String(hexChars);
 	}
 
+	/**
+	 * Converts the specified hexadecimal string to a byte array
+	 * @param hex the hexadecimal string to convert, in upper or lower case
+	 * @return the byte array
+	 * @throws IllegalArgumentException if the string is not a valid hexadecimal string
+	 */
+	public static byte[] fromHex(String hex) {
+		Check.checkArgument(null != hex && hex.length() % 2 == 0,
+				"Invalid hexadecimal string");
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int j = 0; j < bytes.length; j++) {
+			int hi = Character.digit(hex.charAt(j * 2), 16);
+			int lo = Character.digit(hex.charAt(j * 2 + 1), 16);
+			Check.checkArgument(hi >= 0 && lo >= 0, "Invalid hexadecimal string");
+			bytes[j] = (byte) ((hi << 4) | lo);
+		}
+		return bytes;
+	}
+
 	/**
 	 * Returns a copy of the wrapped array
 	 * @return a copy of the wrapped array
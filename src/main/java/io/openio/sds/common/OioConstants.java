@@ -87,6 +87,7 @@ public class OioConstants {
     public static final String CHUNK_META_CHUNK_ID = "X-oio-chunk-meta-chunk-id";
     public static final String CHUNK_META_CHUNK_POS = "X-oio-chunk-meta-chunk-pos";
     public static final String CHUNK_META_CHUNK_HASH = "X-oio-chunk-meta-chunk-hash";
+    public static final String CHUNK_META_METACHUNK_SIZE = "X-oio-chunk-meta-metachunk-size";
 
     /* -- ECD common headers -- */
 
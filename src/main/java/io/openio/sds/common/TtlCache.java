@@ -0,0 +1,108 @@
+package io.openio.sds.common;
+
+import static io.openio.sds.common.Check.checkArgument;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded cache whose entries expire after their own time to live. When it
+ * is full, the least recently used entry is evicted. All the methods are
+ * thread safe.
+ *
+ * @param <K>
+ *            the type of the keys
+ * @param <V>
+ *            the type of the values
+ */
+public class TtlCache<K, V> {
+
+	private final LinkedHashMap<K, Timed<V>> entries;
+
+	/**
+	 * @param maxSize
+	 *            the maximum number of entries
+	 */
+	public TtlCache(final int maxSize) {
+		checkArgument(0 < maxSize, "Cache size must be positive");
+		this.entries = new LinkedHashMap<K, Timed<V>>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, Timed<V>> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * @param key
+	 *            the key to look for
+	 * @return the value, or {@code null} if there is none or if it expired
+	 */
+	public synchronized V get(K key) {
+		Timed<V> entry = entries.get(key);
+		if (null == entry)
+			return null;
+		if (entry.expired(now())) {
+			entries.remove(key);
+			return null;
+		}
+		return entry.value;
+	}
+
+	/**
+	 * @param key
+	 *            the key of the value
+	 * @param value
+	 *            the value to cache
+	 * @param ttl
+	 *            how long the value is valid, in milliseconds
+	 */
+	public synchronized void put(K key, V value, long ttl) {
+		checkArgument(null != value, "Cannot cache null values");
+		if (0 >= ttl) {
+			entries.remove(key);
+			return;
+		}
+		entries.put(key, new Timed<V>(value,
+				now() + TimeUnit.MILLISECONDS.toNanos(ttl)));
+	}
+
+	public synchronized void remove(K key) {
+		entries.remove(key);
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * @return the number of entries, including the expired ones not evicted
+	 *         yet
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	long now() {
+		return System.nanoTime();
+	}
+
+	private static class Timed<V> {
+
+		private final V value;
+		private final long deadline;
+
+		Timed(V value, long deadline) {
+			this.value = value;
+			this.deadline = deadline;
+		}
+
+		boolean expired(long now) {
+			return now - deadline >= 0;
+		}
+	}
+}
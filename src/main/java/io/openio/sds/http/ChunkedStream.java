@@ -1,6 +1,6 @@
 package io.openio.sds.http;
 
-import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -54,16 +54,27 @@ public class ChunkedStream extends InputStream {
 	}
 
 	private void readSize() throws IOException {
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
-		byte b;
 		if(!first)
 			readCRLF();
 		first=false;
-		while ('\r' != (b = (byte) chunked.read())) { // 'til \r
-			out.write(b);
+		// parsed in place, the size line is read for every chunk
+		int size = 0;
+		boolean extension = false;
+		int b;
+		while ('\r' != (b = chunked.read())) { // 'til \r
+			if (-1 == b)
+				throw new EOFException("Unexpected end of chunked stream");
+			if (';' == b)
+				extension = true;
+			if (extension)
+				continue;
+			int digit = Character.digit(b, 16);
+			if (-1 == digit)
+				throw new IOException("Invalid chunk size");
+			size = size * 16 + digit;
 		}
 		chunked.read(); // read \n
-		currentRemaining = Integer.parseInt(out.toString("utf-8"), 16);
+		currentRemaining = size;
 		if (0 == currentRemaining) { // EOF
 			readCRLF();
 			currentRemaining = -1;
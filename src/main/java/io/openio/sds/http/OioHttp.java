@@ -95,6 +95,21 @@ public class OioHttp {
         return String.valueOf(timeout * 990);
     }
 
+    static void closeQuietly(Socket sock) {
+        if (null == sock)
+            return;
+        try {
+            try {
+                sock.shutdownInput();
+            } catch (SocketException se) {
+                logger.debug("Socket input already shutdown");
+            }
+            sock.close();
+        } catch (IOException ioe) {
+            logger.warn("Failed to close socket, possible leak", ioe);
+        }
+    }
+
     public class RequestBuilder {
 
         private String method;
@@ -239,40 +254,58 @@ public class OioHttp {
             headers.put(OIO_TIMEOUT_HEADER, timeoutMillisToStringMicros(timeout));
         }
 
-        private OioHttpResponse execute(InetSocketAddress addr) throws OioException {
+        /**
+         * Sends the request without waiting for the response, so several
+         * requests can be issued from the same thread before their responses
+         * are collected with {@link PendingResponse#response()}.
+         * <p>
+         * Unlike {@link #execute()}, alternative hosts are not tried.
+         *
+         * @return a handle on the response to come
+         * @throws OioException
+         *             if the request cannot be sent
+         */
+        public PendingResponse send() throws OioException {
+            return send(new InetSocketAddress(uri.getHost(), uri.getPort()));
+        }
+
+        /**
+         * Sends the request head only, announcing a body of {@code len} bytes.
+         * The body is then to be written to {@link PendingResponse#body()}
+         * before reading the response.
+         *
+         * @param len
+         *            the length of the body to come
+         * @return a handle on the response to come
+         * @throws OioException
+         *             if the request head cannot be sent
+         */
+        public PendingResponse sendHead(long len) throws OioException {
+            Check.checkArgument(len >= 0, "Invalid body length");
+            this.data = null;
+            this.body = null;
+            this.chunked = false;
+            headers.put(CONTENT_LENGTH_HEADER, String.valueOf(len));
+            return send();
+        }
+
+        private PendingResponse send(InetSocketAddress addr) throws OioException {
             Socket sock = null;
             try {
                 sock = socketProvider.getSocket(addr);
                 applyDeadline(sock);
-                if (chunked)
-                    sendRequestChunked(sock);
-                else
-                    sendRequest(sock);
-                OioHttpResponse resp = readResponse(sock);
-                try {
-                    if (null != verifier)
-                        verifier.verify(resp);
-                    return resp;
-                } catch (OioException e) {
-                    resp.close(true);
-                    throw e;
-                }
+                OutputStream os = chunked ? sendRequestChunked(sock) : sendRequest(sock);
+                return new PendingResponse(sock, os, verifier, reqCtx);
             } catch (IOException e) {
-                if (null != sock)
-                    try {
-                        try {
-                            sock.shutdownInput();
-                        } catch (SocketException se) {
-                            logger.debug("Socket input already shutdown");
-                        }
-                        sock.close();
-                    } catch (IOException ioe) {
-                        logger.warn("Failed to close socket, possible leak", ioe);
-                    }
+                closeQuietly(sock);
                 throw new OioSystemException("HTTP request execution error", e);
             }
         }
 
+        private OioHttpResponse execute(InetSocketAddress addr) throws OioException {
+            return send(addr).response();
+        }
+
         public <T> T execute(Class<T> c) {
             OioHttpResponse resp = execute();
             boolean success = false;
@@ -286,11 +319,7 @@ public class OioHttp {
             }
         }
 
-        private OioHttpResponse readResponse(Socket sock) throws IOException {
-            return OioHttpResponse.build(sock, this.reqCtx);
-        }
-
-        private void sendRequest(Socket sock) throws IOException {
+        private OutputStream sendRequest(Socket sock) throws IOException {
             headers.put("Host", uri.getHost() + ":" + uri.getPort());
             headers.put("Connection", socketProvider.reusableSocket() ? "keep-alive" : "close");
             headers.put("Accept", "*/*");
@@ -309,9 +338,10 @@ public class OioHttp {
                 bos.write(body.getBytes(OIO_CHARSET));
             }
             bos.flush();
+            return bos;
         }
 
-        private void sendRequestChunked(Socket sock) throws IOException {
+        private OutputStream sendRequestChunked(Socket sock) throws IOException {
             headers.put("Host", uri.getHost() + ":" + uri.getPort());
             headers.put("Connection", socketProvider.reusableSocket() ? "keep-alive" : "close");
             headers.put("Accept", "*/*");
@@ -326,13 +356,14 @@ public class OioHttp {
             bos.write(requestHead);
             streamChunked(bos);
             bos.flush();
+            return bos;
         }
 
         private void streamChunked(OutputStream os) throws IOException {
             byte[] b = new byte[settings.sendBufferSize()];
-            int remaining = len.intValue();
+            long remaining = len;
             while (remaining > 0) {
-                int read = data.read(b, 0, Math.min(remaining, b.length));
+                int read = data.read(b, 0, (int) Math.min(remaining, b.length));
                 if (-1 == read)
                     throw new EOFException("Unexpected end of source stream");
                 remaining -= read;
@@ -347,10 +378,10 @@ public class OioHttp {
 
         private void stream(OutputStream sos) throws IOException {
             byte[] b = new byte[settings.sendBufferSize()];
-            int remaining = len.intValue();
+            long remaining = len;
 
             while (remaining > 0) {
-                int read = data.read(b, 0, Math.min(remaining, b.length));
+                int read = data.read(b, 0, (int) Math.min(remaining, b.length));
                 if (-1 == read)
                     throw new EOFException("Unexpected end of source stream");
                 remaining -= read;
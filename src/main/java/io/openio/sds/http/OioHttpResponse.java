@@ -5,11 +5,9 @@ import io.openio.sds.logging.SdsLogger;
 import io.openio.sds.logging.SdsLoggerFactory;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringReader;
 import java.net.Socket;
 import java.util.HashMap;
 
@@ -24,6 +22,12 @@ public class OioHttpResponse {
 
     private static final SdsLogger logger = SdsLoggerFactory.getLogger(OioHttpResponse.class);
 
+    /*
+     * The buffer mostly serves the byte per byte parsing of the head, reads of
+     * at least this size go straight to the socket
+     */
+    private static final int BUFFER_SIZE = 2048;
+
     private static final int R = 1;
     private static final int RN = 2;
     private static final int RNR = 3;
@@ -93,7 +97,7 @@ public class OioHttpResponse {
     }
 
     private OioHttpResponse responseHead() throws IOException {
-        sis = new BufferedInputStream(sock.getInputStream());
+        sis = new BufferedInputStream(sock.getInputStream(), BUFFER_SIZE);
         this.head = ResponseHead.parse(readHeaders());
         if (head.chunked()) {
             sis = new ChunkedStream(sis);
@@ -136,27 +140,28 @@ public class OioHttpResponse {
 
     public static class ResponseHead {
 
-        private BufferedReader reader;
+        private final String head;
+        private int next = 0;
         private StatusLine statusLine;
         private HashMap<String, String> headers = new HashMap<String, String>();
 
-        private ResponseHead(BufferedReader reader) {
-            this.reader = reader;
+        private ResponseHead(String head) {
+            this.head = head;
         }
 
         public static ResponseHead parse(String head) throws IOException {
-            return new ResponseHead(new BufferedReader(new StringReader(head))).parseStatusLine()
+            return new ResponseHead(head).parseStatusLine()
                     .parseHeaders();
         }
 
         private ResponseHead parseStatusLine() throws IOException {
-            this.statusLine = StatusLine.parse(reader.readLine());
+            this.statusLine = StatusLine.parse(readLine());
             return this;
         }
 
         private ResponseHead parseHeaders() throws IOException {
             String line;
-            while (null != (line = reader.readLine())) {
+            while (null != (line = readLine())) {
                 if (nullOrEmpty(line))
                     continue;
                 String[] tok = line.trim().split(":", 2);
@@ -167,6 +172,22 @@ public class OioHttpResponse {
             return this;
         }
 
+        /**
+         * Reads the head line by line, without the buffers of a reader which
+         * would be allocated for every response
+         */
+        private String readLine() {
+            if (next >= head.length())
+                return null;
+            int end = head.indexOf('\n', next);
+            if (-1 == end)
+                end = head.length();
+            int stop = end > next && '\r' == head.charAt(end - 1) ? end - 1 : end;
+            String line = head.substring(next, stop);
+            next = end + 1;
+            return line;
+        }
+
         public HashMap<String, String> headers() {
             return this.headers;
         }
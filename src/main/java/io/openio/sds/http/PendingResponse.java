@@ -0,0 +1,90 @@
+package io.openio.sds.http;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import io.openio.sds.RequestContext;
+import io.openio.sds.exceptions.OioException;
+import io.openio.sds.exceptions.OioSystemException;
+
+/**
+ * Handle on the response of a request which has already been sent, but whose
+ * response has not been read yet.
+ *
+ * @see OioHttp.RequestBuilder#send()
+ * @see OioHttp.RequestBuilder#sendHead(long)
+ */
+public class PendingResponse {
+
+    private final Socket sock;
+    private final OutputStream os;
+    private final OioHttpResponseVerifier verifier;
+    private final RequestContext reqCtx;
+
+    PendingResponse(Socket sock, OutputStream os,
+            OioHttpResponseVerifier verifier, RequestContext reqCtx) {
+        this.sock = sock;
+        this.os = os;
+        this.verifier = verifier;
+        this.reqCtx = reqCtx;
+    }
+
+    /**
+     * Returns the stream to write the request body to, when only the request
+     * head has been sent. Closing the returned stream has no effect, the
+     * connection is released when the response is closed.
+     *
+     * @return the stream to write the request body to
+     */
+    public OutputStream body() {
+        return new FilterOutputStream(os) {
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.flush();
+            }
+        };
+    }
+
+    /**
+     * Waits for the response, and checks it with the verifier of the request
+     * if any.
+     *
+     * @return the response
+     * @throws OioException
+     *             if the response cannot be read or is rejected by the
+     *             verifier
+     */
+    public OioHttpResponse response() throws OioException {
+        OioHttpResponse resp;
+        try {
+            os.flush();
+            resp = OioHttpResponse.build(sock, reqCtx);
+        } catch (IOException e) {
+            OioHttp.closeQuietly(sock);
+            throw new OioSystemException("HTTP request execution error", e);
+        }
+        try {
+            if (null != verifier)
+                verifier.verify(resp);
+            return resp;
+        } catch (OioException e) {
+            resp.close(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Gives up on the response, and closes the underlying connection.
+     */
+    public void abort() {
+        OioHttp.closeQuietly(sock);
+    }
+}
@@ -6,11 +6,11 @@ import java.io.InputStream;
 public class Stream extends InputStream {
 
 	private InputStream is;
-	private Long remaining;
+	private long remaining;
 
 	public Stream(InputStream is, Long size) {
 		this.is = is;
-		this.remaining = size;
+		this.remaining = null == size ? 0 : size;
 	}
 
 	@Override
@@ -18,17 +18,14 @@ public class Stream extends InputStream {
 		if (0 == remaining)
 			return -1;
 		int res = is.read();
-		remaining--;
+		if (res >= 0)
+			remaining--;
 		return res;
 	}
 
 	@Override
 	public int read(byte[] buf) throws IOException {
-		if (0 == remaining)
-			return -1;
-		int res = is.read(buf,0, Math.min(buf.length,remaining.intValue()));
-		remaining = remaining - res;
-		return res;
+		return read(buf, 0, buf.length);
 	}
 
 	@Override
@@ -36,11 +33,18 @@ public class Stream extends InputStream {
 		if (0 == remaining) {
 			return -1;
 		}
-		int res = is.read(buf, offset,Math.min(len,Math.min(buf.length-offset,remaining.intValue())));
-		remaining = remaining - res;
+		int res = is.read(buf, offset,
+				(int) Math.min(Math.min(len, buf.length - offset), remaining));
+		if (res > 0)
+			remaining -= res;
 		return res;
 	}
 
+	@Override
+	public int available() throws IOException {
+		return (int) Math.min(is.available(), remaining);
+	}
+
 	@Override
 	public void close() throws IOException {
 		is.close();
@@ -0,0 +1,78 @@
+package io.openio.sds.models;
+
+import static io.openio.sds.common.Check.checkArgument;
+
+import io.openio.sds.common.MoreObjects;
+
+/**
+ * An object to read with a bulk download, see
+ * {@link io.openio.sds.AdvancedClient#getObjects(Iterable, int, io.openio.sds.RequestContext)}
+ */
+public class BulkGetItem {
+
+    private OioUrl url;
+    private Range range;
+    private Long version;
+
+    private BulkGetItem(OioUrl url) {
+        checkArgument(null != url, "url cannot be null");
+        checkArgument(null != url.object(), "object part of URL cannot be null");
+        this.url = url;
+    }
+
+    /**
+     * Builds an item reading the whole object
+     *
+     * @param url
+     *            the URL of the object to read
+     * @return the new item
+     */
+    public static BulkGetItem item(OioUrl url) {
+        return new BulkGetItem(url);
+    }
+
+    /**
+     * Builds an item reading a range of the object
+     *
+     * @param url
+     *            the URL of the object to read
+     * @param range
+     *            the range to read
+     * @return the new item
+     */
+    public static BulkGetItem item(OioUrl url, Range range) {
+        BulkGetItem item = new BulkGetItem(url);
+        item.range = range;
+        return item;
+    }
+
+    public OioUrl url() {
+        return url;
+    }
+
+    /**
+     * @return the range to read, or {@code null} to read the whole object
+     */
+    public Range range() {
+        return range;
+    }
+
+    public Long version() {
+        return version;
+    }
+
+    public BulkGetItem version(Long version) {
+        this.version = version;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .omitNullValues()
+                .add("url", url)
+                .add("range", range)
+                .add("version", version)
+                .toString();
+    }
+}
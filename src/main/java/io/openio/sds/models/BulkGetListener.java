@@ -0,0 +1,17 @@
+package io.openio.sds.models;
+
+/**
+ * Receives the outcome of the items of a bulk download as they complete, see
+ * {@link io.openio.sds.AdvancedClient#getObjects(Iterable, int, BulkGetListener, io.openio.sds.RequestContext)}
+ */
+public interface BulkGetListener {
+
+    /**
+     * Called from the thread which started the bulk download, once for each
+     * item, in the order of completion.
+     *
+     * @param result
+     *            the outcome of an item
+     */
+    void result(BulkGetResult result);
+}
@@ -0,0 +1,73 @@
+package io.openio.sds.models;
+
+import io.openio.sds.common.MoreObjects;
+import io.openio.sds.exceptions.OioException;
+
+/**
+ * Outcome of the download of a {@link BulkGetItem}
+ */
+public class BulkGetResult {
+
+    private final BulkGetItem item;
+    private final ObjectInfo info;
+    private final byte[] data;
+    private final OioException exception;
+
+    private BulkGetResult(BulkGetItem item, ObjectInfo info, byte[] data,
+            OioException exception) {
+        this.item = item;
+        this.info = info;
+        this.data = data;
+        this.exception = exception;
+    }
+
+    public static BulkGetResult success(BulkGetItem item, ObjectInfo info,
+            byte[] data) {
+        return new BulkGetResult(item, info, data, null);
+    }
+
+    public static BulkGetResult failure(BulkGetItem item,
+            OioException exception) {
+        return new BulkGetResult(item, null, null, exception);
+    }
+
+    public BulkGetItem item() {
+        return item;
+    }
+
+    /**
+     * @return information about the object, without its properties, or
+     *         {@code null} if the download failed
+     */
+    public ObjectInfo info() {
+        return info;
+    }
+
+    /**
+     * @return the data read, or {@code null} if the download failed
+     */
+    public byte[] data() {
+        return data;
+    }
+
+    /**
+     * @return the cause of the failure, or {@code null} if the object has been
+     *         read
+     */
+    public OioException exception() {
+        return exception;
+    }
+
+    public boolean succeeded() {
+        return null == exception;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .omitNullValues()
+                .add("url", item.url())
+                .add("exception", exception)
+                .toString();
+    }
+}
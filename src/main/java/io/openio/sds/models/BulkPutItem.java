@@ -0,0 +1,117 @@
+package io.openio.sds.models;
+
+import static io.openio.sds.common.Check.checkArgument;
+
+import java.io.InputStream;
+import java.util.Map;
+
+import io.openio.sds.common.MoreObjects;
+
+/**
+ * An object to push with a bulk upload, see
+ * {@link io.openio.sds.AdvancedClient#putObjects(Iterable, int, io.openio.sds.RequestContext)}
+ */
+public class BulkPutItem {
+
+    private OioUrl url;
+    private Long size;
+    private InputStream data;
+    private byte[] bytes;
+    private Long version;
+    private Map<String, String> properties;
+
+    private BulkPutItem(OioUrl url) {
+        checkArgument(null != url, "url cannot be null");
+        checkArgument(null != url.object(), "object part of URL cannot be null");
+        this.url = url;
+    }
+
+    /**
+     * Builds an item whose data is read from the specified stream. The stream
+     * is not closed once the object has been uploaded.
+     *
+     * @param url
+     *            the URL of the object to create
+     * @param size
+     *            the size of the object
+     * @param data
+     *            the stream to read the data from
+     * @return the new item
+     */
+    public static BulkPutItem item(OioUrl url, Long size, InputStream data) {
+        checkArgument(null != data, "data cannot be null");
+        BulkPutItem item = new BulkPutItem(url);
+        item.size = size;
+        item.data = data;
+        return item;
+    }
+
+    /**
+     * Builds an item whose data is held in memory
+     *
+     * @param url
+     *            the URL of the object to create
+     * @param data
+     *            the data of the object
+     * @return the new item
+     */
+    public static BulkPutItem item(OioUrl url, byte[] data) {
+        checkArgument(null != data, "data cannot be null");
+        BulkPutItem item = new BulkPutItem(url);
+        item.size = (long) data.length;
+        item.bytes = data;
+        return item;
+    }
+
+    public OioUrl url() {
+        return url;
+    }
+
+    public Long size() {
+        return size;
+    }
+
+    /**
+     * @return the stream to read the data from, or {@code null} if the data is
+     *         held in memory
+     */
+    public InputStream data() {
+        return data;
+    }
+
+    /**
+     * @return the data of the object, or {@code null} if it is read from a
+     *         stream
+     */
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    public Long version() {
+        return version;
+    }
+
+    public BulkPutItem version(Long version) {
+        this.version = version;
+        return this;
+    }
+
+    public Map<String, String> properties() {
+        return properties;
+    }
+
+    public BulkPutItem properties(Map<String, String> properties) {
+        this.properties = properties;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .omitNullValues()
+                .add("url", url)
+                .add("size", size)
+                .add("version", version)
+                .toString();
+    }
+}
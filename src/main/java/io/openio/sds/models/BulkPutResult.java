@@ -0,0 +1,63 @@
+package io.openio.sds.models;
+
+import io.openio.sds.common.MoreObjects;
+import io.openio.sds.exceptions.OioException;
+
+/**
+ * Outcome of the upload of a {@link BulkPutItem}
+ */
+public class BulkPutResult {
+
+    private final BulkPutItem item;
+    private final ObjectInfo info;
+    private final OioException exception;
+
+    private BulkPutResult(BulkPutItem item, ObjectInfo info,
+            OioException exception) {
+        this.item = item;
+        this.info = info;
+        this.exception = exception;
+    }
+
+    public static BulkPutResult success(BulkPutItem item, ObjectInfo info) {
+        return new BulkPutResult(item, info, null);
+    }
+
+    public static BulkPutResult failure(BulkPutItem item,
+            OioException exception) {
+        return new BulkPutResult(item, null, exception);
+    }
+
+    public BulkPutItem item() {
+        return item;
+    }
+
+    /**
+     * @return information about the uploaded object, or {@code null} if the
+     *         upload failed
+     */
+    public ObjectInfo info() {
+        return info;
+    }
+
+    /**
+     * @return the cause of the failure, or {@code null} if the object has been
+     *         uploaded
+     */
+    public OioException exception() {
+        return exception;
+    }
+
+    public boolean succeeded() {
+        return null == exception;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .omitNullValues()
+                .add("url", item.url())
+                .add("exception", exception)
+                .toString();
+    }
+}
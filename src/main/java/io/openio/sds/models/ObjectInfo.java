@@ -1,5 +1,6 @@
 package io.openio.sds.models;
 
+import static io.openio.sds.common.Check.checkArgument;
 import static io.openio.sds.common.OioConstants.OIO_CHARSET;
 
 import java.util.ArrayList;
@@ -34,6 +35,11 @@ public class ObjectInfo {
     private RequestContext reqCtx;
 
     private transient Map<Integer, List<ChunkInfo>> sortedChunks;
+    /*
+     * offset in the object of the first byte of each position, then the end,
+     * built lazily and shared by the copies read from concurrent threads
+     */
+    private transient volatile long[] offsets;
 
     private static final Comparator<ChunkInfo> comparator = new Comparator<ChunkInfo>() {
 
@@ -63,11 +69,13 @@ public class ObjectInfo {
     public ObjectInfo chunks(List<ChunkInfo> chunks) {
         this.sortedChunks = sortChunks(chunks);
         this.chunks = chunks;
+        this.offsets = null;
         return this;
     }
 
     public ObjectInfo size(Long size) {
         this.size = size;
+        this.offsets = null;
         return this;
     }
 
@@ -140,6 +148,7 @@ public class ObjectInfo {
     public ObjectInfo chunkMethod(String chunkMethod) {
         this.chunkMethod = chunkMethod;
         this.ecinfo = ECInfo.fromString(chunkMethod);
+        this.offsets = null;
         return this;
     }
 
@@ -186,14 +195,71 @@ public class ObjectInfo {
     	return null != ecinfo;
     }
 
-    public int metachunksize(int pos) {
+    public long metachunksize(int pos) {
         if (!isEC())
             return -1;
-        int maxmcsize = (int) (ecinfo.k() * sortedChunks.get(pos).get(0).size());
-        int remaining = (int) (size - (pos * maxmcsize));
+        long maxmcsize = ecinfo.k() * sortedChunks.get(pos).get(0).size();
+        long remaining = size - pos * maxmcsize;
         return Math.min(maxmcsize, remaining);
     }
 
+    /**
+     * @param pos
+     *            the position
+     * @return the number of bytes of the object held by the position
+     */
+    public long positionSize(int pos) {
+        return isEC() ? Math.max(0, metachunksize(pos)) : chunksize(pos);
+    }
+
+    /**
+     * @param pos
+     *            the position, or the number of positions to get the end of
+     *            the last one
+     * @return the offset in the object of the first byte of the position
+     */
+    public long offset(int pos) {
+        return offsets()[pos];
+    }
+
+    /**
+     * Finds the position holding the specified byte of the object, in
+     * logarithmic time.
+     *
+     * @param offset
+     *            the offset of the byte in the object
+     * @return the position holding the byte
+     * @throws IllegalArgumentException
+     *             if the offset is out of the object
+     */
+    public int position(long offset) {
+        long[] index = offsets();
+        checkArgument(0 <= offset && offset < index[index.length - 1],
+                "Offset out of content size");
+        int low = 0;
+        int high = index.length - 2;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (index[mid] <= offset)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    private long[] offsets() {
+        long[] res = offsets;
+        if (null == res) {
+            int count = sortedChunks.size();
+            res = new long[count + 1];
+            for (int pos = 0; pos < count; pos++)
+                res[pos + 1] = res[pos] + positionSize(pos);
+            offsets = res;
+        }
+        return res;
+    }
+
     /**
      * @return a string suitable to be sent as {@code CHUNK_META_FULL_PATH} header value.
      */
@@ -241,6 +307,35 @@ public class ObjectInfo {
         return this.reqCtx;
     }
 
+    /**
+     * Copies this object description, so the copy can be given away while
+     * this one is kept. The chunks are shared, the properties are not.
+     *
+     * @return the copy
+     */
+    public ObjectInfo copy() {
+        ObjectInfo res = new ObjectInfo();
+        res.url = url;
+        res.oid = oid;
+        res.ctime = ctime;
+        res.deleted = deleted;
+        res.policy = policy;
+        res.hash = hash;
+        res.hashMethod = hashMethod;
+        res.chunkMethod = chunkMethod;
+        res.size = size;
+        res.version = version;
+        res.mtype = mtype;
+        res.properties = null == properties ? null
+                : new HashMap<String, String>(properties);
+        res.chunks = chunks;
+        res.ecinfo = ecinfo;
+        res.reqCtx = reqCtx;
+        res.sortedChunks = sortedChunks;
+        res.offsets = offsets;
+        return res;
+    }
+
     /**
      * Set the context of the request that lead to this object's creation.
      *
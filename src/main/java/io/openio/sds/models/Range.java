@@ -1,7 +1,7 @@
 package io.openio.sds.models;
 
 import static io.openio.sds.common.Check.checkArgument;
-import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
 import static java.lang.String.format;
 
 import java.util.regex.Matcher;
@@ -38,15 +38,27 @@ public class Range {
         return new Range(from, to);
     }
 
+    /**
+     * @param offset
+     *            the first byte of the range
+     * @param length
+     *            the number of bytes of the range
+     * @return the range of {@code length} bytes starting at {@code offset}
+     */
+    public static Range slice(long offset, long length) {
+        checkArgument(offset >= 0 && length > 0, "Invalid range");
+        return new Range(offset, offset + length - 1);
+    }
+
     public static Range parse(String str) {
         Matcher m = RANGE_PATTERN.matcher(str);
         checkArgument(m.matches());
         if (null == m.group(1)) {
             checkArgument(null != m.group(2), "useless range");
-            return upTo(parseInt(m.group(2)));
+            return upTo(parseLong(m.group(2)));
         }
-        return (null == m.group(2)) ? from(parseInt(m.group(1)))
-                : between(parseInt(m.group(1)), parseInt(m.group(2)));
+        return (null == m.group(2)) ? from(parseLong(m.group(1)))
+                : between(parseLong(m.group(1)), parseLong(m.group(2)));
     }
 
     public long from() {
@@ -57,6 +69,14 @@ public class Range {
         return to;
     }
 
+    /**
+     * @return the number of bytes of the range, as both ends are included, or
+     *         -1 if the range extends to the end of the data
+     */
+    public long length() {
+        return to < 0 ? -1 : to - from + 1;
+    }
+
     public String headerValue() {
         return to < 0
                 ? format("bytes=%d-", from)
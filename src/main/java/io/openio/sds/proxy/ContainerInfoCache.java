@@ -0,0 +1,154 @@
+package io.openio.sds.proxy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.openio.sds.common.TtlCache;
+import io.openio.sds.models.ContainerInfo;
+import io.openio.sds.models.LinkedServiceInfo;
+import io.openio.sds.models.OioUrl;
+import io.openio.sds.models.ReferenceInfo;
+
+/**
+ * Keeps the informations, the properties and the linked services of the
+ * containers recently looked up, by container id, for a short time. The
+ * values are copied in and out, so the callers may change them.
+ *
+ * The cached entries are only invalidated by the writes of this client, the
+ * writes of the other clients are seen once the entries expire.
+ */
+class ContainerInfoCache {
+
+    private static final String INFO = "info";
+    private static final String PROPERTIES = "properties";
+    private static final String REFERENCE = "reference";
+    private static final String SERVICES = "services/";
+
+    private final TtlCache<Key, Object> cache;
+    private final long ttl;
+    /* the types of services looked up, to invalidate them all */
+    private final Set<String> types = Collections
+            .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    ContainerInfoCache(ProxySettings settings) {
+        this.cache = new TtlCache<Key, Object>(settings.containerCacheSize());
+        this.ttl = settings.containerCacheTtl();
+    }
+
+    ContainerInfo info(OioUrl url) {
+        ContainerInfo cached = (ContainerInfo) cache.get(new Key(url, INFO));
+        return null == cached ? null : copy(cached);
+    }
+
+    void info(OioUrl url, ContainerInfo info) {
+        cache.put(new Key(url, INFO), copy(info), ttl);
+    }
+
+    @SuppressWarnings("unchecked")
+    Map<String, String> properties(OioUrl url) {
+        Map<String, String> cached = (Map<String, String>) cache.get(
+                new Key(url, PROPERTIES));
+        return null == cached ? null : new HashMap<String, String>(cached);
+    }
+
+    void properties(OioUrl url, Map<String, String> properties) {
+        if (null != properties)
+            cache.put(new Key(url, PROPERTIES),
+                    new HashMap<String, String>(properties), ttl);
+    }
+
+    ReferenceInfo reference(OioUrl url) {
+        ReferenceInfo cached = (ReferenceInfo) cache.get(new Key(url, REFERENCE));
+        return null == cached ? null : copy(cached);
+    }
+
+    void reference(OioUrl url, ReferenceInfo reference) {
+        if (null != reference)
+            cache.put(new Key(url, REFERENCE), copy(reference), ttl);
+    }
+
+    @SuppressWarnings("unchecked")
+    List<LinkedServiceInfo> services(OioUrl url, String type) {
+        List<LinkedServiceInfo> cached = (List<LinkedServiceInfo>) cache.get(
+                new Key(url, SERVICES + type));
+        return null == cached ? null : new ArrayList<LinkedServiceInfo>(cached);
+    }
+
+    void services(OioUrl url, String type, List<LinkedServiceInfo> services) {
+        if (null == services)
+            return;
+        types.add(type);
+        cache.put(new Key(url, SERVICES + type),
+                new ArrayList<LinkedServiceInfo>(services), ttl);
+    }
+
+    /**
+     * Forgets everything about the container
+     */
+    void invalidate(OioUrl url) {
+        cache.remove(new Key(url, INFO));
+        cache.remove(new Key(url, PROPERTIES));
+        cache.remove(new Key(url, REFERENCE));
+        for (String type : types)
+            cache.remove(new Key(url, SERVICES + type));
+    }
+
+    /**
+     * Forgets the informations of the container, whose usage changes with
+     * the objects it holds
+     */
+    void invalidateInfo(OioUrl url) {
+        cache.remove(new Key(url, INFO));
+    }
+
+    private static ContainerInfo copy(ContainerInfo info) {
+        return new ContainerInfo(info.name()).account(info.account())
+                .ctime(info.ctime()).init(info.init())
+                .usage(info.usage()).version(info.version())
+                .id(info.id()).ns(info.ns())
+                .type(info.type()).user(info.user())
+                .schemavers(info.schemavers())
+                .versionMainAdmin(info.versionMainAdmin())
+                .versionMainAliases(info.versionMainAliases())
+                .versionMainChunks(info.versionMainChunks())
+                .versionMainContents(info.versionMainContents())
+                .versionMainProperties(info.versionMainProperties());
+    }
+
+    private static ReferenceInfo copy(ReferenceInfo ref) {
+        return new ReferenceInfo()
+                .dir(null == ref.dir() ? null
+                        : new ArrayList<LinkedServiceInfo>(ref.dir()))
+                .srv(null == ref.srv() ? null
+                        : new ArrayList<LinkedServiceInfo>(ref.srv()));
+    }
+
+    private static class Key {
+
+        private final String cid;
+        private final String kind;
+
+        Key(OioUrl url, String kind) {
+            this.cid = url.cid();
+            this.kind = kind;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * cid.hashCode() + kind.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return cid.equals(other.cid) && kind.equals(other.kind);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package io.openio.sds.proxy;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.openio.sds.common.TtlCache;
+import io.openio.sds.exceptions.ObjectNotFoundException;
+import io.openio.sds.models.ObjectInfo;
+import io.openio.sds.models.OioUrl;
+
+/**
+ * Keeps the descriptions and the properties of the objects recently looked
+ * up, and the objects recently not found, to spare the proxy the lookups of
+ * objects read again and again. An object is looked up by version, the
+ * latest version being cached apart from the explicit ones.
+ *
+ * The cached entries are only invalidated by the writes of this client, the
+ * writes of the other clients are seen once the entries expire.
+ */
+class ObjectInfoCache {
+
+    private final TtlCache<Key, Object> objects;
+    private final TtlCache<Key, Object> properties;
+    /* the number of the latest version, also cached under this number */
+    private final TtlCache<Key, Long> latest;
+    private final long ttl;
+    private final long negativeTtl;
+
+    ObjectInfoCache(ProxySettings settings) {
+        this.objects = new TtlCache<Key, Object>(settings.objectCacheSize());
+        this.properties = new TtlCache<Key, Object>(settings.objectCacheSize());
+        this.latest = new TtlCache<Key, Long>(settings.objectCacheSize());
+        this.ttl = settings.objectCacheTtl();
+        this.negativeTtl = settings.objectCacheNegativeTtl();
+    }
+
+    /**
+     * @return a copy of the cached description, or {@code null} if it is not
+     *         cached
+     * @throws ObjectNotFoundException
+     *             if the object was recently not found
+     */
+    ObjectInfo object(OioUrl url, Long version) {
+        Object cached = objects.get(new Key(url, version));
+        if (cached instanceof ObjectNotFoundException)
+            throw new ObjectNotFoundException(
+                    ((ObjectNotFoundException) cached).getMessage());
+        return null == cached ? null : ((ObjectInfo) cached).copy();
+    }
+
+    void object(OioUrl url, Long version, ObjectInfo oinf) {
+        ObjectInfo copy = oinf.copy();
+        objects.put(new Key(url, version), copy, ttl);
+        // the latest version is also known by its number
+        if (null == version && null != oinf.version()) {
+            objects.put(new Key(url, oinf.version()), copy, ttl);
+            latest.put(new Key(url, null), oinf.version(), ttl);
+        }
+    }
+
+    /**
+     * @return a copy of the cached properties, or {@code null} if they are not
+     *         cached
+     * @throws ObjectNotFoundException
+     *             if the object was recently not found
+     */
+    @SuppressWarnings("unchecked")
+    Map<String, String> properties(OioUrl url) {
+        Object cached = properties.get(new Key(url, null));
+        if (cached instanceof ObjectNotFoundException)
+            throw new ObjectNotFoundException(
+                    ((ObjectNotFoundException) cached).getMessage());
+        return null == cached ? null
+                : new HashMap<String, String>((Map<String, String>) cached);
+    }
+
+    void properties(OioUrl url, Map<String, String> props) {
+        properties.put(new Key(url, null), null == props
+                ? Collections.<String, String> emptyMap()
+                : new HashMap<String, String>(props), ttl);
+    }
+
+    void notFound(OioUrl url, Long version, ObjectNotFoundException e) {
+        objects.put(new Key(url, version), e, negativeTtl);
+    }
+
+    void propertiesNotFound(OioUrl url, ObjectNotFoundException e) {
+        properties.put(new Key(url, null), e, negativeTtl);
+    }
+
+    /**
+     * Forgets the latest version of the object, also under its number, its
+     * properties, and the specified version
+     */
+    void invalidate(OioUrl url, Long version) {
+        Key key = new Key(url, null);
+        Long number = latest.get(key);
+        latest.remove(key);
+        objects.remove(key);
+        properties.remove(key);
+        if (null != number)
+            objects.remove(new Key(url, number));
+        if (null != version)
+            objects.remove(new Key(url, version));
+    }
+
+    private static class Key {
+
+        private final String cid;
+        private final String object;
+        private final Long version;
+
+        Key(OioUrl url, Long version) {
+            this.cid = url.cid();
+            this.object = url.object();
+            this.version = version;
+        }
+
+        @Override
+        public int hashCode() {
+            int res = cid.hashCode();
+            res = 31 * res + object.hashCode();
+            return 31 * res + (null == version ? 0 : version.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return cid.equals(other.cid) && object.equals(other.object)
+                    && (null == version ? null == other.version
+                            : version.equals(other.version));
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package io.openio.sds.proxy;
+
+import static io.openio.sds.common.JsonUtils.gson;
+import static io.openio.sds.common.OioConstants.LIST_MARKER_HEADER;
+import static io.openio.sds.common.OioConstants.LIST_TRUNCATED_HEADER;
+import static io.openio.sds.common.OioConstants.OIO_CHARSET;
+import static java.lang.String.format;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import io.openio.sds.RequestContext;
+import io.openio.sds.exceptions.OioException;
+import io.openio.sds.http.OioHttpResponse;
+import io.openio.sds.models.ListOptions;
+import io.openio.sds.models.ObjectList.ObjectView;
+import io.openio.sds.models.OioUrl;
+
+/**
+ * Iterates over the objects of a container, page after page, without holding
+ * more than one object of a page in memory. The objects are decoded from the
+ * response while it is received, and the next page is requested in the
+ * background as soon as the current one is known to be truncated.
+ * <p>
+ * The prefixes of a listing with a delimiter are not returned. The iterator
+ * must be closed if it is not consumed until its end.
+ */
+public class ObjectIterator implements Iterator<ObjectView>, Closeable {
+
+    private final ProxyClient proxy;
+    private final ExecutorService executor;
+    private final OioUrl url;
+    private final ListOptions options;
+    private final RequestContext reqCtx;
+
+    private OioHttpResponse current;
+    private JsonReader reader;
+    private boolean truncated;
+    private String marker;
+    private Future<OioHttpResponse> prefetched;
+    /* the response of the prefetched page, until it is read or closed */
+    private OioHttpResponse handedOver;
+    private ObjectView next;
+    /* the number of objects still to return, negative if unlimited */
+    private int remaining;
+    private boolean closed = false;
+
+    ObjectIterator(ProxyClient proxy, ExecutorService executor, OioUrl url,
+            ListOptions options, RequestContext reqCtx) {
+        this.proxy = proxy;
+        this.executor = executor;
+        this.url = url;
+        this.options = options;
+        this.reqCtx = reqCtx;
+        this.remaining = 0 < options.limit() ? options.limit() : -1;
+        this.marker = options.marker();
+        this.truncated = true;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (null == next && !closed)
+            next = fetch();
+        return null != next;
+    }
+
+    @Override
+    public ObjectView next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        ObjectView view = next;
+        next = null;
+        if (0 < remaining && 0 == --remaining)
+            close();
+        return view;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Releases the connections of the current page and of the page
+     * prefetched, if any.
+     */
+    @Override
+    public void close() {
+        OioHttpResponse resp;
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            resp = handedOver;
+            handedOver = null;
+        }
+        if (null != current) {
+            current.close(false);
+            current = null;
+        }
+        // a prefetch still running closes its own response
+        if (null != resp)
+            resp.close(false);
+        if (null != prefetched)
+            prefetched.cancel(false);
+        prefetched = null;
+    }
+
+    /**
+     * @return the next object of the listing, or {@code null} at its end
+     */
+    private ObjectView fetch() {
+        try {
+            while (true) {
+                if (null == current) {
+                    if (!truncated) {
+                        close();
+                        return null;
+                    }
+                    open();
+                    continue;
+                }
+                if (reader.hasNext()) {
+                    ObjectView view = gson().fromJson(reader, ObjectView.class);
+                    marker = view.name();
+                    return view;
+                }
+                current.close(true);
+                current = null;
+            }
+        } catch (IOException e) {
+            close();
+            throw new OioException(format("Failed to read the listing of %s",
+                    url.container()), e);
+        } catch (JsonParseException e) {
+            close();
+            throw new OioException(format("Invalid listing of %s",
+                    url.container()), e);
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts reading the next page, and requests the one after if it is
+     * already known to be needed.
+     */
+    private void open() throws IOException {
+        if (null != prefetched) {
+            current = await(prefetched);
+            prefetched = null;
+            synchronized (this) {
+                handedOver = null;
+            }
+        } else {
+            current = proxy.openListing(url, page(marker), reqCtx);
+        }
+        String t = current.header(LIST_TRUNCATED_HEADER);
+        truncated = null != t && Boolean.parseBoolean(t);
+        String nextMarker = current.header(LIST_MARKER_HEADER);
+        if (truncated && null != nextMarker)
+            prefetch(nextMarker);
+        reader = new JsonReader(
+                new InputStreamReader(current.body(), OIO_CHARSET));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("objects".equals(reader.nextName())
+                    && JsonToken.BEGIN_ARRAY == reader.peek()) {
+                reader.beginArray();
+                return;
+            }
+            reader.skipValue();
+        }
+        // no objects in this page, go on only if the proxy tells from where
+        current.close(true);
+        current = null;
+        if (null == nextMarker)
+            truncated = false;
+        else if (null == prefetched)
+            marker = nextMarker;
+    }
+
+    private void prefetch(final String nextMarker) {
+        final ListOptions page = page(nextMarker);
+        prefetched = executor.submit(new Callable<OioHttpResponse>() {
+
+            @Override
+            public OioHttpResponse call() throws Exception {
+                OioHttpResponse resp = proxy.openListing(url, page, reqCtx);
+                synchronized (ObjectIterator.this) {
+                    if (!closed) {
+                        handedOver = resp;
+                        return resp;
+                    }
+                }
+                resp.close(false);
+                return null;
+            }
+        });
+    }
+
+    private ListOptions page(String from) {
+        return new ListOptions()
+                .prefix(options.prefix())
+                .delimiter(options.delimiter())
+                .marker(from)
+                .limit(remaining);
+    }
+
+    private OioHttpResponse await(Future<OioHttpResponse> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OioException("Interrupted while listing objects", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof OioException)
+                throw (OioException) e.getCause();
+            throw new OioException("Failed to list objects", e.getCause());
+        }
+    }
+}
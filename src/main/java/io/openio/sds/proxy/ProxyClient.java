@@ -91,15 +91,21 @@ import io.openio.sds.models.ObjectList;
 import io.openio.sds.models.OioUrl;
 import io.openio.sds.models.ReferenceInfo;
 import io.openio.sds.models.ServiceInfo;
+import io.openio.sds.storage.ChunkListener;
 
 import java.io.InputStreamReader;
 import java.lang.reflect.Type;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
+import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
 
@@ -111,11 +117,30 @@ public class ProxyClient {
     private OioHttp http;
     private ProxySettings settings;
     private List<InetSocketAddress> hosts = null;
+    private final ObjectInfoCache objectCache;
+    private final ContainerInfoCache containerCache;
+    private final ExecutorService listers = Executors.newCachedThreadPool(
+            new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r);
+                    t.setName("ProxyClient-Lister");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
 
     public ProxyClient(OioHttp http, ProxySettings settings) {
         this.http = http;
         this.settings = settings;
         this.hosts = this.settings.allHosts();
+        this.objectCache = 0 < settings.objectCacheSize()
+                ? new ObjectInfoCache(settings)
+                : null;
+        this.containerCache = 0 < settings.containerCacheSize()
+                ? new ContainerInfoCache(settings)
+                : null;
     }
 
     /* -- CS -- */
@@ -178,11 +203,16 @@ public class ProxyClient {
      */
     public void createReference(OioUrl url, RequestContext reqCtx) throws OioException {
         checkArgument(null != url, INVALID_URL_MSG);
-        http.post(
-                format(DIR_REF_CREATE_FORMAT, settings.url(), settings.ns(),
-                        Strings.urlEncode(url.account()), Strings.urlEncode(url.container())))
-                .hosts(hosts).verifier(REFERENCE_VERIFIER).withRequestContext(reqCtx).execute()
-                .close();
+        invalidateContainer(url);
+        try {
+            http.post(
+                    format(DIR_REF_CREATE_FORMAT, settings.url(), settings.ns(),
+                            Strings.urlEncode(url.account()), Strings.urlEncode(url.container())))
+                    .hosts(hosts).verifier(REFERENCE_VERIFIER).withRequestContext(reqCtx).execute()
+                    .close();
+        } finally {
+            invalidateContainer(url);
+        }
     }
 
     /**
@@ -212,11 +242,18 @@ public class ProxyClient {
      */
     public ReferenceInfo showReference(OioUrl url, RequestContext reqCtx) throws OioException {
         checkArgument(null != url, INVALID_URL_MSG);
-        return http
+        ReferenceInfo cached = null == containerCache ? null
+                : containerCache.reference(url);
+        if (null != cached)
+            return cached;
+        ReferenceInfo ref = http
                 .get(format(DIR_REF_SHOW_FORMAT, settings.url(), settings.ns(),
                         Strings.urlEncode(url.account()), Strings.urlEncode(url.container())))
                 .hosts(hosts).withRequestContext(reqCtx).verifier(REFERENCE_VERIFIER)
                 .execute(ReferenceInfo.class);
+        if (null != containerCache)
+            containerCache.reference(url, ref);
+        return ref;
     }
 
     /**
@@ -248,11 +285,16 @@ public class ProxyClient {
      */
     public void deleteReference(OioUrl url, RequestContext reqCtx) throws OioException {
         checkArgument(null != url, INVALID_URL_MSG);
-        http.post(
-                format(DIR_REF_DELETE_FORMAT, settings.url(), settings.ns(),
-                        Strings.urlEncode(url.account()), Strings.urlEncode(url.container())))
-                .hosts(hosts).withRequestContext(reqCtx).verifier(REFERENCE_VERIFIER).execute()
-                .close();
+        invalidateContainer(url);
+        try {
+            http.post(
+                    format(DIR_REF_DELETE_FORMAT, settings.url(), settings.ns(),
+                            Strings.urlEncode(url.account()), Strings.urlEncode(url.container())))
+                    .hosts(hosts).withRequestContext(reqCtx).verifier(REFERENCE_VERIFIER).execute()
+                    .close();
+        } finally {
+            invalidateContainer(url);
+        }
     }
 
     /**
@@ -287,12 +329,17 @@ public class ProxyClient {
     public List<LinkedServiceInfo> linkService(OioUrl url, String type, RequestContext reqCtx)
             throws OioException {
         checkArgument(!nullOrEmpty(type), "Missing type");
-        OioHttpResponse resp = http
-                .post(format(DIR_LINK_SRV_FORMAT, settings.url(), settings.ns(),
-                        Strings.urlEncode(url.account()), Strings.urlEncode(url.container()), type))
-                .hosts(hosts).verifier(REFERENCE_VERIFIER).withRequestContext(reqCtx).execute();
+        invalidateContainer(url);
+        try {
+            OioHttpResponse resp = http
+                    .post(format(DIR_LINK_SRV_FORMAT, settings.url(), settings.ns(),
+                            Strings.urlEncode(url.account()), Strings.urlEncode(url.container()), type))
+                    .hosts(hosts).verifier(REFERENCE_VERIFIER).withRequestContext(reqCtx).execute();
 
-        return listAndClose(resp);
+            return listAndClose(resp);
+        } finally {
+            invalidateContainer(url);
+        }
     }
 
     /**
@@ -330,11 +377,18 @@ public class ProxyClient {
             throws OioException {
         checkArgument(null != url, INVALID_URL_MSG);
         checkArgument(!nullOrEmpty(type));
-        return http
+        List<LinkedServiceInfo> cached = null == containerCache ? null
+                : containerCache.services(url, type);
+        if (null != cached)
+            return cached;
+        List<LinkedServiceInfo> services = http
                 .get(format(DIR_LIST_SRV_FORMAT, settings.url(), settings.ns(),
                         Strings.urlEncode(url.account()), Strings.urlEncode(url.container()), type))
                 .hosts(hosts).verifier(REFERENCE_VERIFIER).withRequestContext(reqCtx)
                 .execute(ReferenceInfo.class).srv();
+        if (null != containerCache)
+            containerCache.services(url, type, services);
+        return services;
     }
 
     /**
@@ -367,12 +421,16 @@ public class ProxyClient {
     public void unlinkService(OioUrl url, String type, RequestContext reqCtx) throws OioException {
         checkArgument(null != url, INVALID_URL_MSG);
         checkArgument(!nullOrEmpty(type));
-        http.post(
-                format(DIR_UNLINK_SRV_FORMAT, settings.url(), settings.ns(),
-                        Strings.urlEncode(url.account()), Strings.urlEncode(url.container()), type))
-                .hosts(hosts).verifier(REFERENCE_VERIFIER).withRequestContext(reqCtx).execute()
-                .close();
-
+        invalidateContainer(url);
+        try {
+            http.post(
+                    format(DIR_UNLINK_SRV_FORMAT, settings.url(), settings.ns(),
+                            Strings.urlEncode(url.account()), Strings.urlEncode(url.container()), type))
+                    .hosts(hosts).verifier(REFERENCE_VERIFIER).withRequestContext(reqCtx).execute()
+                    .close();
+        } finally {
+            invalidateContainer(url);
+        }
     }
 
     /* -- STORAGE -- */
@@ -426,18 +484,23 @@ public class ProxyClient {
         checkArgument(null != url, INVALID_URL_MSG);
         String body = String.format("{\"properties\": %1$s}",
                 properties != null ? gson().toJson(properties) : "{}");
-        OioHttpResponse resp = http.post(
-                format(CREATE_CONTAINER_FORMAT, settings.url(), settings.ns(),
-                        Strings.urlEncode(url.account()),
-                        Strings.urlEncode(url.container())))
-                .header(OIO_ACTION_MODE_HEADER, "autocreate")
-                .body(body)
-                .hosts(hosts).withRequestContext(reqCtx).verifier(CONTAINER_VERIFIER).execute()
-                .close();
-        if (204 == resp.code())
-            throw new ContainerExistException("Container already present");
-
-        return new ContainerInfo(url.container());
+        invalidateContainer(url);
+        try {
+            OioHttpResponse resp = http.post(
+                    format(CREATE_CONTAINER_FORMAT, settings.url(), settings.ns(),
+                            Strings.urlEncode(url.account()),
+                            Strings.urlEncode(url.container())))
+                    .header(OIO_ACTION_MODE_HEADER, "autocreate")
+                    .body(body)
+                    .hosts(hosts).withRequestContext(reqCtx).verifier(CONTAINER_VERIFIER).execute()
+                    .close();
+            if (204 == resp.code())
+                throw new ContainerExistException("Container already present");
+
+            return new ContainerInfo(url.container());
+        } finally {
+            invalidateContainer(url);
+        }
     }
 
     /**
@@ -467,13 +530,16 @@ public class ProxyClient {
      */
     public ContainerInfo getContainerInfo(OioUrl url, RequestContext reqCtx) throws OioException {
         checkArgument(null != url, INVALID_URL_MSG);
+        ContainerInfo cached = null == containerCache ? null : containerCache.info(url);
+        if (null != cached)
+            return cached;
         OioHttpResponse r = http
                 .get(format(GET_CONTAINER_INFO_FORMAT, settings.url(), settings.ns(),
                         Strings.urlEncode(url.account()), Strings.urlEncode(url.container())))
                 .hosts(hosts).verifier(CONTAINER_VERIFIER).withRequestContext(reqCtx).execute()
                 .close();
 
-        return new ContainerInfo(url.container()).account(r.header(ACCOUNT_HEADER))
+        ContainerInfo info = new ContainerInfo(url.container()).account(r.header(ACCOUNT_HEADER))
                 .ctime(longHeader(r, M2_CTIME_HEADER)).init(longHeader(r, M2_INIT_HEADER))
                 .usage(longHeader(r, M2_USAGE_HEADER)).version(longHeader(r, M2_VERSION_HEADER))
                 .id(r.header(CONTAINER_SYS_NAME_HEADER)).ns(r.header(NS_HEADER))
@@ -484,6 +550,9 @@ public class ProxyClient {
                 .versionMainChunks(r.header(VERSION_MAIN_CHUNKS_HEADER))
                 .versionMainContents(r.header(VERSION_MAIN_CONTENTS_HEADER))
                 .versionMainProperties(r.header(VERSION_MAIN_PROPERTIES_HEADER));
+        if (null != containerCache)
+            containerCache.info(url, info);
+        return info;
     }
 
     /**
@@ -521,14 +590,7 @@ public class ProxyClient {
             throws OioException {
         checkArgument(null != url, INVALID_URL_MSG);
         checkArgument(null != options, "Invalid options");
-        OioHttpResponse resp = http
-                .get(format(LIST_OBJECTS_FORMAT, settings.url(), settings.ns(),
-                        Strings.urlEncode(url.account()), Strings.urlEncode(url.container())))
-                .hosts(hosts)
-                .query(MAX_PARAM, options.limit() > 0 ? String.valueOf(options.limit()) : null)
-                .query(PREFIX_PARAM, options.prefix()).query(MARKER_PARAM, options.marker())
-                .query(DELIMITER_PARAM, options.delimiter()).verifier(CONTAINER_VERIFIER)
-                .withRequestContext(reqCtx).execute();
+        OioHttpResponse resp = openListing(url, options, reqCtx);
         boolean success = false;
         try {
             ObjectList objectList = gson().fromJson(
@@ -546,6 +608,46 @@ public class ProxyClient {
         }
     }
 
+    /**
+     * Iterates over all the objects of a container matching the specified
+     * options, following the truncated listings. The objects are decoded
+     * while the listing is received, and the next page is requested while
+     * the current one is consumed, so that huge containers can be scanned
+     * without holding their listing in memory.
+     * <p>
+     * The iterator must be closed if it is not consumed until its end.
+     *
+     * @param url
+     *            the {@code url} of the container to list
+     * @param options
+     *            the options of the listing. The limit is the total number
+     *            of objects to iterate over, the prefixes are not returned.
+     * @param reqCtx
+     *            common parameters to all requests
+     * @return an {@link ObjectIterator} over the matching objects
+     * @throws OioException
+     *             if any error occurs during requests execution, from the
+     *             methods of the iterator
+     */
+    public ObjectIterator iterateObjects(OioUrl url, ListOptions options,
+            RequestContext reqCtx) {
+        checkArgument(null != url, INVALID_URL_MSG);
+        checkArgument(null != options, "Invalid options");
+        return new ObjectIterator(this, listers, url, options, reqCtx);
+    }
+
+    OioHttpResponse openListing(OioUrl url, ListOptions options,
+            RequestContext reqCtx) {
+        return http
+                .get(format(LIST_OBJECTS_FORMAT, settings.url(), settings.ns(),
+                        Strings.urlEncode(url.account()), Strings.urlEncode(url.container())))
+                .hosts(hosts)
+                .query(MAX_PARAM, options.limit() > 0 ? String.valueOf(options.limit()) : null)
+                .query(PREFIX_PARAM, options.prefix()).query(MARKER_PARAM, options.marker())
+                .query(DELIMITER_PARAM, options.delimiter()).verifier(CONTAINER_VERIFIER)
+                .withRequestContext(reqCtx).execute();
+    }
+
     /**
      * Deletes a container from the OpenIO namespace. The container should be
      * empty to be destroyed.
@@ -573,11 +675,16 @@ public class ProxyClient {
      */
     public void deleteContainer(OioUrl url, RequestContext reqCtx) throws OioException {
         checkArgument(null != url, INVALID_URL_MSG);
-        http.post(
-                format(DELETE_CONTAINER_FORMAT, settings.url(), settings.ns(),
-                        Strings.urlEncode(url.account()), Strings.urlEncode(url.container())))
-                .hosts(hosts).verifier(CONTAINER_VERIFIER).withRequestContext(reqCtx).execute()
-                .close();
+        invalidateContainer(url);
+        try {
+            http.post(
+                    format(DELETE_CONTAINER_FORMAT, settings.url(), settings.ns(),
+                            Strings.urlEncode(url.account()), Strings.urlEncode(url.container())))
+                    .hosts(hosts).verifier(CONTAINER_VERIFIER).withRequestContext(reqCtx).execute()
+                    .close();
+        } finally {
+            invalidateContainer(url);
+        }
     }
 
     /**
@@ -629,21 +736,28 @@ public class ProxyClient {
         Map<String, String> props = oinf.properties();
         String body = String.format("{\"chunks\": %1$s, \"properties\": %2$s}",
                 gson().toJson(oinf.chunks()), props != null ? gson().toJson(props) : "{}");
-        http.post(
-                format(PUT_OBJECT_FORMAT, settings.url(), settings.ns(),
-                        Strings.urlEncode(oinf.url().account()),
-                        Strings.urlEncode(oinf.url().container()),
-                        Strings.urlEncode(oinf.url().object())))
-                .header(CONTENT_META_LENGTH_HEADER, String.valueOf(oinf.size()))
-                .header(CONTENT_META_HASH_HEADER, oinf.hash())
-                .header(CONTENT_META_POLICY_HEADER, oinf.policy())
-                .header(CONTENT_META_CHUNK_METHOD_HEADER, oinf.chunkMethod())
-                .header(CONTENT_META_VERSION_HEADER, versionHeader(oinf, version))
-                .header(CONTENT_META_ID_HEADER, oinf.oid())
-                .body(body)
-                .hosts(hosts).withRequestContext(reqCtx).verifier(OBJECT_VERIFIER).execute()
-                .close();
-        return oinf;
+        invalidate(oinf.url(), oinf.version());
+        invalidateContainerInfo(oinf.url());
+        try {
+            http.post(
+                    format(PUT_OBJECT_FORMAT, settings.url(), settings.ns(),
+                            Strings.urlEncode(oinf.url().account()),
+                            Strings.urlEncode(oinf.url().container()),
+                            Strings.urlEncode(oinf.url().object())))
+                    .header(CONTENT_META_LENGTH_HEADER, String.valueOf(oinf.size()))
+                    .header(CONTENT_META_HASH_HEADER, oinf.hash())
+                    .header(CONTENT_META_POLICY_HEADER, oinf.policy())
+                    .header(CONTENT_META_CHUNK_METHOD_HEADER, oinf.chunkMethod())
+                    .header(CONTENT_META_VERSION_HEADER, versionHeader(oinf, version))
+                    .header(CONTENT_META_ID_HEADER, oinf.oid())
+                    .body(body)
+                    .hosts(hosts).withRequestContext(reqCtx).verifier(OBJECT_VERIFIER).execute()
+                    .close();
+            return oinf;
+        } finally {
+            invalidate(oinf.url(), oinf.version());
+            invalidateContainerInfo(oinf.url());
+        }
     }
 
     /**
@@ -737,21 +851,62 @@ public class ProxyClient {
     public ObjectInfo getObjectInfo(OioUrl url, Long version, RequestContext reqCtx,
             boolean loadProperties) throws OioException {
         checkArgument(null != url, INVALID_URL_MSG);
-        String uri = format(GET_OBJECT_FORMAT, settings.url(), settings.ns(),
-                Strings.urlEncode(url.account()), Strings.urlEncode(url.container()),
-                Strings.urlEncode(url.object()));
-        if (version != null) {
-            uri += "&version=" + version.toString();
+        ObjectInfo info = cachedObjectInfo(url, version, reqCtx);
+        if (null == info) {
+            OioHttpResponse resp = showObject(url, version, reqCtx);
+            info = objectShowObjectInfoAndClose(url, resp);
+            cacheObjectInfo(url, version, info);
         }
-        OioHttpResponse resp = http.get(uri).hosts(hosts).verifier(OBJECT_VERIFIER)
-                .withRequestContext(reqCtx).execute();
-        ObjectInfo info = objectShowObjectInfoAndClose(url, resp);
         if (loadProperties) {
             info.properties(getObjectProperties(url, reqCtx));
         }
         return info;
     }
 
+    /**
+     * Returns informations about the specified object, notifying the
+     * specified listener of each chunk as soon as it is decoded, while the
+     * rest of the response is still being read. Properties are not loaded.
+     *
+     * @param url
+     *            the url of the object
+     * @param version
+     *            the version to get (could be {@code null} to get latest
+     *            version)
+     * @param reqCtx
+     *            common parameters to all requests
+     * @param listener
+     *            the listener to notify
+     * @return an {@link ObjectInfo} containing informations about the object
+     */
+    public ObjectInfo getObjectInfo(OioUrl url, Long version, RequestContext reqCtx,
+            ChunkListener listener) throws OioException {
+        checkArgument(null != url, INVALID_URL_MSG);
+        checkArgument(null != listener, "listener cannot be null");
+        ObjectInfo cached = cachedObjectInfo(url, version, reqCtx);
+        if (null != cached) {
+            listener.object(cached);
+            for (ChunkInfo ci : cached.chunks())
+                listener.chunk(ci);
+            return cached;
+        }
+        OioHttpResponse resp = showObject(url, version, reqCtx);
+        boolean success = false;
+        try {
+            ObjectInfo oinf = fillObjectInfo(url, resp);
+            if (oinf.chunkMethod().startsWith(OioConstants.EC_PREFIX)
+                    && settings.ecdrain() && Strings.nullOrEmpty(settings.ecd()))
+                throw new OioException("Unable to decode EC encoded object without ecd");
+            listener.object(oinf);
+            oinf.chunks(streamChunks(resp, listener));
+            success = true;
+            cacheObjectInfo(url, version, oinf);
+            return oinf;
+        } finally {
+            resp.close(success);
+        }
+    }
+
     /**
      * Deletes an object from its container
      * 
@@ -796,13 +951,20 @@ public class ProxyClient {
      */
     public void deleteObject(OioUrl url, Long version, RequestContext reqCtx) throws OioException {
         checkArgument(null != url, INVALID_URL_MSG);
-        http.post(
-                format(DELETE_OBJECT_FORMAT, settings.url(), settings.ns(),
-                        Strings.urlEncode(url.account()), Strings.urlEncode(url.container()),
-                        Strings.urlEncode(url.object())))
-                .header(CONTENT_META_VERSION_HEADER, null == version ? null : version.toString())
-                .verifier(OBJECT_VERIFIER).withRequestContext(reqCtx).hosts(hosts).execute()
-                .close();
+        invalidate(url, version);
+        invalidateContainerInfo(url);
+        try {
+            http.post(
+                    format(DELETE_OBJECT_FORMAT, settings.url(), settings.ns(),
+                            Strings.urlEncode(url.account()), Strings.urlEncode(url.container()),
+                            Strings.urlEncode(url.object())))
+                    .header(CONTENT_META_VERSION_HEADER, null == version ? null : version.toString())
+                    .verifier(OBJECT_VERIFIER).withRequestContext(reqCtx).hosts(hosts).execute()
+                    .close();
+        } finally {
+            invalidate(url, version);
+            invalidateContainerInfo(url);
+        }
     }
 
     /* -- PROPERTIES -- */
@@ -874,15 +1036,20 @@ public class ProxyClient {
         checkArgument(null != properties && properties.size() > 0, "Invalid properties");
         String props = gson().toJson(properties);
         String root = String.format("{\"properties\": %1$s}", props);
-        RequestBuilder request = http.post(format(CONTAINER_SET_PROP,
-                settings.url(), settings.ns(),
-                Strings.urlEncode(url.account()),
-                Strings.urlEncode(url.container())));
-        if (clear)
-            request.query(FLUSH_PARAM, "1");
-        request.verifier(CONTAINER_VERIFIER)
-                .withRequestContext(reqCtx).hosts(hosts).body(root)
-                .execute().close();
+        invalidateContainer(url);
+        try {
+            RequestBuilder request = http.post(format(CONTAINER_SET_PROP,
+                    settings.url(), settings.ns(),
+                    Strings.urlEncode(url.account()),
+                    Strings.urlEncode(url.container())));
+            if (clear)
+                request.query(FLUSH_PARAM, "1");
+            request.verifier(CONTAINER_VERIFIER)
+                    .withRequestContext(reqCtx).hosts(hosts).body(root)
+                    .execute().close();
+        } finally {
+            invalidateContainer(url);
+        }
     }
 
     /**
@@ -918,13 +1085,20 @@ public class ProxyClient {
      */
     public Map<String, String> getContainerProperties(OioUrl url, RequestContext reqCtx) {
         checkArgument(null != url, INVALID_URL_MSG);
+        Map<String, String> cached = null == containerCache ? null
+                : containerCache.properties(url);
+        if (null != cached)
+            return cached;
         OioHttpResponse resp = http
                 .post(format(CONTAINER_GET_PROP, settings.url(), settings.ns(),
                         Strings.urlEncode(url.account()), Strings.urlEncode(url.container())))
                 .hosts(hosts).verifier(CONTAINER_VERIFIER).withRequestContext(reqCtx).execute();
         try {
             Map<String, Map<String, String>> res = JsonUtils.jsonToMapMap(resp.body());
-            return res.get("properties");
+            Map<String, String> props = res.get("properties");
+            if (null != containerCache)
+                containerCache.properties(url, props);
+            return props;
         } finally {
             resp.close();
         }
@@ -966,11 +1140,16 @@ public class ProxyClient {
     public void deleteContainerProperties(RequestContext reqCtx, OioUrl url, String... keys) {
         checkArgument(null != url, INVALID_URL_MSG);
         checkArgument(null != keys && 0 < keys.length);
-        http.post(
-                format(CONTAINER_DEL_PROP, settings.url(), settings.ns(),
-                        Strings.urlEncode(url.account()), Strings.urlEncode(url.container())))
-                .body(gson().toJson(keys)).hosts(hosts).verifier(CONTAINER_VERIFIER)
-                .withRequestContext(reqCtx).execute().close();
+        invalidateContainer(url);
+        try {
+            http.post(
+                    format(CONTAINER_DEL_PROP, settings.url(), settings.ns(),
+                            Strings.urlEncode(url.account()), Strings.urlEncode(url.container())))
+                    .body(gson().toJson(keys)).hosts(hosts).verifier(CONTAINER_VERIFIER)
+                    .withRequestContext(reqCtx).execute().close();
+        } finally {
+            invalidateContainer(url);
+        }
     }
 
     /**
@@ -1007,11 +1186,16 @@ public class ProxyClient {
     public void deleteContainerProperties(OioUrl url, List<String> keys, RequestContext reqCtx) {
         checkArgument(null != url, INVALID_URL_MSG);
         checkArgument(null != keys && 0 < keys.size());
-        http.post(
-                format(CONTAINER_DEL_PROP, settings.url(), settings.ns(),
-                        Strings.urlEncode(url.account()), Strings.urlEncode(url.container())))
-                .body(gson().toJson(keys)).hosts(hosts).verifier(CONTAINER_VERIFIER)
-                .withRequestContext(reqCtx).execute().close();
+        invalidateContainer(url);
+        try {
+            http.post(
+                    format(CONTAINER_DEL_PROP, settings.url(), settings.ns(),
+                            Strings.urlEncode(url.account()), Strings.urlEncode(url.container())))
+                    .body(gson().toJson(keys)).hosts(hosts).verifier(CONTAINER_VERIFIER)
+                    .withRequestContext(reqCtx).execute().close();
+        } finally {
+            invalidateContainer(url);
+        }
     }
 
     /**
@@ -1085,16 +1269,21 @@ public class ProxyClient {
         checkArgument(null != properties && properties.size() > 0, "Invalid properties");
         String body = String.format("{\"properties\": %1$s}",
                 gson().toJson(properties));
-        RequestBuilder request = http.post(format(OBJECT_SET_PROP,
-                settings.url(), settings.ns(),
-                Strings.urlEncode(url.account()),
-                Strings.urlEncode(url.container()),
-                Strings.urlEncode(url.object())));
-        if (clear)
-            request.query(FLUSH_PARAM, "1");
-        request.verifier(OBJECT_VERIFIER)
-                .withRequestContext(reqCtx).hosts(hosts).body(body)
-                .execute().close();
+        invalidate(url, null);
+        try {
+            RequestBuilder request = http.post(format(OBJECT_SET_PROP,
+                    settings.url(), settings.ns(),
+                    Strings.urlEncode(url.account()),
+                    Strings.urlEncode(url.container()),
+                    Strings.urlEncode(url.object())));
+            if (clear)
+                request.query(FLUSH_PARAM, "1");
+            request.verifier(OBJECT_VERIFIER)
+                    .withRequestContext(reqCtx).hosts(hosts).body(body)
+                    .execute().close();
+        } finally {
+            invalidate(url, null);
+        }
     }
 
     /**
@@ -1134,14 +1323,28 @@ public class ProxyClient {
      */
     public Map<String, String> getObjectProperties(OioUrl url, RequestContext reqCtx) {
         checkArgument(null != url && null != url.object(), INVALID_URL_MSG);
-        OioHttpResponse resp = http
-                .post(format(OBJECT_GET_PROP, settings.url(), settings.ns(),
-                        Strings.urlEncode(url.account()), Strings.urlEncode(url.container()),
-                        Strings.urlEncode(url.object()))).hosts(hosts).verifier(OBJECT_VERIFIER)
-                .withRequestContext(reqCtx).execute();
+        Map<String, String> cached = null == objectCache ? null
+                : objectCache.properties(url);
+        if (null != cached)
+            return cached;
+        OioHttpResponse resp;
+        try {
+            resp = http
+                    .post(format(OBJECT_GET_PROP, settings.url(), settings.ns(),
+                            Strings.urlEncode(url.account()), Strings.urlEncode(url.container()),
+                            Strings.urlEncode(url.object()))).hosts(hosts).verifier(OBJECT_VERIFIER)
+                    .withRequestContext(reqCtx).execute();
+        } catch (ObjectNotFoundException e) {
+            if (null != objectCache)
+                objectCache.propertiesNotFound(url, e);
+            throw e;
+        }
         try {
             Map<String, Map<String, String>> rootMap = JsonUtils.jsonToMapMap(resp.body());
-            return rootMap.get("properties");
+            Map<String, String> props = rootMap.get("properties");
+            if (null != objectCache)
+                objectCache.properties(url, props);
+            return props;
         } finally {
             resp.close();
         }
@@ -1187,11 +1390,16 @@ public class ProxyClient {
         String body = "[]";
         if (keys != null)
             body = gson().toJson(keys);
-        http.post(
-                format(OBJECT_DEL_PROP, settings.url(), settings.ns(),
-                        Strings.urlEncode(url.account()), Strings.urlEncode(url.container()),
-                        Strings.urlEncode(url.object()))).hosts(hosts).body(body)
-                .verifier(CONTAINER_VERIFIER).withRequestContext(reqCtx).execute().close();
+        invalidate(url, null);
+        try {
+            http.post(
+                    format(OBJECT_DEL_PROP, settings.url(), settings.ns(),
+                            Strings.urlEncode(url.account()), Strings.urlEncode(url.container()),
+                            Strings.urlEncode(url.object()))).hosts(hosts).body(body)
+                    .verifier(CONTAINER_VERIFIER).withRequestContext(reqCtx).execute().close();
+        } finally {
+            invalidate(url, null);
+        }
     }
 
     /**
@@ -1234,31 +1442,87 @@ public class ProxyClient {
         String body = "[]";
         if (keys != null)
             body = gson().toJson(keys);
-        http.post(
-                format(OBJECT_DEL_PROP, settings.url(), settings.ns(),
-                        Strings.urlEncode(url.account()), Strings.urlEncode(url.container()),
-                        Strings.urlEncode(url.object()))).hosts(hosts).body(body)
-                .verifier(CONTAINER_VERIFIER).withRequestContext(reqCtx).execute().close();
+        invalidate(url, null);
+        try {
+            http.post(
+                    format(OBJECT_DEL_PROP, settings.url(), settings.ns(),
+                            Strings.urlEncode(url.account()), Strings.urlEncode(url.container()),
+                            Strings.urlEncode(url.object()))).hosts(hosts).body(body)
+                    .verifier(CONTAINER_VERIFIER).withRequestContext(reqCtx).execute().close();
+        } finally {
+            invalidate(url, null);
+        }
     }
 
     /* -- INTERNALS -- */
 
+    private OioHttpResponse showObject(OioUrl url, Long version, RequestContext reqCtx) {
+        String uri = format(GET_OBJECT_FORMAT, settings.url(), settings.ns(),
+                Strings.urlEncode(url.account()), Strings.urlEncode(url.container()),
+                Strings.urlEncode(url.object()));
+        if (version != null) {
+            uri += "&version=" + version.toString();
+        }
+        try {
+            return http.get(uri).hosts(hosts).verifier(OBJECT_VERIFIER)
+                    .withRequestContext(reqCtx).execute();
+        } catch (ObjectNotFoundException e) {
+            if (null != objectCache)
+                objectCache.notFound(url, version, e);
+            throw e;
+        }
+    }
+
+    private ObjectInfo cachedObjectInfo(OioUrl url, Long version, RequestContext reqCtx) {
+        if (null == objectCache)
+            return null;
+        ObjectInfo oinf = objectCache.object(url, version);
+        return null == oinf ? null : oinf.withRequestContext(reqCtx);
+    }
+
+    private void cacheObjectInfo(OioUrl url, Long version, ObjectInfo oinf) {
+        if (null != objectCache)
+            objectCache.object(url, version, oinf);
+    }
+
+    /**
+     * Forgets what this client knows about an object it changes. It is done
+     * before the change, as the change may succeed even if the request fails,
+     * and after, as a concurrent lookup may have cached the former state
+     * meanwhile.
+     */
+    private void invalidate(OioUrl url, Long version) {
+        if (null != objectCache)
+            objectCache.invalidate(url, version);
+    }
+
+    /**
+     * Forgets what this client knows about a container it changes, before and
+     * after the change, as for the objects.
+     */
+    private void invalidateContainer(OioUrl url) {
+        if (null != containerCache)
+            containerCache.invalidate(url);
+    }
+
+    /**
+     * Forgets the informations of a container whose objects change, as its
+     * usage changes too.
+     */
+    private void invalidateContainerInfo(OioUrl url) {
+        if (null != containerCache)
+            containerCache.invalidateInfo(url);
+    }
+
     private ObjectInfo getBeansObjectInfoAndClose(OioUrl url, OioHttpResponse resp) {
         boolean success = false;
         try {
             ObjectInfo oinf = fillObjectInfo(url, resp);
             List<ChunkInfo> chunks = bodyChunk(resp);
             // check if we are using EC with ec daemon
-            if (oinf.isEC()) {
-                if (settings.ecdrain()) {
-                    if (Strings.nullOrEmpty(settings.ecd()))
-                        throw new OioException("Missing proxy#ecd configuration");
-                } else {
-                    // TODO impl EC in java
-                    throw new IllegalStateException(
-                            "Invalid configuration, we cannot do EC without ecd ATM");
-                }
-            }
+            if (oinf.isEC() && settings.ecdrain()
+                    && Strings.nullOrEmpty(settings.ecd()))
+                throw new OioException("Missing proxy#ecd configuration");
             oinf.chunks(chunks);
 
             success = true;
@@ -1275,7 +1539,7 @@ public class ProxyClient {
             List<ChunkInfo> chunks = bodyChunk(resp);
             // check if we are using EC with ecd
             if (oinf.chunkMethod().startsWith(OioConstants.EC_PREFIX)
-                    && (!settings.ecdrain() || Strings.nullOrEmpty(settings.ecd())))
+                    && settings.ecdrain() && Strings.nullOrEmpty(settings.ecd()))
                 throw new OioException("Unable to decode EC encoded object without ecd");
             oinf.chunks(chunks);
             success = true;
@@ -1309,6 +1573,27 @@ public class ProxyClient {
         }
     }
 
+    private List<ChunkInfo> streamChunks(OioHttpResponse resp, ChunkListener listener)
+            throws OioException {
+        List<ChunkInfo> chunks = new ArrayList<ChunkInfo>();
+        Gson gson = gson();
+        try {
+            JsonReader reader = new JsonReader(new InputStreamReader(resp.body(), OIO_CHARSET));
+            reader.beginArray();
+            while (reader.hasNext()) {
+                ChunkInfo ci = gson.fromJson(reader, ChunkInfo.class);
+                chunks.add(ci);
+                listener.chunk(ci);
+            }
+            reader.endArray();
+        } catch (OioException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new OioException("Body extraction error", e);
+        }
+        return chunks;
+    }
+
     private <T> List<T> listAndClose(OioHttpResponse resp) {
         boolean success = false;
         try {
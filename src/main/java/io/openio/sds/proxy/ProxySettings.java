@@ -24,9 +24,13 @@ public class ProxySettings {
     private ArrayList<InetSocketAddress> hosts = new ArrayList<InetSocketAddress>();
     private String ecd;
     private ArrayList<InetSocketAddress> ecdHosts = new ArrayList<InetSocketAddress>();
-    private boolean ecdrain = true; // not configurable atm cuz we can't do
-                                    // somehow else
+    private boolean ecdrain = true;
     private boolean autocreate = true;
+    private int objectCacheSize = 0;
+    private long objectCacheTtl = 5000;
+    private long objectCacheNegativeTtl = 1000;
+    private int containerCacheSize = 0;
+    private long containerCacheTtl = 1000;
     private OioHttpSettings http = new OioHttpSettings();
     private PoolingSettings pooling = new PoolingSettings();
 
@@ -152,6 +156,20 @@ public class ProxySettings {
         return ecdrain;
     }
 
+    /**
+     * Specifies whether erasure coded objects are encoded and decoded by ecd.
+     * Otherwise the client reads and writes their chunks directly, and only
+     * implements the ISA-L algorithms.
+     *
+     * @param ecdrain
+     *            {@code false} to encode the objects in the client
+     * @return this
+     */
+    public ProxySettings ecdrain(boolean ecdrain) {
+        this.ecdrain = ecdrain;
+        return this;
+    }
+
     public boolean autocreate() {
         return autocreate;
     }
@@ -160,4 +178,87 @@ public class ProxySettings {
         this.autocreate = autocreate;
         return this;
     }
+
+    public int objectCacheSize() {
+        return objectCacheSize;
+    }
+
+    /**
+     * Sets how many object descriptions are kept in the client, to spare the
+     * proxy the lookups of the objects read often. The cache is invalidated
+     * by the writes of this client only, so the objects written by other
+     * clients may be seen stale for up to {@link #objectCacheTtl()}.
+     *
+     * @param objectCacheSize
+     *            the maximum number of objects cached, 0 to disable the cache
+     * @return this
+     */
+    public ProxySettings objectCacheSize(int objectCacheSize) {
+        this.objectCacheSize = objectCacheSize;
+        return this;
+    }
+
+    public long objectCacheTtl() {
+        return objectCacheTtl;
+    }
+
+    /**
+     * @param objectCacheTtl
+     *            how long an object description is cached, in milliseconds
+     * @return this
+     */
+    public ProxySettings objectCacheTtl(long objectCacheTtl) {
+        this.objectCacheTtl = objectCacheTtl;
+        return this;
+    }
+
+    public long objectCacheNegativeTtl() {
+        return objectCacheNegativeTtl;
+    }
+
+    /**
+     * @param objectCacheNegativeTtl
+     *            how long an object not found is remembered, in
+     *            milliseconds, 0 to look it up again every time
+     * @return this
+     */
+    public ProxySettings objectCacheNegativeTtl(long objectCacheNegativeTtl) {
+        this.objectCacheNegativeTtl = objectCacheNegativeTtl;
+        return this;
+    }
+
+    public int containerCacheSize() {
+        return containerCacheSize;
+    }
+
+    /**
+     * Sets how many containers are kept in the client, with their
+     * informations, properties and linked services. The cache is invalidated
+     * by the writes of this client only, so the containers changed by other
+     * clients may be seen stale for up to {@link #containerCacheTtl()}.
+     *
+     * @param containerCacheSize
+     *            the maximum number of containers cached, 0 to disable the
+     *            cache
+     * @return this
+     */
+    public ProxySettings containerCacheSize(int containerCacheSize) {
+        this.containerCacheSize = containerCacheSize;
+        return this;
+    }
+
+    public long containerCacheTtl() {
+        return containerCacheTtl;
+    }
+
+    /**
+     * @param containerCacheTtl
+     *            how long the metadata of a container is cached, in
+     *            milliseconds
+     * @return this
+     */
+    public ProxySettings containerCacheTtl(long containerCacheTtl) {
+        this.containerCacheTtl = containerCacheTtl;
+        return this;
+    }
 }
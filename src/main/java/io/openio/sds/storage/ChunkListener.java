@@ -0,0 +1,27 @@
+package io.openio.sds.storage;
+
+import io.openio.sds.models.ChunkInfo;
+import io.openio.sds.models.ObjectInfo;
+
+/**
+ * Receives the description of an object while it is being decoded, so work
+ * can start before the whole description is available.
+ */
+public interface ChunkListener {
+
+	/**
+	 * Called once the object information is known, before any chunk.
+	 *
+	 * @param oinf
+	 *            the object, without its chunks
+	 */
+	void object(ObjectInfo oinf);
+
+	/**
+	 * Called for each chunk, in the order of the description.
+	 *
+	 * @param ci
+	 *            the chunk just decoded
+	 */
+	void chunk(ChunkInfo ci);
+}
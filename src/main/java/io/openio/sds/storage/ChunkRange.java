@@ -0,0 +1,63 @@
+package io.openio.sds.storage;
+
+/**
+ * Part of an object range held by a single chunk position
+ */
+public class ChunkRange {
+
+	private int pos;
+	private long offset;
+	private long length;
+	private long objectOffset;
+
+	public ChunkRange() {
+	}
+
+	/**
+	 * @return the position of the chunk
+	 */
+	public int pos() {
+		return pos;
+	}
+
+	public ChunkRange pos(int pos) {
+		this.pos = pos;
+		return this;
+	}
+
+	/**
+	 * @return the offset of the first byte in the chunk
+	 */
+	public long offset() {
+		return offset;
+	}
+
+	public ChunkRange offset(long offset) {
+		this.offset = offset;
+		return this;
+	}
+
+	/**
+	 * @return the number of bytes
+	 */
+	public long length() {
+		return length;
+	}
+
+	public ChunkRange length(long length) {
+		this.length = length;
+		return this;
+	}
+
+	/**
+	 * @return the offset of the first byte in the object
+	 */
+	public long objectOffset() {
+		return objectOffset;
+	}
+
+	public ChunkRange objectOffset(long objectOffset) {
+		this.objectOffset = objectOffset;
+		return this;
+	}
+}
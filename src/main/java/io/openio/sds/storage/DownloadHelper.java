@@ -1,9 +1,8 @@
 package io.openio.sds.storage;
 
-import static io.openio.sds.models.Range.between;
+import static io.openio.sds.common.Check.checkArgument;
 
-import java.util.Collections;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 import io.openio.sds.models.ObjectInfo;
@@ -11,56 +10,71 @@ import io.openio.sds.models.Range;
 
 public class DownloadHelper {
 
+	/**
+	 * Maps a range of an object to the chunk positions to download, using the
+	 * offset index of the object, so the cost does not depend on the number
+	 * of chunks before the range.
+	 * 
+	 * @param oinf
+	 *            the object
+	 * @param range
+	 *            the range of the object, or {@code null} for the whole object
+	 * @return the targets to download, in object order
+	 * @throws IllegalArgumentException
+	 *             if the range begins after the end of the object
+	 */
 	public static List<Target> loadTargets(ObjectInfo oinf, Range range) {
-
-		LinkedList<Target> targets = new LinkedList<Target>();
-
+		int count = oinf.sortedChunks().size();
+		List<Target> targets = new ArrayList<Target>(null == range ? count : 2);
 		if (null == range) {
-			for (int i = 0; i < oinf.sortedChunks().size(); i++) {
-				targets.addFirst(new Target()
-				        .setChunk(oinf.sortedChunks().get(i)));
-			}
-		} else {
-			ObjectOffset begin = findOffset(oinf, range.from());
-			ObjectOffset end = findOffset(oinf, range.to());
-			if (end.pos() == begin.pos()) {
-				targets.addFirst(new Target()
-				        .setChunk(oinf.sortedChunks().get(begin.pos()))
-				        .setRange(between(begin.offset(), end.offset())));
-			} else {
-				targets.addFirst(new Target()
-				        .setChunk(oinf.sortedChunks().get(begin.pos()))
-				        .setRange(between(begin.offset(),
-				                oinf.chunksize(begin.pos()).intValue()
-				                        - 1)));
-				for (int extrapos = begin.pos() + 1; extrapos < end
-				        .pos(); extrapos++) {
-					targets.addFirst(new Target()
-					        .setChunk(oinf.sortedChunks().get(extrapos))
-					        .setRange(between(0,
-					                oinf.chunksize(extrapos).intValue())));
-				}
-
-				targets.addFirst(new Target()
-				        .setChunk(oinf.sortedChunks().get(end.pos()))
-				        .setRange(between(0, end.offset())));
-			}
+			for (int i = 0; i < count; i++)
+				targets.add(new Target().setChunk(oinf.sortedChunks().get(i)));
+			return targets;
+		}
+		checkArgument(range.from() < oinf.size(),
+		        "Range begin out of content size");
+		long to = range.to() < 0 ? oinf.size() - 1
+		        : Math.min(range.to(), oinf.size() - 1);
+		for (ChunkRange cr : chunkRanges(oinf, range.from(),
+		        to - range.from() + 1)) {
+			targets.add(new Target()
+			        .setChunk(oinf.sortedChunks().get(cr.pos()))
+			        .setRange(Range.slice(cr.offset(), cr.length())));
 		}
-		Collections.reverse(targets);
 		return targets;
 	}
 
-	private static ObjectOffset findOffset(ObjectInfo oinf, long offset) {
-		if (-1 == offset)
-			return new ObjectOffset()
-			        .pos(oinf.nbchunks() - 1)
-			        .offset(oinf.chunksize(oinf.nbchunks() - 1).intValue() - 1);
-		for (int pos = 0; pos < oinf.nbchunks(); pos++) {
-			long size = oinf.chunksize(pos);
-			if (offset <= size)
-				return new ObjectOffset().pos(pos).offset(offset);
-			offset -= size;
+	/**
+	 * Splits a range of an object into the parts held by each chunk position.
+	 * 
+	 * @param oinf
+	 *            the object
+	 * @param from
+	 *            the offset of the first byte in the object
+	 * @param length
+	 *            the number of bytes
+	 * @return the chunk ranges, in object order
+	 * @throws IllegalArgumentException
+	 *             if the range exceeds the object size
+	 */
+	public static List<ChunkRange> chunkRanges(ObjectInfo oinf, long from,
+	        long length) {
+		checkArgument(0 <= from && 0 <= length && from + length <= oinf.size(),
+		        "Range out of content size");
+		List<ChunkRange> res = new ArrayList<ChunkRange>();
+		if (0 == length)
+			return res;
+		int count = oinf.sortedChunks().size();
+		for (int pos = oinf.position(from); pos < count && 0 < length; pos++) {
+			long offset = from - oinf.offset(pos);
+			long chunkLength = Math.min(length, oinf.positionSize(pos) - offset);
+			if (0 >= chunkLength)
+				continue;
+			res.add(new ChunkRange().pos(pos).offset(offset)
+			        .length(chunkLength).objectOffset(from));
+			from += chunkLength;
+			length -= chunkLength;
 		}
-		throw new IllegalArgumentException("Range begin out of content size");
+		return res;
 	}
 }
@@ -0,0 +1,324 @@
+package io.openio.sds.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import io.openio.sds.RequestContext;
+import io.openio.sds.logging.SdsLogger;
+import io.openio.sds.logging.SdsLoggerFactory;
+
+import static java.lang.String.format;
+
+/**
+ * Concatenates several streams, reading up to {@code readAhead} of the
+ * upcoming ones in the background while the current one is consumed. Each part
+ * is fetched into a bounded queue of blocks, so the memory used is bounded by
+ * the specified budget whatever the size of the parts. Bytes are always
+ * delivered in order.
+ * <p>
+ * The parts are expected to be lazy, i.e. to issue their request on the first
+ * read, so this happens in a background thread. When the executor has no
+ * thread available, the parts are read from the calling thread.
+ * <p>
+ * Consumed blocks are handed back to the fetching threads, through a pool
+ * which may be shared by several streams, so a steady read does not allocate
+ * new blocks.
+ * <p>
+ * Neither the fetching threads nor the reader wait longer than the
+ * {@link #timeout(int, RequestContext) timeout}: a part not consumed in time,
+ * e.g. of a stream dropped without being closed, is abandoned and its thread
+ * released, and a read waiting for data in vain fails.
+ */
+public class ReadAheadInputStream extends InputStream {
+
+	private static final SdsLogger logger = SdsLoggerFactory
+			.getLogger(ReadAheadInputStream.class);
+
+	public static final int BLOCK_SIZE = 65536;
+
+	public static final int DEFAULT_TIMEOUT = 60000;
+
+	private static final byte[] EOF = new byte[0];
+
+	private final List<? extends InputStream> parts;
+	private final ExecutorService executor;
+	private final int readAhead;
+	private final int blocksPerPart;
+	private final LinkedList<Part> scheduled = new LinkedList<Part>();
+	/* consumed blocks, to be filled again */
+	private final BlockingQueue<byte[]> free;
+	private final byte[] single = new byte[1];
+
+	private int next = 0;
+	private boolean inline = false;
+	private Part current;
+	private byte[] block;
+	private int blockPos;
+	private boolean closed = false;
+	private int timeout = DEFAULT_TIMEOUT;
+	private RequestContext reqCtx;
+
+	/**
+	 * @param parts
+	 *            the streams to concatenate
+	 * @param executor
+	 *            the executor to fetch the parts with
+	 * @param readAhead
+	 *            the number of parts to fetch in advance
+	 * @param bufferSize
+	 *            the maximum number of bytes to hold, for all the parts
+	 */
+	public ReadAheadInputStream(List<? extends InputStream> parts,
+			ExecutorService executor, int readAhead, int bufferSize) {
+		this(parts, executor, readAhead, bufferSize, null);
+	}
+
+	/**
+	 * @param parts
+	 *            the streams to concatenate
+	 * @param executor
+	 *            the executor to fetch the parts with
+	 * @param readAhead
+	 *            the number of parts to fetch in advance
+	 * @param bufferSize
+	 *            the maximum number of bytes to hold, for all the parts
+	 * @param blocks
+	 *            the pool of blocks of {@link #BLOCK_SIZE} bytes to take
+	 *            blocks from and to give them back to, or {@code null} to use
+	 *            a pool of its own
+	 */
+	public ReadAheadInputStream(List<? extends InputStream> parts,
+			ExecutorService executor, int readAhead, int bufferSize,
+			BlockingQueue<byte[]> blocks) {
+		this.parts = parts;
+		this.executor = executor;
+		this.readAhead = readAhead;
+		this.blocksPerPart = Math.max(1, bufferSize / ((readAhead + 1) * BLOCK_SIZE));
+		this.free = null != blocks ? blocks
+				: new ArrayBlockingQueue<byte[]>((readAhead + 1) * (blocksPerPart + 2));
+	}
+
+	/**
+	 * Bounds the time the fetching threads wait for the reader to make room,
+	 * and the reader waits for data.
+	 *
+	 * @param timeout
+	 *            the maximum wait, in milliseconds, usually the read timeout
+	 * @param reqCtx
+	 *            the context of the request, whose deadline, if any, also
+	 *            bounds the waits. May be {@code null}.
+	 * @return this
+	 */
+	public ReadAheadInputStream timeout(int timeout, RequestContext reqCtx) {
+		this.timeout = timeout;
+		this.reqCtx = reqCtx;
+		return this;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int read = read(single, 0, 1);
+		return read < 0 ? -1 : single[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] buf, int offset, int length) throws IOException {
+		if (closed)
+			throw new IOException("Stream closed");
+		if (0 >= length)
+			return 0;
+		while (true) {
+			if (null == current) {
+				schedule();
+				if (scheduled.isEmpty())
+					return -1;
+				current = scheduled.removeFirst();
+			}
+			if (null == current.future) {
+				int read = current.in.read(buf, offset, length);
+				if (read >= 0)
+					return read;
+				endOfPart();
+				continue;
+			}
+			if (null == block || blockPos >= block.length) {
+				recycle(block);
+				try {
+					block = current.take();
+				} catch (IOException e) {
+					close();
+					throw e;
+				}
+				blockPos = 0;
+				if (EOF == block) {
+					if (null != current.error)
+						throw current.error;
+					if (null != current.failure)
+						throw current.failure;
+					endOfPart();
+					continue;
+				}
+			}
+			int n = Math.min(length, block.length - blockPos);
+			System.arraycopy(block, blockPos, buf, offset, n);
+			blockPos += n;
+			return n;
+		}
+	}
+
+	@Override
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		if (null != current)
+			current.cancel();
+		for (Part part : scheduled)
+			part.cancel();
+		scheduled.clear();
+		current = null;
+		block = null;
+	}
+
+	private void recycle(byte[] b) {
+		if (null != b && BLOCK_SIZE == b.length)
+			free.offer(b);
+	}
+
+	private void endOfPart() {
+		closeQuietly(current.in);
+		current = null;
+		block = null;
+	}
+
+	private void schedule() {
+		while (next < parts.size() && scheduled.size() <= readAhead) {
+			Part part = new Part(parts.get(next++));
+			if (!inline) {
+				try {
+					part.future = executor.submit(part);
+				} catch (RejectedExecutionException e) {
+					logger.debug("No thread available, reading parts inline");
+					inline = true;
+				}
+			}
+			scheduled.add(part);
+		}
+	}
+
+	/**
+	 * @return how long to wait for a queue, in milliseconds
+	 */
+	private long waitTime() {
+		if (null == reqCtx || !reqCtx.hasDeadline())
+			return timeout;
+		return Math.max(1, Math.min(timeout, reqCtx.timeout()));
+	}
+
+	private static void closeQuietly(InputStream in) {
+		try {
+			in.close();
+		} catch (IOException e) {
+			logger.warn("Failed to close part stream", e);
+		}
+	}
+
+	private class Part implements Runnable {
+
+		private final InputStream in;
+		private final BlockingQueue<byte[]> queue;
+		private volatile IOException error;
+		private volatile RuntimeException failure;
+		private volatile boolean abandoned = false;
+		private Future<?> future;
+
+		Part(InputStream in) {
+			this.in = in;
+			this.queue = new ArrayBlockingQueue<byte[]>(blocksPerPart + 1);
+		}
+
+		@Override
+		public void run() {
+			try {
+				try {
+					while (true) {
+						byte[] b = free.poll();
+						if (null == b)
+							b = new byte[BLOCK_SIZE];
+						int done = 0;
+						int read = 0;
+						while (done < b.length
+								&& -1 != (read = in.read(b, done, b.length - done)))
+							done += read;
+						if (done > 0 && !offer(done == b.length ? b
+								: Arrays.copyOf(b, done)))
+							return;
+						if (-1 == read)
+							break;
+					}
+				} catch (IOException e) {
+					error = e;
+				} catch (RuntimeException e) {
+					failure = e;
+				}
+				offer(EOF);
+			} catch (InterruptedException e) {
+				closeQuietly(in);
+			}
+		}
+
+		/**
+		 * @return {@code false} if the part has been abandoned, as nobody
+		 *         made room for the block in time
+		 */
+		private boolean offer(byte[] b) throws InterruptedException {
+			long wait = waitTime();
+			if (queue.offer(b, wait, TimeUnit.MILLISECONDS))
+				return true;
+			logger.debug(format("Part not read for %d ms, abandoned", wait));
+			error = new SocketTimeoutException(format(
+					"Read ahead abandoned, the stream was not read for %d ms",
+					wait));
+			abandoned = true;
+			closeQuietly(in);
+			return false;
+		}
+
+		byte[] take() throws IOException {
+			try {
+				byte[] b = queue.poll();
+				if (null != b)
+					return b;
+				if (abandoned)
+					throw error;
+				long wait = waitTime();
+				b = queue.poll(wait, TimeUnit.MILLISECONDS);
+				if (null != b)
+					return b;
+				if (abandoned)
+					throw error;
+				throw new SocketTimeoutException(format(
+						"No data read ahead within %d ms", wait));
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException("Interrupted while waiting for data");
+			}
+		}
+
+		void cancel() {
+			if (null != future)
+				future.cancel(true);
+			closeQuietly(in);
+		}
+	}
+}
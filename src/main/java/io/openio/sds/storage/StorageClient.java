@@ -25,6 +25,13 @@ public interface StorageClient {
 
     public ObjectInfo uploadChunks(ObjectInfo oinf, byte[] data, RequestContext reqCtx);
 
+    /**
+     * Uploads the chunks of a single position, filling their size and hash.
+     * Different positions of the same object may be uploaded concurrently.
+     */
+    public ObjectInfo uploadPosition(ObjectInfo oinf, int pos, long size, InputStream data,
+            RequestContext reqCtx);
+
     public InputStream downloadObject(ObjectInfo oinf);
 
     public InputStream downloadObject(ObjectInfo oinf, Range range);
@@ -0,0 +1,335 @@
+package io.openio.sds.storage.ec;
+
+import static io.openio.sds.common.Check.checkArgument;
+import static io.openio.sds.common.OioConstants.CHUNK_META_METACHUNK_SIZE;
+import static java.lang.String.format;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import io.openio.sds.RequestContext;
+import io.openio.sds.common.FeedableInputStream;
+import io.openio.sds.common.Hash;
+import io.openio.sds.common.Hex;
+import io.openio.sds.exceptions.OioException;
+import io.openio.sds.http.OioHttp;
+import io.openio.sds.http.OioHttp.RequestBuilder;
+import io.openio.sds.logging.SdsLogger;
+import io.openio.sds.logging.SdsLoggerFactory;
+import io.openio.sds.models.ChunkInfo;
+import io.openio.sds.models.ObjectInfo;
+import io.openio.sds.models.Range;
+import io.openio.sds.storage.DownloadHelper;
+import io.openio.sds.storage.StorageClient;
+import io.openio.sds.storage.rawx.RawxClient;
+import io.openio.sds.storage.rawx.RawxSettings;
+import io.openio.sds.storage.rawx.StreamWrapper;
+import io.openio.sds.storage.rawx.UploadResult;
+
+/**
+ * Erasure codes objects in the client, without ecd. Each metachunk is encoded
+ * segment by segment with {@link ReedSolomon}, and its {@code k + m} chunks
+ * are streamed to their rawx services concurrently, as the segments are
+ * encoded. Objects are decoded by {@link EcInputStream}, from the chunks
+ * directly.
+ */
+public class EcClient implements StorageClient {
+
+	private static final SdsLogger logger = SdsLoggerFactory
+			.getLogger(EcClient.class);
+
+	private static final int MIN_WORKERS = 1;
+	private static final int MAX_WORKERS = 100;
+	private static final int IDLE_THREAD_KEEP_ALIVE = 30; // in seconds
+
+	private final OioHttp http;
+	private final RawxClient rawx;
+	private final RawxSettings settings;
+	private final ExecutorService executors;
+
+	public EcClient(OioHttp http, RawxClient rawx, RawxSettings settings) {
+		checkArgument(null != http, "http client cannot be null");
+		checkArgument(null != rawx, "rawx client cannot be null");
+		checkArgument(null != settings, "Settings cannot be null");
+		this.http = http;
+		this.rawx = rawx;
+		this.settings = settings;
+		this.executors = new ThreadPoolExecutor(MIN_WORKERS,
+				MAX_WORKERS,
+				IDLE_THREAD_KEEP_ALIVE,
+				TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(),
+				new ThreadFactory() {
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r);
+						t.setName("EcClient-Worker");
+						return t;
+					}
+				});
+	}
+
+	@Override
+	public ObjectInfo uploadChunks(ObjectInfo oinf, InputStream data) {
+		return uploadChunks(oinf, data, new RequestContext());
+	}
+
+	@Override
+	public ObjectInfo uploadChunks(ObjectInfo oinf, InputStream data,
+			RequestContext reqCtx) {
+		ReedSolomon codec = ReedSolomon.codec(oinf.ecinfo());
+		StreamWrapper wrapper = new StreamWrapper(data);
+		long remaining = oinf.size();
+		for (int pos = 0; pos < oinf.sortedChunks().size(); pos++) {
+			long size = Math.min(remaining, oinf.metachunksize(pos));
+			if (size == 0 && pos != 0)
+				throw new OioException("Too many chunks prepared");
+			uploadPosition(codec, oinf, pos, size, wrapper, reqCtx);
+			remaining -= size;
+		}
+		return oinf.hash(Hex.toHex(wrapper.md5()));
+	}
+
+	@Override
+	public ObjectInfo uploadChunks(ObjectInfo oinf, File data) {
+		return uploadChunks(oinf, data, new RequestContext());
+	}
+
+	@Override
+	public ObjectInfo uploadChunks(ObjectInfo oinf, File data,
+			RequestContext reqCtx) {
+		try {
+			FileInputStream fin = new FileInputStream(data);
+			try {
+				return uploadChunks(oinf, fin, reqCtx);
+			} finally {
+				try {
+					fin.close();
+				} catch (IOException e) {
+					logger.warn("Failed to close Inputstream, possible leak", e);
+				}
+			}
+		} catch (FileNotFoundException e) {
+			throw new IllegalArgumentException("File not found", e);
+		}
+	}
+
+	@Override
+	public ObjectInfo uploadChunks(ObjectInfo oinf, byte[] data) {
+		return uploadChunks(oinf, data, new RequestContext());
+	}
+
+	@Override
+	public ObjectInfo uploadChunks(ObjectInfo oinf, byte[] data,
+			RequestContext reqCtx) {
+		return uploadChunks(oinf, new ByteArrayInputStream(data), reqCtx);
+	}
+
+	@Override
+	public ObjectInfo uploadPosition(ObjectInfo oinf, int pos, long size,
+			InputStream data, RequestContext reqCtx) {
+		return uploadPosition(ReedSolomon.codec(oinf.ecinfo()), oinf, pos,
+				size, data, reqCtx);
+	}
+
+	@Override
+	public InputStream downloadObject(ObjectInfo oinf) {
+		return downloadObject(oinf, new RequestContext());
+	}
+
+	@Override
+	public InputStream downloadObject(ObjectInfo oinf, Range range) {
+		return downloadObject(oinf, range, new RequestContext());
+	}
+
+	@Override
+	public InputStream downloadObject(ObjectInfo oinf, RequestContext reqCtx) {
+		return downloadObject(oinf, null, reqCtx);
+	}
+
+	@Override
+	public InputStream downloadObject(ObjectInfo oinf, Range range,
+			RequestContext reqCtx) {
+		checkArgument(null != oinf);
+		long from = 0;
+		long to = oinf.size() - 1;
+		if (null != range) {
+			checkArgument(range.from() < oinf.size(),
+					"Range begin out of content size");
+			from = range.from();
+			if (0 <= range.to())
+				to = Math.min(range.to(), to);
+		}
+		return new EcInputStream(oinf,
+				DownloadHelper.chunkRanges(oinf, from, to - from + 1),
+				ReedSolomon.codec(oinf.ecinfo()), http, settings, executors,
+				reqCtx);
+	}
+
+	/* --- INTERNALS --- */
+
+	private ObjectInfo uploadPosition(ReedSolomon codec, final ObjectInfo oinf,
+			int pos, final long size, InputStream data,
+			final RequestContext reqCtx) {
+		ChunkInfo[] chunks = fragments(codec, oinf, pos);
+		final long chunkSize = Fragments.chunkSize(codec.k(), size,
+				settings.ecSegmentSize());
+		List<FeedableInputStream> bodies = new ArrayList<FeedableInputStream>();
+		List<Future<UploadResult>> futures = new ArrayList<Future<UploadResult>>();
+		for (final ChunkInfo ci : chunks) {
+			final FeedableInputStream in = new FeedableInputStream(5,
+					settings.http().readTimeout() / 5, 5);
+			bodies.add(in);
+			Callable<UploadResult> uploader = new Callable<UploadResult>() {
+
+				@Override
+				public UploadResult call() {
+					UploadResult result = new UploadResult(ci);
+					try {
+						RequestBuilder builder = rawx
+								.chunkUploadRequest(oinf, ci, reqCtx)
+								.header(CHUNK_META_METACHUNK_SIZE,
+										String.valueOf(size));
+						if (0 == chunkSize)
+							builder.body("");
+						else
+							builder.body(in, chunkSize);
+						builder.execute().close(false);
+					} catch (OioException e) {
+						in.setFailed(true);
+						result.exception(e);
+					} catch (RuntimeException e) {
+						// the encoder would otherwise wait for this body forever
+						in.setFailed(true);
+						result.exception(new OioException(format(
+								"Unexpected error while uploading chunk %s",
+								ci.url()), e));
+					}
+					return result;
+				}
+			};
+			try {
+				futures.add(executors.submit(uploader));
+			} catch (RejectedExecutionException e) {
+				cancel(bodies, futures);
+				throw new OioException("Failed to schedule chunk upload", e);
+			}
+		}
+
+		Hash md5 = Hash.md5();
+		try {
+			encode(codec, data, size, bodies, md5);
+		} catch (IOException e) {
+			cancel(bodies, futures);
+			throw new OioException("Stream read error", e);
+		}
+
+		int successes = 0;
+		try {
+			for (Future<UploadResult> future : futures) {
+				UploadResult result = future.get();
+				if (null != result.exception())
+					logger.warn(format("Failed to upload chunk %s",
+							result.chunkInfo()), result.exception());
+				else
+					successes++;
+			}
+		} catch (InterruptedException e) {
+			cancel(bodies, futures);
+			throw new OioException("got interrupted", e);
+		} catch (ExecutionException e) {
+			throw new OioException("Execution exception", e.getCause());
+		}
+		int quorum = rawx.quorum(oinf, pos);
+		if (successes < quorum)
+			throw new OioException(format(
+					"Quorum not reached when writing chunks at position %s (%d/%d)",
+					pos, successes, quorum));
+		String hash = md5.hash().toString();
+		for (ChunkInfo ci : chunks) {
+			ci.size(size);
+			ci.hash(hash);
+		}
+		return oinf;
+	}
+
+	/**
+	 * Reads the metachunk one segment at a time, and feeds each chunk body
+	 * with its fragment of the segment. The buffers are handed over to the
+	 * bodies, so they are allocated for each segment.
+	 */
+	private void encode(ReedSolomon codec, InputStream data, long size,
+			List<FeedableInputStream> bodies, Hash md5) throws IOException {
+		int k = codec.k();
+		long done = 0;
+		while (done < size) {
+			int len = (int) Math.min(settings.ecSegmentSize(), size - done);
+			int blockSize = Fragments.payloadSize(k, len);
+			// the bytes past len pad the last data fragment with zeros
+			byte[] segment = new byte[k * blockSize];
+			fill(segment, len, data);
+			md5.putBytes(segment, 0, len);
+			byte[][] parity = new byte[codec.m()][blockSize];
+			codec.encode(segment, 0, blockSize, parity);
+			done += len;
+			for (int i = 0; i < bodies.size(); i++) {
+				FeedableInputStream in = bodies.get(i);
+				in.feed(ByteBuffer.wrap(Fragments.header(
+						new byte[Fragments.HEADER_SIZE], i, blockSize, len,
+						codec.backendId())), false);
+				in.feed(i < k
+						? ByteBuffer.wrap(segment, i * blockSize, blockSize)
+						: ByteBuffer.wrap(parity[i - k]), done >= size);
+			}
+		}
+	}
+
+	private void fill(byte[] b, int len, InputStream data) throws IOException {
+		int done = 0;
+		while (done < len) {
+			int read = data.read(b, done, len - done);
+			if (-1 == read)
+				throw new EOFException("Unexpected end of stream");
+			done += read;
+		}
+	}
+
+	/**
+	 * @return the chunks of the position, indexed by their fragment number
+	 */
+	private ChunkInfo[] fragments(ReedSolomon codec, ObjectInfo oinf, int pos) {
+		ChunkInfo[] chunks = EcInputStream.chunks(oinf, pos, codec);
+		for (int i = 0; i < chunks.length; i++) {
+			if (null == chunks[i])
+				throw new OioException(format(
+						"Missing chunk %d.%d in the prepared chunks", pos, i));
+		}
+		return chunks;
+	}
+
+	private void cancel(List<FeedableInputStream> bodies,
+			List<Future<UploadResult>> futures) {
+		for (FeedableInputStream in : bodies)
+			in.setFailed(true);
+		for (Future<UploadResult> future : futures)
+			future.cancel(true);
+	}
+}
@@ -0,0 +1,477 @@
+package io.openio.sds.storage.ec;
+
+import static io.openio.sds.common.OioConstants.RANGE_HEADER;
+import static io.openio.sds.http.Verifiers.RAWX_VERIFIER;
+import static java.lang.String.format;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import io.openio.sds.RequestContext;
+import io.openio.sds.exceptions.OioException;
+import io.openio.sds.http.OioHttp;
+import io.openio.sds.http.OioHttpResponse;
+import io.openio.sds.http.PendingResponse;
+import io.openio.sds.logging.SdsLogger;
+import io.openio.sds.logging.SdsLoggerFactory;
+import io.openio.sds.models.ChunkInfo;
+import io.openio.sds.models.ObjectInfo;
+import io.openio.sds.storage.ChunkRange;
+import io.openio.sds.storage.DownloadHelper;
+import io.openio.sds.storage.rawx.RawxSettings;
+
+/**
+ * Reads an erasure coded object directly from the rawx services.
+ * <p>
+ * Each metachunk is read by batches of segments. The fragments of a batch are
+ * downloaded concurrently, and only from the data chunks holding the requested
+ * bytes, as a single range of each chunk. When one of them fails, or is still
+ * not there after {@link RawxSettings#ecReconstructDelay()}, the other chunks
+ * of the metachunk are downloaded too, and the missing data is reconstructed
+ * from the first {@code k} fragments to arrive.
+ * <p>
+ * The fragments which failed or were too slow are remembered for the rest of
+ * the stream: the following batches do not wait for them, and request the
+ * other chunks right away. They are only requested again when there are not
+ * enough other fragments left to decode.
+ */
+public class EcInputStream extends InputStream {
+
+	private static final SdsLogger logger = SdsLoggerFactory
+			.getLogger(EcInputStream.class);
+
+	private final ObjectInfo oinf;
+	private final ReedSolomon codec;
+	private final OioHttp http;
+	private final RawxSettings settings;
+	private final ExecutorService executor;
+	private final RequestContext reqCtx;
+	private final Iterator<ChunkRange> ranges;
+	private final byte[] single = new byte[1];
+	/* the fragments which failed or were too slow, indexed by fragment */
+	private final boolean[] suspect;
+
+	/* the metachunk being read */
+	private ChunkRange current;
+	private ChunkInfo[] chunks;
+	private long cursor;
+
+	private byte[] buf;
+	private int bufPos;
+	private List<Fetch> outstanding = new ArrayList<Fetch>();
+	private boolean closed = false;
+
+	EcInputStream(ObjectInfo oinf, List<ChunkRange> ranges, ReedSolomon codec,
+			OioHttp http, RawxSettings settings, ExecutorService executor,
+			RequestContext reqCtx) {
+		this.oinf = oinf;
+		this.codec = codec;
+		this.http = http;
+		this.settings = settings;
+		this.executor = executor;
+		this.reqCtx = reqCtx;
+		this.ranges = ranges.iterator();
+		this.suspect = new boolean[codec.k() + codec.m()];
+	}
+
+	@Override
+	public int read() throws IOException {
+		int read = read(single, 0, 1);
+		return -1 == read ? -1 : single[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (closed)
+			throw new IOException("Stream closed");
+		if (0 == len)
+			return 0;
+		if (null == buf || bufPos == buf.length) {
+			if (!next())
+				return -1;
+		}
+		int read = Math.min(len, buf.length - bufPos);
+		System.arraycopy(buf, bufPos, b, off, read);
+		bufPos += read;
+		return read;
+	}
+
+	@Override
+	public int available() {
+		return null == buf ? 0 : buf.length - bufPos;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		buf = null;
+		cancel();
+	}
+
+	/**
+	 * Decodes the next batch of segments
+	 *
+	 * @return {@code false} at the end of the stream
+	 */
+	private boolean next() throws IOException {
+		while (null == current
+				|| cursor == current.offset() + current.length()) {
+			if (!ranges.hasNext())
+				return false;
+			current = ranges.next();
+			cursor = current.offset();
+			chunks = chunks(oinf, current.pos(), codec);
+		}
+		buf = decode();
+		bufPos = 0;
+		return true;
+	}
+
+	private byte[] decode() throws IOException {
+		int k = codec.k();
+		int segmentSize = settings.ecSegmentSize();
+		long metachunkSize = oinf.positionSize(current.pos());
+		long stride = Fragments.HEADER_SIZE
+				+ Fragments.payloadSize(k, segmentSize);
+		long end = current.offset() + current.length();
+		int batch = Math.max(1, settings.downloadRangeSize() / segmentSize);
+		long first = cursor / segmentSize;
+		long last = Math.min((end - 1) / segmentSize, first + batch - 1);
+		long batchEnd = Math.min(end, (last + 1) * segmentSize);
+
+		// the data fragments holding the requested bytes
+		boolean[] needed = new boolean[k];
+		for (long s = first; s <= last; s++) {
+			long segStart = s * segmentSize;
+			int blockSize = blockSize(s, metachunkSize);
+			long a = Math.max(cursor, segStart) - segStart;
+			long b = Math.min(batchEnd, segStart + segmentSize) - segStart;
+			for (long j = a / blockSize; j <= (b - 1) / blockSize; j++)
+				needed[(int) j] = true;
+		}
+		long from = first * stride;
+		long to = last * stride + Fragments.HEADER_SIZE
+				+ blockSize(last, metachunkSize);
+		byte[][] fragments = fetch(needed, from, (int) (to - from), first, last,
+				metachunkSize);
+
+		byte[] out = new byte[(int) (batchEnd - cursor)];
+		int[] available = null;
+		byte[][] decoding = null;
+		for (long s = first; s <= last; s++) {
+			long segStart = s * segmentSize;
+			int blockSize = blockSize(s, metachunkSize);
+			int payload = (int) ((s - first) * stride) + Fragments.HEADER_SIZE;
+			long a = Math.max(cursor, segStart) - segStart;
+			long b = Math.min(batchEnd, segStart + segmentSize) - segStart;
+			byte[] block = null;
+			for (long j = a / blockSize; j <= (b - 1) / blockSize; j++) {
+				long blockStart = j * blockSize;
+				long copyFrom = Math.max(a, blockStart);
+				long copyTo = Math.min(b, blockStart + blockSize);
+				byte[] src = fragments[(int) j];
+				int srcOffset = payload + (int) (copyFrom - blockStart);
+				if (null == src) {
+					if (null == available) {
+						available = available(fragments);
+						decoding = codec.decodingMatrix(available);
+					}
+					if (null == block)
+						block = new byte[blockSize];
+					byte[][] shards = new byte[k][];
+					int[] offsets = new int[k];
+					for (int r = 0; r < k; r++) {
+						shards[r] = fragments[available[r]];
+						offsets[r] = payload;
+					}
+					codec.reconstruct(decoding, (int) j, shards, offsets,
+							blockSize, block, 0);
+					src = block;
+					srcOffset = (int) (copyFrom - blockStart);
+				}
+				System.arraycopy(src, srcOffset, out,
+						(int) (segStart + copyFrom - cursor),
+						(int) (copyTo - copyFrom));
+			}
+		}
+		cursor = batchEnd;
+		return out;
+	}
+
+	/**
+	 * @return the size of the fragments of a segment of the metachunk
+	 */
+	private int blockSize(long segment, long metachunkSize) {
+		long segmentSize = settings.ecSegmentSize();
+		return Fragments.payloadSize(codec.k(), (int) Math.min(segmentSize,
+				metachunkSize - segment * segmentSize));
+	}
+
+	private int[] available(byte[][] fragments) {
+		int[] available = new int[codec.k()];
+		int count = 0;
+		for (int i = 0; i < fragments.length && count < available.length; i++) {
+			if (null != fragments[i])
+				available[count++] = i;
+		}
+		return available;
+	}
+
+	/**
+	 * Downloads the same range of the chunks of the metachunk, until either
+	 * the needed data fragments or any {@code k} fragments are there.
+	 *
+	 * @return the downloaded fragments, indexed by fragment
+	 */
+	private byte[][] fetch(boolean[] needed, long from, int length,
+			long first, long last, long metachunkSize) throws IOException {
+		CompletionService<Fetched> cs = new ExecutorCompletionService<Fetched>(
+				executor);
+		int total = chunks.length;
+		byte[][] fragments = new byte[total][];
+		boolean[] scheduled = new boolean[total];
+		int pending = 0;
+		for (int i = 0; i < codec.k(); i++) {
+			scheduled[i] = needed[i] && !suspect[i];
+			if (scheduled[i] && schedule(cs, i, from, length, first, last,
+					metachunkSize))
+				pending++;
+		}
+		boolean degraded = pending < count(needed);
+		long deadline = System.currentTimeMillis()
+				+ settings.ecReconstructDelay();
+		int received = 0;
+		try {
+			while (!complete(fragments, needed) && received < codec.k()) {
+				if (degraded || 0 == pending) {
+					if (!degraded)
+						logger.warn(format("Data fragments of %s missing, reconstructing",
+								oinf.url()));
+					degraded = true;
+					for (int i = 0; i < total; i++) {
+						if (!scheduled[i] && !suspect[i]) {
+							scheduled[i] = true;
+							if (schedule(cs, i, from, length, first, last,
+									metachunkSize))
+								pending++;
+						}
+					}
+					// the suspect fragments as a last resort
+					for (int i = 0; i < total
+							&& received + pending < codec.k(); i++) {
+						if (!scheduled[i]) {
+							scheduled[i] = true;
+							if (schedule(cs, i, from, length, first, last,
+									metachunkSize))
+								pending++;
+						}
+					}
+				}
+				if (0 == pending)
+					throw new OioException(format(
+							"Not enough fragments to decode position %d of %s (%d/%d)",
+							current.pos(), oinf.url(), received, codec.k()));
+				Future<Fetched> done = degraded ? cs.take()
+						: cs.poll(Math.max(0,
+								deadline - System.currentTimeMillis()),
+								TimeUnit.MILLISECONDS);
+				if (null == done) {
+					logger.warn(format("Data fragments of %s too slow, reconstructing",
+							oinf.url()));
+					for (int i = 0; i < codec.k(); i++)
+						if (scheduled[i] && null == fragments[i])
+							suspect[i] = true;
+					degraded = true;
+					continue;
+				}
+				pending--;
+				Fetched fetched = done.get();
+				if (null == fetched.data) {
+					logger.warn(format("Failed to download fragment %s",
+							chunks[fetched.idx].url()), fetched.error);
+					suspect[fetched.idx] = true;
+					degraded = true;
+					continue;
+				}
+				fragments[fetched.idx] = fetched.data;
+				received++;
+			}
+		} catch (InterruptedException e) {
+			throw new OioException("got interrupted", e);
+		} catch (ExecutionException e) {
+			throw new OioException("Execution exception", e.getCause());
+		} finally {
+			// the late fragments are not needed anymore
+			cancel();
+		}
+		return fragments;
+	}
+
+	private static int count(boolean[] flags) {
+		int count = 0;
+		for (boolean flag : flags)
+			if (flag)
+				count++;
+		return count;
+	}
+
+	private static boolean complete(byte[][] fragments, boolean[] needed) {
+		for (int i = 0; i < needed.length; i++)
+			if (needed[i] && null == fragments[i])
+				return false;
+		return true;
+	}
+
+	private boolean schedule(CompletionService<Fetched> cs, final int idx,
+			final long from, final int length, final long first,
+			final long last, final long metachunkSize) {
+		final ChunkInfo ci = chunks[idx];
+		if (null == ci)
+			return false;
+		final Fetch fetch = new Fetch();
+		try {
+			fetch.future = cs.submit(new Callable<Fetched>() {
+
+				@Override
+				public Fetched call() {
+					try {
+						byte[] data = download(fetch, ci, from, length);
+						for (long s = first; s <= last; s++) {
+							int offset = (int) ((s - first) * (Fragments.HEADER_SIZE
+									+ Fragments.payloadSize(codec.k(),
+											settings.ecSegmentSize())));
+							if (!Fragments.valid(data, offset, idx,
+									blockSize(s, metachunkSize)))
+								throw new IOException(format(
+										"Invalid fragment header in segment %d", s));
+						}
+						return new Fetched(idx, data, null);
+					} catch (Exception e) {
+						return new Fetched(idx, null, e);
+					}
+				}
+			});
+			outstanding.add(fetch);
+			return true;
+		} catch (RejectedExecutionException e) {
+			logger.warn(format("Failed to schedule the download of %s", ci.url()), e);
+			return false;
+		}
+	}
+
+	private byte[] download(Fetch fetch, ChunkInfo ci, long from, int length)
+			throws IOException {
+		PendingResponse pending = http.get(ci.finalUrl())
+				.header(RANGE_HEADER, format("bytes=%d-%d", from, from + length - 1))
+				.verifier(RAWX_VERIFIER)
+				.withRequestContext(reqCtx)
+				.send();
+		if (!fetch.register(pending))
+			throw new IOException("Download cancelled");
+		OioHttpResponse resp = null;
+		boolean success = false;
+		try {
+			resp = pending.response();
+			if (206 != resp.code() && 0 != from)
+				throw new IOException(format("Range request not honored by %s (%d %s)",
+						ci.url(), resp.code(), resp.msg()));
+			byte[] data = new byte[length];
+			InputStream body = resp.body();
+			int done = 0;
+			while (done < length) {
+				int read = body.read(data, done, length - done);
+				if (-1 == read)
+					throw new EOFException("Unexpected end of chunk stream");
+				done += read;
+			}
+			success = true;
+			return data;
+		} finally {
+			fetch.register(null);
+			if (null != resp)
+				resp.close(success);
+		}
+	}
+
+	private void cancel() {
+		for (Fetch fetch : outstanding)
+			fetch.cancel();
+		outstanding.clear();
+	}
+
+	/**
+	 * @return the chunks of the position, indexed by fragment, {@code null}
+	 *         where the chunk is missing
+	 */
+	static ChunkInfo[] chunks(ObjectInfo oinf, int pos, ReedSolomon codec) {
+		ChunkInfo[] chunks = new ChunkInfo[codec.k() + codec.m()];
+		for (ChunkInfo ci : oinf.sortedChunks().get(pos)) {
+			int sub = ci.pos().sub();
+			if (0 <= sub && sub < chunks.length)
+				chunks[sub] = ci;
+		}
+		return chunks;
+	}
+
+	/**
+	 * A download in progress, whose connection is closed when it is cancelled,
+	 * as interrupting the thread does not unblock a socket read.
+	 */
+	private static class Fetch {
+
+		private Future<Fetched> future;
+		private PendingResponse pending;
+		private boolean cancelled = false;
+
+		/**
+		 * @return {@code false} if the fetch has been cancelled, in which case
+		 *         the request is aborted
+		 */
+		synchronized boolean register(PendingResponse pending) {
+			if (cancelled) {
+				if (null != pending)
+					pending.abort();
+				return false;
+			}
+			this.pending = pending;
+			return true;
+		}
+
+		void cancel() {
+			PendingResponse p;
+			synchronized (this) {
+				cancelled = true;
+				p = pending;
+				pending = null;
+			}
+			if (null != p)
+				p.abort();
+			future.cancel(true);
+		}
+	}
+
+	private static class Fetched {
+
+		private final int idx;
+		private final byte[] data;
+		private final Exception error;
+
+		Fetched(int idx, byte[] data, Exception error) {
+			this.idx = idx;
+			this.data = data;
+			this.error = error;
+		}
+	}
+}
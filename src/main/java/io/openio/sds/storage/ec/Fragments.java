@@ -0,0 +1,127 @@
+package io.openio.sds.storage.ec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+
+/**
+ * Layout of the erasure coded chunks, as written by liberasurecode.
+ * <p>
+ * A metachunk is split in segments, which are encoded separately. Each segment
+ * gives one fragment to each of the {@code k + m} chunks of the metachunk, so
+ * a chunk is the concatenation of its fragments of every segment. A fragment
+ * is an 80 bytes {@code fragment_header_t}, little-endian, followed by a
+ * payload of {@code ceil(segment / k)} bytes.
+ */
+public final class Fragments {
+
+	/** Size of a fragment header */
+	public static final int HEADER_SIZE = 80;
+
+	/** Default size of the segments, as configured in SDS */
+	public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+	private static final int METADATA_SIZE = 59;
+	private static final int MAGIC = 0xb0c5ecc;
+	private static final int CHKSUM_NONE = 1;
+	private static final int LIBEC_VERSION = version(1, 6, 2);
+	private static final int BACKEND_VERSION = version(2, 13, 0);
+
+	private Fragments() {
+	}
+
+	private static int version(int major, int minor, int rev) {
+		return (major << 16) | (minor << 8) | rev;
+	}
+
+	/**
+	 * @param k
+	 *            the number of data fragments
+	 * @param segmentSize
+	 *            the number of bytes of a segment
+	 * @return the size of the payload of each fragment of the segment
+	 */
+	public static int payloadSize(int k, int segmentSize) {
+		return (segmentSize + k - 1) / k;
+	}
+
+	/**
+	 * @param k
+	 *            the number of data fragments
+	 * @param metachunkSize
+	 *            the number of bytes of a metachunk
+	 * @param segmentSize
+	 *            the size of a full segment
+	 * @return the size of each chunk of the metachunk
+	 */
+	public static long chunkSize(int k, long metachunkSize, int segmentSize) {
+		long full = metachunkSize / segmentSize;
+		int last = (int) (metachunkSize % segmentSize);
+		long size = full * (HEADER_SIZE + payloadSize(k, segmentSize));
+		if (0 < last)
+			size += HEADER_SIZE + payloadSize(k, last);
+		return size;
+	}
+
+	/**
+	 * Writes the header of a fragment
+	 *
+	 * @param header
+	 *            the array receiving the header, at least
+	 *            {@link #HEADER_SIZE} bytes long
+	 * @param idx
+	 *            the index of the fragment in the segment
+	 * @param payloadSize
+	 *            the size of the payload following the header
+	 * @param segmentSize
+	 *            the number of bytes of the encoded segment
+	 * @param backendId
+	 *            the liberasurecode backend identifier
+	 * @return {@code header}
+	 */
+	public static byte[] header(byte[] header, int idx, int payloadSize,
+			int segmentSize, int backendId) {
+		ByteBuffer bb = ByteBuffer.wrap(header, 0, HEADER_SIZE)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		bb.putInt(idx)
+				.putInt(payloadSize)
+				.putInt(0) // no backend metadata
+				.putLong(segmentSize)
+				.put((byte) CHKSUM_NONE);
+		for (int i = 0; i < 8; i++)
+			bb.putInt(0);
+		bb.put((byte) 0) // no checksum mismatch
+				.put((byte) backendId)
+				.putInt(BACKEND_VERSION);
+		CRC32 crc = new CRC32();
+		crc.update(header, 0, METADATA_SIZE);
+		bb.putInt(MAGIC)
+				.putInt(LIBEC_VERSION)
+				.putInt((int) crc.getValue());
+		while (bb.hasRemaining())
+			bb.put((byte) 0);
+		return header;
+	}
+
+	/**
+	 * Checks the header of a fragment read from a chunk
+	 *
+	 * @param buf
+	 *            the array holding the fragment
+	 * @param offset
+	 *            the index of the first byte of the header
+	 * @param idx
+	 *            the expected index of the fragment
+	 * @param payloadSize
+	 *            the expected size of the payload
+	 * @return {@code true} if the header describes the expected fragment
+	 */
+	public static boolean valid(byte[] buf, int offset, int idx,
+			int payloadSize) {
+		ByteBuffer bb = ByteBuffer.wrap(buf, offset, HEADER_SIZE).slice()
+				.order(ByteOrder.LITTLE_ENDIAN);
+		return MAGIC == bb.getInt(METADATA_SIZE)
+				&& idx == bb.getInt(0)
+				&& payloadSize == bb.getInt(4);
+	}
+}
@@ -0,0 +1,83 @@
+package io.openio.sds.storage.ec;
+
+/**
+ * Arithmetic over GF(2^8), with the primitive polynomial
+ * x^8 + x^4 + x^3 + x^2 + 1 (0x11D) used by ISA-L and liberasurecode.
+ * <p>
+ * Every operation is a table lookup. The full multiplication table takes 64KB
+ * and lets the codec multiply a whole buffer by a constant with a single
+ * lookup per byte, in {@link #mulTable(int)}.
+ */
+public final class GF256 {
+
+	private static final int POLYNOMIAL = 0x11D;
+
+	private static final byte[] EXP = new byte[512];
+	private static final int[] LOG = new int[256];
+	private static final byte[][] MUL = new byte[256][256];
+
+	static {
+		int x = 1;
+		for (int i = 0; i < 255; i++) {
+			EXP[i] = (byte) x;
+			LOG[x] = i;
+			x <<= 1;
+			if (0 != (x & 0x100))
+				x ^= POLYNOMIAL;
+		}
+		// doubled so the sum of two logarithms needs no modulo
+		for (int i = 255; i < EXP.length; i++)
+			EXP[i] = EXP[i - 255];
+		for (int a = 1; a < 256; a++)
+			for (int b = 1; b < 256; b++)
+				MUL[a][b] = EXP[LOG[a] + LOG[b]];
+	}
+
+	private GF256() {
+	}
+
+	/**
+	 * @param a
+	 *            a field element, from 0 to 255
+	 * @param b
+	 *            a field element, from 0 to 255
+	 * @return the product of {@code a} and {@code b}
+	 */
+	public static int mul(int a, int b) {
+		return MUL[a][b] & 0xFF;
+	}
+
+	/**
+	 * @param a
+	 *            a non-zero field element
+	 * @return the multiplicative inverse of {@code a}
+	 */
+	public static int inv(int a) {
+		if (0 == a)
+			throw new ArithmeticException("0 has no inverse");
+		return EXP[255 - LOG[a]] & 0xFF;
+	}
+
+	/**
+	 * @param a
+	 *            a field element
+	 * @param b
+	 *            a non-zero field element
+	 * @return {@code a} divided by {@code b}
+	 */
+	public static int div(int a, int b) {
+		return mul(a, inv(b));
+	}
+
+	/**
+	 * Returns the products of {@code c} with every field element, indexed by
+	 * the element. The returned array is shared and must not be modified.
+	 *
+	 * @param c
+	 *            the constant to multiply by
+	 * @return the multiplication table of {@code c}
+	 */
+	public static byte[] mulTable(int c) {
+		return MUL[c];
+	}
+}
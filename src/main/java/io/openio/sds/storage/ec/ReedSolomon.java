@@ -0,0 +1,288 @@
+package io.openio.sds.storage.ec;
+
+import static io.openio.sds.common.Check.checkArgument;
+import static java.lang.String.format;
+
+import java.util.Arrays;
+
+import io.openio.sds.exceptions.OioException;
+import io.openio.sds.models.ECInfo;
+
+/**
+ * Systematic Reed-Solomon codec over {@link GF256}, producing the same
+ * fragments as the ISA-L backends of liberasurecode, so the chunks it writes
+ * can be read by ecd and the other SDS clients.
+ * <p>
+ * The {@code k} data fragments are the padded segment cut in {@code k} equal
+ * blocks. Each of the {@code m} parity fragments is a linear combination of
+ * the data fragments, whose coefficients are the rows of the coding matrix
+ * below the identity. Any {@code k} fragments of a segment are enough to
+ * reconstruct its data fragments, by inverting their rows of the matrix.
+ */
+public class ReedSolomon {
+
+	/** The ISA-L Vandermonde code */
+	public static final String ISA_L_RS_VAND = "isa_l_rs_vand";
+
+	/** The ISA-L Cauchy code */
+	public static final String ISA_L_RS_CAUCHY = "isa_l_rs_cauchy";
+
+	/* liberasurecode ec_backend_id_t values */
+	private static final int BACKEND_ISA_L_RS_VAND = 4;
+	private static final int BACKEND_ISA_L_RS_CAUCHY = 7;
+
+	/*
+	 * Bytes of each fragment encoded at once: the data and parity blocks of a
+	 * stride stay in cache while each parity block is updated k times.
+	 */
+	private static final int STRIDE = 8192;
+
+	private final int k;
+	private final int m;
+	private final int backendId;
+	private final byte[][] matrix;
+	private final byte[][][] tables;
+
+	private ReedSolomon(int k, int m, int backendId, byte[][] matrix) {
+		this.k = k;
+		this.m = m;
+		this.backendId = backendId;
+		this.matrix = matrix;
+		this.tables = new byte[m][k][];
+		for (int p = 0; p < m; p++)
+			for (int j = 0; j < k; j++)
+				tables[p][j] = GF256.mulTable(matrix[k + p][j] & 0xFF);
+	}
+
+	/**
+	 * Returns the codec of the specified erasure coding parameters
+	 *
+	 * @param ecinfo
+	 *            the erasure coding parameters of an object
+	 * @return the codec to encode the object with
+	 * @throws OioException
+	 *             if the algorithm is not implemented
+	 */
+	public static ReedSolomon codec(ECInfo ecinfo) {
+		checkArgument(null != ecinfo, "ecinfo cannot be null");
+		if (ISA_L_RS_VAND.equals(ecinfo.algo()))
+			return vandermonde(ecinfo.k(), ecinfo.m());
+		if (ISA_L_RS_CAUCHY.equals(ecinfo.algo()))
+			return cauchy(ecinfo.k(), ecinfo.m());
+		throw new OioException(format(
+				"Erasure coding algorithm %s is not supported without ecd",
+				ecinfo.algo()));
+	}
+
+	/**
+	 * Builds the codec of ISA-L {@code gf_gen_rs_matrix}, whose parity row
+	 * {@code i} is the powers of {@code 2^i}.
+	 *
+	 * @param k
+	 *            the number of data fragments
+	 * @param m
+	 *            the number of parity fragments
+	 * @return the codec
+	 */
+	public static ReedSolomon vandermonde(int k, int m) {
+		byte[][] matrix = identity(k, m);
+		int gen = 1;
+		for (int i = k; i < k + m; i++) {
+			int p = 1;
+			for (int j = 0; j < k; j++) {
+				matrix[i][j] = (byte) p;
+				p = GF256.mul(p, gen);
+			}
+			gen = GF256.mul(gen, 2);
+		}
+		return new ReedSolomon(k, m, BACKEND_ISA_L_RS_VAND, matrix);
+	}
+
+	/**
+	 * Builds the codec of ISA-L {@code gf_gen_cauchy1_matrix}, whose
+	 * coefficient at row {@code i}, column {@code j} is {@code 1 / (i ^ j)}.
+	 *
+	 * @param k
+	 *            the number of data fragments
+	 * @param m
+	 *            the number of parity fragments
+	 * @return the codec
+	 */
+	public static ReedSolomon cauchy(int k, int m) {
+		byte[][] matrix = identity(k, m);
+		for (int i = k; i < k + m; i++)
+			for (int j = 0; j < k; j++)
+				matrix[i][j] = (byte) GF256.inv(i ^ j);
+		return new ReedSolomon(k, m, BACKEND_ISA_L_RS_CAUCHY, matrix);
+	}
+
+	private static byte[][] identity(int k, int m) {
+		checkArgument(0 < k, "k must be positive");
+		checkArgument(0 <= m, "m cannot be negative");
+		checkArgument(k + m <= 256, "too many fragments");
+		byte[][] matrix = new byte[k + m][k];
+		for (int i = 0; i < k; i++)
+			matrix[i][i] = 1;
+		return matrix;
+	}
+
+	public int k() {
+		return k;
+	}
+
+	public int m() {
+		return m;
+	}
+
+	/**
+	 * @return the liberasurecode identifier of the backend this codec is
+	 *         compatible with
+	 */
+	public int backendId() {
+		return backendId;
+	}
+
+	/**
+	 * @param row
+	 *            the index of a fragment
+	 * @param col
+	 *            the index of a data fragment
+	 * @return the coefficient of the data fragment {@code col} in the fragment
+	 *         {@code row}
+	 */
+	public int coefficient(int row, int col) {
+		return matrix[row][col] & 0xFF;
+	}
+
+	/**
+	 * Computes the parity fragments of {@code k} data fragments stored one
+	 * after the other in {@code data}
+	 *
+	 * @param data
+	 *            the array holding the data fragments
+	 * @param offset
+	 *            the index of the first byte of the first data fragment
+	 * @param blockSize
+	 *            the size of each fragment
+	 * @param parity
+	 *            the {@code m} arrays receiving the parity fragments, from
+	 *            their first byte
+	 */
+	public void encode(byte[] data, int offset, int blockSize, byte[][] parity) {
+		checkArgument(null != data && null != parity, "buffers cannot be null");
+		checkArgument(offset + k * blockSize <= data.length,
+				"data is too short");
+		checkArgument(parity.length == m, "wrong number of parity buffers");
+		for (int from = 0; from < blockSize; from += STRIDE) {
+			int len = Math.min(STRIDE, blockSize - from);
+			for (int p = 0; p < m; p++)
+				encodeStride(data, offset + from, blockSize, parity[p], from,
+						len, tables[p]);
+		}
+	}
+
+	private void encodeStride(byte[] data, int offset, int blockSize,
+			byte[] out, int outOffset, int len, byte[][] rows) {
+		byte[] row = rows[0];
+		for (int i = 0; i < len; i++)
+			out[outOffset + i] = row[data[offset + i] & 0xFF];
+		for (int j = 1; j < k; j++) {
+			row = rows[j];
+			int in = offset + j * blockSize;
+			for (int i = 0; i < len; i++)
+				out[outOffset + i] ^= row[data[in + i] & 0xFF];
+		}
+	}
+
+	/**
+	 * Computes the coefficients giving the data fragments from {@code k}
+	 * available fragments
+	 *
+	 * @param available
+	 *            the indexes of {@code k} distinct fragments
+	 * @return the decoding matrix to pass to {@link #reconstruct}
+	 * @throws OioException
+	 *             if the data cannot be reconstructed from these fragments
+	 */
+	public byte[][] decodingMatrix(int[] available) {
+		checkArgument(null != available && available.length == k,
+				"k fragments are needed");
+		int[][] a = new int[k][2 * k];
+		for (int r = 0; r < k; r++) {
+			for (int c = 0; c < k; c++)
+				a[r][c] = matrix[available[r]][c] & 0xFF;
+			a[r][k + r] = 1;
+		}
+		// Gauss-Jordan elimination, the right half becomes the inverse
+		for (int c = 0; c < k; c++) {
+			int pivot = c;
+			while (pivot < k && 0 == a[pivot][c])
+				pivot++;
+			if (pivot == k)
+				throw new OioException(format(
+						"Fragments %s of a %d+%d code cannot be decoded",
+						Arrays.toString(available), k, m));
+			int[] tmp = a[c];
+			a[c] = a[pivot];
+			a[pivot] = tmp;
+			int inv = GF256.inv(a[c][c]);
+			for (int i = 0; i < 2 * k; i++)
+				a[c][i] = GF256.mul(a[c][i], inv);
+			for (int r = 0; r < k; r++) {
+				int f = a[r][c];
+				if (r == c || 0 == f)
+					continue;
+				for (int i = 0; i < 2 * k; i++)
+					a[r][i] ^= GF256.mul(f, a[c][i]);
+			}
+		}
+		byte[][] res = new byte[k][k];
+		for (int r = 0; r < k; r++)
+			for (int c = 0; c < k; c++)
+				res[r][c] = (byte) a[r][k + c];
+		return res;
+	}
+
+	/**
+	 * Reconstructs a data fragment from {@code k} available fragments
+	 *
+	 * @param decoding
+	 *            the decoding matrix of the available fragments
+	 * @param target
+	 *            the index of the data fragment to reconstruct
+	 * @param shards
+	 *            the arrays holding the available fragments, in the order
+	 *            given to {@link #decodingMatrix(int[])}
+	 * @param offsets
+	 *            the index of the first byte of each available fragment
+	 * @param blockSize
+	 *            the size of each fragment
+	 * @param out
+	 *            the array receiving the data fragment
+	 * @param outOffset
+	 *            the index in {@code out} of the first byte of the fragment
+	 */
+	public void reconstruct(byte[][] decoding, int target, byte[][] shards,
+			int[] offsets, int blockSize, byte[] out, int outOffset) {
+		checkArgument(0 <= target && target < k, "invalid data fragment");
+		byte[][] rows = new byte[k][];
+		for (int r = 0; r < k; r++)
+			rows[r] = GF256.mulTable(decoding[target][r] & 0xFF);
+		for (int from = 0; from < blockSize; from += STRIDE) {
+			int len = Math.min(STRIDE, blockSize - from);
+			int o = outOffset + from;
+			byte[] row = rows[0];
+			byte[] in = shards[0];
+			int i0 = offsets[0] + from;
+			for (int i = 0; i < len; i++)
+				out[o + i] = row[in[i0 + i] & 0xFF];
+			for (int r = 1; r < k; r++) {
+				row = rows[r];
+				in = shards[r];
+				i0 = offsets[r] + from;
+				for (int i = 0; i < len; i++)
+					out[o + i] ^= row[in[i0 + i] & 0xFF];
+			}
+		}
+	}
+}
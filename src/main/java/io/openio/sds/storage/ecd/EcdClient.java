@@ -14,17 +14,33 @@ import static io.openio.sds.common.OioConstants.CHUNK_META_CONTENT_SIZE;
 import static io.openio.sds.common.OioConstants.CHUNK_META_CONTENT_VERSION;
 import static io.openio.sds.common.OioConstants.OIO_REQUEST_ID_HEADER;
 import static io.openio.sds.http.Verifiers.RAWX_VERIFIER;
+import static java.lang.String.format;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import io.openio.sds.RequestContext;
+import io.openio.sds.common.FeedableInputStream;
+import io.openio.sds.common.Hash;
 import io.openio.sds.common.Hex;
 import io.openio.sds.common.OioConstants;
 import io.openio.sds.common.Strings;
@@ -43,22 +59,54 @@ import io.openio.sds.storage.rawx.RawxClient;
 import io.openio.sds.storage.rawx.RawxSettings;
 import io.openio.sds.storage.rawx.StreamWrapper;
 
+/**
+ * Erasure codes objects through ecd. The metachunks of an object are sent to
+ * the ecd hosts concurrently, each to the host with the fewest transfers in
+ * progress, at most {@link RawxSettings#ecdUploadParallelism()} at a time.
+ */
 public class EcdClient implements StorageClient {
 
 	private static final SdsLogger logger = SdsLoggerFactory
 	        .getLogger(RawxClient.class);
 
+	private static final int MIN_WORKERS = 1;
+	private static final int MAX_WORKERS = 100;
+	private static final int IDLE_THREAD_KEEP_ALIVE = 30; // in seconds
+	private static final int FEED_BLOCK_SIZE = 65536;
+
 	final OioHttp http;
 	private final RawxSettings settings;
 	private final String ecdUrl;
 	private final List<InetSocketAddress> ecdHosts;
+	private final EcdHosts hosts;
+	private final ExecutorService executors;
+	private final ExecutorService readers;
 
 	public EcdClient(OioHttp http, RawxSettings settings, List<InetSocketAddress> ecdHosts) {
 		this.http = http;
 		this.settings = settings;
 		this.ecdHosts = ecdHosts;
-		this.ecdUrl = String.format("http://%1$s:%2$d",
-		        ecdHosts.get(0).getHostString(), ecdHosts.get(0).getPort());
+		this.ecdUrl = EcdHosts.url(ecdHosts.get(0));
+		this.hosts = new EcdHosts(ecdHosts);
+		this.executors = workerPool("EcdClient-Worker");
+		this.readers = workerPool("EcdClient-Reader");
+	}
+
+	private static ExecutorService workerPool(final String name) {
+		return new ThreadPoolExecutor(MIN_WORKERS,
+		        MAX_WORKERS,
+		        IDLE_THREAD_KEEP_ALIVE,
+		        TimeUnit.SECONDS,
+		        new SynchronousQueue<Runnable>(),
+		        new ThreadFactory() {
+
+			        @Override
+			        public Thread newThread(Runnable r) {
+				        Thread t = new Thread(r);
+				        t.setName(name);
+				        return t;
+			        }
+		        });
 	}
 
 	@Override
@@ -66,25 +114,54 @@ public class EcdClient implements StorageClient {
 		return uploadChunks(oinf, data, new RequestContext());
 	}
 
+	/**
+	 * The metachunks are read from the stream one after the other, but each
+	 * one is sent without waiting for the previous ones to be encoded and
+	 * stored by ecd.
+	 */
 	@Override
 	public ObjectInfo uploadChunks(ObjectInfo oinf, InputStream data,
 	        RequestContext reqCtx) {
-		StreamWrapper wrapper = new StreamWrapper(data);
+		int count = oinf.sortedChunks().size();
+		Semaphore slots = new Semaphore(Math.max(1, settings.ecdUploadParallelism()));
+		List<FeedableInputStream> bodies = new ArrayList<FeedableInputStream>();
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		long[] sizes = new long[count];
+		String[] hashes = new String[count];
+		Hash md5 = Hash.md5();
 		long remaining = oinf.size();
-		for (int pos = 0; pos < oinf.sortedChunks().size(); pos++) {
-			long csize = Math.min(remaining, oinf.metachunksize(pos));
-			if (csize == 0 && pos != 0)
-				throw new OioException("Too many chunks prepared");
-			StreamWrapper chunkwrapper = new StreamWrapper(wrapper);
-			uploadPosition(oinf, pos, csize, chunkwrapper, reqCtx);
-			String hash = Hex.toHex(chunkwrapper.md5());
-			for(ChunkInfo ci : oinf.sortedChunks().get(pos)) {
-				ci.size(csize);
-				ci.hash(hash);
+		try {
+			for (int pos = 0; pos < count; pos++) {
+				long csize = Math.min(remaining, oinf.metachunksize(pos));
+				if (csize == 0 && pos != 0)
+					throw new OioException("Too many chunks prepared");
+				acquire(slots, futures);
+				Hash chunkMd5 = Hash.md5();
+				if (0 == csize) {
+					futures.add(submit(oinf, pos, csize,
+					        new ByteArrayInputStream(new byte[0]), slots, reqCtx));
+				} else {
+					FeedableInputStream body = new FeedableInputStream(5,
+					        settings.http().readTimeout() / 5, 5);
+					bodies.add(body);
+					futures.add(submit(oinf, pos, csize, body, slots, reqCtx));
+					feed(data, csize, body, md5, chunkMd5);
+				}
+				sizes[pos] = csize;
+				hashes[pos] = chunkMd5.hash().toString();
+				remaining -= csize;
 			}
-			remaining -= csize;
+			await(futures);
+		} catch (IOException e) {
+			cancel(bodies, futures);
+			throw new OioException("Stream read error", e);
+		} catch (RuntimeException e) {
+			cancel(bodies, futures);
+			throw e;
 		}
-		return oinf.hash(Hex.toHex(wrapper.md5()));
+		for (int pos = 0; pos < count; pos++)
+			uploaded(oinf, pos, sizes[pos], hashes[pos]);
+		return oinf.hash(md5.hash().toString());
 	}
 
 	@Override
@@ -116,10 +193,44 @@ public class EcdClient implements StorageClient {
 
 	}
 
+	/**
+	 * All the metachunks are available, so they are sent concurrently, and
+	 * sent again to another ecd host if the first one cannot be reached.
+	 */
 	@Override
 	public ObjectInfo uploadChunks(ObjectInfo oinf, byte[] data, RequestContext reqCtx) {
-		return uploadChunks(oinf, new ByteArrayInputStream(data), reqCtx);
-
+		int count = oinf.sortedChunks().size();
+		Semaphore slots = new Semaphore(Math.max(1, settings.ecdUploadParallelism()));
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		long[] sizes = new long[count];
+		String[] hashes = new String[count];
+		Hash md5 = Hash.md5();
+		long remaining = oinf.size();
+		int offset = 0;
+		try {
+			for (int pos = 0; pos < count; pos++) {
+				long csize = Math.min(remaining, oinf.metachunksize(pos));
+				if (csize == 0 && pos != 0)
+					throw new OioException("Too many chunks prepared");
+				acquire(slots, futures);
+				futures.add(submit(oinf, pos, csize,
+				        new ByteArrayInputStream(data, offset, (int) csize),
+				        slots, reqCtx));
+				md5.putBytes(data, offset, (int) csize);
+				sizes[pos] = csize;
+				hashes[pos] = Hash.md5().putBytes(data, offset, (int) csize)
+				        .hash().toString();
+				offset += csize;
+				remaining -= csize;
+			}
+			await(futures);
+		} catch (RuntimeException e) {
+			cancel(new ArrayList<FeedableInputStream>(), futures);
+			throw e;
+		}
+		for (int pos = 0; pos < count; pos++)
+			uploaded(oinf, pos, sizes[pos], hashes[pos]);
+		return oinf.hash(md5.hash().toString());
 	}
 
 	@Override
@@ -142,17 +253,165 @@ public class EcdClient implements StorageClient {
     public InputStream downloadObject(ObjectInfo oinf, Range range, RequestContext reqCtx) {
         checkArgument(null != oinf);
         List<Target> targets = DownloadHelper.loadTargets(oinf, range);
+        // only the whole object can be checked, against an md5 object hash
+        boolean verify = settings.verifyChecksums() && null == range
+                && null != oinf.hash() && 32 == oinf.hash().length()
+                && (null == oinf.hashMethod() || "md5".equalsIgnoreCase(oinf.hashMethod()));
         return new EcdInputStream(ecdUrl, targets, oinf.chunkMethod(), http, reqCtx)
-                .alternativeHosts(ecdHosts);
+                .hosts(hosts)
+                .readAhead(readers, settings.readAhead(), settings.readAheadBuffer())
+                .readTimeout(settings.http().readTimeout())
+                .verify(verify ? oinf.hash() : null);
     }
 
 	/* --- INTERNALS --- */
 
-	private ObjectInfo uploadPosition(final ObjectInfo oinf,
-	        final int pos, final Long size, InputStream data,
+	@Override
+	public ObjectInfo uploadPosition(ObjectInfo oinf, int pos, long size,
+	        InputStream data, RequestContext reqCtx) {
+		StreamWrapper chunkwrapper = new StreamWrapper(data);
+		sendPosition(oinf, pos, size, chunkwrapper, reqCtx);
+		return uploaded(oinf, pos, size, Hex.toHex(chunkwrapper.md5()));
+	}
+
+	private ObjectInfo uploaded(ObjectInfo oinf, int pos, long size,
+	        String hash) {
+		for (ChunkInfo ci : oinf.sortedChunks().get(pos)) {
+			ci.size(size);
+			ci.hash(hash);
+		}
+		return oinf;
+	}
+
+	/**
+	 * Waits for a metachunk upload to end if too many are in progress, and
+	 * fails early if one of the previous ones failed.
+	 */
+	private void acquire(Semaphore slots, List<Future<Void>> futures) {
+		try {
+			slots.acquire();
+		} catch (InterruptedException e) {
+			throw new OioException("got interrupted", e);
+		}
+		for (Future<Void> future : futures) {
+			if (future.isDone())
+				get(future);
+		}
+	}
+
+	private Future<Void> submit(final ObjectInfo oinf, final int pos,
+	        final long size, final InputStream body, final Semaphore slots,
 	        final RequestContext reqCtx) {
+		Callable<Void> upload = new Callable<Void>() {
 
-		RequestBuilder builder = http.put(ecdUrl)
+			@Override
+			public Void call() {
+				try {
+					sendPosition(oinf, pos, size, body, reqCtx);
+				} catch (RuntimeException e) {
+					// stop the feeder
+					if (body instanceof FeedableInputStream)
+						((FeedableInputStream) body).setFailed(true);
+					throw e;
+				} finally {
+					slots.release();
+				}
+				return null;
+			}
+		};
+		try {
+			return executors.submit(upload);
+		} catch (RejectedExecutionException e) {
+			slots.release();
+			throw new OioException("Failed to schedule metachunk upload", e);
+		}
+	}
+
+	private void await(List<Future<Void>> futures) {
+		for (Future<Void> future : futures)
+			get(future);
+	}
+
+	private void get(Future<Void> future) {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			throw new OioException("got interrupted", e);
+		} catch (ExecutionException e) {
+			// the slot of the upload was released when it failed
+			if (e.getCause() instanceof OioException)
+				throw (OioException) e.getCause();
+			throw new OioException("Execution exception", e.getCause());
+		}
+	}
+
+	private void cancel(List<FeedableInputStream> bodies,
+	        List<Future<Void>> futures) {
+		for (FeedableInputStream in : bodies)
+			in.setFailed(true);
+		for (Future<Void> future : futures)
+			future.cancel(true);
+	}
+
+	/**
+	 * Reads a metachunk from the stream and hands it over to the body of its
+	 * upload, so the buffers are allocated for each block.
+	 */
+	private void feed(InputStream data, long size, FeedableInputStream body,
+	        Hash md5, Hash chunkMd5) throws IOException {
+		long done = 0;
+		while (done < size) {
+			byte[] buf = new byte[(int) Math.min(FEED_BLOCK_SIZE, size - done)];
+			int filled = 0;
+			while (filled < buf.length) {
+				int read = data.read(buf, filled, buf.length - filled);
+				if (-1 == read)
+					throw new IOException("Unexpected end of stream");
+				filled += read;
+			}
+			md5.putBytes(buf);
+			chunkMd5.putBytes(buf);
+			done += buf.length;
+			body.feed(ByteBuffer.wrap(buf), done >= size);
+		}
+	}
+
+	/**
+	 * Sends the metachunk to the least loaded ecd host, and to the next ones
+	 * if it cannot be reached, as long as the body can be sent again.
+	 */
+	private void sendPosition(ObjectInfo oinf, int pos, long size,
+	        InputStream data, RequestContext reqCtx) {
+		Body body = new Body(data);
+		OioException last = null;
+		for (InetSocketAddress host : hosts.order()) {
+			if (!body.rewind())
+				break;
+			hosts.acquire(host);
+			try {
+				request(oinf, pos, size, body, host, reqCtx)
+				        .execute()
+				        .close(false);
+				hosts.release(host, false);
+				return;
+			} catch (OioException e) {
+				// retry only if the cause is network
+				boolean network = e.getCause() instanceof IOException;
+				hosts.release(host, network);
+				if (!network)
+					throw e;
+				logger.warn(format("Failed to upload pos %d to ecd at %s",
+				        pos, host), e);
+				last = e;
+			}
+		}
+		throw new OioException(format("No ecd host could store pos %d", pos),
+		        last);
+	}
+
+	private RequestBuilder request(ObjectInfo oinf, int pos, long size,
+	        InputStream data, InetSocketAddress host, RequestContext reqCtx) {
+		RequestBuilder builder = http.put(EcdHosts.url(host))
 		        .header(CHUNK_META_CONTAINER_ID,
 		                oinf.url().cid())
 		        .header(CHUNK_META_CONTENT_ID, oinf.oid())
@@ -177,7 +436,6 @@ public class EcdClient implements StorageClient {
 		        .header(OioConstants.CHUNK_META_FULL_PATH, oinf.fullpath())
 		        .header(OioConstants.CHUNK_META_OIO_VERSION, "4")
 		        .body(data, size)
-		        .hosts(ecdHosts)
 		        .verifier(RAWX_VERIFIER)
 		        .withRequestContext(reqCtx);
 
@@ -188,9 +446,53 @@ public class EcdClient implements StorageClient {
 		}
 
 		// TODO chunks hash
+		return builder;
+	}
 
-		builder.execute()
-		        .close(false);
-		return oinf;
+	/**
+	 * Tells whether the body of an upload can be sent again, that is if it
+	 * was not read yet, or if it can be reset.
+	 */
+	private static class Body extends FilterInputStream {
+
+		private boolean touched = false;
+
+		Body(InputStream in) {
+			super(in);
+			if (in.markSupported())
+				in.mark(Integer.MAX_VALUE);
+		}
+
+		boolean rewind() {
+			if (!touched)
+				return true;
+			if (!in.markSupported())
+				return false;
+			try {
+				in.reset();
+			} catch (IOException e) {
+				return false;
+			}
+			touched = false;
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			touched = true;
+			return in.read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			touched = true;
+			return in.read(b, off, len);
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			touched = true;
+			return in.skip(n);
+		}
 	}
 }
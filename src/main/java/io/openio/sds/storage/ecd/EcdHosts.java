@@ -0,0 +1,105 @@
+package io.openio.sds.storage.ecd;
+
+import static java.lang.String.format;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spreads the requests of an {@link EcdClient} over the ecd hosts. Each
+ * request is sent first to the host with the fewest requests in progress, the
+ * hosts which failed recently coming last. Ties are broken in turn, so an idle
+ * cluster is used evenly.
+ */
+class EcdHosts {
+
+	/* how long a failed host is avoided */
+	private static final long FAILURE_PENALTY = TimeUnit.SECONDS.toNanos(10);
+
+	private final List<InetSocketAddress> hosts;
+	private final int[] inflight;
+	private final long[] failures;
+	private int turn = 0;
+
+	EcdHosts(List<InetSocketAddress> hosts) {
+		this.hosts = new ArrayList<InetSocketAddress>(hosts);
+		this.inflight = new int[hosts.size()];
+		this.failures = new long[hosts.size()];
+	}
+
+	static String url(InetSocketAddress host) {
+		return format("http://%1$s:%2$d", host.getHostString(), host.getPort());
+	}
+
+	int size() {
+		return hosts.size();
+	}
+
+	/**
+	 * @return the hosts, in the order to try them
+	 */
+	synchronized List<InetSocketAddress> order() {
+		final int n = hosts.size();
+		final int start = turn;
+		turn = (turn + 1) % Math.max(1, n);
+		final long now = System.nanoTime();
+		Integer[] idx = new Integer[n];
+		for (int i = 0; i < n; i++)
+			idx[i] = i;
+		Arrays.sort(idx, new Comparator<Integer>() {
+
+			@Override
+			public int compare(Integer a, Integer b) {
+				boolean fa = failed(a, now);
+				boolean fb = failed(b, now);
+				if (fa != fb)
+					return fa ? 1 : -1;
+				if (inflight[a] != inflight[b])
+					return inflight[a] < inflight[b] ? -1 : 1;
+				return ((a - start + n) % n) - ((b - start + n) % n);
+			}
+		});
+		List<InetSocketAddress> res = new ArrayList<InetSocketAddress>(n);
+		for (Integer i : idx)
+			res.add(hosts.get(i));
+		return Collections.unmodifiableList(res);
+	}
+
+	private boolean failed(int i, long now) {
+		return 0 != failures[i] && now - failures[i] < FAILURE_PENALTY;
+	}
+
+	/**
+	 * Counts a request in progress on the host, until it is released
+	 *
+	 * @param host
+	 *            the host the request is sent to
+	 */
+	synchronized void acquire(InetSocketAddress host) {
+		int i = hosts.indexOf(host);
+		if (0 <= i)
+			inflight[i]++;
+	}
+
+	/**
+	 * @param host
+	 *            the host the request was sent to
+	 * @param failed
+	 *            {@code true} if the host could not serve the request
+	 */
+	synchronized void release(InetSocketAddress host, boolean failed) {
+		int i = hosts.indexOf(host);
+		if (0 > i)
+			return;
+		inflight[i]--;
+		if (failed)
+			failures[i] = System.nanoTime();
+		else
+			failures[i] = 0;
+	}
+}
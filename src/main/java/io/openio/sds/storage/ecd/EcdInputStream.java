@@ -1,26 +1,27 @@
 package io.openio.sds.storage.ecd;
 
-import static io.openio.sds.common.OioConstants.OIO_REQUEST_ID_HEADER;
-import static io.openio.sds.http.Verifiers.RAWX_VERIFIER;
-
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import io.openio.sds.RequestContext;
-import io.openio.sds.common.OioConstants;
-import io.openio.sds.exceptions.OioException;
+import io.openio.sds.common.Hash;
 import io.openio.sds.http.OioHttp;
-import io.openio.sds.http.OioHttp.RequestBuilder;
-import io.openio.sds.http.OioHttpResponse;
 import io.openio.sds.logging.SdsLogger;
 import io.openio.sds.logging.SdsLoggerFactory;
-import io.openio.sds.models.ChunkInfo;
+import io.openio.sds.storage.ReadAheadInputStream;
 import io.openio.sds.storage.Target;
 
 /**
- * For not rained items only
+ * For not rained items only. Each metachunk is downloaded from the least
+ * loaded ecd host, and the next ones are fetched in the background when a
+ * read-ahead is set.
  * 
  * @author Christopher Dedeurwaerder
  *
@@ -32,13 +33,19 @@ public class EcdInputStream extends InputStream {
 
 	private OioHttp http;
 	private List<Target> targets;
-	private int pos = 0;
-	private OioHttpResponse current;
 	private RequestContext reqCtx;
 	private String ecdUrl;
-	private List<InetSocketAddress> ecdHosts = null;
+	private EcdHosts hosts = null;
 	private String chunkMethod;
-	private boolean eof = false;
+	private ExecutorService executor = null;
+	private int readAhead = 0;
+	private int readAheadBuffer = 0;
+	private int readTimeout = ReadAheadInputStream.DEFAULT_TIMEOUT;
+	private InputStream current;
+	private boolean closed = false;
+	private final byte[] single = new byte[1];
+	private Hash digest;
+	private String expectedHash;
 
 	public EcdInputStream(String ecdUrl,
 	        List<Target> targets,
@@ -53,22 +60,76 @@ public class EcdInputStream extends InputStream {
 	}
 
 	public EcdInputStream alternativeHosts(List<InetSocketAddress> hosts) {
-	    this.ecdHosts = hosts;
-	    return this;
+	    return hosts(null == hosts ? null : new EcdHosts(hosts));
+	}
+
+	EcdInputStream hosts(EcdHosts hosts) {
+		this.hosts = hosts;
+		return this;
+	}
+
+	/**
+	 * Fetches the next metachunks in the background, while the current one
+	 * is read.
+	 *
+	 * @param executor
+	 *            the executor to fetch the metachunks with
+	 * @param readAhead
+	 *            the number of metachunks to fetch in advance, 0 to fetch
+	 *            them one after the other
+	 * @param bufferSize
+	 *            the maximum number of bytes to hold in advance
+	 * @return this
+	 */
+	public EcdInputStream readAhead(ExecutorService executor, int readAhead,
+	        int bufferSize) {
+		this.executor = executor;
+		this.readAhead = readAhead;
+		this.readAheadBuffer = bufferSize;
+		return this;
+	}
+
+	/**
+	 * @param readTimeout
+	 *            the longest time to wait for a metachunk fetched in advance,
+	 *            or for room to fetch it, in milliseconds
+	 * @return this
+	 */
+	public EcdInputStream readTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+		return this;
+	}
+
+	/**
+	 * Checks the data read against the specified md5 hash, once the whole
+	 * object is read. The last read fails if the hash does not match.
+	 *
+	 * @param hash the md5 hash of the whole object
+	 * @return this
+	 */
+	public EcdInputStream verify(String hash) {
+		this.expectedHash = hash;
+		this.digest = null == hash ? null : Hash.md5();
+		return this;
 	}
 
 	@Override
 	public void close() {
-		if (null != current)
-			current.close();
-		pos = targets.size() + 1;
+		if (null != current) {
+			try {
+				current.close();
+			} catch (IOException e) {
+				logger.warn("Failed to close metachunk stream", e);
+			}
+		}
+		digest = null;
+		closed = true;
 	}
 
 	@Override
 	public int read() throws IOException {
-		byte[] b = new byte[1];
-		int read = read(b, 0, 1);
-		return read < 0 ? -1 : b[0];
+		int read = read(single, 0, 1);
+		return read < 0 ? -1 : single[0] & 0xFF;
 	}
 
 	@Override
@@ -80,69 +141,47 @@ public class EcdInputStream extends InputStream {
 	public int read(byte[] buf, int offset, int length) throws IOException {
 		if (0 >= length)
 			return 0;
+		if (closed)
+			return -1;
+		if (null == current)
+			current = open();
 		int totRead = 0;
 		while (totRead < length) {
-			if (null == current || eof) {
-				if (pos >= targets.size())
-					return 0 == totRead ? -1 : totRead;
-				next();
-			}
-			int read = current.body().read(buf, offset + totRead,
-			        Math.min(length - totRead,
-			                buf.length - offset + totRead));
-			if (logger.isTraceEnabled())
-				logger.trace("At offset 0+" + totRead + " of " + buf
-				        + ", read byte " + buf[0] + " and length " + read
-				        + " from " + current.body());
+			int read = current.read(buf, offset + totRead, length - totRead);
 			if (-1 == read) {
-				eof = true;
-				current.close();
-				current = null;
-			} else {
-				totRead += Math.max(0, read);
+				if (null != digest)
+					check();
+				return 0 == totRead ? -1 : totRead;
 			}
+			if (null != digest)
+				digest.putBytes(buf, offset + totRead, read);
+			totRead += read;
 		}
 		return totRead;
 	}
 
-	private void next() {
-		if (logger.isDebugEnabled())
-			logger.debug("dl from " + ecdUrl);
-
-		try {
-			RequestBuilder builder = http.get(ecdUrl)
-			        .header(OioConstants.CHUNK_META_CONTENT_CHUNK_METHOD,
-			                chunkMethod)
-			        .verifier(RAWX_VERIFIER)
-			        .withRequestContext(reqCtx)
-			        .hosts(ecdHosts);
-			for (ChunkInfo ci : targets.get(pos).getChunk()) {
-				builder.header(
-				        OioConstants.CHUNK_META_CHUNK_PREFIX + ci.pos().sub(),
-				        ci.finalUrl());
-			}
-
-			builder.header(OioConstants.CHUNK_META_CHUNK_SIZE,
-			        targets.get(pos).getChunk().get(0).size().toString());
-
-			if (null != targets.get(pos).getRange()) {
-				if(logger.isTraceEnabled())
-					logger.trace("Setting range : " + targets.get(pos).getRange().headerValue());
-				builder.header(OioConstants.RANGE_HEADER,
-				        targets.get(pos).getRange().headerValue());
-			}
-
-			current = builder.execute();
-
-			eof = false;
-			pos++;
-		} catch (OioException e) {
-			logger.warn(String.format(
-			        "Error while trying to download pos %d from %s",
-			        pos,
-			        ecdUrl),
-			        e);
-			throw e;
+	private InputStream open() {
+		if (null == hosts) {
+			URI uri = URI.create(ecdUrl);
+			hosts = new EcdHosts(Collections.singletonList(
+			        new InetSocketAddress(uri.getHost(), uri.getPort())));
 		}
+		List<EcdPart> parts = new ArrayList<EcdPart>(targets.size());
+		for (int pos = 0; pos < targets.size(); pos++)
+			parts.add(new EcdPart(http, targets.get(pos), chunkMethod, hosts,
+			        reqCtx, pos));
+		if (null != executor && 0 < readAhead)
+			return new ReadAheadInputStream(parts, executor, readAhead,
+			        readAheadBuffer).timeout(readTimeout, reqCtx);
+		return new SequenceInputStream(Collections.enumeration(parts));
+	}
+
+	private void check() throws IOException {
+		String md5 = digest.hash().toString();
+		digest = null;
+		if (!md5.equalsIgnoreCase(expectedHash))
+			throw new IOException(String.format(
+			        "Object does not match its hash (expected %s, got %s)",
+			        expectedHash, md5));
 	}
 }
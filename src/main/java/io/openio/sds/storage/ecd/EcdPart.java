@@ -0,0 +1,187 @@
+package io.openio.sds.storage.ecd;
+
+import static io.openio.sds.http.Verifiers.RAWX_VERIFIER;
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+
+import io.openio.sds.RequestContext;
+import io.openio.sds.common.OioConstants;
+import io.openio.sds.exceptions.OioException;
+import io.openio.sds.http.OioHttp;
+import io.openio.sds.http.OioHttp.RequestBuilder;
+import io.openio.sds.http.OioHttpResponse;
+import io.openio.sds.logging.SdsLogger;
+import io.openio.sds.logging.SdsLoggerFactory;
+import io.openio.sds.models.ChunkInfo;
+import io.openio.sds.models.Range;
+import io.openio.sds.storage.Target;
+
+/**
+ * Downloads one metachunk of an object through ecd, from the least loaded
+ * host. The request is sent on the first read, so the metachunks of an object
+ * can be fetched in the background, each from its own host. If the connection
+ * breaks, the download resumes on another host from the byte it stopped at.
+ */
+class EcdPart extends InputStream {
+
+	private static final SdsLogger logger = SdsLoggerFactory
+			.getLogger(EcdPart.class);
+
+	private final OioHttp http;
+	private final Target target;
+	private final String chunkMethod;
+	private final EcdHosts hosts;
+	private final RequestContext reqCtx;
+	private final int pos;
+	private final byte[] single = new byte[1];
+
+	private OioHttpResponse current;
+	private InetSocketAddress host;
+	private boolean done = false;
+	/* bytes of the metachunk read so far, from all hosts */
+	private long offset = 0;
+	/* bytes expected from the current response, -1 if unknown */
+	private long expected = -1;
+	private long received = 0;
+	private int resumes = 0;
+
+	EcdPart(OioHttp http, Target target, String chunkMethod, EcdHosts hosts,
+			RequestContext reqCtx, int pos) {
+		this.http = http;
+		this.target = target;
+		this.chunkMethod = chunkMethod;
+		this.hosts = hosts;
+		this.reqCtx = reqCtx;
+		this.pos = pos;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int read = read(single, 0, 1);
+		return read < 0 ? -1 : single[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] buf, int off, int length) throws IOException {
+		while (!done) {
+			if (null == current)
+				open();
+			int read;
+			try {
+				read = current.body().read(buf, off, length);
+				if (-1 == read && 0 <= expected && received < expected)
+					throw new IOException(format(
+							"Connection closed after %d bytes out of %d",
+							received, expected));
+			} catch (IOException e) {
+				finish(false);
+				if (!resume(e))
+					throw e;
+				continue;
+			}
+			if (-1 == read) {
+				finish(true);
+				return -1;
+			}
+			offset += read;
+			received += read;
+			return read;
+		}
+		return -1;
+	}
+
+	@Override
+	public void close() {
+		if (!done && null != current)
+			finish(false);
+		done = true;
+	}
+
+	private void finish(boolean success) {
+		done = true;
+		current.close(success);
+		hosts.release(host, !success);
+	}
+
+	/**
+	 * @return {@code true} if the download can go on from another host
+	 */
+	private boolean resume(IOException e) {
+		if (resumes++ >= hosts.size())
+			return false;
+		logger.warn(format(
+				"Download of pos %d from %s broken after %d bytes, resuming on another host",
+				pos, host, offset), e);
+		done = false;
+		current = null;
+		return true;
+	}
+
+	private void open() {
+		OioException last = null;
+		Range range = range();
+		for (InetSocketAddress h : hosts.order()) {
+			if (logger.isDebugEnabled())
+				logger.debug(format("dl pos %d from %s", pos, h));
+			hosts.acquire(h);
+			try {
+				current = request(h, range).execute();
+				host = h;
+				String length = current.header(OioConstants.CONTENT_LENGTH_HEADER);
+				expected = null == length ? -1 : Long.parseLong(length);
+				received = 0;
+				return;
+			} catch (OioException e) {
+				// retry only if the cause is network
+				boolean network = e.getCause() instanceof IOException;
+				hosts.release(h, network);
+				if (!network) {
+					logger.warn(format("Error while trying to download pos %d from %s",
+							pos, h), e);
+					throw e;
+				}
+				logger.warn(format("Failed to reach ecd at %s", h), e);
+				last = e;
+			}
+		}
+		throw new OioException(format(
+				"No ecd host could serve pos %d", pos), last);
+	}
+
+	/**
+	 * @return the range of the metachunk still to read
+	 */
+	private Range range() {
+		Range range = target.getRange();
+		if (0 == offset)
+			return range;
+		if (null == range)
+			return Range.from(offset);
+		long from = range.from() + offset;
+		return 0 > range.to() ? Range.from(from) : Range.between(from, range.to());
+	}
+
+	private RequestBuilder request(InetSocketAddress h, Range range) {
+		RequestBuilder builder = http.get(EcdHosts.url(h))
+				.header(OioConstants.CHUNK_META_CONTENT_CHUNK_METHOD,
+						chunkMethod)
+				.verifier(RAWX_VERIFIER)
+				.withRequestContext(reqCtx);
+		for (ChunkInfo ci : target.getChunk()) {
+			builder.header(
+					OioConstants.CHUNK_META_CHUNK_PREFIX + ci.pos().sub(),
+					ci.finalUrl());
+		}
+		builder.header(OioConstants.CHUNK_META_CHUNK_SIZE,
+				target.getChunk().get(0).size().toString());
+		if (null != range) {
+			if (logger.isTraceEnabled())
+				logger.trace("Setting range : " + range.headerValue());
+			builder.header(OioConstants.RANGE_HEADER, range.headerValue());
+		}
+		return builder;
+	}
+}
@@ -0,0 +1,171 @@
+package io.openio.sds.storage.rawx;
+
+import io.openio.sds.RequestContext;
+import io.openio.sds.common.Hash;
+import io.openio.sds.exceptions.OioException;
+import io.openio.sds.http.OioHttp;
+import io.openio.sds.logging.SdsLogger;
+import io.openio.sds.logging.SdsLoggerFactory;
+import io.openio.sds.models.ChunkInfo;
+import io.openio.sds.models.ObjectInfo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import static java.lang.String.format;
+
+/**
+ * Downloads a whole object into a {@link FileChannel}. The chunks are split in
+ * ranges which are fetched concurrently and written at their own offset, so
+ * the order of completion does not matter. Each range is fetched from the
+ * replica expected to be the fastest, as measured by the {@link HostStats} if
+ * any, and a range failing on a replica is resumed on the next one.
+ * <p>
+ * When checksums are verified, chunks with a known hash are fetched as a single
+ * range and hashed as they are written. A chunk which does not match its hash
+ * is downloaded again from the next replica, over the corrupted data.
+ * <p>
+ * For replicated policies only
+ */
+class ChannelDownload {
+
+	private static final SdsLogger logger = SdsLoggerFactory
+			.getLogger(ChannelDownload.class);
+
+	private static final int BUFFER_SIZE = 65536;
+
+	private final ObjectInfo oinf;
+	private final FileChannel channel;
+	private final RawxSettings settings;
+	private final ReplicaFetcher fetcher;
+
+	ChannelDownload(ObjectInfo oinf, FileChannel channel, OioHttp http,
+			ExecutorService executor, RawxSettings settings, HostStats stats,
+			RequestContext reqCtx) {
+		this.oinf = oinf;
+		this.channel = channel;
+		this.settings = settings;
+		this.fetcher = new ReplicaFetcher(http, executor,
+				settings.downloadParallelism(), stats, reqCtx);
+	}
+
+	void run() {
+		fetcher.runAll(split());
+	}
+
+	private List<RangeDownload> split() {
+		List<RangeDownload> ranges = new ArrayList<RangeDownload>();
+		long rangeSize = Math.max(1, settings.downloadRangeSize());
+		long offset = 0;
+		for (int pos = 0; pos < oinf.sortedChunks().size(); pos++) {
+			List<ChunkInfo> replicas = oinf.sortedChunks().get(pos);
+			long csize = oinf.chunksize(pos);
+			boolean verify = settings.verifyChecksums() && 0 < csize
+					&& null != replicas.get(0).hash();
+			if (verify) {
+				ranges.add(new RangeDownload(replicas, csize, 0, csize, offset,
+						ranges.size()).verify());
+				offset += csize;
+				continue;
+			}
+			for (long from = 0; from < csize; from += rangeSize) {
+				long len = Math.min(rangeSize, csize - from);
+				ranges.add(new RangeDownload(replicas, csize, from, len,
+						offset + from, ranges.size()));
+			}
+			offset += csize;
+		}
+		return ranges;
+	}
+
+	private class RangeDownload implements Runnable, ReplicaFetcher.Sink {
+
+		private final List<ChunkInfo> replicas;
+		private final long chunkSize;
+		private final long from;
+		private final long len;
+		private final long fileOffset;
+		private final int first;
+		private byte[] buf;
+		/* bytes of the range written so far */
+		private long written;
+		private Hash digest;
+
+		RangeDownload(List<ChunkInfo> replicas, long chunkSize, long from,
+				long len, long fileOffset, int index) {
+			this.replicas = replicas;
+			this.chunkSize = chunkSize;
+			this.from = from;
+			this.len = len;
+			this.fileOffset = fileOffset;
+			// without statistics, spread the ranges of a chunk over its replicas
+			this.first = index % replicas.size();
+		}
+
+		RangeDownload verify() {
+			this.digest = Hash.md5();
+			return this;
+		}
+
+		@Override
+		public void run() {
+			buf = new byte[(int) Math.min(BUFFER_SIZE, len)];
+			fetcher.fetch(replicas, first, chunkSize, from, len, this);
+		}
+
+		@Override
+		public int read(InputStream body, long remaining) throws IOException {
+			int read = body.read(buf, 0, (int) Math.min(buf.length, remaining));
+			if (0 < read) {
+				write(buf, read, fileOffset + written);
+				if (null != digest)
+					digest.putBytes(buf, 0, read);
+				written += read;
+			}
+			return read;
+		}
+
+		@Override
+		public boolean complete(ChunkInfo ci) {
+			if (null == digest)
+				return true;
+			String md5 = digest.hash().toString();
+			if (md5.equalsIgnoreCase(ci.hash()))
+				return true;
+			logger.warn(format("Chunk %s does not match its hash (expected %s, got %s)",
+					ci.url(), ci.hash(), md5));
+			// the next replica is written over the corrupted data
+			written = 0;
+			digest = Hash.md5();
+			return false;
+		}
+
+		private void write(byte[] buf, int len, long position) {
+			ByteBuffer bb = ByteBuffer.wrap(buf, 0, len);
+			try {
+				while (bb.hasRemaining())
+					channel.write(bb, position + bb.position());
+			} catch (IOException e) {
+				throw new WriteException(e);
+			}
+		}
+	}
+
+	/**
+	 * Failure to write to the channel, which is not worth retrying on another
+	 * replica.
+	 */
+	private static class WriteException extends OioException {
+
+		private static final long serialVersionUID = 1L;
+
+		WriteException(IOException cause) {
+			super("Failed to write to channel", cause);
+		}
+	}
+}
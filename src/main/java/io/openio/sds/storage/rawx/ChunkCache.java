@@ -0,0 +1,158 @@
+package io.openio.sds.storage.rawx;
+
+import io.openio.sds.common.Hash;
+import io.openio.sds.logging.SdsLogger;
+import io.openio.sds.logging.SdsLoggerFactory;
+import io.openio.sds.models.ChunkInfo;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.String.format;
+
+/**
+ * Cache of whole chunk contents, used by the download streams to serve hot
+ * chunks without requesting a rawx service.
+ * <p>
+ * Chunks are identified by their hash and size, which are shared by all the
+ * replicas of a position, so any replica fills the cache for the others.
+ * Chunks without a known hash are never cached, and data is only stored once
+ * its md5 matches the hash of the chunk. Ranges are served from the cached
+ * chunk.
+ */
+public abstract class ChunkCache {
+
+	private static final SdsLogger logger = SdsLoggerFactory
+			.getLogger(ChunkCache.class);
+
+	private final int maxEntrySize;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong rejections = new AtomicLong();
+
+	protected ChunkCache(int maxEntrySize) {
+		this.maxEntrySize = maxEntrySize;
+	}
+
+	/**
+	 * @param ci
+	 *            the chunk to check
+	 * @return {@code true} if the specified chunk may be cached
+	 */
+	public boolean accepts(ChunkInfo ci) {
+		return null != ci.hash() && null != ci.size() && 0 < ci.size()
+				&& ci.size() <= maxEntrySize;
+	}
+
+	/**
+	 * Looks up the content of a chunk
+	 *
+	 * @param ci
+	 *            the chunk to look up
+	 * @return a read-only view of the whole chunk content, or {@code null} if
+	 *         not cached
+	 */
+	public ByteBuffer get(ChunkInfo ci) {
+		if (!accepts(ci))
+			return null;
+		ByteBuffer data = lookup(key(ci));
+		if (null == data) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return data;
+	}
+
+	/**
+	 * Stores the content of a chunk, if it matches the chunk hash. The cache
+	 * may keep a reference to the specified buffer, which must not be
+	 * modified afterwards.
+	 *
+	 * @param ci
+	 *            the chunk the data belongs to
+	 * @param data
+	 *            the whole chunk content, from its position to its limit
+	 * @return {@code true} if the data has been stored
+	 */
+	public boolean put(ChunkInfo ci, ByteBuffer data) {
+		if (!accepts(ci) || data.remaining() != ci.size())
+			return false;
+		String md5 = Hash.md5().putBytes(data).hash().toString();
+		if (!md5.equalsIgnoreCase(ci.hash())) {
+			rejections.incrementAndGet();
+			logger.warn(format("Chunk %s does not match its hash, not cached",
+					ci.url()));
+			return false;
+		}
+		return store(key(ci), data);
+	}
+
+	/**
+	 * @param key
+	 *            the key of the chunk
+	 * @return a read-only view of the chunk content, or {@code null}
+	 */
+	protected abstract ByteBuffer lookup(String key);
+
+	/**
+	 * @param key
+	 *            the key of the chunk
+	 * @param data
+	 *            the validated chunk content
+	 * @return {@code true} if the data has been stored
+	 */
+	protected abstract boolean store(String key, ByteBuffer data);
+
+	/**
+	 * @return the number of cached chunks
+	 */
+	public abstract int entries();
+
+	/**
+	 * @return the number of bytes currently cached
+	 */
+	public abstract long weight();
+
+	/**
+	 * @return the number of chunks evicted to make room for others
+	 */
+	public abstract long evictions();
+
+	/**
+	 * @return the number of lookups served from the cache
+	 */
+	public long hits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of lookups not served from the cache
+	 */
+	public long misses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of chunks not cached because they did not match
+	 *         their hash
+	 */
+	public long rejections() {
+		return rejections.get();
+	}
+
+	public int maxEntrySize() {
+		return maxEntrySize;
+	}
+
+	/**
+	 * Releases the resources held by the cache, if any. Nothing is cached
+	 * afterwards.
+	 */
+	public void close() {
+	}
+
+	static String key(ChunkInfo ci) {
+		return ci.hash().toUpperCase() + "/" + ci.size();
+	}
+}
@@ -0,0 +1,438 @@
+package io.openio.sds.storage.rawx;
+
+import static io.openio.sds.common.Check.checkArgument;
+import static java.lang.String.format;
+
+import io.openio.sds.common.Hash;
+import io.openio.sds.common.OioConstants;
+import io.openio.sds.exceptions.OioSystemException;
+import io.openio.sds.logging.SdsLogger;
+import io.openio.sds.logging.SdsLoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ChunkCache} persisted in a local directory, for nodes with fast disks
+ * but a slow link to the storage cluster.
+ * <p>
+ * Chunks are appended to segment files of a fixed maximum size, and served
+ * from memory mappings of these files, so repeated reads hit the page cache.
+ * Each segment is mapped once, and a record is forced to the disk as soon as it
+ * is written, outside of the lock of the cache. When the cache is full, the
+ * oldest segment is dropped as a whole. The segment being written counts for
+ * its whole size, as its file is extended to it up front.
+ * The index is rebuilt by scanning the segments when the cache is opened, so
+ * the cache survives restarts. The md5 of each record is checked against its
+ * key while scanning, and a segment is truncated at its first incomplete or
+ * corrupted record, left by a crash or a disk error.
+ * <p>
+ * The directory is locked while the cache is open, so that it is not shared by
+ * several caches, in this process or another.
+ * <p>
+ * Each record is made of a magic number, the key length and the key, the data
+ * length and the data, then the magic number again.
+ */
+public class DiskChunkCache extends ChunkCache {
+
+	private static final SdsLogger logger = SdsLoggerFactory
+			.getLogger(DiskChunkCache.class);
+
+	private static final int MAGIC = 0x0C4C4E01;
+	private static final String PREFIX = "segment-";
+	private static final String SUFFIX = ".dat";
+	private static final String LOCK = ".lock";
+
+	private final File directory;
+	private final long capacity;
+	private final int segmentSize;
+	private final RandomAccessFile lockFile;
+	private FileLock lock;
+	private final LinkedList<Segment> segments = new LinkedList<Segment>();
+	private final Map<String, Entry> index = new HashMap<String, Entry>();
+	private long evictions = 0;
+
+	/**
+	 * Opens the cache stored in the specified directory, creating it if
+	 * needed.
+	 *
+	 * @param directory
+	 *            the directory holding the segment files
+	 * @param capacity
+	 *            the maximum number of bytes of the segment files
+	 * @param segmentSize
+	 *            the maximum size of a segment file, which bounds the size of
+	 *            a cached chunk
+	 * @throws OioSystemException
+	 *             if the directory cannot be read or created, or is already
+	 *             used by another cache
+	 */
+	public DiskChunkCache(File directory, long capacity, int segmentSize) {
+		super(segmentSize - headerSize(64) - 4);
+		checkArgument(null != directory, "directory cannot be null");
+		checkArgument(0 < segmentSize && segmentSize <= capacity,
+				"segment size must be positive and not larger than capacity");
+		this.directory = directory;
+		this.capacity = capacity;
+		this.segmentSize = segmentSize;
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new OioSystemException("Unable to create cache directory "
+					+ directory);
+		try {
+			this.lockFile = new RandomAccessFile(new File(directory, LOCK), "rw");
+		} catch (IOException e) {
+			throw new OioSystemException("Unable to lock cache directory "
+					+ directory, e);
+		}
+		this.lock = lock(lockFile, directory);
+		try {
+			load();
+		} catch (IOException e) {
+			close();
+			throw new OioSystemException("Unable to load cache directory "
+					+ directory, e);
+		}
+	}
+
+	private static FileLock lock(RandomAccessFile lockFile, File directory) {
+		FileLock lock = null;
+		IOException error = null;
+		try {
+			lock = lockFile.getChannel().tryLock();
+		} catch (OverlappingFileLockException e) {
+			// held by another cache of this process
+		} catch (IOException e) {
+			error = e;
+		}
+		if (null != lock)
+			return lock;
+		try {
+			lockFile.close();
+		} catch (IOException e) {
+			// nothing to do
+		}
+		throw new OioSystemException("Cache directory " + directory
+				+ " is already in use", error);
+	}
+
+	@Override
+	protected synchronized ByteBuffer lookup(String key) {
+		Entry entry = index.get(key);
+		if (null == entry)
+			return null;
+		try {
+			return entry.segment.read(entry.offset, entry.length);
+		} catch (IOException e) {
+			logger.warn(format("Unable to read cached chunk %s", key), e);
+			index.remove(key);
+			return null;
+		}
+	}
+
+	@Override
+	protected boolean store(String key, ByteBuffer data) {
+		byte[] bkey = key.getBytes(OioConstants.OIO_CHARSET);
+		int recordSize = headerSize(bkey.length) + data.remaining() + 4;
+		if (recordSize > segmentSize)
+			return false;
+		MappedByteBuffer written;
+		synchronized (this) {
+			if (index.containsKey(key))
+				return true;
+			if (null == lock)
+				return false;
+			try {
+				Segment active = segments.peekLast();
+				if (null == active || !active.writable
+						|| active.size + recordSize > segmentSize) {
+					if (null != active)
+						active.seal();
+					// the new segment takes its whole size on the disk
+					while (weight() + segmentSize > capacity
+							&& !segments.isEmpty())
+						evict();
+					active = new Segment(nextId(), null);
+					segments.add(active);
+				}
+				index.put(key, active.append(bkey, data));
+				written = active.mapped;
+			} catch (IOException e) {
+				logger.warn(format("Unable to cache chunk %s", key), e);
+				return false;
+			}
+		}
+		// a lost record is detected when the segment is scanned again
+		written.force();
+		return true;
+	}
+
+	@Override
+	public synchronized int entries() {
+		return index.size();
+	}
+
+	/**
+	 * @return the total size of the segment files, the segment being written
+	 *         included for its whole size
+	 */
+	@Override
+	public synchronized long weight() {
+		long res = 0;
+		for (Segment segment : segments)
+			res += segment.footprint();
+		return res;
+	}
+
+	@Override
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	/**
+	 * Releases the segment files and the lock of the directory. Nothing is
+	 * cached afterwards.
+	 */
+	@Override
+	public synchronized void close() {
+		for (Segment segment : segments)
+			segment.close();
+		segments.clear();
+		index.clear();
+		if (null == lock)
+			return;
+		try {
+			lock.release();
+			lockFile.close();
+		} catch (IOException e) {
+			logger.warn("Unable to unlock cache directory " + directory, e);
+		}
+		lock = null;
+	}
+
+	private void evict() {
+		Segment oldest = segments.removeFirst();
+		Iterator<Entry> it = index.values().iterator();
+		while (it.hasNext()) {
+			if (oldest == it.next().segment) {
+				it.remove();
+				evictions++;
+			}
+		}
+		oldest.close();
+		if (!oldest.file.delete())
+			logger.warn("Unable to delete cache segment " + oldest.file);
+	}
+
+	private long nextId() {
+		return segments.isEmpty() ? 0 : segments.getLast().id + 1;
+	}
+
+	private void load() throws IOException {
+		File[] files = directory.listFiles();
+		List<Long> ids = new ArrayList<Long>();
+		for (File file : null == files ? new File[0] : files) {
+			String name = file.getName();
+			if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+				try {
+					ids.add(Long.parseLong(name.substring(PREFIX.length(),
+							name.length() - SUFFIX.length())));
+				} catch (NumberFormatException e) {
+					// not one of ours
+				}
+			}
+		}
+		Long[] sorted = ids.toArray(new Long[ids.size()]);
+		Arrays.sort(sorted);
+		for (Long id : sorted)
+			segments.add(new Segment(id, index));
+		while (weight() > capacity && segments.size() > 1)
+			evict();
+	}
+
+	private static int headerSize(int keyLength) {
+		return 4 + 2 + keyLength + 4;
+	}
+
+	/**
+	 * @return {@code true} if the data matches the hash and the size of the
+	 *         chunk key
+	 */
+	private static boolean matches(String key, ByteBuffer data) {
+		int sep = key.indexOf('/');
+		if (0 > sep || !String.valueOf(data.remaining())
+				.equals(key.substring(sep + 1)))
+			return false;
+		return Hash.md5().putBytes(data).hash().toString()
+				.equalsIgnoreCase(key.substring(0, sep));
+	}
+
+	private static class Entry {
+
+		private final Segment segment;
+		private final long offset;
+		private final int length;
+
+		Entry(Segment segment, long offset, int length) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	private class Segment {
+
+		private final long id;
+		private final File file;
+		private final FileChannel channel;
+		private MappedByteBuffer mapped;
+		/* only the segment created last is appended to */
+		private final boolean writable;
+		private boolean sealed = false;
+		private long size;
+
+		/**
+		 * Opens the specified segment, adding its records to the index if
+		 * given, or creates a new segment to append records to.
+		 */
+		Segment(long id, Map<String, Entry> index) throws IOException {
+			this.id = id;
+			this.file = new File(directory, format("%s%016d%s", PREFIX, id,
+					SUFFIX));
+			this.writable = null == index;
+			// a new segment must not be an existing one, written by another
+			this.channel = writable
+					? FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+							StandardOpenOption.READ, StandardOpenOption.WRITE)
+					: FileChannel.open(file.toPath(), StandardOpenOption.READ,
+							StandardOpenOption.WRITE);
+			if (writable) {
+				// mapped once for its whole life, appends go through the map
+				this.size = 0;
+				this.mapped = channel.map(MapMode.READ_WRITE, 0, segmentSize);
+			} else {
+				this.sealed = true;
+				this.size = scan(index);
+				channel.truncate(size);
+				if (0 < size)
+					this.mapped = channel.map(MapMode.READ_ONLY, 0, size);
+			}
+		}
+
+		/**
+		 * @return the size of the valid records
+		 */
+		private long scan(Map<String, Entry> index) throws IOException {
+			long length = channel.size();
+			if (0 == length)
+				return 0;
+			ByteBuffer map = channel.map(MapMode.READ_ONLY, 0, length);
+			Map<String, Entry> found = new HashMap<String, Entry>();
+			int offset = 0;
+			String reason = "incomplete record";
+			while (map.remaining() >= headerSize(0) + 4) {
+				int magic = map.getInt();
+				if (MAGIC != magic) {
+					// the space left by a segment not closed is zeroed
+					if (0 == magic)
+						reason = null;
+					break;
+				}
+				int keyLength = map.getShort() & 0xFFFF;
+				if (map.remaining() < keyLength + 4)
+					break;
+				byte[] bkey = new byte[keyLength];
+				map.get(bkey);
+				int dataLength = map.getInt();
+				if (dataLength < 0 || map.remaining() < dataLength + 4)
+					break;
+				int dataOffset = map.position();
+				map.position(dataOffset + dataLength);
+				if (MAGIC != map.getInt())
+					break;
+				String key = new String(bkey, OioConstants.OIO_CHARSET);
+				ByteBuffer data = map.duplicate();
+				data.position(dataOffset);
+				data.limit(dataOffset + dataLength);
+				if (!matches(key, data)) {
+					reason = "corrupted record " + key;
+					break;
+				}
+				found.put(key, new Entry(this, dataOffset, dataLength));
+				offset = map.position();
+			}
+			if (offset < length && null != reason)
+				logger.warn(format("Discarding %d bytes of %s from offset %d, %s",
+						length - offset, file, offset, reason));
+			index.putAll(found);
+			return offset;
+		}
+
+		/**
+		 * @return the space taken on the disk
+		 */
+		long footprint() {
+			return sealed ? size : segmentSize;
+		}
+
+		/**
+		 * Writes the record in the mapping. It is up to the caller to force it
+		 * to the disk.
+		 */
+		Entry append(byte[] key, ByteBuffer data) throws IOException {
+			int length = data.remaining();
+			ByteBuffer map = mapped.duplicate();
+			map.position((int) size);
+			map.putInt(MAGIC).putShort((short) key.length).put(key)
+					.putInt(length).put(data.duplicate()).putInt(MAGIC);
+			Entry entry = new Entry(this, size + headerSize(key.length), length);
+			size = map.position();
+			return entry;
+		}
+
+		ByteBuffer read(long offset, int length) throws IOException {
+			ByteBuffer map = mapped.duplicate();
+			map.position((int) offset);
+			map.limit((int) offset + length);
+			return map.slice().asReadOnlyBuffer();
+		}
+
+		/**
+		 * Releases the space left at the end of the segment once it is not
+		 * appended to anymore.
+		 */
+		void seal() throws IOException {
+			if (channel.size() > size)
+				channel.truncate(size);
+			sealed = true;
+		}
+
+		void close() {
+			try {
+				seal();
+			} catch (IOException e) {
+				logger.warn("Unable to truncate cache segment " + file, e);
+			}
+			mapped = null;
+			try {
+				channel.close();
+			} catch (IOException e) {
+				logger.warn("Unable to close cache segment " + file, e);
+			}
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package io.openio.sds.storage.rawx;
+
+import io.openio.sds.models.ChunkInfo;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the time to first byte, the throughput and the errors of
+ * each rawx service, as exponentially weighted moving averages, in order to
+ * read chunks from the replicas expected to answer first.
+ * <p>
+ * Errors are forgotten with time, so a recovered service gets traffic back.
+ */
+public class HostStats {
+
+	/* weight of the last measure in the averages */
+	private static final double ALPHA = 0.2;
+
+	/* time for the error rate to be halved */
+	private static final long ERROR_HALF_LIFE = TimeUnit.SECONDS.toNanos(30);
+
+	/* amount of data used to compare the services, in bytes */
+	private static final double REFERENCE_SIZE = 1024 * 1024;
+
+	/* delay added to the score of a service failing every request, in nanoseconds */
+	private static final double ERROR_PENALTY = TimeUnit.SECONDS.toNanos(10);
+
+	/* random variation of the scores, to spread the load */
+	private static final double JITTER = 0.1;
+
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * Records the time the specified service took to answer a request
+	 *
+	 * @param url the url of the requested chunk
+	 * @param nanos the time to first byte, in nanoseconds
+	 */
+	public void latency(String url, long nanos) {
+		entry(url).latency(nanos);
+	}
+
+	/**
+	 * Records the throughput of a completed transfer
+	 *
+	 * @param url the url of the requested chunk
+	 * @param bytes the number of bytes transferred
+	 * @param nanos the duration of the transfer, in nanoseconds
+	 */
+	public void transfer(String url, long bytes, long nanos) {
+		if (bytes > 0 && nanos > 0)
+			entry(url).transfer(bytes, nanos);
+	}
+
+	/**
+	 * Records a failed request
+	 *
+	 * @param url the url of the requested chunk
+	 */
+	public void error(String url) {
+		entry(url).error();
+	}
+
+	/**
+	 * Returns the specified replicas, ordered by expected download time. Services
+	 * without statistics yet come first, so they get measured.
+	 *
+	 * @param replicas the replicas to order
+	 * @return a new list with the replicas ordered
+	 */
+	public List<ChunkInfo> order(List<ChunkInfo> replicas) {
+		if (replicas.size() < 2)
+			return new ArrayList<ChunkInfo>(replicas);
+		long now = System.nanoTime();
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		List<Scored> scored = new ArrayList<Scored>(replicas.size());
+		for (ChunkInfo ci : replicas) {
+			Entry entry = entries.get(host(ci.finalUrl()));
+			scored.add(new Scored(ci, null == entry ? 0
+					: entry.score(now) * (1 + JITTER * random.nextDouble())));
+		}
+		// shuffling first breaks the ties randomly, as the sort is stable
+		Collections.shuffle(scored, random);
+		Collections.sort(scored);
+		List<ChunkInfo> res = new ArrayList<ChunkInfo>(scored.size());
+		for (Scored s : scored)
+			res.add(s.ci);
+		return res;
+	}
+
+	private Entry entry(String url) {
+		String host = host(url);
+		Entry entry = entries.get(host);
+		if (null == entry) {
+			Entry created = new Entry();
+			entry = entries.putIfAbsent(host, created);
+			if (null == entry)
+				entry = created;
+		}
+		return entry;
+	}
+
+	static String host(String url) {
+		try {
+			String authority = URI.create(url).getAuthority();
+			return null == authority ? url : authority;
+		} catch (IllegalArgumentException e) {
+			return url;
+		}
+	}
+
+	private static class Scored implements Comparable<Scored> {
+
+		private final ChunkInfo ci;
+		private final double score;
+
+		Scored(ChunkInfo ci, double score) {
+			this.ci = ci;
+			this.score = score;
+		}
+
+		@Override
+		public int compareTo(Scored o) {
+			return Double.compare(score, o.score);
+		}
+	}
+
+	private static class Entry {
+
+		private double ttfb = -1; // nanoseconds
+		private double throughput = -1; // bytes per nanosecond
+		private double errors = 0;
+		private long errorsUpdate = System.nanoTime();
+
+		synchronized void latency(long nanos) {
+			ttfb = ttfb < 0 ? nanos : ttfb + ALPHA * (nanos - ttfb);
+			decay(System.nanoTime());
+			errors = (1 - ALPHA) * errors;
+		}
+
+		synchronized void transfer(long bytes, long nanos) {
+			double measure = (double) bytes / nanos;
+			throughput = throughput < 0 ? measure
+					: throughput + ALPHA * (measure - throughput);
+		}
+
+		synchronized void error() {
+			decay(System.nanoTime());
+			errors = (1 - ALPHA) * errors + ALPHA;
+		}
+
+		/**
+		 * @return the expected time to download the reference size, inflated
+		 *         by the recent error rate
+		 */
+		synchronized double score(long now) {
+			decay(now);
+			double expected = Math.max(ttfb, 0)
+					+ (throughput > 0 ? REFERENCE_SIZE / throughput : 0);
+			// a service failing every request is pushed behind any other
+			return expected * (1 + 100 * errors) + ERROR_PENALTY * errors;
+		}
+
+		private void decay(long now) {
+			long elapsed = now - errorsUpdate;
+			if (elapsed > 0) {
+				errors *= Math.pow(0.5, (double) elapsed / ERROR_HALF_LIFE);
+				errorsUpdate = now;
+			}
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package io.openio.sds.storage.rawx;
+
+import static io.openio.sds.common.Check.checkArgument;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ChunkCache} bounded by the total size of the cached chunks, kept in
+ * heap or direct buffers.
+ * <p>
+ * Chunks are evicted in least recently used order, but a new chunk is only
+ * admitted if it has been requested more often than the chunks it would
+ * evict, in the manner of TinyLFU. Access frequencies are approximated by a
+ * small count-min sketch which is periodically halved, so one-hit wonders do
+ * not flush the hot chunks out of the cache.
+ */
+public class MemoryChunkCache extends ChunkCache {
+
+	private final long capacity;
+	private final boolean direct;
+	private final LinkedHashMap<String, ByteBuffer> entries = new LinkedHashMap<String, ByteBuffer>(
+			16, 0.75f, true);
+	private final FrequencySketch sketch;
+	private long weight = 0;
+	private long evictions = 0;
+
+	/**
+	 * @param capacity
+	 *            the maximum number of bytes to cache
+	 * @param maxEntrySize
+	 *            the maximum size of a cached chunk
+	 * @param direct
+	 *            {@code true} to keep the chunks out of the heap
+	 */
+	public MemoryChunkCache(long capacity, int maxEntrySize, boolean direct) {
+		super((int) Math.min(maxEntrySize, capacity));
+		checkArgument(0 < capacity, "capacity must be positive");
+		checkArgument(0 < maxEntrySize, "maxEntrySize must be positive");
+		this.capacity = capacity;
+		this.direct = direct;
+		// room for the counters of about 4 times the number of average entries
+		long expected = capacity / Math.max(1, Math.min(maxEntrySize, 65536));
+		this.sketch = new FrequencySketch((int) Math.min(1 << 22,
+				Math.max(64, 4 * expected)));
+	}
+
+	@Override
+	protected synchronized ByteBuffer lookup(String key) {
+		sketch.increment(key);
+		ByteBuffer data = entries.get(key);
+		return null == data ? null : data.asReadOnlyBuffer();
+	}
+
+	@Override
+	protected synchronized boolean store(String key, ByteBuffer data) {
+		if (entries.containsKey(key))
+			return true;
+		int size = data.remaining();
+		if (size > capacity)
+			return false;
+		List<String> victims = new ArrayList<String>();
+		long freed = 0;
+		int victimFrequency = 0;
+		Iterator<Map.Entry<String, ByteBuffer>> it = entries.entrySet().iterator();
+		while (weight - freed + size > capacity && it.hasNext()) {
+			Map.Entry<String, ByteBuffer> eldest = it.next();
+			victims.add(eldest.getKey());
+			freed += eldest.getValue().capacity();
+			victimFrequency = Math.max(victimFrequency,
+					sketch.frequency(eldest.getKey()));
+		}
+		if (!victims.isEmpty() && sketch.frequency(key) <= victimFrequency)
+			return false;
+		for (String victim : victims) {
+			weight -= entries.remove(victim).capacity();
+			evictions++;
+		}
+		entries.put(key, copy(data));
+		weight += size;
+		return true;
+	}
+
+	private ByteBuffer copy(ByteBuffer data) {
+		if (!direct && data.hasArray())
+			return data.slice();
+		ByteBuffer res = direct ? ByteBuffer.allocateDirect(data.remaining())
+				: ByteBuffer.allocate(data.remaining());
+		res.put(data.duplicate());
+		res.flip();
+		return res;
+	}
+
+	@Override
+	public synchronized int entries() {
+		return entries.size();
+	}
+
+	@Override
+	public synchronized long weight() {
+		return weight;
+	}
+
+	@Override
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	public long capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Count-min sketch of 4 rows sharing the same table, with counters
+	 * saturating at 15, all halved once enough increments have been
+	 * recorded.
+	 */
+	private static class FrequencySketch {
+
+		private static final int[] SEEDS = { 0x97cb3127, 0xb3a3f9b1,
+				0x5bd1e995, 0x9e3779b9 };
+		private static final int MAX_COUNT = 15;
+
+		private final byte[] table;
+		private final int sampleSize;
+		private int additions = 0;
+
+		FrequencySketch(int width) {
+			this.table = new byte[Integer.highestOneBit(width - 1) << 1];
+			this.sampleSize = 10 * table.length;
+		}
+
+		void increment(String key) {
+			int hash = key.hashCode();
+			for (int seed : SEEDS) {
+				int i = index(hash, seed);
+				if (table[i] < MAX_COUNT)
+					table[i]++;
+			}
+			if (++additions >= sampleSize)
+				reset();
+		}
+
+		int frequency(String key) {
+			int hash = key.hashCode();
+			int res = MAX_COUNT;
+			for (int seed : SEEDS)
+				res = Math.min(res, table[index(hash, seed)]);
+			return res;
+		}
+
+		private int index(int hash, int seed) {
+			int h = (hash ^ seed) * 0x85ebca6b;
+			h ^= h >>> 13;
+			h *= 0xc2b2ae35;
+			h ^= h >>> 16;
+			return h & (table.length - 1);
+		}
+
+		private void reset() {
+			for (int i = 0; i < table.length; i++)
+				table[i] >>= 1;
+			additions /= 2;
+		}
+	}
+}
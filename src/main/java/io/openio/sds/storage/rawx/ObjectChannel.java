@@ -0,0 +1,182 @@
+package io.openio.sds.storage.rawx;
+
+import static io.openio.sds.common.Check.checkArgument;
+
+import io.openio.sds.RequestContext;
+import io.openio.sds.http.OioHttp;
+import io.openio.sds.models.ObjectInfo;
+import io.openio.sds.models.Range;
+import io.openio.sds.storage.Target;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Read-only {@link SeekableByteChannel} over a stored object.
+ * <p>
+ * Changing the position costs nothing by itself: the chunk holding the
+ * position is only requested on the next read, from the position to the end
+ * of the chunk. Moving forward within the chunk being read reuses the current
+ * request when the distance is short, and seeking backward or to another
+ * chunk opens a new one.
+ * <p>
+ * For replicated policies only
+ */
+public class ObjectChannel implements SeekableByteChannel {
+
+	private static final int TRANSFER_SIZE = 65536;
+
+	private final ObjectInfo oinf;
+	private final OioHttp http;
+	private final RequestContext reqCtx;
+	private final HostStats stats;
+	private final ChunkCache cache;
+	private long position = 0;
+	private boolean open = true;
+
+	private TargetInputStream stream;
+	/* offset in the object of the next byte of the stream */
+	private long streamOffset;
+	/* offset in the object of the end of the stream */
+	private long streamEnd;
+	private byte[] transfer;
+
+	/**
+	 * @param oinf
+	 *            the object to read
+	 * @param http
+	 *            the http client to use
+	 * @param reqCtx
+	 *            common parameters to all requests
+	 * @param stats
+	 *            the statistics used to order the replicas, may be
+	 *            {@code null}
+	 * @param cache
+	 *            the chunk cache to use, may be {@code null}
+	 */
+	public ObjectChannel(ObjectInfo oinf, OioHttp http, RequestContext reqCtx,
+			HostStats stats, ChunkCache cache) {
+		checkArgument(null != oinf, "ObjectInfo cannot be null");
+		checkArgument(!oinf.isEC(), "Erasure coded objects are not supported");
+		this.oinf = oinf;
+		this.http = http;
+		this.reqCtx = reqCtx;
+		this.stats = stats;
+		this.cache = cache;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		checkOpen();
+		if (!dst.hasRemaining())
+			return 0;
+		if (position >= oinf.size())
+			return -1;
+		int total = 0;
+		while (dst.hasRemaining() && position < oinf.size()) {
+			prepare();
+			int length = (int) Math.min(dst.remaining(), streamEnd - position);
+			int read;
+			if (dst.hasArray()) {
+				read = stream.read(dst.array(), dst.arrayOffset() + dst.position(),
+						length);
+				if (0 < read)
+					dst.position(dst.position() + read);
+			} else {
+				if (null == transfer)
+					transfer = new byte[TRANSFER_SIZE];
+				read = stream.read(transfer, 0, Math.min(length, transfer.length));
+				if (0 < read)
+					dst.put(transfer, 0, read);
+			}
+			if (-1 == read)
+				throw new EOFException("Unexpected end of object");
+			position += read;
+			streamOffset += read;
+			total += read;
+		}
+		return total;
+	}
+
+	/**
+	 * Positions the stream at the current position, reusing the current one
+	 * if the position is ahead in the same chunk.
+	 */
+	private void prepare() throws IOException {
+		if (null != stream && position >= streamOffset && position < streamEnd) {
+			while (streamOffset < position) {
+				long skipped = stream.skip(position - streamOffset);
+				if (0 >= skipped)
+					throw new EOFException("Unexpected end of object");
+				streamOffset += skipped;
+			}
+			return;
+		}
+		closeStream();
+		int pos = oinf.position(position);
+		long offset = position - oinf.offset(pos);
+		long length = oinf.positionSize(pos) - offset;
+		Target target = new Target()
+				.setChunk(oinf.sortedChunks().get(pos))
+				.setRange(Range.slice(offset, length));
+		stream = new TargetInputStream(target, http, reqCtx, stats, cache);
+		streamOffset = position;
+		streamEnd = position + length;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public long position() throws IOException {
+		checkOpen();
+		return position;
+	}
+
+	@Override
+	public ObjectChannel position(long newPosition) throws IOException {
+		checkArgument(0 <= newPosition, "position cannot be negative");
+		checkOpen();
+		this.position = newPosition;
+		return this;
+	}
+
+	@Override
+	public long size() throws IOException {
+		checkOpen();
+		return oinf.size();
+	}
+
+	@Override
+	public SeekableByteChannel truncate(long size) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() {
+		closeStream();
+		open = false;
+	}
+
+	private void closeStream() {
+		if (null != stream)
+			stream.close();
+		stream = null;
+	}
+
+	private void checkOpen() throws ClosedChannelException {
+		if (!open)
+			throw new ClosedChannelException();
+	}
+}
@@ -1,60 +1,154 @@
 package io.openio.sds.storage.rawx;
 
 import io.openio.sds.RequestContext;
-import io.openio.sds.common.OioConstants;
-import io.openio.sds.exceptions.OioException;
 import io.openio.sds.http.OioHttp;
-import io.openio.sds.http.OioHttp.RequestBuilder;
-import io.openio.sds.http.OioHttpResponse;
-import io.openio.sds.logging.SdsLogger;
-import io.openio.sds.logging.SdsLoggerFactory;
-import io.openio.sds.models.ChunkInfo;
+import io.openio.sds.storage.ReadAheadInputStream;
 import io.openio.sds.storage.Target;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
 import java.util.List;
-
-import static io.openio.sds.common.OioConstants.OIO_REQUEST_ID_HEADER;
-import static io.openio.sds.http.Verifiers.RAWX_VERIFIER;
-import static java.lang.String.format;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
 
 /**
  * For replicated policies only
+ * <p>
+ * Also usable as a {@link ReadableByteChannel}, reading straight into the
+ * backing array of heap buffers.
  *
  * @author Christopher Dedeurwaerder
  */
-public class ObjectInputStream extends InputStream {
+public class ObjectInputStream extends InputStream implements ReadableByteChannel {
 
-	private static final SdsLogger logger = SdsLoggerFactory
-			.getLogger(ObjectInputStream.class);
+	private static final int TRANSFER_SIZE = 65536;
 
-	private OioHttp http;
-	private List<Target> targets;
+	private List<TargetInputStream> parts;
+	private ReadAheadInputStream ahead = null;
 	private int pos = 0;
-	private long currentRemaining;
-	private ChunkInfo currentChunk;
-	private OioHttpResponse current;
-	private RequestContext reqCtx;
+	private boolean closed = false;
+	private final byte[] single = new byte[1];
+	private byte[] transfer = null;
 
 	public ObjectInputStream(List<Target> targets, OioHttp http, RequestContext reqCtx) {
-		this.targets = targets;
-		this.http = http;
-		this.reqCtx = reqCtx;
+		this(targets, http, reqCtx, new RawxSettings().readAhead(0), null, null, null,
+				null);
+	}
+
+	/**
+	 * @param targets
+	 *            the targets to read, in order
+	 * @param http
+	 *            the http client to use
+	 * @param reqCtx
+	 *            common parameters to all requests
+	 * @param settings
+	 *            the read-ahead and verification configuration
+	 * @param executor
+	 *            the executor to fetch the upcoming targets with, read-ahead
+	 *            is disabled if {@code null}
+	 * @param stats
+	 *            the statistics used to order the replicas, may be
+	 *            {@code null}
+	 * @param cache
+	 *            the chunk cache to use, may be {@code null}
+	 * @param blocks
+	 *            the pool of read-ahead blocks, may be {@code null}
+	 */
+	public ObjectInputStream(List<Target> targets, OioHttp http, RequestContext reqCtx,
+			RawxSettings settings, ExecutorService executor, HostStats stats,
+			ChunkCache cache, BlockingQueue<byte[]> blocks) {
+		this.parts = new ArrayList<TargetInputStream>(targets.size());
+		for (Target target : targets)
+			parts.add(new TargetInputStream(target, http, reqCtx, stats, cache)
+					.verify(settings.verifyChecksums()));
+		if (null != executor && 0 < settings.readAhead() && 1 < parts.size())
+			this.ahead = new ReadAheadInputStream(parts, executor,
+					settings.readAhead(), settings.readAheadBuffer(), blocks)
+					.timeout(settings.http().readTimeout(), reqCtx);
+	}
+
+	/**
+	 * @return the stream over the target at the specified index
+	 */
+	TargetInputStream part(int index) {
+		return parts.get(index);
 	}
 
 	@Override
 	public void close() {
-		if (null != current)
-			current.close();
-		pos = targets.size() + 1;
+		if (null != ahead)
+			ahead.close();
+		// parts not read yet may hold requests sent in advance
+		for (int i = pos; i < parts.size(); i++)
+			parts.get(i).close();
+		closed = true;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		if (closed || 0 >= n)
+			return 0;
+		if (null != ahead)
+			return super.skip(n);
+		// whole targets are skipped without being requested
+		long skipped = 0;
+		while (skipped < n && pos < parts.size()) {
+			skipped += parts.get(pos).skip(n - skipped);
+			if (skipped < n)
+				parts.get(pos++).close();
+		}
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		if (closed || null != ahead || pos >= parts.size())
+			return 0;
+		return parts.get(pos).available();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return !closed;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		if (closed)
+			throw new ClosedChannelException();
+		if (!dst.hasRemaining())
+			return 0;
+		if (dst.hasArray()) {
+			int read = read(dst.array(), dst.arrayOffset() + dst.position(),
+					dst.remaining());
+			if (0 < read)
+				dst.position(dst.position() + read);
+			return read;
+		}
+		// direct buffers are filled through a single reused array
+		if (null == transfer)
+			transfer = new byte[TRANSFER_SIZE];
+		int totRead = 0;
+		while (dst.hasRemaining()) {
+			int read = readPart(transfer, 0,
+					Math.min(transfer.length, dst.remaining()));
+			if (-1 == read)
+				return 0 == totRead ? -1 : totRead;
+			dst.put(transfer, 0, read);
+			totRead += read;
+		}
+		return totRead;
 	}
 
 	@Override
 	public int read() throws IOException {
-		byte[] b = new byte[1];
-		int read = read(b, 0, 1);
-		return read < 0 ? -1 : b[0];
+		int read = read(single, 0, 1);
+		return read < 0 ? -1 : single[0] & 0xFF;
 	}
 
 	@Override
@@ -67,72 +161,26 @@ public class ObjectInputStream extends InputStream {
 		if (0 >= length)
 			return 0;
 		int totRead = 0;
-
 		while (totRead < length) {
-			if (null == current || 0 >= currentRemaining) {
-				if (pos >= targets.size())
-					return 0 == totRead ? -1 : totRead;
-				next(0);
-			}
-
-			int read = current.body().read(buf, offset + totRead,
-					Math.min(remaining(),
-							Math.min(length - totRead,
-									buf.length - offset + totRead)));
-
-			if (currentRemaining != 0) {
-				if (-1 == read) {
-					throw new IOException(
-							format(
-									"Error during download, unexpected end of chunk stream (url: %s, read: %d, size: %d)",
-									currentChunk.url(),
-									currentChunk.size() - currentRemaining,
-									currentChunk.size()));
-				}
-
-				currentRemaining -= read;
-			}
-			if (0 == currentRemaining) {
-				current.close();
-				current = null;
-			}
-			totRead += Math.max(0, read);
+			int read = readPart(buf, offset + totRead, length - totRead);
+			if (-1 == read)
+				return 0 == totRead ? -1 : totRead;
+			totRead += read;
 		}
 		return totRead;
 	}
 
-	private int remaining() {
-		return currentRemaining > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) currentRemaining;
-	}
-
-	private void next(int offset) {
-		Target t = targets.get(pos);
-		currentChunk = t.getChunk().get(offset);
-		if (logger.isDebugEnabled())
-			logger.debug("download from " + currentChunk.finalUrl());
-		try {
-			RequestBuilder builder = http.get(currentChunk.finalUrl())
-					.verifier(RAWX_VERIFIER)
-					.withRequestContext(this.reqCtx);
-
-			if (null != targets.get(pos).getRange())
-				builder.header(OioConstants.RANGE_HEADER,
-						targets.get(pos).getRange().headerValue());
-
-			current = builder.execute();
-
-			currentRemaining = null != targets.get(pos).getRange()
-					? t.getRange().to() - t.getRange().from()
-					: currentChunk.size().intValue();
-			pos++;
-		} catch (OioException e) {
-			if (offset + 1 >= targets.get(pos).getChunk().size())
-				throw new OioException(
-						"Definitely failed to download chunk at pos " + pos, e);
-			logger.warn("Error while trying to download " + currentChunk.url(),
-					e);
-			next(offset + 1);
+	private int readPart(byte[] buf, int offset, int length) throws IOException {
+		if (closed)
+			return -1;
+		if (null != ahead)
+			return ahead.read(buf, offset, length);
+		while (pos < parts.size()) {
+			int read = parts.get(pos).read(buf, offset, length);
+			if (-1 != read)
+				return read;
+			parts.get(pos++).close();
 		}
+		return -1;
 	}
-
 }
@@ -0,0 +1,234 @@
+package io.openio.sds.storage.rawx;
+
+import io.openio.sds.RequestContext;
+import io.openio.sds.common.Hash;
+import io.openio.sds.exceptions.OioException;
+import io.openio.sds.http.PendingResponse;
+import io.openio.sds.logging.SdsLogger;
+import io.openio.sds.logging.SdsLoggerFactory;
+import io.openio.sds.models.ChunkInfo;
+import io.openio.sds.models.ObjectInfo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.openio.sds.common.Check.checkArgument;
+import static io.openio.sds.common.OioConstants.CHUNK_META_CHUNK_HASH;
+import static java.lang.String.format;
+
+/**
+ * Uploads the chunks of an object as its data is written. The written bytes
+ * are sent directly to every replica of the current position, so no thread
+ * nor intermediate copy is needed.
+ * <p>
+ * Exactly {@code oinf.size()} bytes must be written before calling
+ * {@link #close()}, which waits for the last chunks to be stored then calls
+ * {@link #commit(ObjectInfo)}. If anything goes wrong, the uploaded chunks
+ * are deleted, and the failure is thrown as an {@link IOException}.
+ * <p>
+ * For replicated policies only
+ */
+public class ObjectOutputStream extends OutputStream {
+
+	private static final SdsLogger logger = SdsLoggerFactory
+			.getLogger(ObjectOutputStream.class);
+
+	private final ObjectInfo oinf;
+	private final RawxClient rawx;
+	private final RequestContext reqCtx;
+	private final Hash md5 = Hash.md5();
+	private final byte[] single = new byte[1];
+
+	private int pos = -1;
+	private long remaining;
+	private long positionSize;
+	private long written = 0;
+	private List<ChunkInfo> chunks;
+	private List<PendingResponse> pendings;
+	private List<OutputStream> bodies;
+	private boolean closed = false;
+	private boolean failed = false;
+
+	public ObjectOutputStream(ObjectInfo oinf, RawxClient rawx,
+			RequestContext reqCtx) {
+		checkArgument(null != oinf, "ObjectInfo cannot be null");
+		checkArgument(!oinf.isEC(), "EC objects cannot be uploaded as a stream");
+		this.oinf = oinf;
+		this.rawx = rawx;
+		this.reqCtx = reqCtx;
+	}
+
+	/**
+	 * @return the object being uploaded
+	 */
+	public ObjectInfo objectInfo() {
+		return oinf;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		single[0] = (byte) b;
+		write(single, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		checkArgument(null != b);
+		checkArgument(off >= 0 && len >= 0 && off + len <= b.length,
+				"Invalid offset or length");
+		if (closed || failed)
+			throw new IOException("Stream closed");
+		if (written + len > oinf.size()) {
+			abort();
+			throw new IOException(format(
+					"Too many bytes written, object size is %d", oinf.size()));
+		}
+		try {
+			while (len > 0) {
+				if (null == pendings)
+					openPosition(pos + 1);
+				int n = (int) Math.min(len, remaining);
+				writeReplicas(b, off, n);
+				md5.putBytes(b, off, n);
+				off += n;
+				len -= n;
+				remaining -= n;
+				written += n;
+				if (0 == remaining)
+					finishPosition();
+			}
+		} catch (OioException e) {
+			abort();
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Completes the upload of the last chunks, then commits the object.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (failed)
+			throw new IOException("Upload aborted");
+		if (closed)
+			return;
+		if (written < oinf.size()) {
+			abort();
+			throw new IOException(format(
+					"Object closed after %d bytes, %d expected", written,
+					oinf.size()));
+		}
+		try {
+			if (0 == oinf.size()) {
+				openPosition(0);
+				finishPosition();
+			}
+			if (pos + 1 < oinf.nbchunks())
+				throw new OioException("Too many chunks prepared");
+			oinf.hash(md5.hash().toString());
+			commit(oinf);
+			closed = true;
+		} catch (OioException e) {
+			abort();
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Called once all the chunks have been uploaded. Does nothing by default.
+	 *
+	 * @param oinf
+	 *            the uploaded object, with its hash and chunks filled
+	 */
+	protected void commit(ObjectInfo oinf) {
+	}
+
+	private void openPosition(int newPos) {
+		if (newPos >= oinf.nbchunks())
+			throw new OioException("Not enough chunks prepared");
+		pos = newPos;
+		remaining = Math.min(oinf.size() - written, oinf.chunksize(pos));
+		positionSize = remaining;
+		chunks = oinf.sortedChunks().get(pos);
+		pendings = new ArrayList<PendingResponse>(chunks.size());
+		bodies = new ArrayList<OutputStream>(chunks.size());
+		for (ChunkInfo ci : chunks) {
+			try {
+				PendingResponse pending = rawx
+						.chunkUploadRequest(oinf, ci, reqCtx)
+						.sendHead(remaining);
+				pendings.add(pending);
+				bodies.add(pending.body());
+			} catch (OioException e) {
+				logger.warn(format("Failed to upload chunk %s", ci), e);
+				pendings.add(null);
+				bodies.add(null);
+			}
+		}
+		checkQuorum();
+	}
+
+	private void writeReplicas(byte[] b, int off, int len) {
+		boolean lost = false;
+		for (int i = 0; i < bodies.size(); i++) {
+			OutputStream body = bodies.get(i);
+			if (null == body)
+				continue;
+			try {
+				body.write(b, off, len);
+			} catch (IOException e) {
+				logger.warn(format("Failed to upload chunk %s", chunks.get(i)), e);
+				pendings.get(i).abort();
+				pendings.set(i, null);
+				bodies.set(i, null);
+				lost = true;
+			}
+		}
+		if (lost)
+			checkQuorum();
+	}
+
+	private void finishPosition() {
+		List<ChunkInfo> successes = new ArrayList<ChunkInfo>();
+		for (int i = 0; i < pendings.size(); i++) {
+			PendingResponse pending = pendings.get(i);
+			if (null == pending)
+				continue;
+			ChunkInfo ci = chunks.get(i);
+			try {
+				ci.size(positionSize);
+				ci.hash(pending.response().close(false)
+						.header(CHUNK_META_CHUNK_HASH));
+				successes.add(ci);
+			} catch (OioException e) {
+				logger.warn(format("Failed to upload chunk %s", ci), e);
+			}
+		}
+		pendings = null;
+		bodies = null;
+		rawx.quorumOrFail(pos, rawx.quorum(chunks.size()), successes);
+	}
+
+	private void checkQuorum() {
+		List<PendingResponse> alive = new ArrayList<PendingResponse>(pendings.size());
+		for (PendingResponse pending : pendings)
+			if (null != pending)
+				alive.add(pending);
+		rawx.quorumOrFail(pos, rawx.quorum(pendings.size()), alive);
+	}
+
+	private void abort() {
+		if (failed)
+			return;
+		failed = true;
+		if (null != pendings)
+			for (PendingResponse pending : pendings)
+				if (null != pending)
+					pending.abort();
+		pendings = null;
+		bodies = null;
+		rawx.deleteChunks(oinf.chunks());
+	}
+}
@@ -0,0 +1,188 @@
+package io.openio.sds.storage.rawx;
+
+import static io.openio.sds.http.Verifiers.RAWX_VERIFIER;
+
+import io.openio.sds.RequestContext;
+import io.openio.sds.common.OioConstants;
+import io.openio.sds.exceptions.OioException;
+import io.openio.sds.http.OioHttp;
+import io.openio.sds.http.OioHttp.RequestBuilder;
+import io.openio.sds.http.PendingResponse;
+import io.openio.sds.logging.SdsLogger;
+import io.openio.sds.logging.SdsLoggerFactory;
+import io.openio.sds.models.ChunkInfo;
+import io.openio.sds.models.ObjectInfo;
+import io.openio.sds.models.Range;
+import io.openio.sds.storage.ChunkListener;
+import io.openio.sds.storage.DownloadHelper;
+import io.openio.sds.storage.Target;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Opens an object while its description is being decoded. As soon as the
+ * first chunk holding the requested range is known, its request is sent,
+ * along with the requests of the positions read ahead, while the rest of the
+ * description is still being read. The stream built once the description is
+ * complete then reads the responses of these requests instead of sending new
+ * ones.
+ * <p>
+ * For replicated policies only, nothing is sent in advance for other objects.
+ */
+public class PipelinedOpen implements ChunkListener {
+
+	private static final SdsLogger logger = SdsLoggerFactory
+			.getLogger(PipelinedOpen.class);
+
+	private final Range range;
+	private final OioHttp http;
+	private final RequestContext reqCtx;
+	private final RawxSettings settings;
+	private final ExecutorService executor;
+	private final HostStats stats;
+	private final ChunkCache cache;
+	private final BlockingQueue<byte[]> blocks;
+
+	/* first replica decoded for each position */
+	private final Map<Integer, ChunkInfo> decoded = new HashMap<Integer, ChunkInfo>();
+	private final Map<Integer, Sent> sent = new HashMap<Integer, Sent>();
+	private boolean enabled = false;
+	private long from;
+	private long to;
+	/* next position to map, and its offset in the object */
+	private int next = 0;
+	private long offset = 0;
+	private int first = -1;
+
+	PipelinedOpen(Range range, OioHttp http, RequestContext reqCtx,
+			RawxSettings settings, ExecutorService executor, HostStats stats,
+			ChunkCache cache, BlockingQueue<byte[]> blocks) {
+		this.range = range;
+		this.http = http;
+		this.reqCtx = reqCtx;
+		this.settings = settings;
+		this.executor = executor;
+		this.stats = stats;
+		this.cache = cache;
+		this.blocks = blocks;
+	}
+
+	@Override
+	public void object(ObjectInfo oinf) {
+		if (oinf.isEC() || null == oinf.size() || 0 >= oinf.size())
+			return;
+		from = null == range ? 0 : range.from();
+		to = null == range || range.to() < 0 ? oinf.size() - 1
+				: Math.min(range.to(), oinf.size() - 1);
+		enabled = from <= to;
+	}
+
+	@Override
+	public void chunk(ChunkInfo ci) {
+		if (!enabled || null == ci.pos() || null == ci.size())
+			return;
+		if (!decoded.containsKey(ci.pos().meta()))
+			decoded.put(ci.pos().meta(), ci);
+		// positions are only mapped to offsets once all the previous ones are known
+		while (enabled && decoded.containsKey(next)) {
+			ChunkInfo chunk = decoded.get(next);
+			long size = chunk.size();
+			if (offset + size > from && offset <= to) {
+				if (-1 == first)
+					first = next;
+				if (next - first <= Math.max(0, settings.readAhead()))
+					send(next, chunk, offset, size);
+				else
+					enabled = false;
+			}
+			offset += size;
+			next++;
+		}
+	}
+
+	/**
+	 * Builds the stream over the object, reading the requests already sent.
+	 *
+	 * @param oinf
+	 *            the complete object description
+	 * @return the stream over the requested range
+	 */
+	public InputStream stream(ObjectInfo oinf) {
+		enabled = false;
+		List<Target> targets;
+		try {
+			targets = DownloadHelper.loadTargets(oinf, range);
+		} catch (RuntimeException e) {
+			abort();
+			throw e;
+		}
+		ObjectInputStream in = new ObjectInputStream(targets, http, reqCtx,
+				settings, executor, stats, cache, blocks);
+		for (int i = 0; i < targets.size(); i++) {
+			Target target = targets.get(i);
+			Sent s = sent.remove(target.getChunk().get(0).pos().meta());
+			if (null == s)
+				continue;
+			if (same(s.range, target.getRange())
+					&& target.getChunk().contains(s.chunk))
+				in.part(i).pending(s.chunk, s.response);
+			else
+				s.response.abort();
+		}
+		abort();
+		return in;
+	}
+
+	/**
+	 * Gives up on the requests sent and not used yet.
+	 */
+	public void abort() {
+		for (Sent s : sent.values())
+			s.response.abort();
+		sent.clear();
+	}
+
+	private void send(int pos, ChunkInfo ci, long chunkOffset, long size) {
+		Range r = null;
+		if (null != range) {
+			long start = Math.max(0, from - chunkOffset);
+			long end = Math.min(size, to + 1 - chunkOffset);
+			r = Range.slice(start, end - start);
+		}
+		RequestBuilder builder = http.get(ci.finalUrl())
+				.verifier(RAWX_VERIFIER)
+				.withRequestContext(reqCtx);
+		if (null != r)
+			builder.header(OioConstants.RANGE_HEADER, r.headerValue());
+		try {
+			sent.put(pos, new Sent(ci, r, builder.send()));
+		} catch (OioException e) {
+			// the stream will try the replicas in turn
+			logger.warn("Unable to send request in advance to " + ci.url(), e);
+		}
+	}
+
+	private static boolean same(Range a, Range b) {
+		if (null == a || null == b)
+			return a == b;
+		return a.from() == b.from() && a.to() == b.to();
+	}
+
+	private static class Sent {
+
+		private final ChunkInfo chunk;
+		private final Range range;
+		private final PendingResponse response;
+
+		Sent(ChunkInfo chunk, Range range, PendingResponse response) {
+			this.chunk = chunk;
+			this.range = range;
+			this.response = response;
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package io.openio.sds.storage.rawx;
+
+import io.openio.sds.RequestContext;
+import io.openio.sds.http.OioHttp;
+import io.openio.sds.models.ChunkInfo;
+import io.openio.sds.models.ObjectInfo;
+import io.openio.sds.models.Range;
+import io.openio.sds.storage.ChunkRange;
+import io.openio.sds.storage.DownloadHelper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+
+import static io.openio.sds.common.Check.checkArgument;
+
+/**
+ * Downloads several ranges of an object at once. The ranges are split by
+ * chunk position, then the parts of a position closer to each other than
+ * {@link RawxSettings#rangeCoalescingGap()} are merged into a single request,
+ * up to {@link RawxSettings#downloadRangeSize()} bytes. Requests are sent
+ * concurrently, and each range is returned as a slice of the data of its
+ * request, or as a copy if it spans several requests.
+ * <p>
+ * For replicated policies only
+ */
+class RangesDownload {
+
+	private final ObjectInfo oinf;
+	private final List<Range> ranges;
+	private final RawxSettings settings;
+	private final ReplicaFetcher fetcher;
+
+	RangesDownload(ObjectInfo oinf, List<Range> ranges, OioHttp http,
+			ExecutorService executor, RawxSettings settings, HostStats stats,
+			RequestContext reqCtx) {
+		this.oinf = oinf;
+		this.ranges = ranges;
+		this.settings = settings;
+		this.fetcher = new ReplicaFetcher(http, executor,
+				settings.downloadParallelism(), stats, reqCtx);
+	}
+
+	List<ByteBuffer> run() {
+		long maxRequest = Math.max(1, settings.downloadRangeSize());
+		List<List<Piece>> pieces = new ArrayList<List<Piece>>(ranges.size());
+		Map<Integer, List<Piece>> byPos = new TreeMap<Integer, List<Piece>>();
+		for (Range range : ranges) {
+			checkArgument(null != range, "range cannot be null");
+			checkArgument(range.from() < oinf.size(),
+					"Range begin out of content size");
+			long to = range.to() < 0 ? oinf.size() - 1
+					: Math.min(range.to(), oinf.size() - 1);
+			checkArgument(to - range.from() < Integer.MAX_VALUE,
+					"Range too large to fit in a buffer");
+			List<Piece> rangePieces = new ArrayList<Piece>();
+			for (ChunkRange cr : DownloadHelper.chunkRanges(oinf, range.from(),
+					to - range.from() + 1)) {
+				// no request is larger than the download range size
+				for (long off = 0; off < cr.length(); off += maxRequest) {
+					Piece piece = new Piece(new ChunkRange()
+							.pos(cr.pos())
+							.offset(cr.offset() + off)
+							.length(Math.min(maxRequest, cr.length() - off))
+							.objectOffset(cr.objectOffset() + off));
+					rangePieces.add(piece);
+					List<Piece> l = byPos.get(cr.pos());
+					if (null == l) {
+						l = new ArrayList<Piece>();
+						byPos.put(cr.pos(), l);
+					}
+					l.add(piece);
+				}
+			}
+			pieces.add(rangePieces);
+		}
+		fetcher.runAll(coalesce(byPos, maxRequest));
+		List<ByteBuffer> res = new ArrayList<ByteBuffer>(ranges.size());
+		for (int i = 0; i < ranges.size(); i++)
+			res.add(assemble(pieces.get(i)));
+		return res;
+	}
+
+	private List<Request> coalesce(Map<Integer, List<Piece>> byPos,
+			long maxRequest) {
+		List<Request> requests = new ArrayList<Request>();
+		for (Map.Entry<Integer, List<Piece>> e : byPos.entrySet()) {
+			List<Piece> l = e.getValue();
+			Collections.sort(l, new Comparator<Piece>() {
+
+				@Override
+				public int compare(Piece p1, Piece p2) {
+					return Long.compare(p1.cr.offset(), p2.cr.offset());
+				}
+			});
+			Request current = null;
+			for (Piece piece : l) {
+				long end = piece.cr.offset() + piece.cr.length();
+				if (null == current
+						|| piece.cr.offset() > current.end + settings.rangeCoalescingGap()
+						|| Math.max(current.end, end) - current.start > maxRequest) {
+					current = new Request(e.getKey(), piece.cr.offset(),
+							requests.size());
+					requests.add(current);
+				}
+				current.end = Math.max(current.end, end);
+				piece.request = current;
+			}
+		}
+		return requests;
+	}
+
+	private ByteBuffer assemble(List<Piece> rangePieces) {
+		if (1 == rangePieces.size())
+			return rangePieces.get(0).slice();
+		// checked to fit in an int
+		int length = 0;
+		for (Piece piece : rangePieces)
+			length += piece.length();
+		ByteBuffer res = ByteBuffer.allocate(length);
+		for (Piece piece : rangePieces)
+			res.put(piece.slice());
+		res.flip();
+		return res;
+	}
+
+	private static class Piece {
+
+		private final ChunkRange cr;
+		private Request request;
+
+		Piece(ChunkRange cr) {
+			this.cr = cr;
+		}
+
+		/* at most the download range size */
+		int length() {
+			return (int) cr.length();
+		}
+
+		ByteBuffer slice() {
+			return ByteBuffer.wrap(request.data,
+					(int) (cr.offset() - request.start), length())
+					.slice();
+		}
+	}
+
+	private class Request implements Runnable, ReplicaFetcher.Sink {
+
+		private final int pos;
+		private final long start;
+		private final int index;
+		private long end;
+		private byte[] data;
+		private int done;
+
+		Request(int pos, long start, int index) {
+			this.pos = pos;
+			this.start = start;
+			this.index = index;
+			this.end = start;
+		}
+
+		@Override
+		public void run() {
+			List<ChunkInfo> replicas = oinf.sortedChunks().get(pos);
+			// at most the download range size
+			data = new byte[(int) (end - start)];
+			fetcher.fetch(replicas, index % replicas.size(),
+					oinf.chunksize(pos), start, end - start, this);
+		}
+
+		@Override
+		public int read(InputStream body, long remaining) throws IOException {
+			int read = body.read(data, done, data.length - done);
+			if (0 < read)
+				done += read;
+			return read;
+		}
+
+		@Override
+		public boolean complete(ChunkInfo ci) {
+			return true;
+		}
+	}
+}
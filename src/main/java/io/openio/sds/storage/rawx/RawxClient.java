@@ -2,17 +2,21 @@ package io.openio.sds.storage.rawx;
 
 import io.openio.sds.RequestContext;
 import io.openio.sds.common.FeedableInputStream;
+import io.openio.sds.common.Hash;
 import io.openio.sds.common.Hex;
 import io.openio.sds.common.Strings;
 import io.openio.sds.exceptions.OioException;
+import io.openio.sds.exceptions.OioSystemException;
 import io.openio.sds.http.OioHttp;
 import io.openio.sds.http.OioHttp.RequestBuilder;
+import io.openio.sds.http.PendingResponse;
 import io.openio.sds.logging.SdsLogger;
 import io.openio.sds.logging.SdsLoggerFactory;
 import io.openio.sds.models.ChunkInfo;
 import io.openio.sds.models.ObjectInfo;
 import io.openio.sds.models.Range;
 import io.openio.sds.storage.DownloadHelper;
+import io.openio.sds.storage.ReadAheadInputStream;
 import io.openio.sds.storage.StorageClient;
 import io.openio.sds.storage.Target;
 
@@ -23,8 +27,12 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -70,12 +78,45 @@ public class RawxClient implements StorageClient {
 
 	final OioHttp http;
 	private final ExecutorService executors;
+	private final ExecutorService readers;
+	private final HostStats stats = new HostStats();
 	private final RawxSettings settings;
+	private final ChunkCache cache;
+	/* read-ahead blocks shared by the downloads, up to one read-ahead buffer */
+	private final BlockingQueue<byte[]> blocks;
 
 	public RawxClient(OioHttp http, RawxSettings settings) {
 		this.http = http;
 		this.settings = settings;
-		this.executors = new ThreadPoolExecutor(MIN_WORKERS,
+		this.executors = workerPool("RawxClient-Worker");
+		this.readers = workerPool("RawxClient-Reader");
+		this.cache = chunkCache(settings);
+		this.blocks = new ArrayBlockingQueue<byte[]>(Math.max(1,
+				settings.readAheadBuffer() / ReadAheadInputStream.BLOCK_SIZE));
+	}
+
+	private static ChunkCache chunkCache(RawxSettings settings) {
+		ChunkCache memory = 0 < settings.chunkCacheSize()
+				? new MemoryChunkCache(settings.chunkCacheSize(),
+						settings.chunkCacheMaxEntrySize(),
+						settings.chunkCacheOffHeap())
+				: null;
+		if (null == settings.chunkDiskCacheDirectory())
+			return memory;
+		ChunkCache disk;
+		try {
+			disk = new DiskChunkCache(settings.chunkDiskCacheDirectory(),
+					settings.chunkDiskCacheSize(),
+					settings.chunkDiskCacheSegmentSize());
+		} catch (OioSystemException e) {
+			logger.warn("Disk chunk cache disabled", e);
+			return memory;
+		}
+		return null == memory ? disk : new TieredChunkCache(memory, disk);
+	}
+
+	private static ExecutorService workerPool(final String name) {
+		return new ThreadPoolExecutor(MIN_WORKERS,
 				MAX_WORKERS,
 				IDLE_THREAD_KEEP_ALIVE,
 				TimeUnit.SECONDS,
@@ -85,7 +126,7 @@ public class RawxClient implements StorageClient {
 					@Override
 					public Thread newThread(Runnable r) {
 						Thread t = new Thread(r);
-						t.setName("RawxClient-Worker");
+						t.setName(name);
 						return t;
 					}
 				});
@@ -98,6 +139,30 @@ public class RawxClient implements StorageClient {
 		return new RawxClient(http, settings);
 	}
 
+	/**
+	 * @return the statistics of the rawx services, or {@code null} if the
+	 *         replicas are not to be ordered
+	 */
+	HostStats stats() {
+		return settings.replicaOrdering() ? stats : null;
+	}
+
+	/**
+	 * @return the cache of chunk data, or {@code null} if disabled
+	 */
+	public ChunkCache chunkCache() {
+		return cache;
+	}
+
+	/**
+	 * Releases the cache of chunk data, unlocking its directory if it is
+	 * stored on the disk. Chunks are not cached anymore afterwards.
+	 */
+	public void close() {
+		if (null != cache)
+			cache.close();
+	}
+
 	public int getActiveUploadCount() {
 		return ((ThreadPoolExecutor) this.executors).getActiveCount();
 	}
@@ -124,13 +189,22 @@ public class RawxClient implements StorageClient {
 	 */
 	public ObjectInfo uploadChunks(ObjectInfo oinf,
 								   InputStream data, RequestContext reqCtx) {
+		if (isSmall(oinf)) {
+			byte[] b = new byte[oinf.size().intValue()];
+			try {
+				fill(b, data);
+			} catch (IOException e) {
+				throw new OioException("Stream read error", e);
+			}
+			return uploadSmallChunks(oinf, b, reqCtx);
+		}
 		StreamWrapper wrapper = new StreamWrapper(data);
 		long remaining = oinf.size();
 		for (int pos = 0; pos < oinf.nbchunks(); pos++) {
 			long csize = Math.min(remaining, oinf.chunksize(pos));
 			if (csize == 0 && pos != 0)
 				throw new OioException("Too many chunks prepared");
-			uploadPosition(oinf, pos, csize, wrapper, reqCtx);
+			sendPosition(oinf, pos, csize, wrapper, reqCtx);
 			remaining -= csize;
 		}
 		return oinf.hash(Hex.toHex(wrapper.md5()));
@@ -179,6 +253,8 @@ public class RawxClient implements StorageClient {
 
 	public ObjectInfo uploadChunks(
 			ObjectInfo oinf, byte[] data, RequestContext reqCtx) {
+		if (isSmall(oinf) && data.length >= oinf.size())
+			return uploadSmallChunks(oinf, data, reqCtx);
 		return uploadChunks(oinf, new ByteArrayInputStream(data), reqCtx);
 	}
 
@@ -197,7 +273,68 @@ public class RawxClient implements StorageClient {
 	public InputStream downloadObject(ObjectInfo oinf, Range range, RequestContext reqCtx) {
 		checkArgument(null != oinf);
 		List<Target> targets = DownloadHelper.loadTargets(oinf, range);
-		return new ObjectInputStream(targets, http, reqCtx);
+		return new ObjectInputStream(targets, http, reqCtx, settings, readers,
+				stats(), cache, blocks);
+	}
+
+	/**
+	 * Prepares the download of an object whose description is still to be
+	 * decoded: the returned listener sends the first requests as soon as the
+	 * chunks they need are known, then builds the stream.
+	 *
+	 * @param range the range to read, or {@code null} for the whole object
+	 * @param reqCtx Common parameters to all requests
+	 * @return the listener to feed with the object description
+	 */
+	public PipelinedOpen pipelinedOpen(Range range, RequestContext reqCtx) {
+		return new PipelinedOpen(range, http, reqCtx, settings, readers,
+				stats(), cache, blocks);
+	}
+
+	/**
+	 * Opens a read-only channel over an object, which supports cheap changes
+	 * of position.
+	 *
+	 * @param oinf the object to read
+	 * @param reqCtx Common parameters to all requests
+	 * @return the channel
+	 */
+	public ObjectChannel openChannel(ObjectInfo oinf, RequestContext reqCtx) {
+		return new ObjectChannel(oinf, http, reqCtx, stats(), cache);
+	}
+
+	/**
+	 * Downloads several ranges of an object, merging the ranges close to each
+	 * other into single requests.
+	 *
+	 * @param oinf the object to download
+	 * @param ranges the ranges to download
+	 * @param reqCtx Common parameters to all requests
+	 * @return the data of each range, in the order of the ranges
+	 */
+	public List<ByteBuffer> downloadRanges(ObjectInfo oinf, List<Range> ranges,
+			RequestContext reqCtx) {
+		checkArgument(null != oinf);
+		checkArgument(null != ranges, "ranges cannot be null");
+		return new RangesDownload(oinf, ranges, http, readers, settings, stats(),
+				reqCtx).run();
+	}
+
+	/**
+	 * Downloads the whole object into the specified channel, starting at
+	 * position 0. Ranges of the chunks are fetched concurrently, and written
+	 * at their own position.
+	 *
+	 * @param oinf the object to download
+	 * @param channel the channel to write to
+	 * @param reqCtx Common parameters to all requests
+	 */
+	public void downloadObjectTo(ObjectInfo oinf, FileChannel channel,
+			RequestContext reqCtx) {
+		checkArgument(null != oinf);
+		checkArgument(null != channel);
+		new ChannelDownload(oinf, channel, http, readers, settings, stats(),
+				reqCtx).run();
 	}
 
 	public void deleteChunks(List<ChunkInfo> l) {
@@ -219,7 +356,120 @@ public class RawxClient implements StorageClient {
 
 	/* --- INTERNALS --- */
 
-	private <E> void quorumOrFail(int pos, int quorum, List<E> successes) {
+	private boolean isSmall(ObjectInfo oinf) {
+		return oinf.size() <= settings.smallObjectThreshold();
+	}
+
+	int quorum(int replicas) {
+		return settings.quorumWrite() ? (replicas + 1) / 2 : replicas;
+	}
+
+	/**
+	 * @param oinf
+	 *            the object being uploaded
+	 * @param pos
+	 *            the position
+	 * @return the number of chunks of the position to write for its upload
+	 *         to succeed
+	 */
+	public int quorum(ObjectInfo oinf, int pos) {
+		if (!oinf.isEC())
+			return quorum(oinf.sortedChunks().get(pos).size());
+		int k = oinf.ecinfo().k();
+		int m = oinf.ecinfo().m();
+		return settings.quorumWrite() ? k + Math.min(1, m) : k + m;
+	}
+
+	/**
+	 * Prepares the upload of a chunk, with the headers describing the chunk and
+	 * its object. The body is left to the caller.
+	 *
+	 * @param oinf
+	 *            the object the chunk belongs to
+	 * @param ci
+	 *            the chunk to upload
+	 * @param reqCtx
+	 *            common parameters to all requests
+	 * @return the request to complete and execute
+	 */
+	public RequestBuilder chunkUploadRequest(ObjectInfo oinf, ChunkInfo ci,
+			RequestContext reqCtx) {
+		return http.put(ci.finalUrl())
+				.header(CHUNK_META_CONTAINER_ID, oinf.url().cid())
+				.header(CHUNK_META_CONTENT_ID, oinf.oid())
+				.header(CHUNK_META_CONTENT_VERSION, String.valueOf(oinf.version()))
+				.header(CHUNK_META_CONTENT_POLICY, oinf.policy())
+				.header(CHUNK_META_CONTENT_MIME_TYPE, oinf.mtype())
+				.header(CHUNK_META_CONTENT_CHUNK_METHOD, oinf.chunkMethod())
+				.header(CHUNK_META_CONTENT_CHUNKSNB,
+						String.valueOf(oinf.nbchunks()))
+				.header(CHUNK_META_CONTENT_SIZE, String.valueOf(oinf.size()))
+				.header(CHUNK_META_CONTENT_PATH, Strings.quote(oinf.url().object()))
+				.header(CHUNK_META_CHUNK_ID, ci.id())
+				.header(CHUNK_META_CHUNK_POS, ci.pos().toString())
+				.header(CHUNK_META_FULL_PATH, oinf.fullpath())
+				.header(CHUNK_META_OIO_VERSION, "4")
+				.verifier(RAWX_VERIFIER)
+				.withRequestContext(reqCtx);
+	}
+
+	/**
+	 * Uploads an object small enough to be held in memory, from the calling
+	 * thread. All the replica requests of a position are sent before any
+	 * response is read, so the replicas are written concurrently without
+	 * going through the worker pool nor the {@link FeedableInputStream}
+	 * queues.
+	 */
+	private ObjectInfo uploadSmallChunks(ObjectInfo oinf, byte[] data,
+			RequestContext reqCtx) {
+		int size = oinf.size().intValue();
+		int offset = 0;
+		for (int pos = 0; pos < oinf.nbchunks(); pos++) {
+			int csize = (int) Math.min(size - offset, oinf.chunksize(pos));
+			if (csize == 0 && pos != 0)
+				throw new OioException("Too many chunks prepared");
+			uploadSmallPosition(oinf, pos, data, offset, csize, reqCtx);
+			offset += csize;
+		}
+		return oinf.hash(Hash.md5().putBytes(data, 0, size).hash().toString());
+	}
+
+	private void uploadSmallPosition(ObjectInfo oinf, int pos, byte[] data,
+			int offset, int size, RequestContext reqCtx) {
+		List<ChunkInfo> cil = oinf.sortedChunks().get(pos);
+		List<PendingResponse> pendings = new ArrayList<PendingResponse>(cil.size());
+		for (ChunkInfo ci : cil) {
+			RequestBuilder builder = chunkUploadRequest(oinf, ci, reqCtx);
+			if (0 == size)
+				builder.body("");
+			else
+				builder.body(new ByteArrayInputStream(data, offset, size),
+						(long) size);
+			try {
+				pendings.add(builder.send());
+			} catch (OioException e) {
+				logger.warn(format("Failed to upload chunk %s", ci), e);
+				pendings.add(null);
+			}
+		}
+		List<ChunkInfo> successes = new ArrayList<ChunkInfo>();
+		for (int i = 0; i < cil.size(); i++) {
+			PendingResponse pending = pendings.get(i);
+			if (null == pending)
+				continue;
+			ChunkInfo ci = cil.get(i);
+			try {
+				ci.size((long) size);
+				ci.hash(pending.response().close(false).header(CHUNK_META_CHUNK_HASH));
+				successes.add(ci);
+			} catch (OioException e) {
+				logger.warn(format("Failed to upload chunk %s", ci), e);
+			}
+		}
+		quorumOrFail(pos, quorum(cil.size()), successes);
+	}
+
+	<E> void quorumOrFail(int pos, int quorum, List<E> successes) {
 		if (successes.size() < quorum) {
 			throw new OioException(format(
 					"Quorum not reached when writing chunks at position %s (%d/%d)",
@@ -241,17 +491,26 @@ public class RawxClient implements StorageClient {
 		throw new OioException(message, exc);
 	}
 
-	private ObjectInfo uploadPosition(final ObjectInfo oinf, final int pos, final Long size,
-									  InputStream data, final RequestContext reqCtx) {
+	public ObjectInfo uploadPosition(ObjectInfo oinf, int pos, long size,
+			InputStream data, RequestContext reqCtx) {
+		if (size > settings.smallObjectThreshold())
+			return sendPosition(oinf, pos, size, data, reqCtx);
+		byte[] b = new byte[(int) size];
+		try {
+			fill(b, data);
+		} catch (IOException e) {
+			throw new OioException("Stream read error", e);
+		}
+		uploadSmallPosition(oinf, pos, b, 0, b.length, reqCtx);
+		return oinf;
+	}
+
+	private ObjectInfo sendPosition(final ObjectInfo oinf, final int pos, final long size,
+									InputStream data, final RequestContext reqCtx) {
 		List<ChunkInfo> cil = oinf.sortedChunks().get(pos);
 		final List<FeedableInputStream> gens = size == 0 ? null : feedableBodies(cil.size(), size);
 		List<Future<UploadResult>> futures = new ArrayList<Future<UploadResult>>();
-
-		int quorum;
-		if (!settings.quorumWrite())
-			quorum = cil.size();
-		else
-			quorum = (cil.size() + 1) / 2;
+		int quorum = quorum(cil.size());
 
 		for (int i = 0; i < cil.size(); i++) {
 			final ChunkInfo ci = cil.get(i);
@@ -263,24 +522,7 @@ public class RawxClient implements StorageClient {
 				public UploadResult call() {
 					UploadResult result = new UploadResult(ci);
 					try {
-						RequestBuilder builder = http
-								.put(ci.finalUrl())
-								.header(CHUNK_META_CONTAINER_ID, oinf.url().cid())
-								.header(CHUNK_META_CONTENT_ID, oinf.oid())
-								.header(CHUNK_META_CONTENT_VERSION, String.valueOf(oinf.version()))
-								.header(CHUNK_META_CONTENT_POLICY, oinf.policy())
-								.header(CHUNK_META_CONTENT_MIME_TYPE, oinf.mtype())
-								.header(CHUNK_META_CONTENT_CHUNK_METHOD, oinf.chunkMethod())
-								.header(CHUNK_META_CONTENT_CHUNKSNB,
-										String.valueOf(oinf.nbchunks()))
-								.header(CHUNK_META_CONTENT_SIZE, String.valueOf(oinf.size()))
-								.header(CHUNK_META_CONTENT_PATH, Strings.quote(oinf.url().object()))
-								.header(CHUNK_META_CHUNK_ID, ci.id())
-								.header(CHUNK_META_CHUNK_POS, ci.pos().toString())
-								.header(CHUNK_META_FULL_PATH, oinf.fullpath())
-								.header(CHUNK_META_OIO_VERSION, "4")
-								.verifier(RAWX_VERIFIER)
-								.withRequestContext(reqCtx);
+						RequestBuilder builder = chunkUploadRequest(oinf, ci, reqCtx);
 						if (null == gens)
 							builder.body("");
 						else
@@ -369,9 +611,9 @@ public class RawxClient implements StorageClient {
 	private void consume(InputStream data, Long size,
 						 List<FeedableInputStream> gens,
 						 List<Future<UploadResult>> futures) throws IOException {
-		int done = 0;
+		long done = 0;
 		while (done < size) {
-			byte[] b = new byte[Math.min(size.intValue() - done,
+			byte[] b = new byte[(int) Math.min(size - done,
 					settings.http().receiveBufferSize())];
 			done += fill(b, data);
 			for (FeedableInputStream in : gens) {
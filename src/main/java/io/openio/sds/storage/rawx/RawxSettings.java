@@ -1,6 +1,9 @@
 package io.openio.sds.storage.rawx;
 
 import io.openio.sds.http.OioHttpSettings;
+import io.openio.sds.storage.ec.Fragments;
+
+import java.io.File;
 
 /**
  * @author Christopher Dedeurwaerder
@@ -11,6 +14,40 @@ public class RawxSettings {
 
 	private boolean quorumWrite = false;
 
+	private int smallObjectThreshold = 32768;
+
+	private int readAhead = 2;
+
+	private int readAheadBuffer = 8 * 1024 * 1024;
+
+	private int downloadParallelism = 8;
+
+	private boolean replicaOrdering = true;
+
+	private int downloadRangeSize = 8 * 1024 * 1024;
+
+	private int rangeCoalescingGap = 64 * 1024;
+
+	private long chunkCacheSize = 0;
+
+	private int chunkCacheMaxEntrySize = 1024 * 1024;
+
+	private boolean chunkCacheOffHeap = false;
+
+	private File chunkDiskCacheDirectory = null;
+
+	private long chunkDiskCacheSize = 1024L * 1024 * 1024;
+
+	private int chunkDiskCacheSegmentSize = 64 * 1024 * 1024;
+
+	private boolean verifyChecksums = false;
+
+	private int ecSegmentSize = Fragments.DEFAULT_SEGMENT_SIZE;
+
+	private int ecReconstructDelay = 1000;
+
+	private int ecdUploadParallelism = 4;
+
 	public RawxSettings() {
 	}
 
@@ -31,4 +68,301 @@ public class RawxSettings {
 	public boolean quorumWrite() {
 		return quorumWrite;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Sets the size (in bytes) up to which objects are uploaded from the
+	 * calling thread, without going through the worker pool. A negative value
+	 * disables this fast path.
+	 *
+	 * @param threshold
+	 *            the maximum size of an object to upload directly
+	 * @return this
+	 */
+	public RawxSettings smallObjectThreshold(int threshold) {
+		this.smallObjectThreshold = threshold;
+		return this;
+	}
+
+	public int smallObjectThreshold() {
+		return smallObjectThreshold;
+	}
+
+	/**
+	 * Sets the number of chunk positions to fetch in advance while
+	 * downloading an object, so the next chunks are already flowing when the
+	 * current one is consumed. {@code 0} disables read-ahead.
+	 *
+	 * @param readAhead
+	 *            the number of positions to fetch in advance
+	 * @return this
+	 */
+	public RawxSettings readAhead(int readAhead) {
+		this.readAhead = readAhead;
+		return this;
+	}
+
+	public int readAhead() {
+		return readAhead;
+	}
+
+	/**
+	 * Sets the maximum number of bytes buffered by a download for read-ahead
+	 *
+	 * @param readAheadBuffer
+	 *            the buffer size, in bytes
+	 * @return this
+	 */
+	public RawxSettings readAheadBuffer(int readAheadBuffer) {
+		this.readAheadBuffer = readAheadBuffer;
+		return this;
+	}
+
+	public int readAheadBuffer() {
+		return readAheadBuffer;
+	}
+
+	/**
+	 * Sets the maximum number of concurrent requests used to download an
+	 * object into a file
+	 *
+	 * @param parallelism
+	 *            the maximum number of concurrent requests
+	 * @return this
+	 */
+	public RawxSettings downloadParallelism(int parallelism) {
+		this.downloadParallelism = parallelism;
+		return this;
+	}
+
+	public int downloadParallelism() {
+		return downloadParallelism;
+	}
+
+	/**
+	 * Sets the size of the ranges chunks are split in, when downloading an
+	 * object into a file
+	 *
+	 * @param rangeSize
+	 *            the range size, in bytes
+	 * @return this
+	 */
+	public RawxSettings downloadRangeSize(int rangeSize) {
+		this.downloadRangeSize = rangeSize;
+		return this;
+	}
+
+	public int downloadRangeSize() {
+		return downloadRangeSize;
+	}
+
+	/**
+	 * Specifies whether replicas are read from the fastest rawx services
+	 * first, according to the latency and errors measured on previous
+	 * downloads, instead of the order returned by the proxy
+	 *
+	 * @param replicaOrdering
+	 *            {@code true} to order the replicas
+	 * @return this
+	 */
+	public RawxSettings replicaOrdering(boolean replicaOrdering) {
+		this.replicaOrdering = replicaOrdering;
+		return this;
+	}
+
+	public boolean replicaOrdering() {
+		return replicaOrdering;
+	}
+
+	/**
+	 * Sets the number of bytes of chunk data kept in memory to serve the
+	 * downloads of hot objects. 0 disables the cache.
+	 *
+	 * @param chunkCacheSize
+	 *            the capacity of the chunk cache, in bytes
+	 * @return this
+	 */
+	public RawxSettings chunkCacheSize(long chunkCacheSize) {
+		this.chunkCacheSize = chunkCacheSize;
+		return this;
+	}
+
+	public long chunkCacheSize() {
+		return chunkCacheSize;
+	}
+
+	/**
+	 * Sets the size of the largest chunk to keep in the chunk cache
+	 *
+	 * @param chunkCacheMaxEntrySize
+	 *            the maximum size of a cached chunk, in bytes
+	 * @return this
+	 */
+	public RawxSettings chunkCacheMaxEntrySize(int chunkCacheMaxEntrySize) {
+		this.chunkCacheMaxEntrySize = chunkCacheMaxEntrySize;
+		return this;
+	}
+
+	public int chunkCacheMaxEntrySize() {
+		return chunkCacheMaxEntrySize;
+	}
+
+	/**
+	 * Specifies whether the chunk cache is kept in direct buffers, out of the
+	 * garbage collected heap
+	 *
+	 * @param chunkCacheOffHeap
+	 *            {@code true} to use direct buffers
+	 * @return this
+	 */
+	public RawxSettings chunkCacheOffHeap(boolean chunkCacheOffHeap) {
+		this.chunkCacheOffHeap = chunkCacheOffHeap;
+		return this;
+	}
+
+	public boolean chunkCacheOffHeap() {
+		return chunkCacheOffHeap;
+	}
+
+	/**
+	 * Sets the directory of the persistent chunk cache, kept on local disk
+	 * below the memory chunk cache. {@code null} disables it.
+	 *
+	 * @param chunkDiskCacheDirectory
+	 *            the directory to store the cached chunks in
+	 * @return this
+	 */
+	public RawxSettings chunkDiskCacheDirectory(File chunkDiskCacheDirectory) {
+		this.chunkDiskCacheDirectory = chunkDiskCacheDirectory;
+		return this;
+	}
+
+	public File chunkDiskCacheDirectory() {
+		return chunkDiskCacheDirectory;
+	}
+
+	/**
+	 * Sets the maximum number of bytes used by the persistent chunk cache
+	 *
+	 * @param chunkDiskCacheSize
+	 *            the capacity of the disk cache, in bytes
+	 * @return this
+	 */
+	public RawxSettings chunkDiskCacheSize(long chunkDiskCacheSize) {
+		this.chunkDiskCacheSize = chunkDiskCacheSize;
+		return this;
+	}
+
+	public long chunkDiskCacheSize() {
+		return chunkDiskCacheSize;
+	}
+
+	/**
+	 * Sets the size of the segment files of the persistent chunk cache,
+	 * which is also the size of the largest chunk it can hold. The cache is
+	 * evicted one segment at a time.
+	 *
+	 * @param chunkDiskCacheSegmentSize
+	 *            the size of a segment file, in bytes
+	 * @return this
+	 */
+	public RawxSettings chunkDiskCacheSegmentSize(int chunkDiskCacheSegmentSize) {
+		this.chunkDiskCacheSegmentSize = chunkDiskCacheSegmentSize;
+		return this;
+	}
+
+	public int chunkDiskCacheSegmentSize() {
+		return chunkDiskCacheSegmentSize;
+	}
+
+	/**
+	 * Sets the largest gap between two ranges of a chunk requested by a
+	 * multi-range read for them to be fetched with a single request. The
+	 * bytes of the gap are downloaded then dropped.
+	 *
+	 * @param rangeCoalescingGap
+	 *            the maximum gap, in bytes
+	 * @return this
+	 */
+	public RawxSettings rangeCoalescingGap(int rangeCoalescingGap) {
+		this.rangeCoalescingGap = rangeCoalescingGap;
+		return this;
+	}
+
+	public int rangeCoalescingGap() {
+		return rangeCoalescingGap;
+	}
+
+	/**
+	 * Specifies whether downloaded chunks are checked against their hash.
+	 * The data is hashed as it streams, so a whole chunk is checked without
+	 * reading it twice; ranges are not checked. A corrupted chunk fails the
+	 * read of a stream once its last byte is read, and is downloaded again
+	 * from another replica when writing to a file.
+	 *
+	 * @param verifyChecksums
+	 *            {@code true} to check the chunks
+	 * @return this
+	 */
+	public RawxSettings verifyChecksums(boolean verifyChecksums) {
+		this.verifyChecksums = verifyChecksums;
+		return this;
+	}
+
+	public boolean verifyChecksums() {
+		return verifyChecksums;
+	}
+
+	/**
+	 * Sets the size of the segments erasure coded objects are encoded by,
+	 * when they are encoded by the client. It must match the segment size of
+	 * the namespace for the objects to be readable by the other clients.
+	 *
+	 * @param ecSegmentSize
+	 *            the segment size, in bytes
+	 * @return this
+	 */
+	public RawxSettings ecSegmentSize(int ecSegmentSize) {
+		this.ecSegmentSize = ecSegmentSize;
+		return this;
+	}
+
+	public int ecSegmentSize() {
+		return ecSegmentSize;
+	}
+
+	/**
+	 * Sets how long the data fragments of an erasure coded object are waited
+	 * for, when it is decoded by the client, before the parity fragments are
+	 * downloaded too and the slow data fragments reconstructed from them. A
+	 * failed data fragment is reconstructed without waiting.
+	 *
+	 * @param ecReconstructDelay
+	 *            the delay, in milliseconds
+	 * @return this
+	 */
+	public RawxSettings ecReconstructDelay(int ecReconstructDelay) {
+		this.ecReconstructDelay = ecReconstructDelay;
+		return this;
+	}
+
+	public int ecReconstructDelay() {
+		return ecReconstructDelay;
+	}
+
+	/**
+	 * Sets how many metachunks of an erasure coded object are uploaded
+	 * through ecd at the same time, each to the least loaded ecd host.
+	 *
+	 * @param ecdUploadParallelism
+	 *            the number of metachunks in flight
+	 * @return this
+	 */
+	public RawxSettings ecdUploadParallelism(int ecdUploadParallelism) {
+		this.ecdUploadParallelism = ecdUploadParallelism;
+		return this;
+	}
+
+	public int ecdUploadParallelism() {
+		return ecdUploadParallelism;
+	}
+}
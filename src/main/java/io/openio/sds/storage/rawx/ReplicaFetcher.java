@@ -0,0 +1,240 @@
+package io.openio.sds.storage.rawx;
+
+import io.openio.sds.RequestContext;
+import io.openio.sds.common.OioConstants;
+import io.openio.sds.exceptions.DeadlineReachedException;
+import io.openio.sds.exceptions.OioException;
+import io.openio.sds.http.OioHttp;
+import io.openio.sds.http.OioHttpResponse;
+import io.openio.sds.logging.SdsLogger;
+import io.openio.sds.logging.SdsLoggerFactory;
+import io.openio.sds.models.ChunkInfo;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import static io.openio.sds.http.Verifiers.RAWX_VERIFIER;
+import static java.lang.String.format;
+
+/**
+ * Fetches ranges of replicated chunks for the downloads split in concurrent
+ * requests. The tasks are run at most {@code parallelism} at once, and each
+ * range is fetched from the replicas in turn, resuming on the next replica
+ * from the byte the previous one stopped at. The {@link HostStats} are fed with
+ * every request, and order the replicas if any.
+ */
+class ReplicaFetcher {
+
+	private static final SdsLogger logger = SdsLoggerFactory
+			.getLogger(ReplicaFetcher.class);
+
+	private final OioHttp http;
+	private final ExecutorService executor;
+	private final int parallelism;
+	private final HostStats stats;
+	private final RequestContext reqCtx;
+
+	ReplicaFetcher(OioHttp http, ExecutorService executor, int parallelism,
+			HostStats stats, RequestContext reqCtx) {
+		this.http = http;
+		this.executor = executor;
+		this.parallelism = Math.max(1, parallelism);
+		this.stats = stats;
+		this.reqCtx = reqCtx;
+	}
+
+	/**
+	 * Receives the bytes of a range, as they are read from a replica
+	 */
+	interface Sink {
+
+		/**
+		 * Reads at most {@code remaining} bytes from the body of the response.
+		 *
+		 * @param body
+		 *            the body of the response
+		 * @param remaining
+		 *            the number of bytes still expected from the replica
+		 * @return the number of bytes read, or -1 at the end of the body
+		 * @throws IOException
+		 *             if the body cannot be read, in which case the range is
+		 *             resumed on the next replica
+		 */
+		int read(InputStream body, long remaining) throws IOException;
+
+		/**
+		 * Called once the whole range has been received, the last bytes from
+		 * the specified replica.
+		 *
+		 * @param ci
+		 *            the last replica read
+		 * @return {@code false} to download the whole range again from the
+		 *         next replica
+		 */
+		boolean complete(ChunkInfo ci);
+	}
+
+	/**
+	 * Runs the specified tasks, at most {@code parallelism} at once. The tasks
+	 * still running are cancelled when one of them fails.
+	 *
+	 * @param tasks
+	 *            the tasks to run
+	 */
+	void runAll(List<? extends Runnable> tasks) {
+		final Semaphore slots = new Semaphore(parallelism);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		try {
+			for (final Runnable task : tasks) {
+				slots.acquire();
+				Runnable bounded = new Runnable() {
+
+					@Override
+					public void run() {
+						try {
+							task.run();
+						} finally {
+							slots.release();
+						}
+					}
+				};
+				try {
+					futures.add(executor.submit(bounded));
+				} catch (RejectedExecutionException e) {
+					bounded.run();
+				}
+			}
+			for (Future<?> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			cancel(futures);
+			throw new OioException("got interrupted", e);
+		} catch (ExecutionException e) {
+			cancel(futures);
+			if (e.getCause() instanceof OioException)
+				throw (OioException) e.getCause();
+			throw new OioException("Execution exception", e.getCause());
+		} catch (OioException e) {
+			cancel(futures);
+			throw e;
+		}
+	}
+
+	private void cancel(List<Future<?>> futures) {
+		for (Future<?> future : futures)
+			future.cancel(true);
+	}
+
+	/**
+	 * Downloads a range of a chunk into the sink, from its replicas in turn.
+	 *
+	 * @param replicas
+	 *            the replicas of the chunk
+	 * @param first
+	 *            the index of the replica to try first, when there are no
+	 *            statistics to order them
+	 * @param chunkSize
+	 *            the size of the chunk
+	 * @param from
+	 *            the offset of the range in the chunk
+	 * @param len
+	 *            the length of the range
+	 * @param sink
+	 *            the sink receiving the bytes of the range
+	 * @throws OioException
+	 *             if the range could not be downloaded from any replica
+	 */
+	void fetch(List<ChunkInfo> replicas, int first, long chunkSize, long from,
+			long len, Sink sink) {
+		List<ChunkInfo> ordered = order(replicas, first);
+		long done = 0;
+		for (int i = 0; i < ordered.size() && done < len; i++) {
+			ChunkInfo ci = ordered.get(i);
+			done += fetch(ci, chunkSize, from + done, len - done, sink);
+			if (done == len && !sink.complete(ci)) {
+				if (null != stats)
+					stats.error(ci.finalUrl());
+				// start over from the next replica
+				done = 0;
+			}
+		}
+		if (done < len)
+			throw new OioException(format(
+					"Definitely failed to download range %d-%d of chunk at pos %s",
+					from, from + len - 1, replicas.get(0).pos()));
+	}
+
+	/**
+	 * @return the replicas in the order they are to be tried, as known when
+	 *         the range starts
+	 */
+	private List<ChunkInfo> order(List<ChunkInfo> replicas, int first) {
+		if (null != stats)
+			return stats.order(replicas);
+		List<ChunkInfo> ordered = new ArrayList<ChunkInfo>(replicas.size());
+		for (int i = 0; i < replicas.size(); i++)
+			ordered.add(replicas.get((first + i) % replicas.size()));
+		return ordered;
+	}
+
+	/**
+	 * @return the number of bytes given to the sink, even on failure
+	 */
+	private long fetch(ChunkInfo ci, long chunkSize, long start, long count,
+			Sink sink) {
+		long written = 0;
+		long begin = System.nanoTime();
+		OioHttpResponse resp;
+		try {
+			resp = http.get(ci.finalUrl())
+					.header(OioConstants.RANGE_HEADER,
+							format("bytes=%d-%d", start, start + count - 1))
+					.verifier(RAWX_VERIFIER)
+					.withRequestContext(reqCtx)
+					.execute();
+		} catch (DeadlineReachedException e) {
+			throw e;
+		} catch (OioException e) {
+			if (null != stats)
+				stats.error(ci.finalUrl());
+			logger.warn(format("Error while downloading %s", ci.url()), e);
+			return 0;
+		}
+		long transferStart = System.nanoTime();
+		if (null != stats)
+			stats.latency(ci.finalUrl(), transferStart - begin);
+		boolean success = false;
+		try {
+			if (206 != resp.code() && (0 != start || count != chunkSize))
+				throw new IOException(format(
+						"Range request not honored by %s (%d %s)",
+						ci.url(), resp.code(), resp.msg()));
+			InputStream body = resp.body();
+			while (written < count) {
+				int read = sink.read(body, count - written);
+				if (-1 == read)
+					throw new EOFException("Unexpected end of chunk stream");
+				written += read;
+			}
+			success = true;
+			if (null != stats)
+				stats.transfer(ci.finalUrl(), written,
+						System.nanoTime() - transferStart);
+		} catch (IOException e) {
+			if (null != stats)
+				stats.error(ci.finalUrl());
+			logger.warn(format("Error while downloading %s", ci.url()), e);
+		} finally {
+			resp.close(success);
+		}
+		return written;
+	}
+}
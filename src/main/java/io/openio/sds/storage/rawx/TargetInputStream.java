@@ -0,0 +1,438 @@
+package io.openio.sds.storage.rawx;
+
+import io.openio.sds.RequestContext;
+import io.openio.sds.common.Hash;
+import io.openio.sds.common.OioConstants;
+import io.openio.sds.exceptions.DeadlineReachedException;
+import io.openio.sds.exceptions.OioException;
+import io.openio.sds.http.OioHttp;
+import io.openio.sds.http.OioHttp.RequestBuilder;
+import io.openio.sds.http.OioHttpResponse;
+import io.openio.sds.http.PendingResponse;
+import io.openio.sds.logging.SdsLogger;
+import io.openio.sds.logging.SdsLoggerFactory;
+import io.openio.sds.models.ChunkInfo;
+import io.openio.sds.models.Range;
+import io.openio.sds.storage.Target;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.openio.sds.http.Verifiers.RAWX_VERIFIER;
+import static java.lang.String.format;
+
+/**
+ * Reads the data of a single {@link Target}, trying each of its replicas in
+ * turn until one answers. The request is sent on the first read.
+ * <p>
+ * If a replica fails while its data is being read, the download resumes on
+ * the next replica with a {@code Range} request starting at the first byte not
+ * read yet, so the caller does not see the failure.
+ * <p>
+ * When a {@link ChunkCache} is given, cached chunks are served without any
+ * request, and whole chunks read from the network are offered to the cache.
+ * <p>
+ * In verifying mode, whole chunks read from the network are hashed as they
+ * are read, and the read returning the last bytes of a chunk which does not
+ * match its hash fails.
+ */
+public class TargetInputStream extends InputStream {
+
+	private static final SdsLogger logger = SdsLoggerFactory
+			.getLogger(TargetInputStream.class);
+
+	/* skips up to this size read the data instead of sending a new request */
+	private static final int SKIP_READ_LIMIT = 128 * 1024;
+
+	private final Target target;
+	private final OioHttp http;
+	private final RequestContext reqCtx;
+	private final HostStats stats;
+	private final ChunkCache cache;
+	private final byte[] single = new byte[1];
+	private List<ChunkInfo> replicas;
+	private int replica = 0;
+	private long transferStart;
+	private long transferred;
+	private boolean verify = false;
+	private ChunkInfo pendingChunk;
+	private PendingResponse pending;
+	private Hash digest;
+	private long hashTime;
+
+	private ByteBuffer cached;
+	/* copy of the chunk being read, to be cached once complete */
+	private byte[] fill;
+	private OioHttpResponse current;
+	private ChunkInfo currentChunk;
+	private long currentRemaining;
+	/* bytes of the target already returned to the caller */
+	private long delivered = 0;
+	private boolean opened = false;
+	private boolean closed = false;
+
+	public TargetInputStream(Target target, OioHttp http, RequestContext reqCtx) {
+		this(target, http, reqCtx, null, null);
+	}
+
+	/**
+	 * @param target the target to read
+	 * @param http the http client to use
+	 * @param reqCtx common parameters to all requests
+	 * @param stats the statistics used to order the replicas, and to feed
+	 * with the transfers, may be {@code null}
+	 * @param cache the cache to read the chunk from and to fill, may be
+	 * {@code null}
+	 */
+	public TargetInputStream(Target target, OioHttp http, RequestContext reqCtx,
+			HostStats stats, ChunkCache cache) {
+		this.target = target;
+		this.http = http;
+		this.reqCtx = reqCtx;
+		this.stats = stats;
+		this.cache = cache;
+	}
+
+	/**
+	 * Specifies whether a whole chunk is checked against its hash
+	 *
+	 * @param verify {@code true} to check the chunk
+	 * @return this
+	 */
+	public TargetInputStream verify(boolean verify) {
+		this.verify = verify;
+		return this;
+	}
+
+	/**
+	 * Hands over a request already sent to one of the replicas of the target,
+	 * for the same range, to be used instead of sending a new one.
+	 *
+	 * @param ci the replica the request was sent to
+	 * @param response the response to come
+	 */
+	void pending(ChunkInfo ci, PendingResponse response) {
+		this.pendingChunk = ci;
+		this.pending = response;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int read = read(single, 0, 1);
+		return read < 0 ? -1 : single[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] buf, int offset, int length) throws IOException {
+		if (closed)
+			throw new IOException("Stream closed");
+		if (0 >= length)
+			return 0;
+		if (!opened)
+			open();
+		else if (null == current && null == cached && 0 < currentRemaining)
+			open();
+		if (0 >= currentRemaining) {
+			release();
+			return -1;
+		}
+		if (null != cached) {
+			int read = (int) Math.min(length, currentRemaining);
+			cached.get(buf, offset, read);
+			currentRemaining -= read;
+			delivered += read;
+			return read;
+		}
+		int read;
+		while (true) {
+			try {
+				read = current.body().read(buf, offset,
+						(int) Math.min(length, currentRemaining));
+				if (-1 == read)
+					throw new IOException(format(
+							"Error during download, unexpected end of chunk stream (url: %s, remaining: %d, size: %d)",
+							currentChunk.url(), currentRemaining, currentChunk.size()));
+				break;
+			} catch (IOException e) {
+				failover(e);
+			}
+		}
+		if (null != fill)
+			System.arraycopy(buf, offset, fill, (int) delivered, read);
+		if (null != digest) {
+			long start = System.nanoTime();
+			digest.putBytes(buf, offset, read);
+			hashTime += System.nanoTime() - start;
+		}
+		currentRemaining -= read;
+		delivered += read;
+		transferred += read;
+		if (0 == currentRemaining) {
+			if (null != stats)
+				stats.transfer(currentChunk.finalUrl(), transferred,
+						System.nanoTime() - transferStart);
+			if (null != digest)
+				check();
+			if (null != fill)
+				cache.put(currentChunk, ByteBuffer.wrap(fill));
+			fill = null;
+			release();
+		}
+		return read;
+	}
+
+	/**
+	 * Skips the specified number of bytes. Nothing is downloaded when the
+	 * target has not been requested yet, or when the distance is large enough
+	 * to be worth a new request starting further; short skips read the data
+	 * of the current request.
+	 */
+	@Override
+	public long skip(long n) throws IOException {
+		if (closed)
+			throw new IOException("Stream closed");
+		if (0 >= n)
+			return 0;
+		if (!opened) {
+			long skipped = Math.min(n,
+					expected(target.getChunk().get(0)) - delivered);
+			delivered += skipped;
+			return skipped;
+		}
+		long skipped = Math.min(n, currentRemaining);
+		if (null == cached && null != current && skipped <= SKIP_READ_LIMIT)
+			return super.skip(skipped);
+		if (null != cached) {
+			cached.position(cached.position() + (int) skipped);
+		} else if (null != current) {
+			current.close(false);
+			current = null;
+			fill = null;
+			digest = null;
+		}
+		currentRemaining -= skipped;
+		delivered += skipped;
+		if (0 == currentRemaining)
+			release();
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		if (null != cached)
+			return (int) Math.min(Integer.MAX_VALUE, currentRemaining);
+		if (null != current)
+			return (int) Math.min(current.body().available(), currentRemaining);
+		return 0;
+	}
+
+	@Override
+	public void close() {
+		release();
+		abortPending();
+		closed = true;
+	}
+
+	private void abortPending() {
+		if (null != pending)
+			pending.abort();
+		pending = null;
+	}
+
+	private void release() {
+		if (null != current)
+			current.close();
+		current = null;
+		cached = null;
+		fill = null;
+		digest = null;
+	}
+
+	/**
+	 * Compares the hash of the data read with the hash of the chunk
+	 */
+	private void check() throws IOException {
+		String md5 = digest.hash().toString();
+		digest = null;
+		if (logger.isDebugEnabled())
+			logger.debug(format("Hashed chunk %s in %d us", currentChunk.url(),
+					hashTime / 1000));
+		if (md5.equalsIgnoreCase(currentChunk.hash()))
+			return;
+		if (null != stats)
+			stats.error(currentChunk.finalUrl());
+		fill = null;
+		release();
+		throw new IOException(format(
+				"Chunk %s does not match its hash (expected %s, got %s)",
+				currentChunk.url(), currentChunk.hash(), md5));
+	}
+
+	/**
+	 * @return the number of bytes to read from the target
+	 */
+	private long expected(ChunkInfo ci) {
+		Range range = target.getRange();
+		if (null == range)
+			return ci.size();
+		return range.to() < 0 ? ci.size() - range.from() : range.length();
+	}
+
+	/**
+	 * Serves the target from the cache if possible, or prepares the copy of
+	 * the chunk to cache if the whole chunk is to be read.
+	 *
+	 * @return {@code true} if the target is served from the cache
+	 */
+	private boolean openCached() {
+		ChunkInfo ci = target.getChunk().get(0);
+		if (!cache.accepts(ci))
+			return false;
+		long from = (null == target.getRange() ? 0 : target.getRange().from())
+				+ delivered;
+		long count = expected(ci) - delivered;
+		ByteBuffer data = cache.get(ci);
+		if (null == data) {
+			if (0 == from && count == ci.size())
+				fill = new byte[(int) count];
+			return false;
+		}
+		if (from + count > data.remaining())
+			return false;
+		data.position(data.position() + (int) from);
+		cached = data;
+		currentChunk = ci;
+		currentRemaining = count;
+		opened = true;
+		return true;
+	}
+
+	/**
+	 * Drops the broken connection and resumes the download on the next
+	 * replica, or rethrows the error if there is none left.
+	 */
+	private void failover(IOException e) throws IOException {
+		if (null != stats)
+			stats.error(currentChunk.finalUrl());
+		if (null != current)
+			current.close(false);
+		current = null;
+		if (replica + 1 >= replicas.size())
+			throw e;
+		logger.warn(format("Error while reading %s, resuming at offset %d",
+				currentChunk.url(), delivered), e);
+		replica++;
+		try {
+			open();
+		} catch (OioException oe) {
+			throw new IOException(oe.getMessage(), oe);
+		}
+	}
+
+	private void open() {
+		if (!opened && null != cache && openCached()) {
+			abortPending();
+			return;
+		}
+		if (null == replicas) {
+			replicas = null == stats ? target.getChunk() : stats.order(target.getChunk());
+			if (null != pending) {
+				// the replica already requested comes first
+				List<ChunkInfo> ordered = new ArrayList<ChunkInfo>(replicas.size());
+				ordered.add(pendingChunk);
+				for (ChunkInfo ci : replicas)
+					if (ci != pendingChunk)
+						ordered.add(ci);
+				replicas = ordered;
+			}
+		}
+		while (true) {
+			currentChunk = replicas.get(replica);
+			if (logger.isDebugEnabled())
+				logger.debug("download from " + currentChunk.finalUrl());
+			try {
+				long start = System.nanoTime();
+				if (null != pending) {
+					PendingResponse response = pending;
+					pending = null;
+					current = response.response();
+				} else {
+					current = request().execute();
+				}
+				transferStart = System.nanoTime();
+				transferred = 0;
+				if (null != stats)
+					stats.latency(currentChunk.finalUrl(), transferStart - start);
+				if (0 < delivered && 206 != current.code())
+					discard((null == target.getRange() ? 0 : target.getRange().from())
+							+ delivered);
+				if (!opened) {
+					currentRemaining = expected(currentChunk) - delivered;
+					if (verify && 0 == delivered && null != currentChunk.hash()
+							&& currentRemaining == currentChunk.size())
+						digest = Hash.md5();
+				}
+				opened = true;
+				return;
+			} catch (DeadlineReachedException e) {
+				throw e;
+			} catch (OioException e) {
+				if (null != current)
+					current.close(false);
+				current = null;
+				if (null != stats)
+					stats.error(currentChunk.finalUrl());
+				if (replica + 1 >= replicas.size())
+					throw new OioException(
+							"Definitely failed to download chunk at pos "
+									+ currentChunk.pos(), e);
+				logger.warn("Error while trying to download " + currentChunk.url(),
+						e);
+				replica++;
+			}
+		}
+	}
+
+	private RequestBuilder request() {
+		RequestBuilder builder = http.get(currentChunk.finalUrl())
+				.verifier(RAWX_VERIFIER)
+				.withRequestContext(reqCtx);
+		Range range = target.getRange();
+		if (0 < delivered) {
+			long from = (null == range ? 0 : range.from()) + delivered;
+			builder.header(OioConstants.RANGE_HEADER,
+					null == range || range.to() < 0
+							? format("bytes=%d-", from)
+							: format("bytes=%d-%d", from, range.to()));
+		} else if (null != range) {
+			builder.header(OioConstants.RANGE_HEADER, range.headerValue());
+		}
+		return builder;
+	}
+
+	/**
+	 * Discards the data already delivered, for a replica which ignored the
+	 * {@code Range} header of a resumed download.
+	 */
+	private void discard(long count) {
+		InputStream body = current.body();
+		try {
+			long skipped = 0;
+			while (skipped < count) {
+				long n = body.skip(count - skipped);
+				if (0 >= n) {
+					if (-1 == body.read())
+						throw new EOFException("Unexpected end of chunk stream");
+					n = 1;
+				}
+				skipped += n;
+			}
+		} catch (IOException e) {
+			throw new OioException("Failed to resume download", e);
+		}
+	}
+}
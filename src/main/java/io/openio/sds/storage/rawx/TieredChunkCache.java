@@ -0,0 +1,70 @@
+package io.openio.sds.storage.rawx;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Two levels of {@link ChunkCache}, typically a small memory cache in front of
+ * a larger disk cache. Chunks found in the second level only are promoted to
+ * the first one.
+ */
+public class TieredChunkCache extends ChunkCache {
+
+	private final ChunkCache first;
+	private final ChunkCache second;
+
+	public TieredChunkCache(ChunkCache first, ChunkCache second) {
+		super(Math.max(first.maxEntrySize(), second.maxEntrySize()));
+		this.first = first;
+		this.second = second;
+	}
+
+	@Override
+	protected ByteBuffer lookup(String key) {
+		ByteBuffer data = first.lookup(key);
+		if (null != data)
+			return data;
+		data = second.lookup(key);
+		if (null != data && data.remaining() <= first.maxEntrySize())
+			first.store(key, data.duplicate());
+		return data;
+	}
+
+	@Override
+	protected boolean store(String key, ByteBuffer data) {
+		boolean stored = false;
+		if (data.remaining() <= first.maxEntrySize())
+			stored = first.store(key, data.duplicate());
+		if (data.remaining() <= second.maxEntrySize())
+			stored |= second.store(key, data.duplicate());
+		return stored;
+	}
+
+	@Override
+	public int entries() {
+		return first.entries() + second.entries();
+	}
+
+	@Override
+	public long weight() {
+		return first.weight() + second.weight();
+	}
+
+	@Override
+	public long evictions() {
+		return first.evictions() + second.evictions();
+	}
+
+	@Override
+	public void close() {
+		first.close();
+		second.close();
+	}
+
+	public ChunkCache first() {
+		return first;
+	}
+
+	public ChunkCache second() {
+		return second;
+	}
+}
@@ -0,0 +1,242 @@
+package io.openio.sds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.openio.sds.common.ByteBufferInputStream;
+import io.openio.sds.exceptions.ObjectNotFoundException;
+import io.openio.sds.exceptions.OioException;
+import io.openio.sds.http.OioHttp;
+import io.openio.sds.http.OioHttpRequest;
+import io.openio.sds.http.OioHttpSettings;
+import io.openio.sds.models.BulkGetItem;
+import io.openio.sds.models.BulkGetListener;
+import io.openio.sds.models.BulkGetResult;
+import io.openio.sds.models.BulkPutItem;
+import io.openio.sds.models.BulkPutResult;
+import io.openio.sds.models.ChunkInfo;
+import io.openio.sds.models.ObjectInfo;
+import io.openio.sds.models.OioUrl;
+import io.openio.sds.models.Range;
+import io.openio.sds.proxy.ProxyClient;
+import io.openio.sds.proxy.ProxySettings;
+import io.openio.sds.storage.ChunkListener;
+import io.openio.sds.storage.StorageClient;
+import io.openio.sds.storage.rawx.PipelinedOpen;
+import io.openio.sds.storage.rawx.RawxClient;
+import io.openio.sds.storage.rawx.RawxSettings;
+
+public class DefaultClientTest {
+
+    @Test
+    public void putObjects() {
+        ProxyClient proxy = mock(ProxyClient.class);
+        RawxClient rawx = mock(RawxClient.class);
+        List<BulkPutItem> items = new ArrayList<BulkPutItem>();
+        for (int i = 0; i < 10; i++) {
+            OioUrl url = OioUrl.url("TEST", "container", "object" + i);
+            items.add(BulkPutItem.item(url, TestHelper.bytes(i)));
+            when(proxy.preparePutObject(eq(url), anyLong(), any(RequestContext.class)))
+                    .thenReturn(TestHelper.newTestObjectInfo(url, i));
+        }
+        OioException failure = new OioException("commit failed");
+        doThrow(failure).when(proxy).putObject(
+                any(ObjectInfo.class), any(Long.class), any(RequestContext.class));
+
+        DefaultClient client = new DefaultClient(proxy, rawx);
+        List<BulkPutResult> results = client.putObjects(items, 3,
+                new RequestContext().withTimeout(10000));
+
+        assertEquals(items.size(), results.size());
+        for (int i = 0; i < items.size(); i++) {
+            BulkPutResult result = results.get(i);
+            assertSame(items.get(i), result.item());
+            assertFalse(result.succeeded());
+            assertSame(failure, result.exception());
+        }
+        verify(rawx, times(items.size())).uploadChunks(
+                any(ObjectInfo.class), any(byte[].class), any(RequestContext.class));
+        verify(rawx, times(items.size())).deleteChunks(anyListOf(ChunkInfo.class));
+    }
+
+    @Test
+    public void putObjectsPartialFailure() {
+        ProxyClient proxy = mock(ProxyClient.class);
+        RawxClient rawx = mock(RawxClient.class);
+        OioUrl ok = OioUrl.url("TEST", "container", "ok");
+        OioUrl ko = OioUrl.url("TEST", "container", "ko");
+        when(proxy.preparePutObject(eq(ok), anyLong(), any(RequestContext.class)))
+                .thenReturn(TestHelper.newTestObjectInfo(ok, 4));
+        when(proxy.preparePutObject(eq(ko), anyLong(), any(RequestContext.class)))
+                .thenThrow(new OioException("no space left"));
+        List<BulkPutItem> items = new ArrayList<BulkPutItem>();
+        items.add(BulkPutItem.item(ko, "test".getBytes()));
+        items.add(BulkPutItem.item(ok, "test".getBytes()));
+
+        List<BulkPutResult> results = new DefaultClient(proxy, rawx).putObjects(items, 1,
+                new RequestContext());
+
+        assertFalse(results.get(0).succeeded());
+        assertTrue(results.get(1).succeeded());
+        assertEquals(ok, results.get(1).info().url());
+    }
+
+    @Test
+    public void putObjectFromBuffer() {
+        ProxyClient proxy = mock(ProxyClient.class);
+        RawxClient rawx = mock(RawxClient.class);
+        OioUrl url = OioUrl.url("TEST", "container", "object");
+        when(proxy.preparePutObject(eq(url), eq(4L), any(RequestContext.class)))
+                .thenReturn(TestHelper.newTestObjectInfo(url, 4));
+        DefaultClient client = new DefaultClient(proxy, rawx);
+
+        byte[] array = "test".getBytes();
+        ByteBuffer heap = ByteBuffer.wrap(array);
+        client.putObject(url, heap, null, null, new RequestContext());
+        assertEquals(0, heap.remaining());
+        verify(rawx).uploadChunks(any(ObjectInfo.class), same(array),
+                any(RequestContext.class));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(4);
+        direct.put(array).flip();
+        client.putObject(url, direct, null, null, new RequestContext());
+        assertEquals(0, direct.remaining());
+        verify(rawx).uploadChunks(any(ObjectInfo.class),
+                any(ByteBufferInputStream.class), any(RequestContext.class));
+    }
+
+    @Test
+    public void downloadRangesTooLargeForEc() {
+        StorageClient ec = mock(StorageClient.class);
+        DefaultClient client = new DefaultClient(mock(ProxyClient.class),
+                mock(RawxClient.class), ec);
+        ObjectInfo oinf = new ObjectInfo()
+                .url(OioUrl.url("TEST", "container", "object"))
+                .size(3L << 30)
+                .chunkMethod("ec/algo=isa_l_rs_vand,k=4,m=2");
+        List<Range> ranges = new ArrayList<Range>();
+        ranges.add(Range.from(0));
+        try {
+            client.downloadRanges(oinf, ranges, new RequestContext());
+            fail("3 GiB do not fit in a buffer");
+        } catch (OioException e) {
+            // expected
+        }
+        verifyZeroInteractions(ec);
+    }
+
+    @Test
+    public void openObject() throws IOException {
+        String chunks = "[{\"url\":\"http://127.0.0.1:6010/AA\",\"pos\":\"0\",\"size\":6},"
+                + "{\"url\":\"http://127.0.0.1:6011/BB\",\"pos\":\"1\",\"size\":4}]";
+        List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+        inputs.add(new ByteArrayInputStream(("HTTP/1.0 200 OK\r\n"
+                + "X-oio-content-meta-id: 0123\r\n"
+                + "X-oio-content-meta-length: 10\r\n"
+                + "X-oio-content-meta-chunk-method: plain/nb_copy=1\r\n"
+                + "Content-Length: " + chunks.length() + "\r\n\r\n" + chunks).getBytes()));
+        inputs.add(new ByteArrayInputStream("HTTP/1.0 206 Partial Content\r\nContent-Length: 2\r\n\r\n45".getBytes()));
+        inputs.add(new ByteArrayInputStream("HTTP/1.0 206 Partial Content\r\nContent-Length: 4\r\n\r\n6789".getBytes()));
+
+        TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+        OioHttp http = OioHttp.http(new OioHttpSettings(), socketProvider);
+        ProxyClient proxy = new ProxyClient(http, new ProxySettings()
+                .url("http://127.0.0.1:8080").ns("OPENIO"));
+        RawxClient rawx = new RawxClient(http, new RawxSettings().replicaOrdering(false));
+        DefaultClient client = new DefaultClient(proxy, rawx);
+
+        InputStream in = client.openObject(OioUrl.url("TEST", "container", "object"),
+                Range.from(4), new RequestContext());
+        // both chunks were requested while the description was decoded
+        assertEquals(3, socketProvider.outputs().size());
+        assertEquals("456789", new String(TestHelper.toByteArray(in)));
+        in.close();
+
+        List<ByteArrayOutputStream> outputs = socketProvider.outputs();
+        assertEquals(3, outputs.size());
+        String[] ranges = { "bytes=4-5", "bytes=0-3" };
+        for (int i = 0; i < ranges.length; i++) {
+            OioHttpRequest req = OioHttpRequest.build(
+                    new ByteArrayInputStream(outputs.get(i + 1).toByteArray()));
+            assertEquals(ranges[i], req.header("Range"));
+        }
+    }
+
+    @Test
+    public void getObjects() {
+        ProxyClient proxy = mock(ProxyClient.class);
+        RawxClient rawx = mock(RawxClient.class);
+        PipelinedOpen opening = mock(PipelinedOpen.class);
+        when(rawx.pipelinedOpen(any(Range.class), any(RequestContext.class)))
+                .thenReturn(opening);
+        List<BulkGetItem> items = new ArrayList<BulkGetItem>();
+        for (int i = 0; i < 5; i++) {
+            OioUrl url = OioUrl.url("TEST", "container", "object" + i);
+            items.add(BulkGetItem.item(url));
+            ObjectInfo oinf = TestHelper.newTestObjectInfo(url, 4);
+            when(proxy.getObjectInfo(eq(url), any(Long.class), any(RequestContext.class),
+                    any(ChunkListener.class))).thenReturn(oinf);
+            when(opening.stream(same(oinf)))
+                    .thenReturn(new ByteArrayInputStream(("obj" + i).getBytes()));
+        }
+        OioUrl missing = OioUrl.url("TEST", "container", "missing");
+        when(proxy.getObjectInfo(eq(missing), any(Long.class), any(RequestContext.class),
+                any(ChunkListener.class))).thenThrow(new ObjectNotFoundException("missing"));
+        items.add(2, BulkGetItem.item(missing));
+        OioUrl ranged = OioUrl.url("TEST", "container", "ranged");
+        ObjectInfo rangedInfo = TestHelper.newTestObjectInfo(ranged, 4);
+        when(proxy.getObjectInfo(eq(ranged), any(Long.class), any(RequestContext.class),
+                any(ChunkListener.class))).thenReturn(rangedInfo);
+        when(opening.stream(same(rangedInfo)))
+                .thenReturn(new ByteArrayInputStream("bj".getBytes()));
+        items.add(BulkGetItem.item(ranged, Range.between(1, 2)));
+
+        DefaultClient client = new DefaultClient(proxy, rawx);
+        List<BulkGetResult> results = client.getObjects(items, 3, new RequestContext());
+
+        assertEquals(items.size(), results.size());
+        for (int i = 0; i < items.size(); i++)
+            assertSame(items.get(i), results.get(i).item());
+        assertFalse(results.get(2).succeeded());
+        assertTrue(results.get(2).exception() instanceof ObjectNotFoundException);
+        assertEquals("obj0", new String(results.get(0).data()));
+        assertEquals("obj4", new String(results.get(5).data()));
+        assertEquals("bj", new String(results.get(6).data()));
+        verify(opening).abort();
+
+        final List<BulkGetResult> reported = new ArrayList<BulkGetResult>();
+        client.getObjects(items.subList(2, 3), 1, new BulkGetListener() {
+
+            @Override
+            public void result(BulkGetResult result) {
+                reported.add(result);
+            }
+        }, new RequestContext());
+        assertEquals(1, reported.size());
+        assertFalse(reported.get(0).succeeded());
+    }
+}
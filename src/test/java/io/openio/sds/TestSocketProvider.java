@@ -2,7 +2,6 @@ package io.openio.sds;
 
 import io.openio.sds.common.AbstractSocketProvider;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -17,9 +16,9 @@ import static org.mockito.Mockito.when;
 public class TestSocketProvider extends AbstractSocketProvider {
 
 	private final List<ByteArrayOutputStream> outputs;
-	private List<ByteArrayInputStream> inputs;
+	private List<? extends InputStream> inputs;
 
-	public TestSocketProvider(List<ByteArrayInputStream> inputs) {
+	public TestSocketProvider(List<? extends InputStream> inputs) {
 		this.inputs = inputs;
 		this.outputs = new ArrayList<ByteArrayOutputStream>();
 	}
@@ -31,7 +30,7 @@ public class TestSocketProvider extends AbstractSocketProvider {
 		return null;
 	}
 
-	private void addOutput(ByteArrayOutputStream os) {
+	private synchronized void addOutput(ByteArrayOutputStream os) {
 		outputs.add(os);
 	}
 
@@ -0,0 +1,198 @@
+package io.openio.sds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.openio.sds.common.Hash;
+import io.openio.sds.exceptions.OioException;
+import io.openio.sds.models.ChunkInfo;
+import io.openio.sds.models.ObjectInfo;
+import io.openio.sds.models.OioUrl;
+import io.openio.sds.models.Position;
+import io.openio.sds.proxy.ProxyClient;
+import io.openio.sds.storage.rawx.RawxClient;
+
+public class UploadSessionTest {
+
+    private static final String HASH0 = Hash.md5().hashBytes("0123".getBytes()).toString();
+    private static final String HASH1 = Hash.md5().hashBytes("45".getBytes()).toString();
+
+    private ObjectInfo twoPositions() {
+        List<ChunkInfo> chunks = new ArrayList<ChunkInfo>();
+        for (int pos = 0; pos < 2; pos++) {
+            for (int i = 0; i < 2; i++) {
+                chunks.add(new ChunkInfo()
+                        .pos(Position.simple(pos))
+                        .size(4L)
+                        .url("http://127.0.0.1:601" + i + "/" + pos + "" + i));
+            }
+        }
+        return new ObjectInfo()
+                .url(OioUrl.url("TEST", "container", "object"))
+                .size(6L)
+                .chunks(chunks);
+    }
+
+    private List<ChunkInfo> report(List<ChunkInfo> chunks, long size, String hash) {
+        List<ChunkInfo> res = new ArrayList<ChunkInfo>();
+        for (ChunkInfo ci : chunks)
+            res.add(new ChunkInfo().url(ci.url()).size(size).hash(hash.toLowerCase()));
+        return res;
+    }
+
+    @Test
+    public void commit() {
+        ProxyClient proxy = mock(ProxyClient.class);
+        RawxClient rawx = mock(RawxClient.class);
+        ObjectInfo oinf = twoPositions();
+        UploadSession session = new UploadSession(oinf, null, proxy, rawx, rawx,
+                new RequestContext());
+
+        assertEquals(2, session.positions());
+        assertEquals(0, session.offset(0));
+        assertEquals(4, session.size(0));
+        assertEquals(4, session.offset(1));
+        assertEquals(2, session.size(1));
+
+        InputStream data = new ByteArrayInputStream("45".getBytes());
+        session.uploadPosition(1, data, new RequestContext());
+        verify(rawx).uploadPosition(eq(oinf), eq(1), eq(2L), eq(data),
+                any(RequestContext.class));
+        session.reportPosition(1, report(session.chunks(1), 2L, HASH1));
+        session.reportPosition(0, report(session.chunks(0), 4L, HASH0));
+        session.commit();
+
+        // the md5 of the content cannot be deduced from the positions
+        assertNull(oinf.hash());
+        assertEquals(Long.valueOf(2), session.chunks(1).get(0).size());
+        verify(proxy).putObject(eq(oinf), any(Long.class), any(RequestContext.class));
+    }
+
+    @Test
+    public void commitWithHash() {
+        ProxyClient proxy = mock(ProxyClient.class);
+        RawxClient rawx = mock(RawxClient.class);
+        ObjectInfo oinf = twoPositions();
+        UploadSession session = new UploadSession(oinf, null, proxy, rawx, rawx,
+                new RequestContext());
+        session.reportPosition(0, report(session.chunks(0), 4L, HASH0));
+        session.reportPosition(1, report(session.chunks(1), 2L, HASH1));
+        String md5 = Hash.md5().hashBytes("012345".getBytes()).toString();
+        session.commit(md5.toLowerCase());
+        assertEquals(md5, oinf.hash());
+        verify(proxy).putObject(eq(oinf), any(Long.class), any(RequestContext.class));
+    }
+
+    @Test
+    public void missingPosition() {
+        ProxyClient proxy = mock(ProxyClient.class);
+        RawxClient rawx = mock(RawxClient.class);
+        UploadSession session = new UploadSession(twoPositions(), null, proxy, rawx,
+                rawx, new RequestContext());
+        session.reportPosition(0, report(session.chunks(0), 4L, HASH0));
+        try {
+            session.commit();
+            fail("Expected OioException");
+        } catch (OioException e) {
+            assertEquals("Position 1 not uploaded", e.getMessage());
+        }
+        verify(proxy, never()).putObject(any(ObjectInfo.class), anyLong(),
+                any(RequestContext.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void foreignChunk() {
+        RawxClient rawx = mock(RawxClient.class);
+        UploadSession session = new UploadSession(twoPositions(), null,
+                mock(ProxyClient.class), rawx, rawx, new RequestContext());
+        session.reportPosition(0, Collections.singletonList(
+                new ChunkInfo().url("http://127.0.0.1:6012/42").size(4L).hash(HASH0)));
+    }
+
+    @Test
+    public void quorumNotReached() {
+        ProxyClient proxy = mock(ProxyClient.class);
+        RawxClient rawx = mock(RawxClient.class);
+        ObjectInfo oinf = twoPositions();
+        when(rawx.quorum(oinf, 0)).thenReturn(2);
+        UploadSession session = new UploadSession(oinf, null, proxy, rawx, rawx,
+                new RequestContext());
+        try {
+            session.reportPosition(0,
+                    report(session.chunks(0).subList(0, 1), 4L, HASH0));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Quorum not reached at position 0 (1/2)", e.getMessage());
+        }
+        try {
+            session.reportPosition(0, Collections.<ChunkInfo> emptyList());
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Quorum not reached at position 0 (0/2)", e.getMessage());
+        }
+        assertNull(session.chunks(0).get(0).hash());
+        try {
+            session.commit();
+            fail("Expected OioException");
+        } catch (OioException e) {
+            assertEquals("Position 0 not uploaded", e.getMessage());
+        }
+    }
+
+    @Test
+    public void wrongSize() {
+        RawxClient rawx = mock(RawxClient.class);
+        UploadSession session = new UploadSession(twoPositions(), null,
+                mock(ProxyClient.class), rawx, rawx, new RequestContext());
+        List<ChunkInfo> report = report(session.chunks(1), 2L, HASH1);
+        report.get(1).size(1L);
+        try {
+            session.reportPosition(1, report);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Chunk http://127.0.0.1:6011/11 has 1 bytes instead of 2",
+                    e.getMessage());
+        }
+        // nothing recorded from the rejected report
+        assertNull(session.chunks(1).get(0).hash());
+    }
+
+    @Test
+    public void unreportedChunksDropped() {
+        ProxyClient proxy = mock(ProxyClient.class);
+        RawxClient rawx = mock(RawxClient.class);
+        ObjectInfo oinf = twoPositions();
+        UploadSession session = new UploadSession(oinf, null, proxy, rawx, rawx,
+                new RequestContext());
+        List<ChunkInfo> missing = new ArrayList<ChunkInfo>();
+        missing.add(session.chunks(0).get(1));
+        missing.add(session.chunks(1).get(0));
+        session.reportPosition(0,
+                report(session.chunks(0).subList(0, 1), 4L, HASH0));
+        session.reportPosition(1,
+                report(session.chunks(1).subList(1, 2), 2L, HASH1));
+        session.commit();
+
+        assertEquals(2, oinf.chunks().size());
+        assertEquals("http://127.0.0.1:6010/00", session.chunks(0).get(0).url());
+        assertEquals("http://127.0.0.1:6011/11", session.chunks(1).get(0).url());
+        verify(proxy).putObject(eq(oinf), any(Long.class), any(RequestContext.class));
+        verify(rawx).deleteChunks(missing);
+    }
+}
@@ -0,0 +1,50 @@
+package io.openio.sds.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TtlCacheTest {
+
+	private long now = 0;
+
+	private TtlCache<String, String> cache(int size) {
+		return new TtlCache<String, String>(size) {
+
+			@Override
+			long now() {
+				return now;
+			}
+		};
+	}
+
+	@Test
+	public void expiry() {
+		TtlCache<String, String> cache = cache(10);
+		cache.put("a", "1", 100);
+		cache.put("b", "2", 200);
+		now = TimeUnit.MILLISECONDS.toNanos(150);
+		assertNull(cache.get("a"));
+		assertEquals("2", cache.get("b"));
+		assertEquals(1, cache.size());
+		cache.put("b", "3", 0);
+		assertNull(cache.get("b"));
+	}
+
+	@Test
+	public void leastRecentlyUsedEviction() {
+		TtlCache<String, String> cache = cache(2);
+		cache.put("a", "1", 100);
+		cache.put("b", "2", 100);
+		assertEquals("1", cache.get("a"));
+		cache.put("c", "3", 100);
+		assertEquals("1", cache.get("a"));
+		assertNull(cache.get("b"));
+		assertEquals("3", cache.get("c"));
+		cache.remove("a");
+		assertNull(cache.get("a"));
+	}
+}
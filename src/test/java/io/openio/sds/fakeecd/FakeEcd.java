@@ -3,6 +3,9 @@ package io.openio.sds.fakeecd;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -21,6 +24,10 @@ public class FakeEcd extends Server {
 
 	private byte[] lastData;
 
+	private final Map<String, byte[]> metachunks;
+
+	private final AtomicInteger requests = new AtomicInteger();
+
 	private static String[] headers = { "x-oio-req-id",
 	        "X-oio-chunk-meta-container-id",
 	        "X-oio-chunk-meta-content-path",
@@ -42,7 +49,19 @@ public class FakeEcd extends Server {
 	        "X-oio-chunk-meta-chunk-pos" };
 
 	public FakeEcd(int port) {
+		this(port, new ConcurrentHashMap<String, byte[]>());
+	}
+
+	/**
+	 * @param port
+	 *            the port to listen to
+	 * @param metachunks
+	 *            where to keep the uploaded metachunks, by the url of their
+	 *            first chunk, to share them between several instances
+	 */
+	public FakeEcd(int port, Map<String, byte[]> metachunks) {
 		super(port);
+		this.metachunks = metachunks;
 		this.setHandler(new FakeEcdHandler());
 	}
 
@@ -50,6 +69,10 @@ public class FakeEcd extends Server {
 		return lastData;
 	}
 
+	public int getRequests() {
+		return requests.get();
+	}
+
 	private class FakeEcdHandler extends AbstractHandler {
 
 		@Override
@@ -71,6 +94,13 @@ public class FakeEcd extends Server {
 				return;
 			}
 
+			requests.incrementAndGet();
+			String key = baseRequest.getHeader("X-oio-chunk-meta-chunk-0");
+			if ("GET".equals(request.getMethod())) {
+				get(key, baseRequest.getHeader("Range"), response);
+				return;
+			}
+
 			if (!"PUT".equals(request.getMethod())) {
 				System.out.println(
 				        "Bad method " + request.getMethod() + " expected PUT");
@@ -88,6 +118,30 @@ public class FakeEcd extends Server {
 			while (-1 < (nbRead = in.read(buf)))
 				out.write(buf, 0, nbRead);
 			lastData = out.toByteArray();
+			if (null != key)
+				metachunks.put(key, lastData);
+		}
+
+		private void get(String key, String range,
+		        HttpServletResponse response) throws IOException {
+			byte[] data = null == key ? null : metachunks.get(key);
+			if (null == data) {
+				response.setStatus(404);
+				return;
+			}
+			int from = 0;
+			int to = data.length - 1;
+			if (null != range) {
+				String[] bounds = range.substring("bytes=".length()).split("-");
+				from = Integer.parseInt(bounds[0]);
+				if (1 < bounds.length && !bounds[1].isEmpty())
+					to = Math.min(to, Integer.parseInt(bounds[1]));
+				response.setStatus(206);
+			} else {
+				response.setStatus(200);
+			}
+			response.setContentLength(to - from + 1);
+			response.getOutputStream().write(data, from, to - from + 1);
 		}
 
 	}
@@ -83,6 +83,21 @@ public class OioHttpResponseTest {
 		}
 	}
 
+	@Test
+	public void chunkedBody200() throws IOException {
+		OioHttpResponse resp = testResponse(
+				"HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+						+ "2\r\nte\r\n"
+						+ "A;ext=1\r\nst of body\r\n"
+						+ "0\r\n\r\n",
+				200,
+				"OK",
+				1);
+
+		byte[] body = TestHelper.toByteArray(resp.body());
+		assertEquals("test of body", new String(body));
+	}
+
 	@Test
 	public void body500() {
 		OioHttpResponse resp = testResponse(
@@ -2,10 +2,13 @@ package io.openio.sds.proxy;
 
 import io.openio.sds.RequestContext;
 import io.openio.sds.TestSocketProvider;
+import io.openio.sds.exceptions.ObjectNotFoundException;
 import io.openio.sds.http.OioHttp;
 import io.openio.sds.http.OioHttpSettings;
 import io.openio.sds.models.ListOptions;
+import io.openio.sds.models.ObjectInfo;
 import io.openio.sds.models.ObjectList;
+import io.openio.sds.models.ObjectList.ObjectView;
 import io.openio.sds.models.OioUrl;
 import io.openio.sds.models.ReferenceInfo;
 
@@ -15,6 +18,7 @@ import org.mockito.Mockito;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -22,6 +26,7 @@ import java.util.Map;
 
 import static io.openio.sds.common.IdGen.requestId;
 import static io.openio.sds.common.JsonUtils.gson;
+import static io.openio.sds.common.OioConstants.LIST_MARKER_HEADER;
 import static io.openio.sds.common.OioConstants.LIST_TRUNCATED_HEADER;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -188,4 +193,311 @@ public class ProxyClientTest {
         ObjectList objectList = proxy.listContainer(url, new ListOptions());
         Assert.assertTrue(objectList.truncated());
     }
+
+    private static ByteArrayInputStream showObjectResponse(long version) {
+        return new ByteArrayInputStream(("HTTP/1.1 200 OK\r\n"
+                + "X-oio-content-meta-id: 0123456789ABCDEF\r\n"
+                + "X-oio-content-meta-length: 0\r\n"
+                + "X-oio-content-meta-version: " + version + "\r\n"
+                + "X-oio-content-meta-chunk-method: plain/nb_copy=1\r\n"
+                + "Content-Length: 2\r\n\r\n[]").getBytes());
+    }
+
+    private static ByteArrayInputStream response(String data) {
+        return new ByteArrayInputStream(("HTTP/1.1 200 OK\r\nContent-Length: "
+                + data.length() + "\r\n\r\n" + data).getBytes());
+    }
+
+    private static ByteArrayInputStream notFoundResponse() {
+        String data = "{\"status\": 420, \"message\": \"Object not found\"}";
+        return new ByteArrayInputStream(("HTTP/1.1 404 Not Found\r\nContent-Length: "
+                + data.length() + "\r\n\r\n" + data).getBytes());
+    }
+
+    private ProxyClient cachingProxyClient(TestSocketProvider socketProvider) {
+        ProxySettings settings = new ProxySettings()
+                .url("http://127.0.0.1:8080")
+                .ns("OPENIO")
+                .objectCacheSize(10)
+                .containerCacheSize(10);
+        return new ProxyClient(OioHttp.http(new OioHttpSettings(), socketProvider),
+                settings);
+    }
+
+    @Test
+    public void objectInfoCache() {
+        List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+        inputs.add(showObjectResponse(42));
+        inputs.add(response("{\"properties\": {\"user.a\": \"b\"}}"));
+        inputs.add(response(""));
+        inputs.add(showObjectResponse(43));
+        TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+        ProxyClient proxy = cachingProxyClient(socketProvider);
+        OioUrl url = newObjectOioUrl();
+
+        ObjectInfo first = proxy.getObjectInfo(url, null, new RequestContext(), true);
+        assertEquals(Long.valueOf(42), first.version());
+        assertEquals("b", first.properties().get("user.a"));
+        first.properties().clear();
+        ObjectInfo second = proxy.getObjectInfo(url, null, new RequestContext(), true);
+        assertEquals("b", second.properties().get("user.a"));
+        // the latest version is known by its number too
+        assertEquals(Long.valueOf(42),
+                proxy.getObjectInfo(url, 42L, new RequestContext(), false).version());
+        assertEquals(2, socketProvider.outputs().size());
+
+        proxy.deleteObject(url, null, new RequestContext());
+        assertEquals(Long.valueOf(43),
+                proxy.getObjectInfo(url, null, new RequestContext(), false).version());
+        assertEquals(4, socketProvider.outputs().size());
+    }
+
+    @Test
+    public void deletedLatestVersionForgotten() {
+        List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+        inputs.add(showObjectResponse(42));
+        inputs.add(response(""));
+        inputs.add(notFoundResponse());
+        TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+        ProxyClient proxy = cachingProxyClient(socketProvider);
+        OioUrl url = newObjectOioUrl();
+
+        proxy.getObjectInfo(url, null, new RequestContext(), false);
+        proxy.deleteObject(url, null, new RequestContext());
+        try {
+            proxy.getObjectInfo(url, 42L, new RequestContext(), false);
+            Assert.fail("deleted object found");
+        } catch (ObjectNotFoundException e) {
+            // expected
+        }
+        assertEquals(3, socketProvider.outputs().size());
+    }
+
+    @Test
+    public void lookupDuringWriteForgotten() {
+        final ProxyClient[] proxy = new ProxyClient[1];
+        final OioUrl url = newObjectOioUrl();
+        List<InputStream> inputs = new ArrayList<InputStream>();
+        // a lookup of the object happens while it is being deleted
+        inputs.add(racingResponse(new Runnable() {
+
+            @Override
+            public void run() {
+                proxy[0].getObjectInfo(url, null, new RequestContext(), false);
+            }
+        }));
+        inputs.add(showObjectResponse(42));
+        inputs.add(notFoundResponse());
+        TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+        proxy[0] = cachingProxyClient(socketProvider);
+
+        proxy[0].deleteObject(url, null, new RequestContext());
+        try {
+            proxy[0].getObjectInfo(url, null, new RequestContext(), false);
+            Assert.fail("deleted object found");
+        } catch (ObjectNotFoundException e) {
+            // expected
+        }
+        assertEquals(3, socketProvider.outputs().size());
+    }
+
+    @Test
+    public void objectInfoNegativeCache() {
+        List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+        inputs.add(notFoundResponse());
+        TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+        ProxyClient proxy = cachingProxyClient(socketProvider);
+        OioUrl url = newObjectOioUrl();
+        for (int i = 0; i < 2; i++) {
+            try {
+                proxy.getObjectInfo(url, null, new RequestContext(), false);
+                Assert.fail("object found");
+            } catch (ObjectNotFoundException e) {
+                // expected
+            }
+        }
+        assertEquals(1, socketProvider.outputs().size());
+    }
+
+    @Test
+    public void containerInfoCache() {
+        List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+        inputs.add(containerInfoResponse(10));
+        inputs.add(response(""));
+        inputs.add(containerInfoResponse(20));
+        TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+        ProxyClient proxy = cachingProxyClient(socketProvider);
+        OioUrl url = newObjectOioUrl();
+
+        assertEquals(Long.valueOf(10),
+                proxy.getContainerInfo(url, new RequestContext()).usage());
+        assertEquals(Long.valueOf(10),
+                proxy.getContainerInfo(url, new RequestContext()).usage());
+        assertEquals(1, socketProvider.outputs().size());
+
+        // the usage changes with the objects
+        proxy.deleteObject(url, null, new RequestContext());
+        assertEquals(Long.valueOf(20),
+                proxy.getContainerInfo(url, new RequestContext()).usage());
+        assertEquals(3, socketProvider.outputs().size());
+    }
+
+    @Test
+    public void containerPropertiesCache() {
+        List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+        inputs.add(response("{\"properties\": {\"user.a\": \"b\"}}"));
+        inputs.add(response(""));
+        inputs.add(response("{\"properties\": {\"user.a\": \"c\"}}"));
+        TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+        ProxyClient proxy = cachingProxyClient(socketProvider);
+        OioUrl url = newContainerOioUrl();
+
+        Map<String, String> first = proxy.getContainerProperties(url,
+                new RequestContext());
+        assertEquals("b", first.get("user.a"));
+        first.clear();
+        assertEquals("b", proxy.getContainerProperties(url, new RequestContext())
+                .get("user.a"));
+        assertEquals(1, socketProvider.outputs().size());
+
+        Map<String, String> props = new HashMap<String, String>();
+        props.put("user.a", "c");
+        proxy.setContainerProperties(url, props, false, new RequestContext());
+        assertEquals("c", proxy.getContainerProperties(url, new RequestContext())
+                .get("user.a"));
+        assertEquals(3, socketProvider.outputs().size());
+    }
+
+    private static ByteArrayInputStream containerInfoResponse(long usage) {
+        return new ByteArrayInputStream(("HTTP/1.1 204 No Content\r\n"
+                + "X-oio-container-meta-sys-m2-usage: " + usage + "\r\n"
+                + "Content-Length: 0\r\n\r\n").getBytes());
+    }
+
+    @Test
+    public void iterateObjects() {
+        List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+        inputs.add(listResponse("b", "a", "b"));
+        // the marker is not always sent back
+        inputs.add(listResponse("", "c", "d"));
+        inputs.add(listResponse(null, "e"));
+        TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+        ProxyClient proxy = newTestProxyClient(
+                OioHttp.http(new OioHttpSettings(), socketProvider));
+
+        ObjectIterator it = proxy.iterateObjects(newContainerOioUrl(),
+                new ListOptions().prefix("p"), new RequestContext());
+        StringBuilder names = new StringBuilder();
+        while (it.hasNext())
+            names.append(it.next().name());
+        it.close();
+        assertEquals("abcde", names.toString());
+
+        List<ByteArrayOutputStream> outputs = socketProvider.outputs();
+        assertEquals(3, outputs.size());
+        Assert.assertTrue(new String(outputs.get(1).toByteArray())
+                .contains("marker=b"));
+        Assert.assertTrue(new String(outputs.get(2).toByteArray())
+                .contains("marker=d"));
+        for (ByteArrayOutputStream out : outputs)
+            Assert.assertTrue(new String(out.toByteArray()).contains("prefix=p"));
+    }
+
+    @Test
+    public void iterateObjectsLimit() {
+        List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+        inputs.add(listResponse("b", "a", "b"));
+        inputs.add(listResponse(null, "c"));
+        TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+        ProxyClient proxy = newTestProxyClient(
+                OioHttp.http(new OioHttpSettings(), socketProvider));
+
+        ObjectIterator it = proxy.iterateObjects(newContainerOioUrl(),
+                new ListOptions().limit(3), new RequestContext());
+        List<String> names = new ArrayList<String>();
+        while (it.hasNext()) {
+            ObjectView view = it.next();
+            names.add(view.name());
+        }
+        assertEquals(3, names.size());
+        Assert.assertFalse(it.hasNext());
+        Assert.assertTrue(new String(socketProvider.outputs().get(0).toByteArray())
+                .contains("max=3"));
+    }
+
+    /**
+     * @param marker
+     *            the next marker, {@code null} if the listing is not
+     *            truncated, empty if the proxy does not send it
+     */
+    private static ByteArrayInputStream listResponse(String marker,
+            String... names) {
+        StringBuilder data = new StringBuilder("{\"prefixes\": [], \"objects\": [");
+        for (int i = 0; i < names.length; i++)
+            data.append(0 < i ? ", " : "").append("{\"name\": \"")
+                    .append(names[i]).append("\", \"size\": 1}");
+        data.append("]}");
+        StringBuilder head = new StringBuilder("HTTP/1.1 200 OK\r\n");
+        if (null != marker) {
+            head.append(LIST_TRUNCATED_HEADER).append(": true\r\n");
+            if (!marker.isEmpty())
+                head.append(LIST_MARKER_HEADER).append(": ").append(marker)
+                        .append("\r\n");
+        }
+        head.append("Content-Length: ").append(data.length()).append("\r\n\r\n");
+        return new ByteArrayInputStream(head.append(data).toString().getBytes());
+    }
+
+    @Test
+    public void containerLookupDuringWriteForgotten() {
+        final ProxyClient[] proxy = new ProxyClient[1];
+        final OioUrl url = newContainerOioUrl();
+        List<InputStream> inputs = new ArrayList<InputStream>();
+        // a lookup of the properties happens while they are being changed
+        inputs.add(racingResponse(new Runnable() {
+
+            @Override
+            public void run() {
+                proxy[0].getContainerProperties(url, new RequestContext());
+            }
+        }));
+        inputs.add(response("{\"properties\": {\"user.a\": \"b\"}}"));
+        inputs.add(response("{\"properties\": {\"user.a\": \"c\"}}"));
+        TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+        proxy[0] = cachingProxyClient(socketProvider);
+
+        Map<String, String> props = new HashMap<String, String>();
+        props.put("user.a", "c");
+        proxy[0].setContainerProperties(url, props, false, new RequestContext());
+        assertEquals("c", proxy[0].getContainerProperties(url, new RequestContext())
+                .get("user.a"));
+        assertEquals(3, socketProvider.outputs().size());
+    }
+
+    /**
+     * @return an empty response which runs the specified lookup when it is
+     *         first read, i.e. while the request is in flight
+     */
+    private static InputStream racingResponse(final Runnable lookup) {
+        final byte[] data = "HTTP/1.1 204 No Content\r\nContent-Length: 0\r\n\r\n"
+                .getBytes();
+        return new ByteArrayInputStream(data) {
+
+            private boolean looked = false;
+
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                if (!looked) {
+                    looked = true;
+                    lookup.run();
+                }
+                return super.read(b, off, len);
+            }
+
+            @Override
+            public synchronized int read() {
+                return read(new byte[1], 0, 1) < 0 ? -1 : data[pos - 1] & 0xFF;
+            }
+        };
+    }
 }
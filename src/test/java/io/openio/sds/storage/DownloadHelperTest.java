@@ -0,0 +1,96 @@
+package io.openio.sds.storage;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.openio.sds.models.ChunkInfo;
+import io.openio.sds.models.ObjectInfo;
+import io.openio.sds.models.Position;
+import io.openio.sds.models.Range;
+
+public class DownloadHelperTest {
+
+	/* 3 positions of 10, 10 and 5 bytes, with 2 replicas each */
+	private ObjectInfo objectInfo() {
+		long[] sizes = { 10, 10, 5 };
+		List<ChunkInfo> chunks = new ArrayList<ChunkInfo>();
+		for (int pos = 0; pos < sizes.length; pos++) {
+			for (int i = 0; i < 2; i++)
+				chunks.add(new ChunkInfo().pos(Position.simple(pos))
+				        .size(sizes[pos])
+				        .url("http://127.0.0.1:601" + i + "/" + pos));
+		}
+		return new ObjectInfo().size(25L).chunks(chunks);
+	}
+
+	private void assertTarget(Target target, int pos, long from, long to) {
+		assertEquals(pos, target.getChunk().get(0).pos().meta());
+		assertEquals(from, target.getRange().from());
+		assertEquals(to, target.getRange().to());
+	}
+
+	@Test
+	public void position() {
+		ObjectInfo oinf = objectInfo();
+		assertEquals(0, oinf.position(0));
+		assertEquals(0, oinf.position(9));
+		assertEquals(1, oinf.position(10));
+		assertEquals(2, oinf.position(24));
+		assertEquals(20, oinf.offset(2));
+		assertEquals(25, oinf.offset(3));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void positionOutOfContent() {
+		objectInfo().position(25);
+	}
+
+	@Test
+	public void wholeObject() {
+		List<Target> targets = DownloadHelper.loadTargets(objectInfo(), null);
+		assertEquals(3, targets.size());
+		for (int pos = 0; pos < 3; pos++)
+			assertEquals(pos, targets.get(pos).getChunk().get(0).pos().meta());
+	}
+
+	@Test
+	public void acrossChunks() {
+		List<Target> targets = DownloadHelper.loadTargets(objectInfo(),
+		        Range.between(5, 22));
+		assertEquals(3, targets.size());
+		assertTarget(targets.get(0), 0, 5, 9);
+		assertTarget(targets.get(1), 1, 0, 9);
+		assertTarget(targets.get(2), 2, 0, 2);
+	}
+
+	@Test
+	public void chunkBoundaries() {
+		List<Target> targets = DownloadHelper.loadTargets(objectInfo(),
+		        Range.between(10, 10));
+		assertEquals(1, targets.size());
+		assertTarget(targets.get(0), 1, 0, 0);
+
+		targets = DownloadHelper.loadTargets(objectInfo(), Range.between(9, 10));
+		assertEquals(2, targets.size());
+		assertTarget(targets.get(0), 0, 9, 9);
+		assertTarget(targets.get(1), 1, 0, 0);
+	}
+
+	@Test
+	public void openEnded() {
+		List<Target> targets = DownloadHelper.loadTargets(objectInfo(),
+		        Range.from(18));
+		assertEquals(2, targets.size());
+		assertTarget(targets.get(0), 1, 8, 9);
+		assertTarget(targets.get(1), 2, 0, 4);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void beginOutOfContent() {
+		DownloadHelper.loadTargets(objectInfo(), Range.from(25));
+	}
+}
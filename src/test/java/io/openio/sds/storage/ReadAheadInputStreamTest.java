@@ -0,0 +1,134 @@
+package io.openio.sds.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import io.openio.sds.TestHelper;
+import io.openio.sds.exceptions.OioException;
+
+public class ReadAheadInputStreamTest {
+
+	private static final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@AfterClass
+	public static void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void ordered() throws IOException {
+		List<InputStream> parts = new ArrayList<InputStream>();
+		List<byte[]> data = new ArrayList<byte[]>();
+		for (int i = 0; i < 6; i++) {
+			byte[] b = TestHelper.bytes(i * 50000);
+			data.add(b);
+			parts.add(new ByteArrayInputStream(b));
+		}
+		ReadAheadInputStream in = new ReadAheadInputStream(parts, executor, 2,
+				ReadAheadInputStream.BLOCK_SIZE);
+		byte[] res = TestHelper.toByteArray(in);
+		in.close();
+
+		int offset = 0;
+		for (byte[] b : data) {
+			byte[] chunk = new byte[b.length];
+			System.arraycopy(res, offset, chunk, 0, b.length);
+			assertArrayEquals(b, chunk);
+			offset += b.length;
+		}
+		assertEquals(offset, res.length);
+	}
+
+	@Test
+	public void failure() throws IOException {
+		List<InputStream> parts = new ArrayList<InputStream>();
+		parts.add(new ByteArrayInputStream("test".getBytes()));
+		parts.add(new InputStream() {
+
+			@Override
+			public int read() throws IOException {
+				throw new OioException("Definitely failed to download chunk");
+			}
+		});
+		ReadAheadInputStream in = new ReadAheadInputStream(parts, executor, 1, 0);
+		byte[] b = new byte[4];
+		assertEquals(4, in.read(b));
+		try {
+			in.read(b);
+			fail("Expected OioException");
+		} catch (OioException e) {
+			assertEquals("Definitely failed to download chunk", e.getMessage());
+		}
+		in.close();
+	}
+
+	@Test
+	public void abandonedPartReleasesThread() throws Exception {
+		final CountDownLatch closed = new CountDownLatch(1);
+		List<InputStream> parts = new ArrayList<InputStream>();
+		parts.add(new ByteArrayInputStream(TestHelper.bytes(10)));
+		// more than the queue of the part can hold
+		parts.add(new ByteArrayInputStream(TestHelper.bytes(
+				4 * ReadAheadInputStream.BLOCK_SIZE)) {
+
+			@Override
+			public void close() throws IOException {
+				closed.countDown();
+				super.close();
+			}
+		});
+		ReadAheadInputStream in = new ReadAheadInputStream(parts, executor, 1, 0)
+				.timeout(100, null);
+		assertTrue(-1 != in.read());
+		// dropped without being closed
+		assertTrue(closed.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void readTimeout() throws IOException {
+		final CountDownLatch release = new CountDownLatch(1);
+		List<InputStream> parts = new ArrayList<InputStream>();
+		parts.add(new ByteArrayInputStream(TestHelper.bytes(10)));
+		parts.add(new InputStream() {
+
+			@Override
+			public int read() throws IOException {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+				return -1;
+			}
+		});
+		ReadAheadInputStream in = new ReadAheadInputStream(parts, executor, 1, 0)
+				.timeout(100, null);
+		try {
+			assertEquals(10, in.read(new byte[20]));
+			in.read();
+			fail("Expected SocketTimeoutException");
+		} catch (SocketTimeoutException e) {
+			// expected
+		} finally {
+			release.countDown();
+			in.close();
+		}
+	}
+}
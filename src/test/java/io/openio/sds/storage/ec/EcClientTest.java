@@ -0,0 +1,452 @@
+package io.openio.sds.storage.ec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import io.openio.sds.TestHelper;
+import io.openio.sds.TestSocketProvider;
+import io.openio.sds.common.AbstractSocketProvider;
+import io.openio.sds.common.Hash;
+import io.openio.sds.common.Hex;
+import io.openio.sds.exceptions.OioException;
+import io.openio.sds.http.OioHttp;
+import io.openio.sds.http.OioHttpRequest;
+import io.openio.sds.http.OioHttpSettings;
+import io.openio.sds.models.ChunkInfo;
+import io.openio.sds.models.ObjectInfo;
+import io.openio.sds.models.OioUrl;
+import io.openio.sds.models.Position;
+import io.openio.sds.models.Range;
+import io.openio.sds.storage.rawx.RawxClient;
+import io.openio.sds.storage.rawx.RawxSettings;
+
+public class EcClientTest {
+
+	@Test
+	public void upload() throws IOException {
+		List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+		for (int i = 0; i < 3; i++)
+			inputs.add(new ByteArrayInputStream(
+					"HTTP/1.1 201 Created\r\nContent-Length: 0\r\n\r\n".getBytes()));
+		TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+		OioHttp http = OioHttp.http(new OioHttpSettings(), socketProvider);
+		RawxSettings settings = new RawxSettings().ecSegmentSize(8);
+		EcClient client = new EcClient(http, new RawxClient(http, settings), settings);
+
+		byte[] data = "0123456789abcdefghij".getBytes();
+		List<ChunkInfo> chunks = new ArrayList<ChunkInfo>();
+		for (int i = 0; i < 3; i++)
+			chunks.add(new ChunkInfo()
+					.url(String.format("http://127.0.0.1:601%d/%064X", i, i))
+					.pos(Position.composed(0, i))
+					.size(16L));
+		ObjectInfo oinf = new ObjectInfo()
+				.url(OioUrl.url("account", "container", "object"))
+				.oid("0123456789ABCDEF")
+				.version(1L)
+				.size((long) data.length)
+				.chunkMethod("ec/algo=isa_l_rs_vand,k=2,m=1")
+				.chunks(chunks);
+
+		client.uploadChunks(oinf, data);
+
+		String md5 = Hash.md5().hashBytes(data).toString();
+		assertEquals(md5, oinf.hash());
+		for (ChunkInfo ci : chunks) {
+			assertEquals(Long.valueOf(data.length), ci.size());
+			assertEquals(md5, ci.hash());
+		}
+
+		// segments of 8, 8 and 4 bytes, each cut in 2 data fragments
+		byte[][] bodies = new byte[3][];
+		for (ByteArrayOutputStream output : socketProvider.outputs()) {
+			ByteArrayInputStream in = new ByteArrayInputStream(output.toByteArray());
+			OioHttpRequest req = OioHttpRequest.build(in);
+			assertEquals("PUT", req.method());
+			assertEquals("20", req.header("X-oio-chunk-meta-metachunk-size"));
+			int sub = Position.parse(req.header("X-oio-chunk-meta-chunk-pos")).sub();
+			bodies[sub] = TestHelper.toByteArray(in);
+		}
+		int[] segments = { 8, 8, 4 };
+		ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+		int offset = 0;
+		for (int segment : segments) {
+			int payload = segment / 2;
+			byte[][] fragments = new byte[3][];
+			for (int i = 0; i < 3; i++) {
+				assertNotNull(bodies[i]);
+				ByteBuffer header = ByteBuffer.wrap(bodies[i], offset,
+						Fragments.HEADER_SIZE).slice().order(ByteOrder.LITTLE_ENDIAN);
+				assertEquals(i, header.getInt(0));
+				assertEquals(payload, header.getInt(4));
+				assertEquals(segment, header.getLong(12));
+				assertEquals(0xb0c5ecc, header.getInt(59));
+				fragments[i] = new byte[payload];
+				System.arraycopy(bodies[i], offset + Fragments.HEADER_SIZE,
+						fragments[i], 0, payload);
+			}
+			decoded.write(fragments[0]);
+			decoded.write(fragments[1]);
+			// the single parity row of the Vandermonde code is all ones
+			byte[] parity = new byte[payload];
+			for (int j = 0; j < payload; j++)
+				parity[j] = (byte) (fragments[0][j] ^ fragments[1][j]);
+			assertArrayEquals(parity, fragments[2]);
+			offset += Fragments.HEADER_SIZE + payload;
+		}
+		assertEquals(offset, bodies[0].length);
+		assertArrayEquals(data, decoded.toByteArray());
+	}
+
+	/*
+	 * The expected chunks are written by src/test/resources/ec/fragments.py,
+	 * which transcribes the ISA-L matrices and the liberasurecode headers.
+	 */
+	@Test
+	public void liberasurecodeVandermondeFragments() throws IOException {
+		checkFragments(ReedSolomon.ISA_L_RS_VAND);
+	}
+
+	@Test
+	public void liberasurecodeCauchyFragments() throws IOException {
+		checkFragments(ReedSolomon.ISA_L_RS_CAUCHY);
+	}
+
+	private void checkFragments(String algo) throws IOException {
+		FakeRawx rawx = new FakeRawx();
+		EcClient client = client(rawx, new RawxSettings().ecSegmentSize(40));
+		byte[] data = new byte[64];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) (i * 37 + 11);
+		ObjectInfo oinf = objectInfo("ec/algo=" + algo + ",k=4,m=2", 6,
+				data.length);
+		client.uploadChunks(oinf, data);
+
+		List<String> expected = fixture("ec/" + algo + ".hex");
+		assertEquals(6, expected.size());
+		for (int i = 0; i < expected.size(); i++)
+			assertEquals("chunk " + i, expected.get(i).toUpperCase(),
+					Hex.toHex(rawx.chunks.get(6010 + i)));
+		assertArrayEquals(data, read(client.downloadObject(oinf)));
+	}
+
+	private List<String> fixture(String name) throws IOException {
+		InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+		assertNotNull(name, in);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in,
+				"US-ASCII"));
+		try {
+			List<String> lines = new ArrayList<String>();
+			for (String line = reader.readLine(); null != line; line = reader
+					.readLine())
+				lines.add(line);
+			return lines;
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		FakeRawx rawx = new FakeRawx();
+		EcClient client = client(rawx, new RawxSettings()
+				.ecSegmentSize(16)
+				.downloadRangeSize(32));
+		byte[] data = new byte[100];
+		new Random(7).nextBytes(data);
+		ObjectInfo oinf = objectInfo("ec/algo=isa_l_rs_vand,k=4,m=2", 6,
+				data.length);
+		client.uploadChunks(oinf, data);
+		assertEquals(6, rawx.chunks.size());
+
+		assertArrayEquals(data, read(client.downloadObject(oinf)));
+		assertArrayEquals(Arrays.copyOfRange(data, 37, 71),
+				read(client.downloadObject(oinf, Range.between(37, 70))));
+		assertArrayEquals(Arrays.copyOfRange(data, 90, 100),
+				read(client.downloadObject(oinf, Range.from(90))));
+	}
+
+	@Test
+	public void degradedRead() throws IOException {
+		FakeRawx rawx = new FakeRawx();
+		EcClient client = client(rawx, new RawxSettings()
+				.ecSegmentSize(16)
+				.downloadRangeSize(32));
+		byte[] data = new byte[100];
+		new Random(7).nextBytes(data);
+		ObjectInfo oinf = objectInfo("ec/algo=isa_l_rs_cauchy,k=4,m=2", 6,
+				data.length);
+		client.uploadChunks(oinf, data);
+
+		// two data chunks lost, as many as parity chunks
+		rawx.down.add(6010);
+		rawx.down.add(6012);
+		assertArrayEquals(data, read(client.downloadObject(oinf)));
+		assertArrayEquals(Arrays.copyOfRange(data, 20, 24),
+				read(client.downloadObject(oinf, Range.between(20, 23))));
+
+		rawx.down.add(6015);
+		try {
+			read(client.downloadObject(oinf));
+			fail("3 chunks lost out of 2 parity chunks");
+		} catch (OioException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void slowDataChunk() throws IOException {
+		FakeRawx rawx = new FakeRawx();
+		EcClient client = client(rawx, new RawxSettings()
+				.ecSegmentSize(16)
+				.ecReconstructDelay(50));
+		byte[] data = new byte[100];
+		new Random(7).nextBytes(data);
+		ObjectInfo oinf = objectInfo("ec/algo=isa_l_rs_vand,k=4,m=2", 6,
+				data.length);
+		client.uploadChunks(oinf, data);
+
+		rawx.slow.add(6011);
+		long start = System.currentTimeMillis();
+		assertArrayEquals(data, read(client.downloadObject(oinf)));
+		assertTrue(System.currentTimeMillis() - start < FakeRawx.SLOW_DELAY / 2);
+	}
+
+	@Test
+	public void slowDataChunkRequestedOnce() throws IOException {
+		FakeRawx rawx = new FakeRawx();
+		EcClient client = client(rawx, new RawxSettings()
+				.ecSegmentSize(16)
+				.downloadRangeSize(16)
+				.ecReconstructDelay(200));
+		byte[] data = new byte[100];
+		new Random(7).nextBytes(data);
+		ObjectInfo oinf = objectInfo("ec/algo=isa_l_rs_vand,k=4,m=2", 6,
+				data.length);
+		client.uploadChunks(oinf, data);
+
+		// 7 batches of one segment, only the first one waits for the chunk
+		rawx.slow.add(6011);
+		long start = System.currentTimeMillis();
+		assertArrayEquals(data, read(client.downloadObject(oinf)));
+		assertTrue(System.currentTimeMillis() - start < 3 * 200);
+		assertEquals(1, Collections.frequency(rawx.gets, 6011));
+		// and its connection is closed instead of waiting for the response
+		assertEquals(1, rawx.aborted.get());
+	}
+
+	@Test(timeout = 10000)
+	public void unexpectedUploadError() throws IOException {
+		FakeRawx rawx = new FakeRawx();
+		EcClient client = client(rawx, new RawxSettings()
+				.ecSegmentSize(16)
+				.quorumWrite(true));
+		// more segments than a chunk body can queue
+		byte[] data = new byte[200];
+		new Random(7).nextBytes(data);
+		ObjectInfo oinf = objectInfo("ec/algo=isa_l_rs_vand,k=4,m=2", 6,
+				data.length);
+
+		rawx.broken.add(6013);
+		client.uploadChunks(oinf, data);
+		assertEquals(5, rawx.chunks.size());
+		assertArrayEquals(data, read(client.downloadObject(oinf)));
+	}
+
+	private EcClient client(FakeRawx rawx, RawxSettings settings) {
+		OioHttp http = OioHttp.http(new OioHttpSettings(), rawx);
+		return new EcClient(http, new RawxClient(http, settings), settings);
+	}
+
+	private ObjectInfo objectInfo(String chunkMethod, int count, long size) {
+		List<ChunkInfo> chunks = new ArrayList<ChunkInfo>();
+		for (int i = 0; i < count; i++)
+			chunks.add(new ChunkInfo()
+					.url(String.format("http://127.0.0.1:%d/%064X", 6010 + i, i))
+					.pos(Position.composed(0, i))
+					.size(size));
+		return new ObjectInfo()
+				.url(OioUrl.url("account", "container", "object"))
+				.oid("0123456789ABCDEF")
+				.version(1L)
+				.size(size)
+				.chunkMethod(chunkMethod)
+				.chunks(chunks);
+	}
+
+	private byte[] read(InputStream in) throws IOException {
+		try {
+			return TestHelper.toByteArray(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Rawx services keeping the uploaded chunks in memory, one per port, and
+	 * serving ranges of them
+	 */
+	static class FakeRawx extends AbstractSocketProvider {
+
+		static final long SLOW_DELAY = 3000;
+
+		final Map<Integer, byte[]> chunks = new ConcurrentHashMap<Integer, byte[]>();
+		final Set<Integer> down = Collections.synchronizedSet(new HashSet<Integer>());
+		final Set<Integer> slow = Collections.synchronizedSet(new HashSet<Integer>());
+		final Set<Integer> broken = Collections.synchronizedSet(new HashSet<Integer>());
+		final List<Integer> gets = Collections.synchronizedList(new ArrayList<Integer>());
+		final AtomicInteger aborted = new AtomicInteger();
+
+		@Override
+		public Socket getSocket(String host, int port) {
+			return getSocket(new InetSocketAddress(host, port));
+		}
+
+		@Override
+		public Socket getSocket(InetSocketAddress addr) {
+			if (down.contains(addr.getPort()))
+				throw new OioException("Unable to get connection to " + addr);
+			if (broken.contains(addr.getPort()))
+				throw new IllegalStateException("Broken service " + addr);
+			return new FakeSocket(addr.getPort());
+		}
+
+		@Override
+		public boolean reusableSocket() {
+			return false;
+		}
+
+		byte[] handle(FakeSocket sock, int port, byte[] request)
+				throws IOException {
+			ByteArrayInputStream in = new ByteArrayInputStream(request);
+			OioHttpRequest req = OioHttpRequest.build(in);
+			if ("PUT".equals(req.method())) {
+				chunks.put(port, TestHelper.toByteArray(in));
+				return "HTTP/1.1 201 Created\r\nContent-Length: 0\r\n\r\n".getBytes();
+			}
+			gets.add(port);
+			if (slow.contains(port))
+				sock.await(SLOW_DELAY);
+			byte[] chunk = chunks.get(port);
+			String[] range = req.header("Range").substring(6).split("-");
+			int from = Integer.parseInt(range[0]);
+			int to = Integer.parseInt(range[1]);
+			ByteArrayOutputStream resp = new ByteArrayOutputStream();
+			resp.write(("HTTP/1.1 206 Partial Content\r\nContent-Length: "
+					+ (to - from + 1) + "\r\n\r\n").getBytes());
+			resp.write(chunk, from, to - from + 1);
+			return resp.toByteArray();
+		}
+
+		private class FakeSocket extends Socket {
+
+			private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			private final int port;
+			private InputStream in;
+			private int timeout;
+			private boolean closed = false;
+
+			FakeSocket(int port) {
+				this.port = port;
+			}
+
+			@Override
+			public OutputStream getOutputStream() {
+				return out;
+			}
+
+			@Override
+			public InputStream getInputStream() {
+				return new InputStream() {
+
+					@Override
+					public int read() throws IOException {
+						return response().read();
+					}
+
+					@Override
+					public int read(byte[] b, int off, int len) throws IOException {
+						return response().read(b, off, len);
+					}
+				};
+			}
+
+			/* the request is complete once the response is read */
+			private synchronized InputStream response() throws IOException {
+				if (null == in)
+					in = new ByteArrayInputStream(handle(this, port,
+							out.toByteArray()));
+				return in;
+			}
+
+			@Override
+			public void setSoTimeout(int timeout) {
+				this.timeout = timeout;
+			}
+
+			@Override
+			public int getSoTimeout() {
+				return timeout;
+			}
+
+			@Override
+			public void shutdownInput() {
+			}
+
+			/* a blocking read, until the socket is closed */
+			private void await(long delay) throws IOException {
+				long deadline = System.currentTimeMillis() + delay;
+				synchronized (out) {
+					long left;
+					while (!closed
+							&& 0 < (left = deadline - System.currentTimeMillis())) {
+						try {
+							out.wait(left);
+						} catch (InterruptedException e) {
+							// a socket read is not interruptible
+						}
+					}
+					if (closed) {
+						aborted.incrementAndGet();
+						throw new IOException("Socket closed");
+					}
+				}
+			}
+
+			@Override
+			public void close() {
+				synchronized (out) {
+					closed = true;
+					out.notifyAll();
+				}
+			}
+		}
+	}
+}
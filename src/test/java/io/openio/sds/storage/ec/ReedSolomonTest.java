@@ -0,0 +1,116 @@
+package io.openio.sds.storage.ec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import io.openio.sds.exceptions.OioException;
+import io.openio.sds.models.ECInfo;
+
+public class ReedSolomonTest {
+
+	@Test
+	public void field() {
+		for (int a = 1; a < 256; a++) {
+			assertEquals(1, GF256.mul(a, GF256.inv(a)));
+			assertEquals(a, GF256.div(GF256.mul(a, 0x53), 0x53));
+			assertEquals(0, GF256.mul(a, 0));
+		}
+		// x^8 = x^4 + x^3 + x^2 + 1
+		assertEquals(0x1D, GF256.mul(0x80, 2));
+	}
+
+	@Test
+	public void vandermondeMatrix() {
+		ReedSolomon rs = ReedSolomon.vandermonde(4, 3);
+		for (int j = 0; j < 4; j++) {
+			assertEquals(1, rs.coefficient(4, j));
+			assertEquals(1 << j, rs.coefficient(5, j));
+			assertEquals(GF256.mul(1 << j, 1 << j), rs.coefficient(6, j));
+		}
+	}
+
+	@Test
+	public void cauchyMatrix() {
+		ReedSolomon rs = ReedSolomon.cauchy(4, 2);
+		assertEquals(1, rs.coefficient(0, 0));
+		assertEquals(0, rs.coefficient(0, 1));
+		assertEquals(GF256.inv(4 ^ 1), rs.coefficient(4, 1));
+		assertEquals(GF256.inv(5 ^ 3), rs.coefficient(5, 3));
+	}
+
+	@Test
+	public void encode() {
+		int k = 6;
+		int m = 3;
+		int blockSize = 20000;
+		byte[] data = new byte[7 + k * blockSize];
+		new Random(42).nextBytes(data);
+		ReedSolomon rs = ReedSolomon.codec(
+				ECInfo.fromString("ec/algo=isa_l_rs_vand,k=6,m=3"));
+		byte[][] parity = new byte[m][blockSize];
+		rs.encode(data, 7, blockSize, parity);
+		for (int p = 0; p < m; p++) {
+			byte[] expected = new byte[blockSize];
+			for (int i = 0; i < blockSize; i++) {
+				int b = 0;
+				for (int j = 0; j < k; j++)
+					b ^= GF256.mul(rs.coefficient(k + p, j),
+							data[7 + j * blockSize + i] & 0xFF);
+				expected[i] = (byte) b;
+			}
+			assertArrayEquals(expected, parity[p]);
+		}
+	}
+
+	@Test
+	public void reconstructFromAnyFragments() {
+		int k = 4;
+		int m = 2;
+		int blockSize = 100;
+		ReedSolomon rs = ReedSolomon.cauchy(k, m);
+		byte[] data = new byte[k * blockSize];
+		new Random(42).nextBytes(data);
+		byte[][] parity = new byte[m][blockSize];
+		rs.encode(data, 0, blockSize, parity);
+		byte[][] fragments = new byte[k + m][];
+		int[] starts = new int[k + m];
+		for (int i = 0; i < k; i++) {
+			fragments[i] = data;
+			starts[i] = i * blockSize;
+		}
+		for (int p = 0; p < m; p++)
+			fragments[k + p] = parity[p];
+
+		// every choice of k fragments out of k + m
+		for (int mask = 0; mask < 1 << (k + m); mask++) {
+			if (Integer.bitCount(mask) != k)
+				continue;
+			int[] available = new int[k];
+			byte[][] shards = new byte[k][];
+			int[] offsets = new int[k];
+			for (int i = 0, r = 0; i < k + m; i++) {
+				if (0 == (mask & (1 << i)))
+					continue;
+				available[r] = i;
+				shards[r] = fragments[i];
+				offsets[r++] = starts[i];
+			}
+			byte[][] decoding = rs.decodingMatrix(available);
+			byte[] out = new byte[k * blockSize];
+			for (int j = 0; j < k; j++)
+				rs.reconstruct(decoding, j, shards, offsets, blockSize, out,
+						j * blockSize);
+			assertArrayEquals(data, out);
+		}
+	}
+
+	@Test(expected = OioException.class)
+	public void unsupportedAlgorithm() {
+		ReedSolomon.codec(ECInfo.fromString(
+				"ec/algo=liberasurecode_rs_vand,k=6,m=3"));
+	}
+}
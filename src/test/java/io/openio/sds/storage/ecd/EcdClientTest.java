@@ -1,13 +1,18 @@
 package io.openio.sds.storage.ecd;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -17,8 +22,11 @@ import org.junit.Test;
 import org.mockito.Mockito;
 
 import io.openio.sds.TestHelper;
+import io.openio.sds.common.AbstractSocketProvider;
 import io.openio.sds.common.Hash;
+import io.openio.sds.common.SocketProvider;
 import io.openio.sds.common.SocketProviders;
+import io.openio.sds.exceptions.OioException;
 import io.openio.sds.fakeecd.FakeEcd;
 import io.openio.sds.http.OioHttp;
 import io.openio.sds.http.OioHttpSettings;
@@ -27,6 +35,7 @@ import io.openio.sds.models.ECInfo;
 import io.openio.sds.models.ObjectInfo;
 import io.openio.sds.models.OioUrl;
 import io.openio.sds.models.Position;
+import io.openio.sds.models.Range;
 import io.openio.sds.proxy.ProxySettings;
 import io.openio.sds.storage.rawx.RawxSettings;
 
@@ -84,7 +93,7 @@ public class EcdClientTest {
 		Mockito.when(mockedObject.url()).thenReturn(mockedUrl);
 		Mockito.when(mockedObject.size()).thenReturn(size);
 		Mockito.when(mockedObject.metachunksize(Mockito.anyInt()))
-		        .thenReturn(size.intValue());
+		        .thenReturn(size);
 		Mockito.when(mockedObject.oid()).thenReturn("B16B00B5CAFEBABE5962");
 		Mockito.when(mockedObject.version())
 		        .thenReturn(System.currentTimeMillis());
@@ -107,6 +116,112 @@ public class EcdClientTest {
 		}
 	}
 
+	@Test
+	public void testParallelMetachunks() throws Exception {
+		Map<String, byte[]> metachunks = new ConcurrentHashMap<String, byte[]>();
+		FakeEcd first = new FakeEcd(6790, metachunks);
+		FakeEcd second = new FakeEcd(6791, metachunks);
+		first.start();
+		second.start();
+		try {
+			OioHttp http = OioHttp.http(new OioHttpSettings(),
+			        SocketProviders.directSocketProvider(new OioHttpSettings()));
+			EcdClient client = new EcdClient(http,
+			        new RawxSettings().ecdUploadParallelism(3).readAhead(2),
+			        Arrays.asList(new InetSocketAddress("127.0.0.1", 6790),
+			                new InetSocketAddress("127.0.0.1", 6791)));
+
+			// 8 metachunks of 2 * 16 bytes, the last one of 4 bytes
+			byte[] data = TestHelper.bytes(228L);
+			ObjectInfo oinf = objectInfo(8, 16L, data.length);
+			client.uploadChunks(oinf, data);
+			Assert.assertEquals(8, metachunks.size());
+			Assert.assertTrue(0 < first.getRequests());
+			Assert.assertTrue(0 < second.getRequests());
+			Assert.assertEquals(Hash.md5().hashBytes(data).toString(),
+			        oinf.hash());
+			Assert.assertEquals(Long.valueOf(4),
+			        oinf.sortedChunks().get(7).get(0).size());
+
+
+			// as loaded from the proxy
+			oinf = objectInfo(8, 16L, data.length);
+			Assert.assertArrayEquals(data,
+			        TestHelper.toByteArray(client.downloadObject(oinf)));
+			Assert.assertArrayEquals(Arrays.copyOfRange(data, 20, 101),
+			        TestHelper.toByteArray(
+			                client.downloadObject(oinf, Range.between(20, 100))));
+
+			// the metachunks of a stream are sent in order
+			metachunks.clear();
+			oinf = objectInfo(8, 16L, data.length);
+			client.uploadChunks(oinf, new ByteArrayInputStream(data));
+			Assert.assertEquals(8, metachunks.size());
+			oinf = objectInfo(8, 16L, data.length);
+			Assert.assertArrayEquals(data,
+			        TestHelper.toByteArray(client.downloadObject(oinf)));
+		} finally {
+			first.stop();
+			second.stop();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testUnexpectedUploadError() {
+		SocketProvider broken = new AbstractSocketProvider() {
+
+			@Override
+			public Socket getSocket(String host, int port) {
+				throw new IllegalStateException("Broken service");
+			}
+
+			@Override
+			public Socket getSocket(InetSocketAddress addr) {
+				throw new IllegalStateException("Broken service");
+			}
+
+			@Override
+			public boolean reusableSocket() {
+				return false;
+			}
+		};
+		EcdClient client = new EcdClient(
+		        OioHttp.http(new OioHttpSettings(), broken),
+		        new RawxSettings().ecdUploadParallelism(2),
+		        Arrays.asList(new InetSocketAddress("127.0.0.1", 6790)));
+		// metachunks larger than their body can queue
+		byte[] data = TestHelper.bytes(1024 * 1024L);
+		try {
+			client.uploadChunks(objectInfo(2, 256 * 1024L, data.length),
+			        new ByteArrayInputStream(data));
+			Assert.fail("Expected OioException");
+		} catch (OioException e) {
+			Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	private ObjectInfo objectInfo(int positions, long chunkSize, long size) {
+		List<ChunkInfo> chunks = new ArrayList<ChunkInfo>();
+		for (int pos = 0; pos < positions; pos++) {
+			for (int i = 0; i < 3; i++) {
+				chunks.add(new ChunkInfo()
+				        .pos(Position.composed(pos, i))
+				        .size(chunkSize)
+				        .url(String.format("http://127.0.0.1:6010/%064X",
+				                pos * 3 + i)));
+			}
+		}
+		return new ObjectInfo()
+		        .url(OioUrl.url("account", "container", "object"))
+		        .oid("B16B00B5CAFEBABE5962")
+		        .version(System.currentTimeMillis())
+		        .size(size)
+		        .policy("EC")
+		        .mtype("application/octet-stream")
+		        .chunkMethod("ec/algo=liberasurecode_rs_vand,k=2,m=1")
+		        .chunks(chunks);
+	}
+
 	@Ignore
 	@Test
 	public void testRoundtrip() throws IOException {
@@ -149,7 +264,7 @@ public class EcdClientTest {
 		Mockito.when(mockedObject.url()).thenReturn(mockedUrl);
 		Mockito.when(mockedObject.size()).thenReturn(size);
 		Mockito.when(mockedObject.metachunksize(Mockito.anyInt())).thenReturn(
-				size.intValue());
+				size);
 		Mockito.when(mockedObject.oid()).thenReturn("B16B00B5CAFEBABE5962");
 		Mockito.when(mockedObject.version()).thenReturn(
 				System.currentTimeMillis());
@@ -0,0 +1,122 @@
+package io.openio.sds.storage.ecd;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.openio.sds.RequestContext;
+import io.openio.sds.TestHelper;
+import io.openio.sds.TestSocketProvider;
+import io.openio.sds.http.OioHttp;
+import io.openio.sds.http.OioHttpRequest;
+import io.openio.sds.http.OioHttpSettings;
+import io.openio.sds.models.ChunkInfo;
+import io.openio.sds.models.Position;
+import io.openio.sds.models.Range;
+import io.openio.sds.storage.Target;
+
+public class EcdInputStreamTest {
+
+	@Test
+	public void resumeOnAnotherHost() throws IOException {
+		byte[] data = "0123456789abcdefghij".getBytes();
+		List<InputStream> inputs = new ArrayList<InputStream>();
+		// reset after 5 bytes
+		inputs.add(new BrokenInput(response(data, 0, 20), 5, true));
+		// closed after 7 more bytes
+		inputs.add(new BrokenInput(response(data, 5, 15), 7, false));
+		inputs.add(new ByteArrayInputStream(response(data, 12, 8)));
+		TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+		OioHttp http = OioHttp.http(new OioHttpSettings(), socketProvider);
+
+		List<ChunkInfo> chunks = new ArrayList<ChunkInfo>();
+		for (int i = 0; i < 3; i++)
+			chunks.add(new ChunkInfo()
+					.url(String.format("http://127.0.0.1:601%d/%064X", i, i))
+					.pos(Position.composed(1, i))
+					.size(10L));
+		Target target = new Target()
+				.setChunk(chunks)
+				.setRange(Range.slice(0, 20));
+		EcdInputStream in = new EcdInputStream("http://127.0.0.1:5000",
+				Arrays.asList(target), "ec/algo=liberasurecode_rs_vand,k=2,m=1",
+				http, new RequestContext())
+				.alternativeHosts(Arrays.asList(
+						new InetSocketAddress("127.0.0.1", 5000),
+						new InetSocketAddress("127.0.0.1", 5001)));
+		try {
+			assertArrayEquals(data, TestHelper.toByteArray(in));
+		} finally {
+			in.close();
+		}
+
+		List<ByteArrayOutputStream> outputs = socketProvider.outputs();
+		assertEquals(3, outputs.size());
+		String[] ranges = { "bytes=0-19", "bytes=5-19", "bytes=12-19" };
+		for (int i = 0; i < 3; i++) {
+			OioHttpRequest req = OioHttpRequest.build(
+					new ByteArrayInputStream(outputs.get(i).toByteArray()));
+			assertEquals("GET", req.method());
+			assertEquals(ranges[i], req.header("Range"));
+			for (ChunkInfo ci : chunks)
+				assertEquals(ci.finalUrl(), req.header(
+						"X-oio-chunk-meta-chunk-" + ci.pos().sub()));
+		}
+	}
+
+	private static byte[] response(byte[] data, int offset, int length) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] head = ("HTTP/1.1 206 Partial Content\r\nContent-Length: "
+				+ length + "\r\n\r\n").getBytes();
+		out.write(head, 0, head.length);
+		out.write(data, offset, length);
+		return out.toByteArray();
+	}
+
+	/**
+	 * A connection ending after the head and a few bytes of the body, with
+	 * an error or with the end of the stream
+	 */
+	private static class BrokenInput extends InputStream {
+
+		private final ByteArrayInputStream in;
+		private int remaining;
+		private final boolean reset;
+
+		BrokenInput(byte[] response, int bodyBytes, boolean reset) {
+			this.in = new ByteArrayInputStream(response);
+			this.remaining = new String(response).indexOf("\r\n\r\n") + 4
+					+ bodyBytes;
+			this.reset = reset;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return -1 == read(b, 0, 1) ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (0 >= remaining) {
+				if (reset)
+					throw new SocketException("Connection reset");
+				return -1;
+			}
+			int read = in.read(b, off, Math.min(len, remaining));
+			remaining -= read;
+			return read;
+		}
+	}
+}
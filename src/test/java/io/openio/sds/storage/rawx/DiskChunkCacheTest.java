@@ -0,0 +1,211 @@
+package io.openio.sds.storage.rawx;
+
+import io.openio.sds.common.Hash;
+import io.openio.sds.exceptions.OioSystemException;
+import io.openio.sds.models.ChunkInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DiskChunkCacheTest {
+
+	private File dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = File.createTempFile("oio-cache", "");
+		dir.delete();
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = dir.listFiles();
+		if (null != files)
+			for (File file : files)
+				file.delete();
+		dir.delete();
+	}
+
+	private static ChunkInfo chunk(byte[] data) {
+		return new ChunkInfo().url("http://127.0.0.1:6010/AB")
+				.size((long) data.length)
+				.hash(Hash.md5().putBytes(data).hash().toString());
+	}
+
+	private static byte[] data(int size, int seed) {
+		byte[] res = new byte[size];
+		for (int i = 0; i < size; i++)
+			res[i] = (byte) (seed + i);
+		return res;
+	}
+
+	private File segment() {
+		for (File file : dir.listFiles())
+			if (file.getName().startsWith("segment-"))
+				return file;
+		throw new AssertionError("no segment in " + dir);
+	}
+
+	private static void assertContent(byte[] expected, ByteBuffer actual) {
+		assertNotNull(actual);
+		assertEquals(ByteBuffer.wrap(expected), actual);
+	}
+
+	@Test
+	public void persistent() {
+		byte[] data = data(1000, 1);
+		ChunkInfo ci = chunk(data);
+		DiskChunkCache cache = new DiskChunkCache(dir, 10000, 4096);
+		assertNull(cache.get(ci));
+		assertTrue(cache.put(ci, ByteBuffer.wrap(data)));
+		assertContent(data, cache.get(ci));
+		cache.close();
+
+		cache = new DiskChunkCache(dir, 10000, 4096);
+		assertEquals(1, cache.entries());
+		assertContent(data, cache.get(ci));
+		cache.close();
+	}
+
+	@Test
+	public void evictOldestSegment() {
+		DiskChunkCache cache = new DiskChunkCache(dir, 4096, 2048);
+		ChunkInfo[] chunks = new ChunkInfo[4];
+		for (int i = 0; i < chunks.length; i++) {
+			byte[] data = data(1500, i);
+			chunks[i] = chunk(data);
+			assertTrue(cache.put(chunks[i], ByteBuffer.wrap(data)));
+		}
+		assertTrue(cache.weight() <= 4096);
+		assertEquals(2, cache.evictions());
+		assertNull(cache.get(chunks[0]));
+		assertNull(cache.get(chunks[1]));
+		assertNotNull(cache.get(chunks[2]));
+		assertNotNull(cache.get(chunks[3]));
+		cache.close();
+	}
+
+	@Test
+	public void tornRecordDiscarded() throws IOException {
+		byte[] first = data(500, 1);
+		byte[] second = data(500, 2);
+		DiskChunkCache cache = new DiskChunkCache(dir, 10000, 4096);
+		assertTrue(cache.put(chunk(first), ByteBuffer.wrap(first)));
+		assertTrue(cache.put(chunk(second), ByteBuffer.wrap(second)));
+		cache.close();
+
+		File segment = segment();
+		RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+		try {
+			raf.setLength(raf.length() - 10);
+		} finally {
+			raf.close();
+		}
+
+		cache = new DiskChunkCache(dir, 10000, 4096);
+		assertContent(first, cache.get(chunk(first)));
+		assertNull(cache.get(chunk(second)));
+		assertTrue(cache.put(chunk(second), ByteBuffer.wrap(second)));
+		assertContent(second, cache.get(chunk(second)));
+		cache.close();
+	}
+
+	@Test
+	public void corruptedRecordDiscarded() throws IOException {
+		byte[] first = data(500, 1);
+		byte[] second = data(500, 2);
+		byte[] third = data(500, 3);
+		DiskChunkCache cache = new DiskChunkCache(dir, 10000, 4096);
+		assertTrue(cache.put(chunk(first), ByteBuffer.wrap(first)));
+		assertTrue(cache.put(chunk(second), ByteBuffer.wrap(second)));
+		assertTrue(cache.put(chunk(third), ByteBuffer.wrap(third)));
+		cache.close();
+
+		// flip a bit in the data of the second record
+		File segment = segment();
+		long length = segment.length();
+		RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+		try {
+			long pos = length / 2;
+			raf.seek(pos);
+			int b = raf.read();
+			raf.seek(pos);
+			raf.write(b ^ 0x10);
+		} finally {
+			raf.close();
+		}
+
+		cache = new DiskChunkCache(dir, 10000, 4096);
+		assertEquals(1, cache.entries());
+		assertContent(first, cache.get(chunk(first)));
+		assertNull(cache.get(chunk(second)));
+		assertNull(cache.get(chunk(third)));
+		assertTrue(segment.length() < length / 2);
+		cache.close();
+	}
+
+	@Test
+	public void notClosed() throws IOException {
+		byte[] data = data(1000, 1);
+		ChunkInfo ci = chunk(data);
+		DiskChunkCache cache = new DiskChunkCache(dir, 10000, 4096);
+		assertTrue(cache.put(ci, ByteBuffer.wrap(data)));
+		cache.close();
+
+		// the zeroed space of a segment still written when the process died
+		RandomAccessFile raf = new RandomAccessFile(segment(), "rw");
+		try {
+			raf.setLength(4096);
+		} finally {
+			raf.close();
+		}
+
+		cache = new DiskChunkCache(dir, 10000, 4096);
+		assertEquals(1, cache.entries());
+		assertContent(data, cache.get(ci));
+		assertTrue(segment().length() < 4096);
+		cache.close();
+	}
+
+	@Test
+	public void directoryLocked() {
+		DiskChunkCache cache = new DiskChunkCache(dir, 10000, 4096);
+		try {
+			new DiskChunkCache(dir, 10000, 4096);
+			fail("directory shared by two caches");
+		} catch (OioSystemException e) {
+			// expected
+		}
+		cache.close();
+		new DiskChunkCache(dir, 10000, 4096).close();
+	}
+
+	@Test
+	public void writtenSegmentWeighsItsWholeSize() {
+		DiskChunkCache cache = new DiskChunkCache(dir, 8192, 4096);
+		byte[] data = data(100, 1);
+		assertTrue(cache.put(chunk(data), ByteBuffer.wrap(data)));
+		assertEquals(4096, cache.weight());
+		cache.close();
+	}
+
+	@Test
+	public void tooLarge() {
+		DiskChunkCache cache = new DiskChunkCache(dir, 10000, 1024);
+		byte[] data = data(2000, 1);
+		assertFalse(cache.put(chunk(data), ByteBuffer.wrap(data)));
+		cache.close();
+	}
+}
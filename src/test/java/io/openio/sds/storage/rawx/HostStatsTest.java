@@ -0,0 +1,54 @@
+package io.openio.sds.storage.rawx;
+
+import io.openio.sds.models.ChunkInfo;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class HostStatsTest {
+
+	private List<ChunkInfo> replicas() {
+		List<ChunkInfo> replicas = new ArrayList<ChunkInfo>();
+		for (int i = 0; i < 3; i++)
+			replicas.add(new ChunkInfo().url("http://127.0.0.1:601" + i + "/AB"));
+		return replicas;
+	}
+
+	@Test
+	public void slowestLast() {
+		HostStats stats = new HostStats();
+		stats.latency("http://127.0.0.1:6010/CD", 1000000);
+		stats.latency("http://127.0.0.1:6011/CD", 100000000);
+		stats.latency("http://127.0.0.1:6012/CD", 2000000);
+		for (int i = 0; i < 20; i++) {
+			List<ChunkInfo> ordered = stats.order(replicas());
+			assertEquals("http://127.0.0.1:6011/AB", ordered.get(2).url());
+		}
+	}
+
+	@Test
+	public void failingLast() {
+		HostStats stats = new HostStats();
+		stats.latency("http://127.0.0.1:6010/CD", 100000000);
+		stats.latency("http://127.0.0.1:6012/CD", 100000000);
+		stats.error("http://127.0.0.1:6011/CD");
+		for (int i = 0; i < 20; i++) {
+			List<ChunkInfo> ordered = stats.order(replicas());
+			assertEquals("http://127.0.0.1:6011/AB", ordered.get(2).url());
+		}
+	}
+
+	@Test
+	public void unknownFirst() {
+		HostStats stats = new HostStats();
+		stats.latency("http://127.0.0.1:6010/CD", 1000000);
+		stats.latency("http://127.0.0.1:6011/CD", 1000000);
+		for (int i = 0; i < 20; i++) {
+			List<ChunkInfo> ordered = stats.order(replicas());
+			assertEquals("http://127.0.0.1:6012/AB", ordered.get(0).url());
+		}
+	}
+}
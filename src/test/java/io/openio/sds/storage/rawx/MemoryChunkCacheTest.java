@@ -0,0 +1,92 @@
+package io.openio.sds.storage.rawx;
+
+import io.openio.sds.common.Hash;
+import io.openio.sds.models.ChunkInfo;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryChunkCacheTest {
+
+	private static ChunkInfo chunk(byte[] data) {
+		return new ChunkInfo().url("http://127.0.0.1:6010/AB")
+				.size((long) data.length)
+				.hash(Hash.md5().putBytes(data).hash().toString());
+	}
+
+	private static byte[] data(int size, int seed) {
+		byte[] res = new byte[size];
+		for (int i = 0; i < size; i++)
+			res[i] = (byte) (seed + i);
+		return res;
+	}
+
+	@Test
+	public void hitAndMiss() {
+		MemoryChunkCache cache = new MemoryChunkCache(1024, 512, true);
+		byte[] data = data(100, 1);
+		ChunkInfo ci = chunk(data);
+		assertNull(cache.get(ci));
+		assertTrue(cache.put(ci, ByteBuffer.wrap(data)));
+		ByteBuffer cached = cache.get(ci);
+		assertNotNull(cached);
+		assertTrue(cached.isDirect());
+		byte[] res = new byte[cached.remaining()];
+		cached.get(res);
+		assertEquals(ByteBuffer.wrap(data), ByteBuffer.wrap(res));
+		assertEquals(1, cache.hits());
+		assertEquals(1, cache.misses());
+		assertEquals(100, cache.weight());
+	}
+
+	@Test
+	public void hashMismatch() {
+		MemoryChunkCache cache = new MemoryChunkCache(1024, 512, false);
+		ChunkInfo ci = chunk(data(100, 1));
+		assertFalse(cache.put(ci, ByteBuffer.wrap(data(100, 2))));
+		assertEquals(1, cache.rejections());
+		assertEquals(0, cache.entries());
+	}
+
+	@Test
+	public void tooLarge() {
+		MemoryChunkCache cache = new MemoryChunkCache(1024, 64, false);
+		byte[] data = data(100, 1);
+		assertFalse(cache.put(chunk(data), ByteBuffer.wrap(data)));
+		assertEquals(0, cache.entries());
+	}
+
+	@Test
+	public void frequentChunksStay() {
+		MemoryChunkCache cache = new MemoryChunkCache(300, 100, false);
+		ChunkInfo[] hot = new ChunkInfo[3];
+		for (int i = 0; i < hot.length; i++) {
+			byte[] data = data(100, i);
+			hot[i] = chunk(data);
+			for (int j = 0; j < 5; j++)
+				cache.get(hot[i]);
+			assertTrue(cache.put(hot[i], ByteBuffer.wrap(data)));
+		}
+		// a chunk seen once does not evict the hot ones
+		byte[] cold = data(100, 42);
+		ChunkInfo coldChunk = chunk(cold);
+		cache.get(coldChunk);
+		assertFalse(cache.put(coldChunk, ByteBuffer.wrap(cold)));
+		for (ChunkInfo ci : hot)
+			assertNotNull(cache.get(ci));
+		assertEquals(0, cache.evictions());
+
+		// until it gets more popular than them
+		for (int j = 0; j < 10; j++)
+			cache.get(coldChunk);
+		assertTrue(cache.put(coldChunk, ByteBuffer.wrap(cold)));
+		assertEquals(1, cache.evictions());
+		assertEquals(300, cache.weight());
+	}
+}
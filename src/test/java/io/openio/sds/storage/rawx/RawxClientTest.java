@@ -3,24 +3,31 @@ package io.openio.sds.storage.rawx;
 import io.openio.sds.RequestContext;
 import io.openio.sds.TestHelper;
 import io.openio.sds.TestSocketProvider;
+import io.openio.sds.common.Hash;
 import io.openio.sds.exceptions.OioException;
 import io.openio.sds.http.OioHttp;
 import io.openio.sds.http.OioHttpRequest;
 import io.openio.sds.http.OioHttpSettings;
+import io.openio.sds.models.ChunkInfo;
 import io.openio.sds.models.ObjectInfo;
 import io.openio.sds.models.OioUrl;
+import io.openio.sds.models.Range;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 import static io.openio.sds.common.IdGen.requestId;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -79,6 +86,126 @@ public class RawxClientTest {
 		// TODO verify PUT requests
 	}
 
+	@Test
+	public void smallObject() throws IOException {
+		List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+		for (int i = 0; i < 3; i++)
+			inputs.add(new ByteArrayInputStream(
+					"HTTP/1.0 201 Created\r\nContent-Length: 0\r\nX-oio-chunk-meta-chunk-hash: 098F6BCD4621D373CADE4E832627B4F6\r\n\r\n"
+							.getBytes()));
+
+		TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+		OioHttp http = OioHttp.http(new OioHttpSettings(), socketProvider);
+		RawxClient client = new RawxClient(http, new RawxSettings());
+
+		byte[] dataBytes = "test".getBytes();
+		RequestContext reqCtx = new RequestContext();
+		ObjectInfo objectInfo = TestHelper.newTestObjectInfo(newObjectOioUrl(), dataBytes.length);
+		client.uploadChunks(objectInfo, new ByteArrayInputStream(dataBytes), reqCtx);
+
+		assertEquals("098F6BCD4621D373CADE4E832627B4F6", objectInfo.hash());
+		assertEquals(0, client.getActiveUploadCount());
+		List<ByteArrayOutputStream> outputs = socketProvider.outputs();
+		assertEquals(3, outputs.size());
+		for (int i = 0; i < 3; i++) {
+			byte[] raw = outputs.get(i).toByteArray();
+			OioHttpRequest req = OioHttpRequest.build(new ByteArrayInputStream(raw));
+			assertEquals("PUT", req.method());
+			assertEquals(reqCtx.requestId(), req.header("X-oio-req-id"));
+			assertTrue(new String(raw).endsWith("\r\n\r\ntest"));
+			assertEquals("098F6BCD4621D373CADE4E832627B4F6",
+					objectInfo.chunks().get(i).hash());
+		}
+	}
+
+	@Test
+	public void outputStream() throws IOException {
+		List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+		for (int i = 0; i < 3; i++)
+			inputs.add(new ByteArrayInputStream(
+					"HTTP/1.0 201 Created\r\nContent-Length: 0\r\n\r\n".getBytes()));
+
+		TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+		OioHttp http = OioHttp.http(new OioHttpSettings(), socketProvider);
+		RawxClient client = new RawxClient(http, new RawxSettings());
+
+		final List<ObjectInfo> committed = new ArrayList<ObjectInfo>();
+		ObjectInfo objectInfo = TestHelper.newTestObjectInfo(newObjectOioUrl(), 4);
+		ObjectOutputStream out = new ObjectOutputStream(objectInfo, client,
+				new RequestContext()) {
+
+			@Override
+			protected void commit(ObjectInfo oinf) {
+				committed.add(oinf);
+			}
+		};
+		out.write("te".getBytes());
+		out.write('s');
+		out.write("xtx".getBytes(), 1, 1);
+		out.close();
+
+		assertEquals(1, committed.size());
+		assertEquals("098F6BCD4621D373CADE4E832627B4F6", objectInfo.hash());
+		List<ByteArrayOutputStream> outputs = socketProvider.outputs();
+		assertEquals(3, outputs.size());
+		for (ByteArrayOutputStream output : outputs) {
+			byte[] raw = output.toByteArray();
+			OioHttpRequest req = OioHttpRequest.build(new ByteArrayInputStream(raw));
+			assertEquals("PUT", req.method());
+			assertEquals("4", req.header("Content-Length"));
+			assertTrue(new String(raw).endsWith("\r\n\r\ntest"));
+		}
+	}
+
+	@Test
+	public void outputStreamShortWrite() throws IOException {
+		List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+		for (int i = 0; i < 3; i++)
+			inputs.add(new ByteArrayInputStream(
+					"HTTP/1.0 201 Created\r\nContent-Length: 0\r\n\r\n".getBytes()));
+		OioHttp http = OioHttp.http(new OioHttpSettings(), new TestSocketProvider(inputs));
+		RawxClient client = new RawxClient(http, new RawxSettings());
+
+		ObjectInfo objectInfo = TestHelper.newTestObjectInfo(newObjectOioUrl(), 5);
+		ObjectOutputStream out = new ObjectOutputStream(objectInfo, client,
+				new RequestContext());
+		out.write("test".getBytes());
+		try {
+			out.close();
+			fail("Expected IOException");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("4 bytes, 5 expected"));
+		}
+	}
+
+	@Test
+	public void outputStreamCommitFailure() throws IOException {
+		List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+		for (int i = 0; i < 6; i++)
+			inputs.add(new ByteArrayInputStream(
+					"HTTP/1.0 201 Created\r\nContent-Length: 0\r\n\r\n".getBytes()));
+		OioHttp http = OioHttp.http(new OioHttpSettings(), new TestSocketProvider(inputs));
+		RawxClient client = new RawxClient(http, new RawxSettings());
+
+		ObjectInfo objectInfo = TestHelper.newTestObjectInfo(newObjectOioUrl(), 4);
+		ObjectOutputStream out = new ObjectOutputStream(objectInfo, client,
+				new RequestContext()) {
+
+			@Override
+			protected void commit(ObjectInfo oinf) {
+				throw new OioException("Commit failed");
+			}
+		};
+		out.write("test".getBytes());
+		try {
+			out.close();
+			fail("Expected IOException");
+		} catch (IOException e) {
+			assertEquals("Commit failed", e.getMessage());
+			assertTrue(e.getCause() instanceof OioException);
+		}
+	}
+
 	@Test
 	public void shortRead() {
 		final List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
@@ -169,4 +296,362 @@ public class RawxClientTest {
 
 		verifyGetRequests(socketProvider, objectInfo, reqCtx);
 	}
+
+	@Test
+	public void downloadToChannel() throws IOException {
+		final List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+		inputs.add(new ByteArrayInputStream("HTTP/1.0 503 Unavailable\r\nContent-Length: 0\r\n\r\n".getBytes()));
+		inputs.add(new ByteArrayInputStream("HTTP/1.0 206 Partial Content\r\nContent-Length: 2\r\n\r\nte".getBytes()));
+		inputs.add(new ByteArrayInputStream("HTTP/1.0 206 Partial Content\r\nContent-Length: 2\r\n\r\nst".getBytes()));
+
+		TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+		OioHttp http = OioHttp.http(new OioHttpSettings(), socketProvider);
+		RawxClient client = new RawxClient(http, new RawxSettings()
+				.downloadParallelism(1)
+				.downloadRangeSize(2));
+
+		ObjectInfo objectInfo = TestHelper.newTestObjectInfo(newObjectOioUrl(), 4);
+		File file = File.createTempFile("oio", ".tmp");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			client.downloadObjectTo(objectInfo, raf.getChannel(), new RequestContext());
+			byte[] res = new byte[(int) raf.length()];
+			raf.readFully(res);
+			assertEquals("test", new String(res));
+		} finally {
+			raf.close();
+			file.delete();
+		}
+
+		List<ByteArrayOutputStream> outputs = socketProvider.outputs();
+		assertEquals(3, outputs.size());
+		String[] ranges = { "bytes=0-1", "bytes=0-1", "bytes=2-3" };
+		for (int i = 0; i < 3; i++) {
+			OioHttpRequest req = OioHttpRequest.build(
+					new ByteArrayInputStream(outputs.get(i).toByteArray()));
+			assertEquals(ranges[i], req.header("Range"));
+		}
+	}
+
+	@Test
+	public void downloadToChannelFromBestReplica() throws IOException {
+		List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+		inputs.add(new ByteArrayInputStream("HTTP/1.0 206 Partial Content\r\nContent-Length: 4\r\n\r\ntest".getBytes()));
+
+		TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+		OioHttp http = OioHttp.http(new OioHttpSettings(), socketProvider);
+		RawxClient client = new RawxClient(http, new RawxSettings());
+
+		ObjectInfo objectInfo = TestHelper.newTestObjectInfo(newObjectOioUrl(), 4);
+		List<ChunkInfo> replicas = objectInfo.sortedChunks().get(0);
+		for (int i = 0; i < 3; i++)
+			client.stats().error(replicas.get(0).finalUrl());
+		File file = File.createTempFile("oio", ".tmp");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			client.downloadObjectTo(objectInfo, raf.getChannel(), new RequestContext());
+		} finally {
+			raf.close();
+			file.delete();
+		}
+
+		List<ByteArrayOutputStream> outputs = socketProvider.outputs();
+		assertEquals(1, outputs.size());
+		OioHttpRequest req = OioHttpRequest.build(
+				new ByteArrayInputStream(outputs.get(0).toByteArray()));
+		assertFalse(replicas.get(0).url().endsWith(req.uri()));
+	}
+
+	@Test
+	public void resumeOnReplicaFailure() throws IOException {
+		List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+		inputs.add(new ByteArrayInputStream("HTTP/1.0 200 OK\r\nContent-Length: 4\r\n\r\nte".getBytes()));
+		inputs.add(new ByteArrayInputStream("HTTP/1.0 206 Partial Content\r\nContent-Length: 2\r\n\r\nst".getBytes()));
+
+		TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+		OioHttp http = OioHttp.http(new OioHttpSettings(), socketProvider);
+		RawxClient client = new RawxClient(http, new RawxSettings()
+				.replicaOrdering(false));
+
+		ObjectInfo objectInfo = TestHelper.newTestObjectInfo(newObjectOioUrl(), 4);
+		InputStream in = client.downloadObject(objectInfo, new RequestContext());
+		try {
+			ByteArrayOutputStream res = new ByteArrayOutputStream();
+			byte[] buf = new byte[16];
+			for (int read = in.read(buf); read >= 0; read = in.read(buf))
+				res.write(buf, 0, read);
+			assertEquals("test", res.toString());
+		} finally {
+			in.close();
+		}
+
+		List<ByteArrayOutputStream> outputs = socketProvider.outputs();
+		assertEquals(2, outputs.size());
+		OioHttpRequest first = OioHttpRequest.build(
+				new ByteArrayInputStream(outputs.get(0).toByteArray()));
+		assertEquals(null, first.header("Range"));
+		OioHttpRequest second = OioHttpRequest.build(
+				new ByteArrayInputStream(outputs.get(1).toByteArray()));
+		assertEquals("bytes=2-", second.header("Range"));
+		assertTrue(objectInfo.sortedChunks().get(0).get(1).url()
+				.endsWith(second.uri()));
+	}
+
+	@Test
+	public void readIntoDirectBuffer() throws IOException {
+		List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+		inputs.add(new ByteArrayInputStream("HTTP/1.0 200 OK\r\nContent-Length: 4\r\n\r\ntest".getBytes()));
+
+		TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+		OioHttp http = OioHttp.http(new OioHttpSettings(), socketProvider);
+		RawxClient client = new RawxClient(http, new RawxSettings());
+
+		ObjectInfo objectInfo = TestHelper.newTestObjectInfo(newObjectOioUrl(), 4);
+		ObjectInputStream in = (ObjectInputStream) client.downloadObject(
+				objectInfo, new RequestContext());
+		ByteBuffer dst = ByteBuffer.allocateDirect(8);
+		try {
+			assertEquals(4, in.read(dst));
+			assertEquals(-1, in.read(dst));
+		} finally {
+			in.close();
+		}
+		assertFalse(in.isOpen());
+		dst.flip();
+		byte[] res = new byte[dst.remaining()];
+		dst.get(res);
+		assertEquals("test", new String(res));
+	}
+
+	@Test
+	public void chunkCache() throws IOException {
+		List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+		inputs.add(new ByteArrayInputStream("HTTP/1.0 200 OK\r\nContent-Length: 4\r\n\r\ntest".getBytes()));
+
+		TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+		OioHttp http = OioHttp.http(new OioHttpSettings(), socketProvider);
+		RawxClient client = new RawxClient(http, new RawxSettings()
+				.chunkCacheSize(1024));
+
+		ObjectInfo objectInfo = TestHelper.newTestObjectInfo(newObjectOioUrl(), 4);
+		for (ChunkInfo ci : objectInfo.chunks())
+			ci.hash(Hash.md5().putBytes("test".getBytes()).hash().toString());
+		for (int i = 0; i < 3; i++) {
+			InputStream in = client.downloadObject(objectInfo, new RequestContext());
+			try {
+				assertEquals("test", new String(TestHelper.toByteArray(in)));
+			} finally {
+				in.close();
+			}
+		}
+		assertEquals(1, socketProvider.outputs().size());
+		assertEquals(2, client.chunkCache().hits());
+		assertEquals(1, client.chunkCache().misses());
+	}
+
+	@Test
+	public void diskCacheDirectoryInUse() throws IOException {
+		File dir = File.createTempFile("oio-cache", "");
+		dir.delete();
+		OioHttp http = OioHttp.http(new OioHttpSettings(),
+				new TestSocketProvider(new ArrayList<ByteArrayInputStream>()));
+		RawxSettings settings = new RawxSettings().chunkDiskCacheDirectory(dir);
+		RawxClient first = new RawxClient(http, settings);
+		try {
+			assertTrue(first.chunkCache() instanceof DiskChunkCache);
+			// the second client goes on without disk cache
+			RawxClient second = new RawxClient(http, settings);
+			assertEquals(null, second.chunkCache());
+			first.close();
+			RawxClient third = new RawxClient(http, settings);
+			assertTrue(third.chunkCache() instanceof DiskChunkCache);
+			third.close();
+		} finally {
+			first.close();
+			for (File file : dir.listFiles())
+				file.delete();
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void downloadRanges() throws IOException {
+		List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+		inputs.add(new ByteArrayInputStream("HTTP/1.0 206 Partial Content\r\nContent-Length: 5\r\n\r\n01234".getBytes()));
+		inputs.add(new ByteArrayInputStream("HTTP/1.0 206 Partial Content\r\nContent-Length: 2\r\n\r\n89".getBytes()));
+
+		TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+		OioHttp http = OioHttp.http(new OioHttpSettings(), socketProvider);
+		RawxClient client = new RawxClient(http, new RawxSettings()
+				.replicaOrdering(false)
+				.downloadParallelism(1)
+				.rangeCoalescingGap(2));
+
+		ObjectInfo objectInfo = TestHelper.newTestObjectInfo(newObjectOioUrl(), 10);
+		List<Range> ranges = new ArrayList<Range>();
+		ranges.add(Range.between(3, 4));
+		ranges.add(Range.between(0, 1));
+		ranges.add(Range.from(8));
+		List<ByteBuffer> res = client.downloadRanges(objectInfo, ranges,
+				new RequestContext());
+
+		String[] expected = { "34", "01", "89" };
+		assertEquals(expected.length, res.size());
+		for (int i = 0; i < expected.length; i++) {
+			byte[] data = new byte[res.get(i).remaining()];
+			res.get(i).get(data);
+			assertEquals(expected[i], new String(data));
+		}
+		List<ByteArrayOutputStream> outputs = socketProvider.outputs();
+		assertEquals(2, outputs.size());
+		String[] headers = { "bytes=0-4", "bytes=8-9" };
+		for (int i = 0; i < headers.length; i++) {
+			OioHttpRequest req = OioHttpRequest.build(
+					new ByteArrayInputStream(outputs.get(i).toByteArray()));
+			assertEquals(headers[i], req.header("Range"));
+		}
+	}
+
+	@Test
+	public void downloadRangesSplitLargeRequests() throws IOException {
+		List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+		inputs.add(new ByteArrayInputStream("HTTP/1.0 206 Partial Content\r\nContent-Length: 4\r\n\r\n0123".getBytes()));
+		inputs.add(new ByteArrayInputStream("HTTP/1.0 206 Partial Content\r\nContent-Length: 3\r\n\r\n456".getBytes()));
+		inputs.add(new ByteArrayInputStream("HTTP/1.0 206 Partial Content\r\nContent-Length: 2\r\n\r\n78".getBytes()));
+
+		TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+		OioHttp http = OioHttp.http(new OioHttpSettings(), socketProvider);
+		RawxClient client = new RawxClient(http, new RawxSettings()
+				.downloadParallelism(1)
+				.downloadRangeSize(4)
+				.rangeCoalescingGap(2));
+
+		ObjectInfo objectInfo = TestHelper.newTestObjectInfo(newObjectOioUrl(), 10);
+		List<Range> ranges = new ArrayList<Range>();
+		ranges.add(Range.between(0, 6));
+		ranges.add(Range.between(7, 8));
+		List<ByteBuffer> res = client.downloadRanges(objectInfo, ranges,
+				new RequestContext());
+
+		String[] expected = { "0123456", "78" };
+		for (int i = 0; i < expected.length; i++) {
+			byte[] data = new byte[res.get(i).remaining()];
+			res.get(i).get(data);
+			assertEquals(expected[i], new String(data));
+		}
+		List<ByteArrayOutputStream> outputs = socketProvider.outputs();
+		String[] headers = { "bytes=0-3", "bytes=4-6", "bytes=7-8" };
+		assertEquals(headers.length, outputs.size());
+		for (int i = 0; i < headers.length; i++) {
+			OioHttpRequest req = OioHttpRequest.build(
+					new ByteArrayInputStream(outputs.get(i).toByteArray()));
+			assertEquals(headers[i], req.header("Range"));
+		}
+	}
+
+	@Test
+	public void seekableChannel() throws IOException {
+		List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+		inputs.add(new ByteArrayInputStream("HTTP/1.0 206 Partial Content\r\nContent-Length: 4\r\n\r\n6789".getBytes()));
+		inputs.add(new ByteArrayInputStream("HTTP/1.0 206 Partial Content\r\nContent-Length: 8\r\n\r\n23456789".getBytes()));
+
+		TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+		OioHttp http = OioHttp.http(new OioHttpSettings(), socketProvider);
+		RawxClient client = new RawxClient(http, new RawxSettings()
+				.replicaOrdering(false));
+
+		ObjectInfo objectInfo = TestHelper.newTestObjectInfo(newObjectOioUrl(), 10);
+		ObjectChannel channel = client.openChannel(objectInfo,
+				new RequestContext());
+		assertEquals(10, channel.size());
+
+		ByteBuffer dst = ByteBuffer.allocate(2);
+		channel.position(6).read(dst);
+		assertEquals("67", new String(dst.array()));
+		dst.clear();
+		// forward within the same request
+		channel.position(8).read(dst);
+		assertEquals("89", new String(dst.array()));
+		dst.clear();
+		assertEquals(-1, channel.read(dst));
+		// backward
+		channel.position(2).read(dst);
+		assertEquals("23", new String(dst.array()));
+		assertEquals(4, channel.position());
+		channel.close();
+
+		List<ByteArrayOutputStream> outputs = socketProvider.outputs();
+		assertEquals(2, outputs.size());
+		String[] headers = { "bytes=6-9", "bytes=2-9" };
+		for (int i = 0; i < headers.length; i++) {
+			OioHttpRequest req = OioHttpRequest.build(
+					new ByteArrayInputStream(outputs.get(i).toByteArray()));
+			assertEquals(headers[i], req.header("Range"));
+		}
+	}
+
+	@Test
+	public void verifyChecksumsOnStream() {
+		List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+		inputs.add(new ByteArrayInputStream("HTTP/1.0 200 OK\r\nContent-Length: 4\r\n\r\ntext".getBytes()));
+
+		TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+		OioHttp http = OioHttp.http(new OioHttpSettings(), socketProvider);
+		RawxClient client = new RawxClient(http, new RawxSettings()
+				.replicaOrdering(false)
+				.verifyChecksums(true));
+
+		ObjectInfo objectInfo = TestHelper.newTestObjectInfo(newObjectOioUrl(), 4);
+		String md5 = Hash.md5().hashBytes("test".getBytes()).toString();
+		for (ChunkInfo ci : objectInfo.sortedChunks().get(0))
+			ci.hash(md5);
+
+		InputStream stream = client.downloadObject(objectInfo, new RequestContext());
+		try {
+			TestHelper.toByteArray(stream);
+			fail("Corrupted chunk not detected");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("does not match its hash"));
+		}
+	}
+
+	@Test
+	public void verifyChecksumsToChannel() throws IOException {
+		List<ByteArrayInputStream> inputs = new ArrayList<ByteArrayInputStream>();
+		inputs.add(new ByteArrayInputStream("HTTP/1.0 206 Partial Content\r\nContent-Length: 4\r\n\r\ntext".getBytes()));
+		inputs.add(new ByteArrayInputStream("HTTP/1.0 206 Partial Content\r\nContent-Length: 4\r\n\r\ntest".getBytes()));
+
+		TestSocketProvider socketProvider = new TestSocketProvider(inputs);
+		OioHttp http = OioHttp.http(new OioHttpSettings(), socketProvider);
+		RawxClient client = new RawxClient(http, new RawxSettings()
+				.downloadParallelism(1)
+				.downloadRangeSize(2)
+				.verifyChecksums(true));
+
+		ObjectInfo objectInfo = TestHelper.newTestObjectInfo(newObjectOioUrl(), 4);
+		String md5 = Hash.md5().hashBytes("test".getBytes()).toString();
+		for (ChunkInfo ci : objectInfo.sortedChunks().get(0))
+			ci.hash(md5);
+
+		File file = File.createTempFile("oio", ".tmp");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			client.downloadObjectTo(objectInfo, raf.getChannel(), new RequestContext());
+			byte[] res = new byte[(int) raf.length()];
+			raf.readFully(res);
+			assertEquals("test", new String(res));
+		} finally {
+			raf.close();
+			file.delete();
+		}
+
+		// the whole chunk is fetched at once, twice
+		List<ByteArrayOutputStream> outputs = socketProvider.outputs();
+		assertEquals(2, outputs.size());
+		for (ByteArrayOutputStream output : outputs) {
+			OioHttpRequest req = OioHttpRequest.build(
+					new ByteArrayInputStream(output.toByteArray()));
+			assertEquals("bytes=0-3", req.header("Range"));
+		}
+	}
 }
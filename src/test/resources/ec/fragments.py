@@ -0,0 +1,110 @@
+#!/usr/bin/env python3
+"""
+Writes the fragments expected from liberasurecode for EcClientTest.
+
+This is a transcription of the reference C code, kept apart from the Java
+codec: gf_gen_rs_matrix and gf_gen_cauchy1_matrix from ISA-L (GF(2^8) with
+the 0x11d polynomial), and the packed little-endian fragment_header_t of
+liberasurecode 1.6.2, whose metadata checksum is the zlib crc32 of its first
+59 bytes. With pyeclib at hand, the same chunks are the concatenation of
+ECDriver(k=4, m=2, ec_type=<algo>).encode(segment) over the segments.
+
+Usage: python3 fragments.py  (writes <algo>.hex next to this script)
+"""
+import os
+import struct
+import zlib
+
+K, M = 4, 2
+SEGMENT_SIZE = 40
+DATA = bytes((i * 37 + 11) & 0xFF for i in range(64))
+BACKENDS = {"isa_l_rs_vand": 4, "isa_l_rs_cauchy": 7}
+BACKEND_VERSION = (2 << 16) | (13 << 8) | 0
+LIBEC_VERSION = (1 << 16) | (6 << 8) | 2
+MAGIC = 0xB0C5ECC
+CHKSUM_NONE = 1
+
+EXP, LOG = [0] * 512, [0] * 256
+x = 1
+for i in range(255):
+    EXP[i] = x
+    LOG[x] = i
+    x <<= 1
+    if x & 0x100:
+        x ^= 0x11D
+for i in range(255, 512):
+    EXP[i] = EXP[i - 255]
+
+
+def gf_mul(a, b):
+    return 0 if 0 == a or 0 == b else EXP[LOG[a] + LOG[b]]
+
+
+def gf_inv(a):
+    return EXP[255 - LOG[a]]
+
+
+def gf_gen_rs_matrix(m, k):
+    a = [0] * (m * k)
+    for i in range(k):
+        a[k * i + i] = 1
+    gen = 1
+    for i in range(k, m):
+        p = 1
+        for j in range(k):
+            a[k * i + j] = p
+            p = gf_mul(p, gen)
+        gen = gf_mul(gen, 2)
+    return a
+
+
+def gf_gen_cauchy1_matrix(m, k):
+    a = [0] * (m * k)
+    for i in range(k):
+        a[k * i + i] = 1
+    for i in range(k, m):
+        for j in range(k):
+            a[k * i + j] = gf_inv(i ^ j)
+    return a
+
+
+def header(idx, size, orig_data_size, backend_id):
+    meta = struct.pack("<IIIQB8IBBI", idx, size, 0, orig_data_size,
+                       CHKSUM_NONE, *([0] * 8 + [0, backend_id,
+                                                 BACKEND_VERSION]))
+    assert 59 == len(meta)
+    return meta + struct.pack("<III", MAGIC, LIBEC_VERSION,
+                              zlib.crc32(meta) & 0xFFFFFFFF) + bytes(9)
+
+
+def encode(segment, matrix, backend_id):
+    blocksize = (len(segment) + K - 1) // K
+    data = segment + bytes(K * blocksize - len(segment))
+    blocks = [data[i * blocksize:(i + 1) * blocksize] for i in range(K)]
+    for p in range(M):
+        row = matrix[(K + p) * K:(K + p + 1) * K]
+        parity = bytearray(blocksize)
+        for j in range(K):
+            for b in range(blocksize):
+                parity[b] ^= gf_mul(row[j], blocks[j][b])
+        blocks.append(bytes(parity))
+    return [header(i, blocksize, len(segment), backend_id) + blocks[i]
+            for i in range(K + M)]
+
+
+def main():
+    here = os.path.dirname(os.path.abspath(__file__))
+    for algo, gen in (("isa_l_rs_vand", gf_gen_rs_matrix),
+                      ("isa_l_rs_cauchy", gf_gen_cauchy1_matrix)):
+        chunks = [b""] * (K + M)
+        for off in range(0, len(DATA), SEGMENT_SIZE):
+            fragments = encode(DATA[off:off + SEGMENT_SIZE], gen(K + M, K),
+                               BACKENDS[algo])
+            chunks = [c + f for c, f in zip(chunks, fragments)]
+        with open(os.path.join(here, algo + ".hex"), "w") as f:
+            for chunk in chunks:
+                f.write(chunk.hex() + "\n")
+
+
+if __name__ == "__main__":
+    main()